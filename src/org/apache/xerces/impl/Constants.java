@@ -271,15 +271,24 @@ public final class Constants {
     /** Notify built-in (&amp;amp;, etc.) references feature (scanner/notify-builtin-refs"). */
     public static final String NOTIFY_BUILTIN_REFS_FEATURE = "scanner/notify-builtin-refs";
     
+    /** Chunked characters feature ("scanner/chunked-characters"). */
+    public static final String CHUNKED_CHARACTERS_FEATURE = "scanner/chunked-characters";
+    
     /** Standard URI conformant feature ("standard-uri-conformant"). */
     public static final String STANDARD_URI_CONFORMANT_FEATURE = "standard-uri-conformant";
     
+    /** Adaptive input buffer size feature ("adaptive-input-buffer-size"). */
+    public static final String ADAPTIVE_BUFFER_SIZE_FEATURE = "adaptive-input-buffer-size";
+    
     /** Generate synthetic annotations feature ("generate-synthetic-annotations"). */
     public static final String GENERATE_SYNTHETIC_ANNOTATIONS_FEATURE = "generate-synthetic-annotations";
     
     /** Validate annotations feature ("validate-annotations"). */
     public static final String VALIDATE_ANNOTATIONS_FEATURE = "validate-annotations";
     
+    /** Defer annotations feature ("defer-annotations"). */
+    public static final String DEFER_ANNOTATIONS_FEATURE = "defer-annotations";
+    
     /** Honour all schemaLocations feature ("honour-all-schemaLocations"). */
     public static final String HONOUR_ALL_SCHEMALOCATIONS_FEATURE = "honour-all-schemaLocations";
     
@@ -380,6 +389,12 @@ public final class Constants {
     /** Input buffer size property ("input-buffer-size"). */
     public static final String BUFFER_SIZE_PROPERTY = "input-buffer-size";
     
+    /** Input buffer pool property ("input-buffer-pool"). */
+    public static final String BUFFER_POOL_PROPERTY = "input-buffer-pool";
+    
+    /** Input prefetch depth property ("input-prefetch-depth"). */
+    public static final String PREFETCH_DEPTH_PROPERTY = "input-prefetch-depth";
+    
     /** Security manager property ("security-manager"). */
     public static final String SECURITY_MANAGER_PROPERTY = "security-manager";
     
@@ -437,6 +452,12 @@ public final class Constants {
     /** Schema element declaration for the root element in a document ("internal/validation/schema/dv-factory"). */
     public static final String SCHEMA_DV_FACTORY_PROPERTY = "internal/validation/schema/dv-factory";
     
+    /** Cache of parsed schema documents ("internal/validation/schema/dom-cache"). */
+    public static final String SCHEMA_DOM_CACHE_PROPERTY = "internal/validation/schema/dom-cache";
+    
+    /** Number of threads parsing the documents of a schema ("validation/schema/parse-threads"). */
+    public static final String SCHEMA_PARSE_THREADS_PROPERTY = "validation/schema/parse-threads";
+    
     // general constants
     
     /** Element PSVI is stored in augmentations using string "ELEMENT_PSVI" */
@@ -519,11 +540,14 @@ public final class Constants {
             VALIDATE_DATATYPES_FEATURE,
             BALANCE_SYNTAX_TREES,
             NOTIFY_CHAR_REFS_FEATURE,
+            CHUNKED_CHARACTERS_FEATURE,
             NOTIFY_BUILTIN_REFS_FEATURE,
             DISALLOW_DOCTYPE_DECL_FEATURE,
             STANDARD_URI_CONFORMANT_FEATURE,
+            ADAPTIVE_BUFFER_SIZE_FEATURE,
             GENERATE_SYNTHETIC_ANNOTATIONS_FEATURE,
             VALIDATE_ANNOTATIONS_FEATURE,
+            DEFER_ANNOTATIONS_FEATURE,
             HONOUR_ALL_SCHEMALOCATIONS_FEATURE,
             XINCLUDE_FEATURE,
             XINCLUDE_FIXUP_BASE_URIS_FEATURE,
@@ -555,11 +579,15 @@ public final class Constants {
             SCHEMA_NONS_LOCATION,
             VALIDATION_MANAGER_PROPERTY,
             BUFFER_SIZE_PROPERTY,
+            BUFFER_POOL_PROPERTY,
+            PREFETCH_DEPTH_PROPERTY,
             SECURITY_MANAGER_PROPERTY,
             LOCALE_PROPERTY,
             ROOT_TYPE_DEFINITION_PROPERTY,
             ROOT_ELEMENT_DECLARATION_PROPERTY,
             SCHEMA_DV_FACTORY_PROPERTY,
+            SCHEMA_DOM_CACHE_PROPERTY,
+            SCHEMA_PARSE_THREADS_PROPERTY,
     };
     
     /** Empty enumeration. */
@@ -1054,14 +1054,17 @@ public class XML11EntityScanner
      *
      * @param delimiter The string that signifies the end of the character
      *                  data to be scanned.
-     * @param buffer    The XMLStringBuffer to fill.
+     * @param buffer    The XMLStringBuffer to fill, or <code>null</code>
+     *                  to set the chunk instead.
+     * @param chunk     The XMLString to set to a single range of the
+     *                  buffer if no XMLStringBuffer is given.
      *
      * @return Returns true if there is more data to scan, false otherwise.
      *
      * @throws IOException  Thrown if i/o error occurs.
      * @throws EOFException Thrown on end of file.
      */
-    public boolean scanData(String delimiter, XMLStringBuffer buffer)
+    protected boolean scanData(String delimiter, XMLStringBuffer buffer, XMLString chunk)
         throws IOException {
 
         boolean done = false;
@@ -1093,7 +1096,7 @@ public class XML11EntityScanner
             if (fCurrentEntity.position >= fCurrentEntity.count - delimLen) {
                 // something must be wrong with the input:  e.g., file ends  an unterminated comment
                 int length = fCurrentEntity.count - fCurrentEntity.position;
-                buffer.append (fCurrentEntity.ch, fCurrentEntity.position, length); 
+                putTail(buffer, chunk, fCurrentEntity.position, length); 
                 fCurrentEntity.columnNumber += fCurrentEntity.count;
                 fCurrentEntity.baseCharOffset += (fCurrentEntity.position - fCurrentEntity.startPosition);
                 fCurrentEntity.position = fCurrentEntity.count;
@@ -1157,7 +1160,7 @@ public class XML11EntityScanner
                 }
                 int length = fCurrentEntity.position - offset;
                 if (fCurrentEntity.position == fCurrentEntity.count - 1) {
-                    buffer.append(fCurrentEntity.ch, offset, length);
+                    putData(buffer, chunk, offset, length);
                     return true;
                 }
             }
@@ -1195,7 +1198,7 @@ public class XML11EntityScanner
                         fCurrentEntity.position--;
                         int length = fCurrentEntity.position - offset;
                         fCurrentEntity.columnNumber += length - newlines;
-                        buffer.append(fCurrentEntity.ch, offset, length); 
+                        putData(buffer, chunk, offset, length); 
                         return true;
                     }
                 }
@@ -1232,7 +1235,7 @@ public class XML11EntityScanner
                         fCurrentEntity.position--;
                         int length = fCurrentEntity.position - offset;
                         fCurrentEntity.columnNumber += length - newlines;
-                        buffer.append(fCurrentEntity.ch, offset, length); 
+                        putData(buffer, chunk, offset, length); 
                         return true;
                     }
                 }
@@ -1242,13 +1245,13 @@ public class XML11EntityScanner
             if (done) {
                 length -= delimLen;
             }
-            buffer.append(fCurrentEntity.ch, offset, length);
+            putData(buffer, chunk, offset, length);
 
             // return true if string was skipped
-        } while (!done);
+        } while (!done && buffer != null);
         return !done;
 
-    } // scanData(String,XMLString)
+    } // scanData(String,XMLStringBuffer,XMLString):boolean
 
     /**
      * Skips a character appearing immediately on the input.
@@ -118,6 +118,10 @@ public class XMLDocumentFragmentScannerImpl
     /** Feature identifier: notify built-in refereces. */
     protected static final String NOTIFY_BUILTIN_REFS =
         Constants.XERCES_FEATURE_PREFIX + Constants.NOTIFY_BUILTIN_REFS_FEATURE;
+
+    /** Feature identifier: chunked characters. */
+    protected static final String CHUNKED_CHARACTERS =
+        Constants.XERCES_FEATURE_PREFIX + Constants.CHUNKED_CHARACTERS_FEATURE;
         
     // property identifiers
     
@@ -133,6 +137,7 @@ public class XMLDocumentFragmentScannerImpl
         VALIDATION, 
         NOTIFY_BUILTIN_REFS,
         NOTIFY_CHAR_REFS, 
+        CHUNKED_CHARACTERS,
     };
 
     /** Feature defaults. */
@@ -141,6 +146,7 @@ public class XMLDocumentFragmentScannerImpl
         null,
         Boolean.FALSE,
         Boolean.FALSE,
+        Boolean.FALSE,
     };
 
     /** Recognized properties. */
@@ -222,6 +228,12 @@ public class XMLDocumentFragmentScannerImpl
 
     /** Notify built-in references. */
     protected boolean fNotifyBuiltInRefs = false;
+    
+    /** 
+     * Report character data in chunks straight from the buffer of the
+     * entity rather than assembling it in a string buffer first.
+     */
+    protected boolean fChunkedCharacters = false;
 
     // dispatchers
 
@@ -383,6 +395,11 @@ public class XMLDocumentFragmentScannerImpl
             } catch (XMLConfigurationException e) {
                 fNotifyBuiltInRefs = false;
             }
+            try {
+                fChunkedCharacters = componentManager.getFeature(CHUNKED_CHARACTERS);
+            } catch (XMLConfigurationException e) {
+                fChunkedCharacters = false;
+            }
             
             // xerces properties
             try {
@@ -433,6 +450,10 @@ public class XMLDocumentFragmentScannerImpl
                 featureId.endsWith(Constants.NOTIFY_BUILTIN_REFS_FEATURE)) {
                 fNotifyBuiltInRefs = state;
             }
+            else if (suffixLength == Constants.CHUNKED_CHARACTERS_FEATURE.length() && 
+                featureId.endsWith(Constants.CHUNKED_CHARACTERS_FEATURE)) {
+                fChunkedCharacters = state;
+            }
         }
 
     } // setFeature(String,boolean)
@@ -1001,7 +1022,19 @@ public class XMLDocumentFragmentScannerImpl
 
         XMLString content = fTempString;
         int c = fEntityScanner.scanContent(content);
-        if (c == '\r') {
+        if (c == '\r' && fChunkedCharacters) {
+            // report the content before the character reference &#13;
+            // on its own rather than copying it
+            fEntityScanner.scanChar();
+            if (fDocumentHandler != null && content.length > 0) {
+                fDocumentHandler.characters(content, null);
+            }
+            fStringBuffer.clear();
+            fStringBuffer.append((char)c);
+            content = fStringBuffer;
+            c = -1;
+        }
+        else if (c == '\r') {
             // happens when there is the character reference &#13;
             fEntityScanner.scanChar();
             fStringBuffer.clear();
@@ -1065,10 +1098,20 @@ public class XMLDocumentFragmentScannerImpl
         }
 
         while (true) {
-            fStringBuffer.clear();
-            if (!fEntityScanner.scanData("]]", fStringBuffer)) {
-                if (fDocumentHandler != null && fStringBuffer.length > 0) {
-                    fDocumentHandler.characters(fStringBuffer, null);
+            final XMLString data;
+            final boolean more;
+            if (fChunkedCharacters) {
+                more = fEntityScanner.scanDataChunk("]]", fTempString);
+                data = fTempString;
+            }
+            else {
+                fStringBuffer.clear();
+                more = fEntityScanner.scanData("]]", fStringBuffer);
+                data = fStringBuffer;
+            }
+            if (!more) {
+                if (fDocumentHandler != null && data.length > 0) {
+                    fDocumentHandler.characters(data, null);
                 }
                 int brackets = 0;
                 while (fEntityScanner.skipChar(']')) {
@@ -1109,7 +1152,7 @@ public class XMLDocumentFragmentScannerImpl
             }
             else {
                 if (fDocumentHandler != null) {
-                    fDocumentHandler.characters(fStringBuffer, null);
+                    fDocumentHandler.characters(data, null);
                 }
                 int c = fEntityScanner.peekChar();
                 if (c != -1 && isInvalidLiteral(c)) {
@@ -18,6 +18,7 @@
 package org.apache.xerces.impl;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,13 +39,21 @@ import java.util.Stack;
 import java.util.StringTokenizer;
 
 import org.apache.xerces.impl.io.ASCIIReader;
+import org.apache.xerces.impl.io.ByteArrayStream;
+import org.apache.xerces.impl.io.PrefetchInputStream;
 import org.apache.xerces.impl.io.Latin1Reader;
+import org.apache.xerces.impl.io.ReaderFactory;
+import org.apache.xerces.impl.io.ReaderFactoryMap;
+import org.apache.xerces.impl.io.SingleByteReader;
 import org.apache.xerces.impl.io.UCSReader;
 import org.apache.xerces.impl.io.UTF16Reader;
 import org.apache.xerces.impl.io.UTF8Reader;
 import org.apache.xerces.impl.msg.XMLMessageFormatter;
 import org.apache.xerces.impl.validation.ValidationManager;
 import org.apache.xerces.util.AugmentationsImpl;
+import org.apache.xerces.util.BufferPool;
+import org.apache.xerces.util.ByteArrayInputSource;
+import org.apache.xerces.util.CharArrayInputSource;
 import org.apache.xerces.util.EncodingMap;
 import org.apache.xerces.util.HTTPInputSource;
 import org.apache.xerces.util.SecurityManager;
@@ -103,6 +112,12 @@ public class XMLEntityManager
 
     /** Default internal entity buffer size (512). */
     public static final int DEFAULT_INTERNAL_BUFFER_SIZE = 512;
+    
+    /** Smallest buffer size chosen for an entity of known length in adaptive mode. */
+    public static final int MIN_ADAPTIVE_BUFFER_SIZE = 256;
+    
+    /** Largest buffer size chosen or grown to in adaptive mode. */
+    public static final int MAX_ADAPTIVE_BUFFER_SIZE = 65536;
 
     // feature identifiers
 
@@ -130,6 +145,10 @@ public class XMLEntityManager
     protected static final String STANDARD_URI_CONFORMANT =
     Constants.XERCES_FEATURE_PREFIX +Constants.STANDARD_URI_CONFORMANT_FEATURE;
     
+    /** Feature identifier: adaptive buffer size. */
+    protected static final String ADAPTIVE_BUFFER_SIZE = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.ADAPTIVE_BUFFER_SIZE_FEATURE;
+    
 	protected static final String PARSER_SETTINGS = 
 		Constants.XERCES_FEATURE_PREFIX + Constants.PARSER_SETTINGS;	
 
@@ -155,6 +174,14 @@ public class XMLEntityManager
     protected static final String BUFFER_SIZE =
         Constants.XERCES_PROPERTY_PREFIX + Constants.BUFFER_SIZE_PROPERTY;
 
+    /** property identifier: buffer pool. */
+    protected static final String BUFFER_POOL =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.BUFFER_POOL_PROPERTY;
+
+    /** property identifier: prefetch depth. */
+    protected static final String PREFETCH_DEPTH =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.PREFETCH_DEPTH_PROPERTY;
+
     /** property identifier: security manager. */
     protected static final String SECURITY_MANAGER =
         Constants.XERCES_PROPERTY_PREFIX + Constants.SECURITY_MANAGER_PROPERTY;
@@ -168,7 +195,8 @@ public class XMLEntityManager
         EXTERNAL_PARAMETER_ENTITIES,
         ALLOW_JAVA_ENCODINGS,
         WARN_ON_DUPLICATE_ENTITYDEF,
-        STANDARD_URI_CONFORMANT
+        STANDARD_URI_CONFORMANT,
+        ADAPTIVE_BUFFER_SIZE
     };
 
     /** Feature defaults. */
@@ -178,6 +206,7 @@ public class XMLEntityManager
         Boolean.TRUE,
         Boolean.FALSE,
         Boolean.FALSE,
+        Boolean.FALSE,
         Boolean.FALSE
     };
 
@@ -189,6 +218,8 @@ public class XMLEntityManager
         VALIDATION_MANAGER,
         BUFFER_SIZE,
         SECURITY_MANAGER,
+        BUFFER_POOL,
+        PREFETCH_DEPTH,
     };
 
     /** Property defaults. */
@@ -199,6 +230,8 @@ public class XMLEntityManager
         null,
         new Integer(DEFAULT_BUFFER_SIZE),
         null,
+        null,
+        new Integer(0),
     };
 
     private static final String XMLEntity = "[xml]".intern();
@@ -262,6 +295,12 @@ public class XMLEntityManager
      * http://apache.org/xml/features/standard-uri-conformant
      */
     protected boolean fStrictURI;
+    
+    /**
+     * adaptive buffer size.
+     * http://apache.org/xml/features/adaptive-input-buffer-size
+     */
+    protected boolean fAdaptiveBufferSize;
 
     // properties
 
@@ -297,6 +336,12 @@ public class XMLEntityManager
      * REVISIT: do we need a property for internal entity buffer size?
      */
     protected int fBufferSize = DEFAULT_BUFFER_SIZE;
+    
+    /**
+     * Number of blocks to read ahead of the scanner on a background
+     * thread for external entities. Zero disables prefetching.
+     */
+    protected int fPrefetchDepth = 0;
 
     // stores defaults for entity expansion limit if it has
     // been set on the configuration.
@@ -374,6 +419,12 @@ public class XMLEntityManager
     
     /** Pool of character buffers. */
     private final CharacterBufferPool fCharacterBufferPool = new CharacterBufferPool(fBufferSize, DEFAULT_INTERNAL_BUFFER_SIZE);
+    
+    /** Pool shared with other entity managers, if any. */
+    private BufferPool fBufferPool = null;
+    
+    /** Size of the buffers for the entity being set up. */
+    private int fEntityBufferSize = DEFAULT_BUFFER_SIZE;
 
     //
     // Constructors
@@ -949,10 +1000,20 @@ public class XMLEntityManager
         final boolean encodingExternallySpecified = (encoding != null);
         Boolean isBigEndian = null;
         fTempByteBuffer = null;
+        fEntityBufferSize = fBufferSize;
+        int contentLength = -1;
 
         // create reader
         InputStream stream = null;
         Reader reader = xmlInputSource.getCharacterStream();
+        CharArrayInputSource charArrayInputSource = null;
+        if (reader == null && xmlInputSource.getByteStream() == null &&
+            xmlInputSource instanceof CharArrayInputSource) {
+            // The characters are copied into the buffer of the entity 
+            // below, so there is nothing left for the reader to read.
+            charArrayInputSource = (CharArrayInputSource) xmlInputSource;
+            reader = EmptyReader.INSTANCE;
+        }
         // First chance checking strict URI
         String expandedSystemId = expandSystemId(literalSystemId, baseSystemId, fStrictURI);
         if (baseSystemId == null) {
@@ -960,54 +1021,65 @@ public class XMLEntityManager
         }
         if (reader == null) {
             stream = xmlInputSource.getByteStream();
+            if (stream == null && xmlInputSource instanceof ByteArrayInputSource) {
+                // Read documents held in memory in place.
+                final ByteArrayInputSource byteArrayInputSource = (ByteArrayInputSource) xmlInputSource;
+                stream = new ByteArrayStream(byteArrayInputSource.getBytes(), 
+                        byteArrayInputSource.getOffset(), byteArrayInputSource.getLength());
+                contentLength = byteArrayInputSource.getLength();
+            }
             if (stream == null) {
-                URL location = new URL(expandedSystemId);
-                URLConnection connect = location.openConnection();
-                if (!(connect instanceof HttpURLConnection)) {
-                    stream = connect.getInputStream();
-                }
-                else {
-                    boolean followRedirects = true;
-                    
-                    // setup URLConnection if we have an HTTPInputSource
-                    if (xmlInputSource instanceof HTTPInputSource) {
-                        final HttpURLConnection urlConnection = (HttpURLConnection) connect;
-                        final HTTPInputSource httpInputSource = (HTTPInputSource) xmlInputSource;
-                        
-                        // set request properties
-                        Iterator propIter = httpInputSource.getHTTPRequestProperties();
-                        while (propIter.hasNext()) {
-                            Map.Entry entry = (Map.Entry) propIter.next();
-                            urlConnection.setRequestProperty((String) entry.getKey(), (String) entry.getValue());
-                        }
-                        
-                        // set preference for redirection
-                        followRedirects = httpInputSource.getFollowHTTPRedirects();
-                        if (!followRedirects) {
-                            urlConnection.setInstanceFollowRedirects(followRedirects);
-                        }
-                    }
-                    
-                    stream = connect.getInputStream();
-                    
-                    // REVISIT: If the URLConnection has external encoding
-                    // information, we should be reading it here. It's located
-                    // in the charset parameter of Content-Type. -- mrglavas
-                    
-                    if (followRedirects) {
-                        String redirect = connect.getURL().toString();
-                        // E43: Check if the URL was redirected, and then
-                        // update literal and expanded system IDs if needed.
-                        if (!redirect.equals(expandedSystemId)) {
-                            literalSystemId = redirect;
-                            expandedSystemId = redirect;
-                        }
+                // Read local files directly rather than through the
+                // buffered stream supplied by the file URLConnection.
+                stream = openLocalFileStream(expandedSystemId);
+            }
+            if (stream == null) {
+                URLConnection connect = openConnection(xmlInputSource, expandedSystemId);
+                stream = connect.getInputStream();
+                contentLength = connect.getContentLength();
+                
+                // REVISIT: If the URLConnection has external encoding
+                // information, we should be reading it here. It's located
+                // in the charset parameter of Content-Type. -- mrglavas
+                
+                if (connect instanceof HttpURLConnection &&
+                    ((HttpURLConnection) connect).getInstanceFollowRedirects()) {
+                    String redirect = connect.getURL().toString();
+                    // E43: Check if the URL was redirected, and then
+                    // update literal and expanded system IDs if needed.
+                    if (!redirect.equals(expandedSystemId)) {
+                        literalSystemId = redirect;
+                        expandedSystemId = redirect;
                     }
                 }
             }
-            // wrap this stream in RewindableInputStream
-            RewindableInputStream rewindableStream = new RewindableInputStream(stream);
-            stream = rewindableStream;
+            // size the buffers for the length of the entity, if known
+            if (fAdaptiveBufferSize && isExternal) {
+                if (stream instanceof FileInputStream) {
+                    contentLength = stream.available();
+                }
+                if (contentLength >= 0) {
+                    fEntityBufferSize = getAdaptiveBufferSize(contentLength);
+                }
+            }
+            
+            // read slow streams ahead of the scanner on another thread
+            if (fPrefetchDepth > 0 && isExternal && 
+                !(stream instanceof ByteArrayStream)) {
+                stream = new PrefetchInputStream(stream, fEntityBufferSize, fPrefetchDepth);
+            }
+            
+            // Streams which support mark and reset are sniffed in place and
+            // handed to the reader as they are. Other streams are wrapped in
+            // a RewindableInputStream so that the bytes read while detecting
+            // the encoding can be read again.
+            final boolean readInPlace = stream.markSupported();
+            if (readInPlace) {
+                stream.mark(4);
+            }
+            else {
+                stream = new RewindableInputStream(stream);
+            }
 
             // perform auto-detect of encoding if necessary
             if (encoding == null) {
@@ -1015,7 +1087,7 @@ public class XMLEntityManager
                 final byte[] b4 = new byte[4];
                 int count = 0;
                 for (; count<4; count++ ) {
-                    b4[count] = (byte)rewindableStream.readAndBuffer();
+                    b4[count] = (byte)readAndBuffer(stream);
                 }
                 if (count == 4) {
                     final EncodingInfo info = getEncodingInfo(b4, count);
@@ -1023,6 +1095,13 @@ public class XMLEntityManager
                     final String readerEncoding = info.readerEncoding;
                     isBigEndian = info.isBigEndian;
                     stream.reset();
+                    // Only the UTF-8 and UTF-16 readers are known not to read
+                    // past the XML declaration. The stream must be rewindable
+                    // for any other reader, in case the declaration names a
+                    // different encoding.
+                    if (readInPlace && readerEncoding != "UTF-8" && readerEncoding != "UTF-16") {
+                        stream = new RewindableInputStream(stream);
+                    }
                     if (info.hasBOM) {
                         // Special case UTF-8 files with BOM created by Microsoft
                         // tools. It's more efficient to consume the BOM than make
@@ -1054,7 +1133,7 @@ public class XMLEntityManager
                     final int[] b3 = new int[3];
                     int count = 0;
                     for (; count < 3; ++count) {
-                        b3[count] = rewindableStream.readAndBuffer();
+                        b3[count] = readAndBuffer(stream);
                         if (b3[count] == -1)
                             break;
                     }
@@ -1075,7 +1154,7 @@ public class XMLEntityManager
                     final int[] b4 = new int[4];
                     int count = 0;
                     for (; count < 4; ++count) {
-                        b4[count] = rewindableStream.readAndBuffer();
+                        b4[count] = readAndBuffer(stream);
                         if (b4[count] == -1)
                             break;
                     }
@@ -1114,7 +1193,7 @@ public class XMLEntityManager
                     final int[] b4 = new int[4];
                     int count = 0;
                     for (; count < 4; ++count) {
-                        b4[count] = rewindableStream.readAndBuffer();
+                        b4[count] = readAndBuffer(stream);
                         if (b4[count] == -1)
                             break;
                     }
@@ -1139,7 +1218,7 @@ public class XMLEntityManager
                     final int[] b4 = new int[4];
                     int count = 0;
                     for (; count < 4; ++count) {
-                        b4[count] = rewindableStream.readAndBuffer();
+                        b4[count] = readAndBuffer(stream);
                         if (b4[count] == -1)
                             break;
                     }
@@ -1185,6 +1264,18 @@ public class XMLEntityManager
                 new XMLResourceIdentifierImpl(publicId, literalSystemId, baseSystemId, expandedSystemId),
                 stream, reader, fTempByteBuffer, encoding, literal, false, isExternal);
 		fCurrentEntity.setEncodingExternallySpecified(encodingExternallySpecified);
+        // let the buffer of an entity of unknown length grow while it keeps being filled
+        fCurrentEntity.mayGrowBuffer = fAdaptiveBufferSize && stream != null && 
+            isExternal && contentLength < 0;
+        // fill the buffer with the whole of a document held in memory
+        if (charArrayInputSource != null) {
+            final int length = charArrayInputSource.getLength();
+            if (fCurrentEntity.ch.length < length) {
+                fCurrentEntity.ch = new char[length];
+            }
+            charArrayInputSource.getChars(fCurrentEntity.ch, 0);
+            fCurrentEntity.count = length;
+        }
         fEntityScanner.setCurrentEntity(fCurrentEntity);
         fResourceIdentifier.setValues(publicId, literalSystemId, baseSystemId, expandedSystemId);
         return encoding;
@@ -1314,6 +1405,13 @@ public class XMLEntityManager
         catch (XMLConfigurationException e) {
             fStrictURI = false;
         }
+        
+        try {
+            fAdaptiveBufferSize = componentManager.getFeature(ADAPTIVE_BUFFER_SIZE);
+        }
+        catch (XMLConfigurationException e) {
+            fAdaptiveBufferSize = false;
+        }
 
         // xerces properties
         fSymbolTable = (SymbolTable)componentManager.getProperty(SYMBOL_TABLE);
@@ -1336,6 +1434,18 @@ public class XMLEntityManager
         catch (XMLConfigurationException e) {
             fSecurityManager = null;
         }
+        try {
+            setBufferPool((BufferPool)componentManager.getProperty(BUFFER_POOL));
+        }
+        catch (XMLConfigurationException e) {
+            setBufferPool(null);
+        }
+        try {
+            setPrefetchDepth((Integer)componentManager.getProperty(PREFETCH_DEPTH));
+        }
+        catch (XMLConfigurationException e) {
+            fPrefetchDepth = 0;
+        }
 
         // reset general state
         reset();
@@ -1434,6 +1544,10 @@ public class XMLEntityManager
                 featureId.endsWith(Constants.ALLOW_JAVA_ENCODINGS_FEATURE)) {
                 fAllowJavaEncodings = state;
             }
+            else if (suffixLength == Constants.ADAPTIVE_BUFFER_SIZE_FEATURE.length() && 
+                featureId.endsWith(Constants.ADAPTIVE_BUFFER_SIZE_FEATURE)) {
+                fAdaptiveBufferSize = state;
+            }
         }
 
     } // setFeature(String,boolean)
@@ -1501,6 +1615,14 @@ public class XMLEntityManager
                 fSecurityManager = (SecurityManager)value; 
                 fEntityExpansionLimit = (fSecurityManager != null)?fSecurityManager.getEntityExpansionLimit():0;
             }
+            if (suffixLength == Constants.BUFFER_POOL_PROPERTY.length() && 
+                propertyId.endsWith(Constants.BUFFER_POOL_PROPERTY)) {
+                setBufferPool((BufferPool)value);
+            }
+            if (suffixLength == Constants.PREFETCH_DEPTH_PROPERTY.length() && 
+                propertyId.endsWith(Constants.PREFETCH_DEPTH_PROPERTY)) {
+                setPrefetchDepth((Integer)value);
+            }
         }
 
     } // setProperty(String,Object)
@@ -1900,6 +2022,136 @@ public class XMLEntityManager
         return out;
     }
     
+    /**
+     * Reads a byte while detecting the encoding of an entity. The bytes
+     * read from a RewindableInputStream are buffered so that they can be
+     * read again; other streams are expected to have been marked.
+     */
+    private static int readAndBuffer(InputStream stream) throws IOException {
+        if (stream instanceof RewindableInputStream) {
+            return ((RewindableInputStream) stream).readAndBuffer();
+        }
+        return stream.read();
+    }
+
+    /**
+     * Returns the buffer size to use for an entity of the given length
+     * in adaptive mode: the smallest power of two which holds the whole
+     * entity, within the bounds of the minimum and maximum adaptive
+     * buffer sizes.
+     *
+     * @param contentLength the length of the entity in bytes
+     * @return the buffer size for the entity
+     */
+    private static int getAdaptiveBufferSize(int contentLength) {
+        int size = MIN_ADAPTIVE_BUFFER_SIZE;
+        while (size < contentLength && size < MAX_ADAPTIVE_BUFFER_SIZE) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Opens the byte stream of an external entity as the entity manager
+     * does when it starts the entity: the byte stream of the input source
+     * if it has one, a stream on the local file it identifies, or else the
+     * stream of a URL connection set up with the request properties of an
+     * <code>HTTPInputSource</code>. The caller must close the stream.
+     *
+     * @param xmlInputSource   the input source of the entity
+     * @param expandedSystemId the expanded system identifier of the entity
+     * @return an input stream for the entity
+     */
+    public static InputStream openInputStream(XMLInputSource xmlInputSource,
+            String expandedSystemId) throws IOException {
+        InputStream stream = xmlInputSource.getByteStream();
+        if (stream == null) {
+            stream = openLocalFileStream(expandedSystemId);
+        }
+        if (stream == null) {
+            stream = openConnection(xmlInputSource, expandedSystemId).getInputStream();
+        }
+        return stream;
+    } // openInputStream(XMLInputSource,String):InputStream
+
+    /**
+     * Opens a connection to the URL of an external entity, applying the
+     * request properties and redirection preference of an
+     * <code>HTTPInputSource</code>.
+     */
+    private static URLConnection openConnection(XMLInputSource xmlInputSource,
+            String expandedSystemId) throws IOException {
+        URL location = new URL(expandedSystemId);
+        URLConnection connect = location.openConnection();
+        
+        // setup URLConnection if we have an HTTPInputSource
+        if (connect instanceof HttpURLConnection &&
+            xmlInputSource instanceof HTTPInputSource) {
+            final HttpURLConnection urlConnection = (HttpURLConnection) connect;
+            final HTTPInputSource httpInputSource = (HTTPInputSource) xmlInputSource;
+            
+            // set request properties
+            Iterator propIter = httpInputSource.getHTTPRequestProperties();
+            while (propIter.hasNext()) {
+                Map.Entry entry = (Map.Entry) propIter.next();
+                urlConnection.setRequestProperty((String) entry.getKey(), (String) entry.getValue());
+            }
+            
+            // set preference for redirection
+            if (!httpInputSource.getFollowHTTPRedirects()) {
+                urlConnection.setInstanceFollowRedirects(false);
+            }
+        }
+        return connect;
+    } // openConnection(XMLInputSource,String):URLConnection
+
+    /**
+     * Opens an input stream directly on the file identified by the given
+     * expanded system identifier. The readers already perform their own
+     * buffering, so reading from a FileInputStream avoids the extra copy
+     * made by the buffered stream returned from a file URLConnection.
+     *
+     * @param expandedSystemId the expanded system identifier of the entity
+     * @return an input stream for the file, or null if the system
+     * identifier does not refer to a plain local file
+     */
+    private static InputStream openLocalFileStream(String expandedSystemId) {
+        if (expandedSystemId == null || !expandedSystemId.startsWith("file:")) {
+            return null;
+        }
+        try {
+            final URL url = new URL(expandedSystemId);
+            final String host = url.getHost();
+            if ((host != null && host.length() != 0 && !host.equals("localhost")) ||
+                url.getQuery() != null || url.getRef() != null) {
+                return null;
+            }
+            // getPathWithoutEscapes() decodes each escape as a single
+            // character, so leave paths with escaped non-ASCII bytes to
+            // the URLConnection.
+            String path = url.getPath();
+            // change /C:/blah to C:/blah
+            if (path.length() >= 3 && path.charAt(0) == '/' && path.charAt(2) == ':') {
+                path = path.substring(1);
+            }
+            for (int i = path.indexOf('%'); i != -1; i = path.indexOf('%', i + 1)) {
+                if (i + 1 >= path.length() || Character.digit(path.charAt(i + 1), 16) > 7) {
+                    return null;
+                }
+            }
+            final File file = new File(getPathWithoutEscapes(path));
+            if (!file.isFile()) {
+                return null;
+            }
+            return new FileInputStream(file);
+        }
+        // MalformedURLException, FileNotFoundException or SecurityException.
+        // Let the URLConnection handle (and report) the failure.
+        catch (Exception e) {
+            return null;
+        }
+    } // openLocalFileStream(String):InputStream
+
     private static String getPathWithoutEscapes(String origPath) {
         if (origPath != null && origPath.length() != 0 && origPath.indexOf('%') != -1) {
             // Locate the escape characters
@@ -1961,12 +2213,7 @@ public class XMLEntityManager
         
         // Release the byte buffer back to the pool for reuse
         if (fCurrentEntity.fByteBuffer != null) {
-            if (fCurrentEntity.fByteBuffer.length == fBufferSize) {
-                fSmallByteBufferPool.returnBuffer(fCurrentEntity.fByteBuffer);
-            }
-            else {
-                fLargeByteBufferPool.returnBuffer(fCurrentEntity.fByteBuffer);
-            }
+            returnByteBuffer(fCurrentEntity.fByteBuffer);
         }
         
         // Pop entity stack.
@@ -2157,6 +2404,15 @@ public class XMLEntityManager
             return createLatin1Reader(inputStream);
         }
 
+        // use the reader factory registered for the encoding, if any
+        ReaderFactory factory = ReaderFactoryMap.getReaderFactory(ENCODING);
+        if (factory != null) {
+            if (DEBUG_ENCODINGS) {
+                System.out.println("$$$ creating reader from factory: encoding="+ENCODING);
+            }
+            return factory.createReader(inputStream, ENCODING);
+        }
+
         // try to use a Java reader
         String javaEncoding = EncodingMap.getIANA2JavaMapping(ENCODING);
         if (javaEncoding == null) {
@@ -2178,6 +2434,12 @@ public class XMLEntityManager
         else if (javaEncoding.equals("ISO8859_1")) {
             return createLatin1Reader(inputStream);
         }
+        // try to use a table driven reader for single byte encodings,
+        // whether named by their IANA or their Java name
+        char[] table = SingleByteReader.getDecodingTable(javaEncoding);
+        if (table != null) {
+            return createSingleByteReader(inputStream, table);
+        }
         if (DEBUG_ENCODINGS) {
             System.out.print("$$$ creating Java InputStreamReader: encoding="+javaEncoding);
             if (javaEncoding == encoding) {
@@ -2195,7 +2457,7 @@ public class XMLEntityManager
             System.out.println("$$$ creating UTF8Reader");
         }
         if (fTempByteBuffer == null) {
-            fTempByteBuffer = fSmallByteBufferPool.getBuffer();
+            fTempByteBuffer = getSmallByteBuffer();
         }
         return new UTF8Reader(stream,
                 fTempByteBuffer, 
@@ -2209,12 +2471,12 @@ public class XMLEntityManager
             System.out.println("$$$ creating UTF16Reader");
         }
         if (fTempByteBuffer == null) {
-            fTempByteBuffer = fLargeByteBufferPool.getBuffer();
+            fTempByteBuffer = getLargeByteBuffer();
         }
         // The cached buffer is too small, we need a larger one.
-        else if (fTempByteBuffer.length == fBufferSize) {
-            fSmallByteBufferPool.returnBuffer(fTempByteBuffer);
-            fTempByteBuffer = fLargeByteBufferPool.getBuffer();
+        else if (fTempByteBuffer.length < (fEntityBufferSize << 1)) {
+            returnByteBuffer(fTempByteBuffer);
+            fTempByteBuffer = getLargeByteBuffer();
         }
         return new UTF16Reader(stream,
                 fTempByteBuffer, 
@@ -2229,7 +2491,7 @@ public class XMLEntityManager
             System.out.println("$$$ creating ASCIIReader");
         }
         if (fTempByteBuffer == null) {
-            fTempByteBuffer = fSmallByteBufferPool.getBuffer();
+            fTempByteBuffer = getSmallByteBuffer();
         }
         return new ASCIIReader(stream, 
                 fTempByteBuffer, 
@@ -2243,10 +2505,86 @@ public class XMLEntityManager
             System.out.println("$$$ creating Latin1Reader");
         }
         if (fTempByteBuffer == null) {
-            fTempByteBuffer = fSmallByteBufferPool.getBuffer();
+            fTempByteBuffer = getSmallByteBuffer();
         }
         return new Latin1Reader(stream, fTempByteBuffer);
     } // createLatin1Reader(InputStream):Reader
+    
+    /** Create a new single byte reader from the InputStream. **/
+    private Reader createSingleByteReader(InputStream stream, char[] table) {
+        if (DEBUG_ENCODINGS) {
+            System.out.println("$$$ creating SingleByteReader");
+        }
+        if (fTempByteBuffer == null) {
+            fTempByteBuffer = getSmallByteBuffer();
+        }
+        return new SingleByteReader(stream, fTempByteBuffer, table);
+    } // createSingleByteReader(InputStream,char[]):Reader
+    
+    /** 
+     * Returns a byte buffer for single byte and variable width encodings, 
+     * sized for the entity being set up.
+     */
+    private byte[] getSmallByteBuffer() {
+        return (fEntityBufferSize == fBufferSize) ? 
+            fSmallByteBufferPool.getBuffer() : new byte[fEntityBufferSize];
+    } // getSmallByteBuffer():byte[]
+    
+    /** 
+     * Returns a byte buffer for 2-byte encodings, sized for the entity 
+     * being set up.
+     */
+    private byte[] getLargeByteBuffer() {
+        return (fEntityBufferSize == fBufferSize) ? 
+            fLargeByteBufferPool.getBuffer() : new byte[fEntityBufferSize << 1];
+    } // getLargeByteBuffer():byte[]
+    
+    /** 
+     * Returns a byte buffer to the pool it was taken from. Buffers which 
+     * were sized for a particular entity are left to the garbage collector.
+     */
+    private void returnByteBuffer(byte[] buffer) {
+        if (buffer.length == fBufferSize) {
+            fSmallByteBufferPool.returnBuffer(buffer);
+        }
+        else if (buffer.length == (fBufferSize << 1)) {
+            fLargeByteBufferPool.returnBuffer(buffer);
+        }
+    } // returnByteBuffer(byte[])
+    
+    /** 
+     * Returns a character buffer for a new scanned entity, sized for 
+     * the entity being set up.
+     */
+    private CharacterBuffer getCharacterBuffer(boolean isExternal) {
+        if (isExternal && fEntityBufferSize != fBufferSize) {
+            return new CharacterBuffer(true, fEntityBufferSize);
+        }
+        return fCharacterBufferPool.getBuffer(isExternal);
+    } // getCharacterBuffer(boolean):CharacterBuffer
+    
+    /** 
+     * Sets the pool shared with other entity managers from which buffers 
+     * are borrowed, or <code>null</code> to use buffers private to this 
+     * entity manager.
+     */
+    private void setBufferPool(BufferPool bufferPool) {
+        if (bufferPool != fBufferPool) {
+            fBufferPool = bufferPool;
+            fSmallByteBufferPool.setSharedPool(bufferPool);
+            fLargeByteBufferPool.setSharedPool(bufferPool);
+            fCharacterBufferPool.setSharedPool(bufferPool);
+        }
+    } // setBufferPool(BufferPool)
+    
+    /** 
+     * Sets the number of blocks read ahead of the scanner for external 
+     * entities. A <code>null</code> or non-positive value disables 
+     * prefetching.
+     */
+    private void setPrefetchDepth(Integer depth) {
+        fPrefetchDepth = (depth != null && depth.intValue() > 0) ? depth.intValue() : 0;
+    } // setPrefetchDepth(Integer)
 
     //
     // Protected static methods
@@ -2674,6 +3012,9 @@ public class XMLEntityManager
         // to allow the reader/inputStream to behave efficiently:
         public boolean mayReadChunks;
         
+        /** Whether the buffer may grow while reads keep filling it. */
+        public boolean mayGrowBuffer;
+        
         /** Character buffer container. */
         private CharacterBuffer fCharacterBuffer;
         
@@ -2697,7 +3038,7 @@ public class XMLEntityManager
             this.literal = literal;
             this.mayReadChunks = mayReadChunks;
             this.isExternal = isExternal;
-            this.fCharacterBuffer = fCharacterBufferPool.getBuffer(isExternal);
+            this.fCharacterBuffer = getCharacterBuffer(isExternal);
             this.ch = fCharacterBuffer.ch;
             this.fByteBuffer = byteBuffer;
         } // <init>(StringXMLResourceIdentifier,InputStream,Reader,String,boolean, boolean)
@@ -2929,6 +3270,7 @@ public class XMLEntityManager
         private int fBufferSize;
         private byte[][] fByteBufferPool;
         private int fDepth;
+        private BufferPool fSharedPool;
         
         public ByteBufferPool(int bufferSize) {
             this(DEFAULT_POOL_SIZE, bufferSize);
@@ -2943,15 +3285,28 @@ public class XMLEntityManager
         
         /** Retrieves a byte buffer from the pool. **/
         public byte[] getBuffer() {
+            if (fSharedPool != null) {
+                return fSharedPool.getByteBuffer(fBufferSize);
+            }
             return (fDepth > 0) ? fByteBufferPool[--fDepth] : new byte[fBufferSize];
         }
         
         /** Returns byte buffer to pool. **/
         public void returnBuffer(byte[] buffer) {
-            if (fDepth < fByteBufferPool.length) {
+            if (fSharedPool != null) {
+                fSharedPool.returnByteBuffer(buffer);
+            }
+            else if (fDepth < fByteBufferPool.length) {
                 fByteBufferPool[fDepth++] = buffer;
             }
         }
+        
+        /** Sets the shared pool to delegate to and dumps the old pool. **/
+        public void setSharedPool(BufferPool sharedPool) {
+            fSharedPool = sharedPool;
+            fByteBufferPool = new byte[fPoolSize][];
+            fDepth = 0;
+        }
 
         /** Sets the size of the buffers and dumps the old pool. **/
         public void setBufferSize(int bufferSize) {
@@ -2981,6 +3336,11 @@ public class XMLEntityManager
             this.isExternal = isExternal;
             ch = new char[size];
         }
+        
+        public CharacterBuffer(boolean isExternal, char[] ch) {
+            this.isExternal = isExternal;
+            this.ch = ch;
+        }
     }
     
     /**
@@ -3004,6 +3364,8 @@ public class XMLEntityManager
         
         private int fInternalTop;
         private int fExternalTop;
+        
+        private BufferPool fSharedPool;
 
         public CharacterBufferPool(int externalBufferSize, int internalBufferSize) {
             this(DEFAULT_POOL_SIZE, externalBufferSize, internalBufferSize);
@@ -3026,6 +3388,10 @@ public class XMLEntityManager
 
         /** Retrieves buffer from pool. **/
         public CharacterBuffer getBuffer(boolean external) {
+            if (fSharedPool != null) {
+                return new CharacterBuffer(external, fSharedPool.getCharBuffer(
+                        external ? fExternalBufferSize : fInternalBufferSize));
+            }
             if (external) {
                 if (fExternalTop > -1) {
                     return (CharacterBuffer)fExternalBufferPool[fExternalTop--];
@@ -3046,7 +3412,14 @@ public class XMLEntityManager
         
         /** Returns buffer to pool. **/
         public void returnBuffer(CharacterBuffer buffer) {
-            if (buffer.isExternal) {
+            // drop buffers which were not sized for this pool
+            if (buffer.ch.length != (buffer.isExternal ? fExternalBufferSize : fInternalBufferSize)) {
+                return;
+            }
+            if (fSharedPool != null) {
+                fSharedPool.returnCharBuffer(buffer.ch);
+            }
+            else if (buffer.isExternal) {
                 if (fExternalTop < fExternalBufferPool.length - 1) {
                     fExternalBufferPool[++fExternalTop] = buffer;
                 }
@@ -3062,6 +3435,12 @@ public class XMLEntityManager
             fExternalBufferPool = new CharacterBuffer[fPoolSize];
             fExternalTop = -1;
         }
+        
+        /** Sets the shared pool to delegate to and dumps the old pool. **/
+        public void setSharedPool(BufferPool sharedPool) {
+            fSharedPool = sharedPool;
+            init();
+        }
     }
 
     /**
@@ -3241,5 +3620,32 @@ public class XMLEntityManager
             }
         }
     } // end of RewindableInputStream class
+    
+    /**
+     * A reader with nothing to read, used for entities whose 
+     * characters were all placed in the buffer up front.
+     * 
+     * @xerces.internal
+     */
+    private static final class EmptyReader extends Reader {
+        
+        /** The shared instance. */
+        static final EmptyReader INSTANCE = new EmptyReader();
+        
+        public int read() {
+            return -1;
+        }
+        
+        public int read(char[] ch, int offset, int length) {
+            return -1;
+        }
+        
+        public long skip(long n) {
+            return 0;
+        }
+        
+        public void close() {}
+        
+    } // class EmptyReader
 
 } // class XMLEntityManager
@@ -71,6 +71,10 @@ public class XMLEntityScanner implements XMLLocator {
      * http://apache.org/xml/properties/internal/error-reporter
      */
     protected XMLErrorReporter fErrorReporter;
+
+    /** The characters left at the end of an entity, for a chunk. */
+    private char[] fTail = new char[2];
+
     //
     // Constructors
     //
@@ -302,9 +306,12 @@ public class XMLEntityScanner implements XMLLocator {
             load(0, true);
         }
 
-        // scan nmtoken
+        // scan nmtoken, hashing it as we go
         int offset = fCurrentEntity.position;
-        while (XMLChar.isName(fCurrentEntity.ch[fCurrentEntity.position])) {
+        int hash = 0;
+        char c;
+        while (XMLChar.isName(c = fCurrentEntity.ch[fCurrentEntity.position])) {
+            hash = hash * 31 + c;
             if (++fCurrentEntity.position == fCurrentEntity.count) {
                 int length = fCurrentEntity.position - offset;
                 if (length == fCurrentEntity.ch.length) {
@@ -330,7 +337,7 @@ public class XMLEntityScanner implements XMLLocator {
         // return nmtoken
         String symbol = null;
         if (length > 0) {
-            symbol = fSymbolTable.addSymbol(fCurrentEntity.ch, offset, length);
+            symbol = fSymbolTable.addSymbol(fCurrentEntity.ch, offset, length, hash);
         }
         if (DEBUG_BUFFER) {
             System.out.print(")scanNmtoken: ");
@@ -369,9 +376,11 @@ public class XMLEntityScanner implements XMLLocator {
             load(0, true);
         }
 
-        // scan name
+        // scan name, hashing it as we go
         int offset = fCurrentEntity.position;
+        int hash = 0;
         if (XMLChar.isNameStart(fCurrentEntity.ch[offset])) {
+            hash = fCurrentEntity.ch[offset];
             if (++fCurrentEntity.position == fCurrentEntity.count) {
                 fCurrentEntity.ch[0] = fCurrentEntity.ch[offset];
                 offset = 0;
@@ -386,7 +395,9 @@ public class XMLEntityScanner implements XMLLocator {
                     return symbol;
                 }
             }
-            while (XMLChar.isName(fCurrentEntity.ch[fCurrentEntity.position])) {
+            char c;
+            while (XMLChar.isName(c = fCurrentEntity.ch[fCurrentEntity.position])) {
+                hash = hash * 31 + c;
                 if (++fCurrentEntity.position == fCurrentEntity.count) {
                     int length = fCurrentEntity.position - offset;
                     if (length == fCurrentEntity.ch.length) {
@@ -413,7 +424,7 @@ public class XMLEntityScanner implements XMLLocator {
         // return name
         String symbol = null;
         if (length > 0) {
-            symbol = fSymbolTable.addSymbol(fCurrentEntity.ch, offset, length);
+            symbol = fSymbolTable.addSymbol(fCurrentEntity.ch, offset, length, hash);
         }
         if (DEBUG_BUFFER) {
             System.out.print(")scanName: ");
@@ -452,9 +463,11 @@ public class XMLEntityScanner implements XMLLocator {
             load(0, true);
         }
 
-        // scan name
+        // scan name, hashing it as we go
         int offset = fCurrentEntity.position;
+        int hash = 0;
         if (XMLChar.isNCNameStart(fCurrentEntity.ch[offset])) {
+            hash = fCurrentEntity.ch[offset];
             if (++fCurrentEntity.position == fCurrentEntity.count) {
                 fCurrentEntity.ch[0] = fCurrentEntity.ch[offset];
                 offset = 0;
@@ -469,7 +482,9 @@ public class XMLEntityScanner implements XMLLocator {
                     return symbol;
                 }
             }
-            while (XMLChar.isNCName(fCurrentEntity.ch[fCurrentEntity.position])) {
+            char c;
+            while (XMLChar.isNCName(c = fCurrentEntity.ch[fCurrentEntity.position])) {
+                hash = hash * 31 + c;
                 if (++fCurrentEntity.position == fCurrentEntity.count) {
                     int length = fCurrentEntity.position - offset;
                     if (length == fCurrentEntity.ch.length) {
@@ -496,7 +511,7 @@ public class XMLEntityScanner implements XMLLocator {
         // return name
         String symbol = null;
         if (length > 0) {
-            symbol = fSymbolTable.addSymbol(fCurrentEntity.ch, offset, length);
+            symbol = fSymbolTable.addSymbol(fCurrentEntity.ch, offset, length, hash);
         }
         if (DEBUG_BUFFER) {
             System.out.print(")scanNCName: ");
@@ -541,9 +556,12 @@ public class XMLEntityScanner implements XMLLocator {
             load(0, true);
         }
 
-        // scan qualified name
+        // scan qualified name, hashing the name and its parts as we go
         int offset = fCurrentEntity.position;
         if (XMLChar.isNCNameStart(fCurrentEntity.ch[offset])) {
+            int hash = fCurrentEntity.ch[offset];
+            int prefixHash = 0;
+            int localHash = hash;
             if (++fCurrentEntity.position == fCurrentEntity.count) {
                 fCurrentEntity.ch[0] = fCurrentEntity.ch[offset];
                 offset = 0;
@@ -569,7 +587,13 @@ public class XMLEntityScanner implements XMLLocator {
                         break;
                     }
                     index = fCurrentEntity.position;
+                    prefixHash = hash;
+                    localHash = 0;
                 }
+                else {
+                    localHash = localHash * 31 + c;
+                }
+                hash = hash * 31 + c;
                 if (++fCurrentEntity.position == fCurrentEntity.count) {
                     int length = fCurrentEntity.position - offset;
                     if (length == fCurrentEntity.ch.length) {
@@ -598,11 +622,11 @@ public class XMLEntityScanner implements XMLLocator {
                 String prefix = null;
                 String localpart = null;
                 String rawname = fSymbolTable.addSymbol(fCurrentEntity.ch,
-                                                        offset, length);
+                                                        offset, length, hash);
                 if (index != -1) {
                     int prefixLength = index - offset;
                     prefix = fSymbolTable.addSymbol(fCurrentEntity.ch,
-                                                    offset, prefixLength);
+                                                    offset, prefixLength, prefixHash);
                     int len = length - prefixLength - 1;
                     int startLocal = index +1;
                     if (!XMLChar.isNCNameStart(fCurrentEntity.ch[startLocal])){
@@ -612,7 +636,7 @@ public class XMLEntityScanner implements XMLLocator {
                                                   XMLErrorReporter.SEVERITY_FATAL_ERROR);
                     }
                     localpart = fSymbolTable.addSymbol(fCurrentEntity.ch,
-                                                       startLocal, len);
+                                                       startLocal, len, localHash);
 
                 }
                 else {
@@ -979,6 +1003,46 @@ public class XMLEntityScanner implements XMLLocator {
      */
     public boolean scanData(String delimiter, XMLStringBuffer buffer)
         throws IOException {
+        return scanData(delimiter, buffer, null);
+    } // scanData(String,XMLStringBuffer):boolean
+
+    /**
+     * Scans a range of character data up to the specified delimiter,
+     * setting the fields of the XMLString structure to the range in the
+     * buffer of the current entity instead of copying the characters.
+     * Each call returns at most one contiguous range, so the data between
+     * two delimiters may be returned in several chunks.
+     * <p>
+     * <strong>Note:</strong> The characters are consumed.
+     * <p>
+     * <strong>Note:</strong> The fields contained in the XMLString
+     * structure are not guaranteed to remain valid upon subsequent calls
+     * to the entity scanner. Therefore, the caller is responsible for
+     * immediately using the returned character data or making a copy of
+     * the character data.
+     *
+     * @param delimiter The string that signifies the end of the character
+     *                  data to be scanned.
+     * @param chunk     The XMLString to set.
+     *
+     * @return Returns true if there is more data to scan, false otherwise.
+     *
+     * @throws IOException  Thrown if i/o error occurs.
+     * @throws EOFException Thrown on end of file.
+     */
+    public boolean scanDataChunk(String delimiter, XMLString chunk)
+        throws IOException {
+        chunk.clear();
+        return scanData(delimiter, null, chunk);
+    } // scanDataChunk(String,XMLString):boolean
+
+    /**
+     * Scans a range of character data up to the specified delimiter,
+     * appending it to the string buffer if one is given, or otherwise
+     * setting the chunk to the range in the buffer of the current entity.
+     */
+    protected boolean scanData(String delimiter, XMLStringBuffer buffer, XMLString chunk)
+        throws IOException {
 
         // REVISIT: This method does not need to use a string buffer.
         //          The change would avoid the array copies and increase
@@ -1026,7 +1090,7 @@ public class XMLEntityScanner implements XMLLocator {
         if (fCurrentEntity.position > fCurrentEntity.count - delimLen) {
             // something must be wrong with the input:  e.g., file ends in an unterminated comment
             int length = fCurrentEntity.count - fCurrentEntity.position;
-            buffer.append (fCurrentEntity.ch, fCurrentEntity.position, length); 
+            putTail(buffer, chunk, fCurrentEntity.position, length); 
             fCurrentEntity.columnNumber += fCurrentEntity.count;
             fCurrentEntity.baseCharOffset += (fCurrentEntity.position - fCurrentEntity.startPosition);
             fCurrentEntity.position = fCurrentEntity.count;
@@ -1094,7 +1158,7 @@ public class XMLEntityScanner implements XMLLocator {
             }
             int length = fCurrentEntity.position - offset;
             if (fCurrentEntity.position == fCurrentEntity.count - 1) {
-                buffer.append(fCurrentEntity.ch, offset, length);
+                putData(buffer, chunk, offset, length);
                 if (DEBUG_BUFFER) {
                     System.out.print("]newline, "+offset+", "+fCurrentEntity.position+": ");
                     XMLEntityManager.print(fCurrentEntity);
@@ -1139,7 +1203,7 @@ public class XMLEntityScanner implements XMLLocator {
                 fCurrentEntity.position--;
                 int length = fCurrentEntity.position - offset;
                 fCurrentEntity.columnNumber += length - newlines;
-                buffer.append(fCurrentEntity.ch, offset, length); 
+                putData(buffer, chunk, offset, length); 
                 return true;
             }
         }
@@ -1148,7 +1212,7 @@ public class XMLEntityScanner implements XMLLocator {
         if (found) {
             length -= delimLen;
         }
-        buffer.append (fCurrentEntity.ch, offset, length);
+        putData(buffer, chunk, offset, length);
 
         // return true if string was skipped
         if (DEBUG_BUFFER) {
@@ -1158,7 +1222,7 @@ public class XMLEntityScanner implements XMLLocator {
         }
         return !found;
 
-    } // scanData(String,XMLString):boolean
+    } // scanData(String,XMLStringBuffer,XMLString):boolean
 
     /**
      * Skips a character appearing immediately on the input.
@@ -1721,6 +1785,41 @@ public class XMLEntityScanner implements XMLLocator {
     // Private methods
     //
 
+    /**
+     * Appends a range of the buffer of the current entity to the string
+     * buffer, or sets the chunk to the range if there is no string buffer.
+     */
+    final void putData(XMLStringBuffer buffer, XMLString chunk, 
+            int offset, int length) {
+        if (buffer != null) {
+            buffer.append(fCurrentEntity.ch, offset, length);
+        }
+        else {
+            chunk.setValues(fCurrentEntity.ch, offset, length);
+        }
+    } // putData(XMLStringBuffer,XMLString,int,int)
+
+    /**
+     * Appends the characters left at the end of the current entity to
+     * the string buffer, or sets the chunk to a copy of them, so that 
+     * they remain valid after the next entity is loaded. At the end of
+     * the document entity that load throws, so characters which could
+     * have begun the delimiter are not returned.
+     */
+    final void putTail(XMLStringBuffer buffer, XMLString chunk, 
+            int offset, int length) {
+        if (buffer != null) {
+            buffer.append(fCurrentEntity.ch, offset, length);
+        }
+        else {
+            if (fTail.length < length) {
+                fTail = new char[length];
+            }
+            System.arraycopy(fCurrentEntity.ch, offset, fTail, 0, length);
+            chunk.setValues(fTail, 0, length);
+        }
+    } // putTail(XMLStringBuffer,XMLString,int,int)
+
     /**
      * Loads a chunk of text.
      *
@@ -1746,13 +1845,40 @@ public class XMLEntityScanner implements XMLLocator {
         fCurrentEntity.baseCharOffset += (fCurrentEntity.position - fCurrentEntity.startPosition);
         // read characters
         int length = fCurrentEntity.ch.length - offset;
-        if (!fCurrentEntity.mayReadChunks && length > XMLEntityManager.DEFAULT_XMLDECL_BUFFER_SIZE) {
-            length = XMLEntityManager.DEFAULT_XMLDECL_BUFFER_SIZE;
+        if (!fCurrentEntity.mayReadChunks) {
+            // A stream which is read in place does not hand out one byte at
+            // a time like a RewindableInputStream does, so read one character
+            // at a time to avoid decoding past the XML declaration.
+            if (fCurrentEntity.stream != null &&
+                !(fCurrentEntity.stream instanceof XMLEntityManager.RewindableInputStream)) {
+                if (length > 1) {
+                    length = 1;
+                }
+            }
+            else if (length > XMLEntityManager.DEFAULT_XMLDECL_BUFFER_SIZE) {
+                length = XMLEntityManager.DEFAULT_XMLDECL_BUFFER_SIZE;
+            }
         }
         if (DEBUG_BUFFER) System.out.println("  length to try to read: "+length);
         int count = fCurrentEntity.reader.read(fCurrentEntity.ch, offset, length);
         if (DEBUG_BUFFER) System.out.println("  length actually read:  "+count);
 
+        // in adaptive mode, keep filling the buffer from whatever the
+        // stream has ready and grow it if it still isn't large enough
+        if (count > 0 && fCurrentEntity.mayGrowBuffer && fCurrentEntity.mayReadChunks) {
+            int more;
+            while (count < length && fCurrentEntity.stream.available() > 0 &&
+                   (more = fCurrentEntity.reader.read(fCurrentEntity.ch, offset + count, length - count)) > 0) {
+                count += more;
+            }
+            if (count == length && fCurrentEntity.ch.length < XMLEntityManager.MAX_ADAPTIVE_BUFFER_SIZE) {
+                char[] tmp = new char[fCurrentEntity.ch.length << 1];
+                System.arraycopy(fCurrentEntity.ch, 0, tmp, 0, offset + count);
+                fCurrentEntity.ch = tmp;
+            }
+            if (DEBUG_BUFFER) System.out.println("  length after filling:  "+count);
+        }
+
         // reset count and position
         boolean entityChanged = false;
         if (count != -1) {
@@ -55,6 +55,9 @@ public final class ASCIIReader
     /** Byte buffer. */
     protected final byte[] fBuffer;
 
+    /** The stream over a byte array which is decoded in place, if any. */
+    private final ByteArrayStream fByteArrayStream;
+
     // message formatter; used to produce localized
     // exception messages
     private final MessageFormatter fFormatter;
@@ -107,6 +110,8 @@ public final class ASCIIReader
         fBuffer = buffer;
         fFormatter = messageFormatter;
         fLocale = locale;
+        fByteArrayStream = (inputStream instanceof ByteArrayStream) ?
+            (ByteArrayStream) inputStream : null;
     } // <init>(InputStream, byte[], MessageFormatter, Locale)
 
     //
@@ -151,6 +156,30 @@ public final class ASCIIReader
      * @exception  IOException  If an I/O error occurs
      */
     public int read(char ch[], int offset, int length) throws IOException {
+        if (fByteArrayStream != null) {
+            // decode bytes held in an array in place
+            final ByteArrayStream stream = fByteArrayStream;
+            final byte[] bytes = stream.getBytes();
+            final int start = stream.getPosition();
+            int count = stream.getEnd() - start;
+            if (count <= 0) {
+                return (length == 0) ? 0 : -1;
+            }
+            if (count > length) {
+                count = length;
+            }
+            for (int i = 0; i < count; i++) {
+                int b0 = bytes[start + i];
+                if (b0 < 0) {
+                    throw new MalformedByteSequenceException(fFormatter,
+                        fLocale, XMLMessageFormatter.XML_DOMAIN,
+                        "InvalidASCII", new Object [] {Integer.toString(b0 & 0x0FF)});
+                }
+                ch[offset + i] = (char)b0;
+            }
+            stream.setPosition(start + count);
+            return count;
+        }
         if (length > fBuffer.length) {
             length = fBuffer.length;
         }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.impl.io;
+
+import java.io.InputStream;
+
+/**
+ * <p>An input stream over a range of a byte array. Unlike 
+ * <code>java.io.ByteArrayInputStream</code> none of its methods
+ * are synchronized, since the parser is the only reader of the
+ * stream. It supports mark and reset, so the parser can detect
+ * the encoding of the bytes without wrapping the stream.</p>
+ * 
+ * <p>The readers in this package decode the bytes of such a stream
+ * straight from its array, rather than reading them into a buffer
+ * of their own first.</p>
+ * 
+ * @xerces.internal
+ * 
+ * @version $Id$
+ */
+public final class ByteArrayStream 
+    extends InputStream {
+    
+    //
+    // Data
+    //
+    
+    /** The byte array. */
+    private final byte[] fBytes;
+    
+    /** Index of the next byte to read. */
+    private int fPosition;
+    
+    /** Index one past the last byte to read. */
+    private final int fEnd;
+    
+    /** Marked position. */
+    private int fMark;
+    
+    //
+    // Constructors
+    //
+    
+    /**
+     * Constructs a stream over a range of a byte array.
+     * 
+     * @param bytes  The byte array.
+     * @param offset The offset of the first byte to read.
+     * @param length The number of bytes to read.
+     */
+    public ByteArrayStream(byte[] bytes, int offset, int length) {
+        fBytes = bytes;
+        fPosition = offset;
+        fEnd = offset + length;
+        fMark = offset;
+    } // <init>(byte[],int,int)
+    
+    //
+    // InputStream methods
+    //
+    
+    public int read() {
+        return (fPosition < fEnd) ? fBytes[fPosition++] & 0xff : -1;
+    } // read():int
+    
+    public int read(byte[] b, int off, int len) {
+        final int left = fEnd - fPosition;
+        if (left <= 0) {
+            return (len == 0) ? 0 : -1;
+        }
+        if (len > left) {
+            len = left;
+        }
+        System.arraycopy(fBytes, fPosition, b, off, len);
+        fPosition += len;
+        return len;
+    } // read(byte[],int,int):int
+    
+    public long skip(long n) {
+        final int left = fEnd - fPosition;
+        if (n > left) {
+            n = left;
+        }
+        if (n < 0) {
+            return 0;
+        }
+        fPosition += n;
+        return n;
+    } // skip(long):long
+    
+    public int available() {
+        return fEnd - fPosition;
+    } // available():int
+    
+    public boolean markSupported() {
+        return true;
+    } // markSupported():boolean
+    
+    public void mark(int readAheadLimit) {
+        fMark = fPosition;
+    } // mark(int)
+    
+    public void reset() {
+        fPosition = fMark;
+    } // reset()
+    
+    //
+    // Package private methods
+    //
+    
+    /** Returns the byte array. */
+    byte[] getBytes() {
+        return fBytes;
+    } // getBytes():byte[]
+    
+    /** Returns the index of the next byte to read. */
+    int getPosition() {
+        return fPosition;
+    } // getPosition():int
+    
+    /** Sets the index of the next byte to read. */
+    void setPosition(int position) {
+        fPosition = position;
+    } // setPosition(int)
+    
+    /** Returns the index one past the last byte to read. */
+    int getEnd() {
+        return fEnd;
+    } // getEnd():int
+    
+} // class ByteArrayStream
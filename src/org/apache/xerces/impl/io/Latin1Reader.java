@@ -49,6 +49,9 @@ public final class Latin1Reader
 
     /** Byte buffer. */
     protected final byte[] fBuffer;
+
+    /** The stream over a byte array which is decoded in place, if any. */
+    private final ByteArrayStream fByteArrayStream;
     
     //
     // Constructors
@@ -84,6 +87,8 @@ public final class Latin1Reader
     public Latin1Reader(InputStream inputStream, byte [] buffer) {
         fInputStream = inputStream;
         fBuffer = buffer;
+        fByteArrayStream = (inputStream instanceof ByteArrayStream) ?
+            (ByteArrayStream) inputStream : null;
     } // <init>(InputStream, byte[])
     
     //
@@ -122,6 +127,24 @@ public final class Latin1Reader
      * @exception  IOException  If an I/O error occurs
      */
     public int read(char ch[], int offset, int length) throws IOException {
+        if (fByteArrayStream != null) {
+            // decode bytes held in an array in place
+            final ByteArrayStream stream = fByteArrayStream;
+            final byte[] bytes = stream.getBytes();
+            final int start = stream.getPosition();
+            int count = stream.getEnd() - start;
+            if (count <= 0) {
+                return (length == 0) ? 0 : -1;
+            }
+            if (count > length) {
+                count = length;
+            }
+            for (int i = 0; i < count; ++i) {
+                ch[offset + i] = (char) (bytes[start + i] & 0xff);
+            }
+            stream.setPosition(start + count);
+            return count;
+        }
         if (length > fBuffer.length) {
             length = fBuffer.length;
         }
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.impl.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * <p>An input stream which reads ahead of the parser on a background
+ * thread. The thread reads the underlying stream into a ring of blocks
+ * while the parser consumes the blocks already filled, so that the time
+ * spent waiting for a slow network or file system overlaps with the time
+ * spent scanning. At most <code>depth</code> blocks are held ahead of
+ * the block being consumed.</p>
+ * 
+ * <p>An exception thrown by the underlying stream is rethrown to the
+ * reader once the blocks read before it have been consumed. Only the
+ * prefetch thread touches the underlying stream, so closing this stream
+ * only tells the thread to stop; the thread closes the underlying stream
+ * once its current read returns.</p>
+ * 
+ * @xerces.internal
+ * 
+ * @version $Id$
+ */
+public final class PrefetchInputStream 
+    extends InputStream {
+    
+    //
+    // Data
+    //
+    
+    /** The underlying stream, read by the prefetch thread. */
+    private final InputStream fInputStream;
+    
+    /** Ring of blocks. */
+    private final byte[][] fBlocks;
+    
+    /** Number of bytes in each block. */
+    private final int[] fLengths;
+    
+    // shared state, guarded by this
+    
+    /** Index of the block being consumed or waited for. */
+    private int fReadIndex;
+    
+    /** Number of filled blocks, including the block being consumed. */
+    private int fFilled;
+    
+    /** True if the reader holds the block at the read index. */
+    private boolean fHoldingBlock;
+    
+    /** True once the prefetch thread has finished. */
+    private boolean fDone;
+    
+    /** True once this stream has been closed. */
+    private boolean fClosed;
+    
+    /** 
+     * The exception which stopped the prefetch thread, if any. This
+     * is either an IOException or a RuntimeException.
+     */
+    private Exception fException;
+    
+    // reader state
+    
+    /** Position in the block being consumed. */
+    private int fPosition;
+    
+    /** Number of bytes in the block being consumed. */
+    private int fLimit;
+    
+    //
+    // Constructors
+    //
+    
+    /**
+     * Constructs a prefetching stream and starts its thread.
+     * 
+     * @param inputStream The stream to read ahead of the parser.
+     * @param blockSize   The number of bytes to read at a time.
+     * @param depth       The number of blocks to read ahead.
+     */
+    public PrefetchInputStream(InputStream inputStream, int blockSize, int depth) {
+        fInputStream = inputStream;
+        fBlocks = new byte[depth + 1][blockSize];
+        fLengths = new int[depth + 1];
+        Thread thread = new Thread(new Prefetcher(), "Xerces entity prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    } // <init>(InputStream,int,int)
+    
+    //
+    // InputStream methods
+    //
+    
+    public int read() throws IOException {
+        if (fPosition == fLimit && !nextBlock()) {
+            return -1;
+        }
+        return fBlocks[fReadIndex][fPosition++] & 0xff;
+    } // read():int
+    
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (fPosition == fLimit && !nextBlock()) {
+            return -1;
+        }
+        final int left = fLimit - fPosition;
+        if (len > left) {
+            len = left;
+        }
+        System.arraycopy(fBlocks[fReadIndex], fPosition, b, off, len);
+        fPosition += len;
+        return len;
+    } // read(byte[],int,int):int
+    
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (fPosition == fLimit && !nextBlock()) {
+            return 0;
+        }
+        final int left = fLimit - fPosition;
+        if (n > left) {
+            n = left;
+        }
+        fPosition += n;
+        return n;
+    } // skip(long):long
+    
+    public int available() {
+        int available = fLimit - fPosition;
+        synchronized (this) {
+            // add the blocks filled after the one being consumed
+            final int first = fHoldingBlock ? 1 : 0;
+            for (int i = first; i < fFilled; ++i) {
+                available += fLengths[(fReadIndex + i) % fBlocks.length];
+            }
+        }
+        return available;
+    } // available():int
+    
+    public synchronized void close() throws IOException {
+        fClosed = true;
+        notifyAll();
+    } // close()
+    
+    //
+    // Private methods
+    //
+    
+    /** 
+     * Releases the block consumed by the reader and waits for 
+     * the next one. Returns false at the end of the stream.
+     */
+    private synchronized boolean nextBlock() throws IOException {
+        if (fHoldingBlock) {
+            fHoldingBlock = false;
+            fReadIndex = (fReadIndex + 1) % fBlocks.length;
+            --fFilled;
+            notifyAll();
+        }
+        while (fFilled == 0) {
+            if (fException != null) {
+                if (fException instanceof RuntimeException) {
+                    throw (RuntimeException) fException;
+                }
+                throw (IOException) fException;
+            }
+            if (fDone || fClosed) {
+                return false;
+            }
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+        fHoldingBlock = true;
+        fPosition = 0;
+        fLimit = fLengths[fReadIndex];
+        return true;
+    } // nextBlock():boolean
+    
+    //
+    // Classes
+    //
+    
+    /**
+     * Fills free blocks from the underlying stream until it is exhausted
+     * or the prefetching stream is closed, and then closes it.
+     */
+    private final class Prefetcher implements Runnable {
+        
+        public void run() {
+            try {
+                while (true) {
+                    final int index;
+                    synchronized (PrefetchInputStream.this) {
+                        while (fFilled == fBlocks.length && !fClosed) {
+                            PrefetchInputStream.this.wait();
+                        }
+                        if (fClosed) {
+                            return;
+                        }
+                        index = (fReadIndex + fFilled) % fBlocks.length;
+                    }
+                    // The block at this index is not visible to the reader
+                    // until it has been counted as filled.
+                    final int length = fInputStream.read(fBlocks[index], 0, fBlocks[index].length);
+                    if (length < 0) {
+                        return;
+                    }
+                    if (length > 0) {
+                        synchronized (PrefetchInputStream.this) {
+                            fLengths[index] = length;
+                            ++fFilled;
+                            PrefetchInputStream.this.notifyAll();
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                stop(e);
+            }
+            catch (RuntimeException e) {
+                stop(e);
+            }
+            catch (InterruptedException e) {
+                // stop reading
+            }
+            finally {
+                synchronized (PrefetchInputStream.this) {
+                    fDone = true;
+                    PrefetchInputStream.this.notifyAll();
+                }
+                try {
+                    fInputStream.close();
+                }
+                catch (IOException e) {
+                    // ignore
+                }
+            }
+        } // run()
+        
+        /** Records the exception which stopped the thread. */
+        private void stop(Exception e) {
+            synchronized (PrefetchInputStream.this) {
+                if (!fClosed) {
+                    fException = e;
+                }
+            }
+        } // stop(Exception)
+        
+    } // class Prefetcher
+    
+} // class PrefetchInputStream
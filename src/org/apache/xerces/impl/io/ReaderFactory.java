@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.impl.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * <p>Creates readers for an encoding. Factories may be registered with
+ * {@link ReaderFactoryMap} to have the parser decode documents in that
+ * encoding with readers of the application's choosing.</p>
+ * 
+ * @version $Id$
+ */
+public interface ReaderFactory {
+
+    /**
+     * Creates a reader which decodes the given input stream.
+     * 
+     * @param inputStream The input stream.
+     * @param encoding    The IANA encoding name, in upper case.
+     * 
+     * @return A reader for the stream.
+     * 
+     * @exception IOException If the reader could not be created.
+     */
+    public Reader createReader(InputStream inputStream, String encoding) 
+        throws IOException;
+
+} // interface ReaderFactory
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.impl.io;
+
+import java.util.Hashtable;
+import java.util.Locale;
+
+/**
+ * <p>ReaderFactoryMap holds the reader factories registered for IANA
+ * encoding names. When the parser reads an entity in an encoding for
+ * which a factory has been registered, it uses the reader created by
+ * that factory instead of one of its own readers or a Java 
+ * <code>InputStreamReader</code>. Factories are not consulted for UTF-8, 
+ * UTF-16, US-ASCII, ISO-8859-1 or the UCS encodings, which the parser
+ * always decodes itself.</p>
+ * 
+ * <p>Registration is JVM wide and affects every parser instance.</p>
+ * 
+ * @version $Id$
+ */
+public final class ReaderFactoryMap {
+
+    //
+    // Data
+    //
+
+    /** Reader factories, keyed by upper case IANA encoding name. */
+    private static final Hashtable fReaderFactories = new Hashtable();
+
+    //
+    // Constructors
+    //
+
+    /** This class cannot be instantiated. */
+    private ReaderFactoryMap() {}
+
+    //
+    // Public static methods
+    //
+
+    /**
+     * Registers a reader factory for an IANA encoding name, replacing 
+     * any factory previously registered for the name.
+     * 
+     * @param ianaEncoding The IANA encoding name.
+     * @param factory      The reader factory.
+     */
+    public static void putReaderFactory(String ianaEncoding, 
+                                        ReaderFactory factory) {
+        fReaderFactories.put(ianaEncoding.toUpperCase(Locale.ENGLISH), factory);
+    } // putReaderFactory(String,ReaderFactory)
+
+    /**
+     * Returns the reader factory registered for an IANA encoding name, 
+     * or <code>null</code> if there is none.
+     * 
+     * @param ianaEncoding The IANA encoding name, in upper case.
+     */
+    public static ReaderFactory getReaderFactory(String ianaEncoding) {
+        return (ReaderFactory)fReaderFactories.get(ianaEncoding);
+    } // getReaderFactory(String):ReaderFactory
+
+    /**
+     * Removes the reader factory registered for an IANA encoding name.
+     * 
+     * @param ianaEncoding The IANA encoding name.
+     * 
+     * @return The factory which was removed, or <code>null</code>.
+     */
+    public static ReaderFactory removeReaderFactory(String ianaEncoding) {
+        return (ReaderFactory)fReaderFactories.remove(ianaEncoding.toUpperCase(Locale.ENGLISH));
+    } // removeReaderFactory(String):ReaderFactory
+
+} // class ReaderFactoryMap
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.impl.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.Hashtable;
+
+/**
+ * <p>Reader for single byte encodings, such as the windows-125x and
+ * ISO-8859-x code pages. Each byte is decoded by looking it up in a 
+ * table of 256 characters.</p>
+ * 
+ * <p>The tables for the supported encodings are built on first use
+ * by decoding every byte value with the Java decoder for the encoding,
+ * so this reader produces exactly the same characters as an 
+ * <code>InputStreamReader</code> would.</p>
+ * 
+ * @xerces.internal
+ * 
+ * @version $Id$
+ */
+public final class SingleByteReader 
+    extends Reader {
+    
+    //
+    // Constants
+    //
+
+    /** Default byte buffer size (2048). */
+    public static final int DEFAULT_BUFFER_SIZE = 2048;
+    
+    /** Java names of the encodings for which tables may be built. */
+    private static final String[] SUPPORTED_ENCODINGS = {
+        "Cp1250", "Cp1251", "Cp1252", "Cp1253", "Cp1254",
+        "Cp1255", "Cp1256", "Cp1257", "Cp1258",
+        "ISO8859_2", "ISO8859_3", "ISO8859_4", "ISO8859_5", 
+        "ISO8859_6", "ISO8859_7", "ISO8859_8", "ISO8859_9",
+        "ISO8859_13", "ISO8859_15_FDIS", "KOI8_R",
+    };
+    
+    /** Marks an encoding for which no table could be built. */
+    private static final char[] NO_TABLE = new char[0];
+    
+    /** Decoding tables, keyed by Java encoding name. */
+    private static final Hashtable fgTables = new Hashtable();
+    
+    //
+    // Data
+    //
+
+    /** Input stream. */
+    protected final InputStream fInputStream;
+
+    /** Byte buffer. */
+    protected final byte[] fBuffer;
+    
+    /** Decoding table. */
+    protected final char[] fTable;
+
+    /** The stream over a byte array which is decoded in place, if any. */
+    private final ByteArrayStream fByteArrayStream;
+    
+    //
+    // Constructors
+    //
+
+    /** 
+     * Constructs a single byte reader from the specified input stream 
+     * and decoding table using the default buffer size.
+     *
+     * @param inputStream The input stream.
+     * @param table       The character for each of the 256 byte values.
+     */
+    public SingleByteReader(InputStream inputStream, char[] table) {
+        this(inputStream, new byte[DEFAULT_BUFFER_SIZE], table);
+    } // <init>(InputStream, char[])
+    
+    /** 
+     * Constructs a single byte reader from the specified input stream,
+     * buffer and decoding table.
+     *
+     * @param inputStream The input stream.
+     * @param buffer      The byte buffer.
+     * @param table       The character for each of the 256 byte values.
+     */
+    public SingleByteReader(InputStream inputStream, byte [] buffer, char[] table) {
+        fInputStream = inputStream;
+        fBuffer = buffer;
+        fTable = table;
+        fByteArrayStream = (inputStream instanceof ByteArrayStream) ?
+            (ByteArrayStream) inputStream : null;
+    } // <init>(InputStream, byte[], char[])
+    
+    //
+    // Public static methods
+    //
+    
+    /**
+     * Returns the decoding table for the specified Java encoding, or 
+     * <code>null</code> if the encoding is not a supported single byte
+     * encoding.
+     * 
+     * @param javaEncoding The Java encoding name.
+     */
+    public static char[] getDecodingTable(String javaEncoding) {
+        char[] table = (char[]) fgTables.get(javaEncoding);
+        if (table == null) {
+            table = NO_TABLE;
+            for (int i = 0; i < SUPPORTED_ENCODINGS.length; ++i) {
+                if (SUPPORTED_ENCODINGS[i].equals(javaEncoding)) {
+                    table = createDecodingTable(javaEncoding);
+                    break;
+                }
+            }
+            fgTables.put(javaEncoding, table);
+        }
+        return (table != NO_TABLE) ? table : null;
+    } // getDecodingTable(String):char[]
+    
+    //
+    // Reader methods
+    //
+    
+    /**
+     * Read a single character. This method will block until a character is
+     * available, an I/O error occurs, or the end of the stream is reached.
+     *
+     * <p> Subclasses that intend to support efficient single-character input
+     * should override this method.
+     *
+     * @return     The character read, as an integer in the range 0 to 65535
+     *             (<tt>0x00-0xffff</tt>), or -1 if the end of the stream has
+     *             been reached
+     *
+     * @exception  IOException  If an I/O error occurs
+     */
+    public int read() throws IOException {
+        int b0 = fInputStream.read();
+        return (b0 != -1) ? fTable[b0] : -1;
+    } // read():int
+
+    /**
+     * Read characters into a portion of an array.  This method will block
+     * until some input is available, an I/O error occurs, or the end of the
+     * stream is reached.
+     *
+     * @param      ch     Destination buffer
+     * @param      offset Offset at which to start storing characters
+     * @param      length Maximum number of characters to read
+     *
+     * @return     The number of characters read, or -1 if the end of the
+     *             stream has been reached
+     *
+     * @exception  IOException  If an I/O error occurs
+     */
+    public int read(char ch[], int offset, int length) throws IOException {
+        if (fByteArrayStream != null) {
+            // decode bytes held in an array in place
+            final ByteArrayStream stream = fByteArrayStream;
+            final byte[] bytes = stream.getBytes();
+            final int start = stream.getPosition();
+            int count = stream.getEnd() - start;
+            if (count <= 0) {
+                return (length == 0) ? 0 : -1;
+            }
+            if (count > length) {
+                count = length;
+            }
+            final char[] table = fTable;
+            for (int i = 0; i < count; ++i) {
+                ch[offset + i] = table[bytes[start + i] & 0xff];
+            }
+            stream.setPosition(start + count);
+            return count;
+        }
+        if (length > fBuffer.length) {
+            length = fBuffer.length;
+        }
+        final byte[] buffer = fBuffer;
+        final char[] table = fTable;
+        int count = fInputStream.read(buffer, 0, length);
+        for (int i = 0; i < count; ++i) {
+            ch[offset + i] = table[buffer[i] & 0xff];
+        }
+        return count;
+    } // read(char[],int,int)
+
+    /**
+     * Skip characters.  This method will block until some characters are
+     * available, an I/O error occurs, or the end of the stream is reached.
+     *
+     * @param  n  The number of characters to skip
+     *
+     * @return    The number of characters actually skipped
+     *
+     * @exception  IOException  If an I/O error occurs
+     */
+    public long skip(long n) throws IOException {
+        return fInputStream.skip(n);
+    } // skip(long):long
+
+    /**
+     * Tell whether this stream is ready to be read.
+     *
+     * @return True if the next read() is guaranteed not to block for input,
+     * false otherwise.  Note that returning false does not guarantee that the
+     * next read will block.
+     *
+     * @exception  IOException  If an I/O error occurs
+     */
+    public boolean ready() throws IOException {
+        return false;
+    } // ready()
+
+    /**
+     * Tell whether this stream supports the mark() operation.
+     */
+    public boolean markSupported() {
+        return fInputStream.markSupported();
+    } // markSupported()
+
+    /**
+     * Mark the present position in the stream.  Subsequent calls to reset()
+     * will attempt to reposition the stream to this point.  Not all
+     * character-input streams support the mark() operation.
+     *
+     * @param  readAheadLimit  Limit on the number of characters that may be
+     *                         read while still preserving the mark.  After
+     *                         reading this many characters, attempting to
+     *                         reset the stream may fail.
+     *
+     * @exception  IOException  If the stream does not support mark(),
+     *                          or if some other I/O error occurs
+     */
+    public void mark(int readAheadLimit) throws IOException {
+        fInputStream.mark(readAheadLimit);
+    } // mark(int)
+
+    /**
+     * Reset the stream.  If the stream has been marked, then attempt to
+     * reposition it at the mark.  If the stream has not been marked, then
+     * attempt to reset it in some way appropriate to the particular stream,
+     * for example by repositioning it to its starting point.  Not all
+     * character-input streams support the reset() operation, and some support
+     * reset() without supporting mark().
+     *
+     * @exception  IOException  If the stream has not been marked,
+     *                          or if the mark has been invalidated,
+     *                          or if the stream does not support reset(),
+     *                          or if some other I/O error occurs
+     */
+    public void reset() throws IOException {
+        fInputStream.reset();
+    } // reset()
+
+    /**
+     * Close the stream.  Once a stream has been closed, further read(),
+     * ready(), mark(), or reset() invocations will throw an IOException.
+     * Closing a previously-closed stream, however, has no effect.
+     *
+     * @exception  IOException  If an I/O error occurs
+     */
+     public void close() throws IOException {
+         fInputStream.close();
+     } // close()
+     
+    //
+    // Private static methods
+    //
+    
+    /** 
+     * Builds the decoding table for an encoding by decoding each of the
+     * 256 byte values. Returns NO_TABLE if the encoding is not available
+     * or does not map every byte to a single character.
+     */
+    private static char[] createDecodingTable(String javaEncoding) {
+        final byte[] bytes = new byte[256];
+        for (int i = 0; i < 256; ++i) {
+            bytes[i] = (byte) i;
+        }
+        try {
+            final String chars = new String(bytes, javaEncoding);
+            if (chars.length() == 256) {
+                return chars.toCharArray();
+            }
+        }
+        catch (UnsupportedEncodingException e) {
+            // fall through
+        }
+        return NO_TABLE;
+    } // createDecodingTable(String):char[]
+
+} // class SingleByteReader
@@ -72,6 +72,9 @@ public final class UTF8Reader
     //Locale to use for messages
     private final Locale fLocale;
 
+    /** The stream over a byte array which is decoded in place, if any. */
+    private final ByteArrayStream fByteArrayStream;
+
     //
     // Constructors
     //
@@ -128,6 +131,8 @@ public final class UTF8Reader
         fBuffer = buffer;
         fFormatter = messageFormatter;
         fLocale = locale;
+        fByteArrayStream = (inputStream instanceof ByteArrayStream) ?
+            (ByteArrayStream) inputStream : null;
     } // <init>(InputStream, byte[], MessageFormatter, Locale)
 
     //
@@ -286,6 +291,11 @@ public final class UTF8Reader
      */
     public int read(char ch[], int offset, int length) throws IOException {
 
+        // decode bytes held in an array in place
+        if (fByteArrayStream != null) {
+            return readArray(ch, offset, length);
+        }
+
         // read bytes
         int out = offset;
         int count = 0;
@@ -305,7 +315,8 @@ public final class UTF8Reader
             // perform read operation
             count = fInputStream.read(fBuffer, 0, length);
             if (count == -1) {
-                return -1;
+                // the saved low surrogate may be all that is left
+                return (out > offset) ? out - offset : -1;
             }
             count += out - offset;
         }
@@ -322,20 +333,13 @@ public final class UTF8Reader
             fOffset = 0;
         }
 
-        // convert bytes to characters
-        final int total = count;
-        int in;
+        // convert bytes to characters; count includes any surrogate
+        // character already stored but total is only the bytes read
+        final int total = count - (out - offset);
+        int in = readASCII(fBuffer, 0, total, ch, out);
+        out += in;
         byte byte1;
         final byte byte0 = 0;
-        for (in = 0; in < total; in++) {
-            byte1 = fBuffer[in];
-            if (byte1 >= byte0) {
-                ch[out++] = (char)byte1;
-            }
-            else   {
-                break;
-            }
-        }
         for ( ; in < total; in++) {
             byte1 = fBuffer[in];
 
@@ -343,6 +347,10 @@ public final class UTF8Reader
             // Unicode: [0000 0000] [0xxx xxxx]
             if (byte1 >= byte0) {
                 ch[out++] = (char)byte1;
+                // the rest of the run is likely to be US-ASCII too
+                final int end = readASCII(fBuffer, in + 1, total, ch, out);
+                out += end - in - 1;
+                in = end - 1;
                 continue;
             }
 
@@ -675,6 +683,244 @@ public final class UTF8Reader
     // Private methods
     //
 
+    /**
+     * Decodes characters straight from the array of the byte array
+     * stream. Since the whole document is in the array, a sequence
+     * which is cut short by the end of the array is an error, and
+     * nothing needs to be saved for the next read.
+     *
+     * @param      ch     Destination buffer
+     * @param      offset Offset at which to start storing characters
+     * @param      length Maximum number of characters to read
+     *
+     * @return     The number of characters read, or -1 if the end of the
+     *             stream has been reached
+     *
+     * @exception  IOException  If an I/O error occurs
+     */
+    private int readArray(char ch[], int offset, int length) throws IOException {
+
+        final ByteArrayStream stream = fByteArrayStream;
+        final byte[] bytes = stream.getBytes();
+        final int end = stream.getEnd();
+        final int outEnd = offset + length;
+        int in = stream.getPosition();
+        int out = offset;
+
+        // handle surrogate
+        if (fSurrogate != -1 && out < outEnd) {
+            ch[out++] = (char)fSurrogate;
+            fSurrogate = -1;
+        }
+        if (in == end && out < outEnd) {
+            return (out > offset) ? out - offset : -1;
+        }
+
+        // convert bytes to characters; on an error the characters before
+        // it are returned and the error is signalled by the next read
+        while (out < outEnd && in < end) {
+            final int limit = (end - in < outEnd - out) ? end : in + outEnd - out;
+            final int ascii = readASCII(bytes, in, limit, ch, out);
+            out += ascii - in;
+            in = ascii;
+            if (in == limit) {
+                continue;
+            }
+            final int b0 = bytes[in] & 0x00FF;
+
+            // UTF-8:   [110y yyyy] [10xx xxxx]
+            // Unicode: [0000 0yyy] [yyxx xxxx]
+            if ((b0 & 0xE0) == 0xC0 && (b0 & 0x1E) != 0) {
+                if (in + 1 == end) {
+                    if (out > offset) {
+                        break;
+                    }
+                    expectedByte(2, 2);
+                }
+                final int b1 = bytes[in + 1] & 0x00FF;
+                if ((b1 & 0xC0) != 0x80) {
+                    if (out > offset) {
+                        break;
+                    }
+                    invalidByte(2, 2, b1);
+                }
+                ch[out++] = (char)(((b0 << 6) & 0x07C0) | (b1 & 0x003F));
+                in += 2;
+            }
+
+            // UTF-8:   [1110 zzzz] [10yy yyyy] [10xx xxxx]
+            // Unicode: [zzzz yyyy] [yyxx xxxx]
+            else if ((b0 & 0xF0) == 0xE0) {
+                if (in + 1 == end) {
+                    if (out > offset) {
+                        break;
+                    }
+                    expectedByte(2, 3);
+                }
+                final int b1 = bytes[in + 1] & 0x00FF;
+                if ((b1 & 0xC0) != 0x80 
+                    || (b0 == 0xED && b1 >= 0xA0)
+                    || ((b0 & 0x0F) == 0 && (b1 & 0x20) == 0)) {
+                    if (out > offset) {
+                        break;
+                    }
+                    invalidByte(2, 3, b1);
+                }
+                if (in + 2 == end) {
+                    if (out > offset) {
+                        break;
+                    }
+                    expectedByte(3, 3);
+                }
+                final int b2 = bytes[in + 2] & 0x00FF;
+                if ((b2 & 0xC0) != 0x80) {
+                    if (out > offset) {
+                        break;
+                    }
+                    invalidByte(3, 3, b2);
+                }
+                ch[out++] = (char)(((b0 << 12) & 0xF000) | ((b1 << 6) & 0x0FC0) |
+                    (b2 & 0x003F));
+                in += 3;
+            }
+
+            // UTF-8:   [1111 0uuu] [10uu zzzz] [10yy yyyy] [10xx xxxx]*
+            // Unicode: [1101 10ww] [wwzz zzyy] (high surrogate)
+            //          [1101 11yy] [yyxx xxxx] (low surrogate)
+            //          * uuuuu = wwww + 1
+            else if ((b0 & 0xF8) == 0xF0) {
+                if (in + 1 == end) {
+                    if (out > offset) {
+                        break;
+                    }
+                    expectedByte(2, 4);
+                }
+                final int b1 = bytes[in + 1] & 0x00FF;
+                if ((b1 & 0xC0) != 0x80
+                    || ((b1 & 0x30) == 0 && (b0 & 0x07) == 0)) {
+                    if (out > offset) {
+                        break;
+                    }
+                    invalidByte(2, 4, b1);
+                }
+                if (in + 2 == end) {
+                    if (out > offset) {
+                        break;
+                    }
+                    expectedByte(3, 4);
+                }
+                final int b2 = bytes[in + 2] & 0x00FF;
+                if ((b2 & 0xC0) != 0x80) {
+                    if (out > offset) {
+                        break;
+                    }
+                    invalidByte(3, 4, b2);
+                }
+                if (in + 3 == end) {
+                    if (out > offset) {
+                        break;
+                    }
+                    expectedByte(4, 4);
+                }
+                final int b3 = bytes[in + 3] & 0x00FF;
+                if ((b3 & 0xC0) != 0x80) {
+                    if (out > offset) {
+                        break;
+                    }
+                    invalidByte(4, 4, b2);
+                }
+
+                // decode bytes into surrogate characters
+                int uuuuu = ((b0 << 2) & 0x001C) | ((b1 >> 4) & 0x0003);
+                if (uuuuu > 0x10) {
+                    invalidSurrogate(uuuuu);
+                }
+                int wwww = uuuuu - 1;
+                int zzzz = b1 & 0x000F;
+                int yyyyyy = b2 & 0x003F;
+                int xxxxxx = b3 & 0x003F;
+                int hs = 0xD800 | ((wwww << 6) & 0x03C0) | (zzzz << 2) | (yyyyyy >> 4);
+                int ls = 0xDC00 | ((yyyyyy << 6) & 0x03C0) | xxxxxx;
+
+                // set characters
+                ch[out++] = (char)hs;
+                if (out < outEnd) {
+                    ch[out++] = (char)ls;
+                }
+                // reached the end of the char buffer; save low surrogate for the next read
+                else {
+                    fSurrogate = ls;
+                }
+                in += 4;
+            }
+
+            // error
+            else {
+                if (out > offset) {
+                    break;
+                }
+                invalidByte(1, 1, b0);
+            }
+        }
+        stream.setPosition(in);
+
+        // return number of characters converted
+        if (DEBUG_READ) {
+            System.out.println("read(char[],"+offset+','+length+"): count="+(out - offset));
+        }
+        return out - offset;
+
+    } // readArray(char[],int,int):int
+
+    /**
+     * Widens the run of US-ASCII bytes starting at the given index of a
+     * byte buffer into the character array. Bytes are examined eight at a
+     * time; since every byte of a US-ASCII block has its sign bit clear,
+     * or'ing the block together tells whether it can be copied as is.
+     *
+     * @param buffer The byte buffer.
+     * @param in     Index of the first byte to examine.
+     * @param total  Index one past the last byte to examine.
+     * @param ch     Destination buffer.
+     * @param out    Offset at which to store the first character.
+     *
+     * @return The index of the first byte which is not US-ASCII, or
+     *         <code>total</code> if all of the remaining bytes were.
+     */
+    private static int readASCII(final byte[] buffer, int in, final int total, 
+            final char[] ch, int out) {
+        final int blockEnd = total - 7;
+        while (in < blockEnd) {
+            final byte b0 = buffer[in];
+            final byte b1 = buffer[in + 1];
+            final byte b2 = buffer[in + 2];
+            final byte b3 = buffer[in + 3];
+            final byte b4 = buffer[in + 4];
+            final byte b5 = buffer[in + 5];
+            final byte b6 = buffer[in + 6];
+            final byte b7 = buffer[in + 7];
+            if ((b0 | b1 | b2 | b3 | b4 | b5 | b6 | b7) < 0) {
+                break;
+            }
+            ch[out] = (char)b0;
+            ch[out + 1] = (char)b1;
+            ch[out + 2] = (char)b2;
+            ch[out + 3] = (char)b3;
+            ch[out + 4] = (char)b4;
+            ch[out + 5] = (char)b5;
+            ch[out + 6] = (char)b6;
+            ch[out + 7] = (char)b7;
+            in += 8;
+            out += 8;
+        }
+        byte b;
+        while (in < total && (b = buffer[in]) >= 0) {
+            ch[out++] = (char)b;
+            ++in;
+        }
+        return in;
+    } // readASCII(byte[],int,int,char[],int):int
+
     /** Throws an exception for expected byte. */
     private void expectedByte(int position, int count)
         throws MalformedByteSequenceException {
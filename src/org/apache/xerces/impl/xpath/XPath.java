@@ -96,6 +96,11 @@ public class XPath {
         return (LocationPath)fLocationPaths[0].clone();
     } // getLocationPath(LocationPath)
 
+    /** Returns the expression from which this XPath was parsed. */
+    public String getExpression() {
+        return fExpression;
+    } // getExpression():String
+
     //
     // Object methods
     //
@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.util.XMLSymbols;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.StringList;
+
+/**
+ * Loads schema grammars into a grammar pool and later rebuilds only
+ * the grammars whose schema documents have changed since.
+ * <p>
+ * The reloader remembers the documents each grammar was built from,
+ * with their modification time, length and checksum. When asked to
+ * reload, it finds the grammars one of whose documents has changed and
+ * the grammars which import them, directly or not. Only these are
+ * loaded again; the grammars they import which have not changed are
+ * reused as they are. The rebuilt grammars are then put into the pool
+ * together, so a validator retrieving grammars from the pool sees
+ * either all the old ones or all the new ones.
+ * <p>
+ * The unit of reloading is a grammar, that is a target namespace, and
+ * not a schema document: the components declared in the documents of
+ * one namespace refer to each other and cannot be rebuilt separately.
+ * <p>
+ * This class is not thread-safe; the pool it fills may be used by
+ * other threads while grammars are being reloaded.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class SchemaGrammarReloader {
+
+    //
+    // Constants
+    //
+
+    /** Property identifier: grammar pool. */
+    private static final String XMLGRAMMAR_POOL =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
+
+    //
+    // Data
+    //
+
+    /** The loader used to build grammars. */
+    private final XMLSchemaLoader fLoader;
+
+    /** The pool receiving the grammars. */
+    private final XMLGrammarPool fGrammarPool;
+
+    /** Map from target namespace to the grammar loaded for it. */
+    private final Hashtable fGrammars = new Hashtable();
+
+    /** Target namespaces in the order their grammars were loaded. */
+    private final Vector fNamespaces = new Vector();
+
+    /** Map from a grammar to the stamps of its documents. */
+    private final Hashtable fStamps = new Hashtable();
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a reloader which builds grammars with the given loader
+     * and puts them into the given pool.
+     */
+    public SchemaGrammarReloader(XMLSchemaLoader loader, XMLGrammarPool grammarPool) {
+        fLoader = loader;
+        fGrammarPool = grammarPool;
+    } // <init>(XMLSchemaLoader,XMLGrammarPool)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Loads the schema from the given source into the pool and remembers
+     * the documents of the grammar loaded and of the grammars it imports.
+     *
+     * @param source the first document of the schema
+     * @return the grammar loaded, or null if it could not be loaded
+     */
+    public SchemaGrammar loadGrammar(XMLInputSource source) throws IOException {
+        Object grammarPool = fLoader.getProperty(XMLGRAMMAR_POOL);
+        SchemaGrammar grammar;
+        try {
+            fLoader.setProperty(XMLGRAMMAR_POOL, fGrammarPool);
+            grammar = (SchemaGrammar) fLoader.loadGrammar(source);
+        }
+        finally {
+            fLoader.setProperty(XMLGRAMMAR_POOL, grammarPool);
+        }
+        if (grammar != null) {
+            track(grammar);
+        }
+        return grammar;
+    } // loadGrammar(XMLInputSource):SchemaGrammar
+
+    /**
+     * Rebuilds the grammars whose documents have changed, along with the
+     * grammars importing them, and puts them into the pool. Errors found
+     * while loading are reported to the loader's error handler. If one
+     * of the grammars cannot be loaded again, the pool is left as it was.
+     *
+     * @return the grammars rebuilt, an empty array if no document has
+     *         changed, or null if the grammars could not be rebuilt
+     */
+    public SchemaGrammar[] reload() throws IOException {
+        
+        // find the grammars whose documents have changed
+        Hashtable affected = new Hashtable();
+        for (int i = 0; i < fNamespaces.size(); i++) {
+            SchemaGrammar grammar = (SchemaGrammar) fGrammars.get(fNamespaces.elementAt(i));
+            if (hasChanged(grammar)) {
+                affected.put(grammar, grammar);
+            }
+        }
+        if (affected.isEmpty()) {
+            return new SchemaGrammar[0];
+        }
+        
+        // add the grammars importing them
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (int i = 0; i < fNamespaces.size(); i++) {
+                SchemaGrammar grammar = (SchemaGrammar) fGrammars.get(fNamespaces.elementAt(i));
+                if (affected.get(grammar) == null && importsAny(grammar, affected)) {
+                    affected.put(grammar, grammar);
+                    added = true;
+                }
+            }
+        }
+        
+        // load the affected grammars against the others
+        XMLGrammarPoolImpl staging = new XMLGrammarPoolImpl();
+        for (int i = 0; i < fNamespaces.size(); i++) {
+            SchemaGrammar grammar = (SchemaGrammar) fGrammars.get(fNamespaces.elementAt(i));
+            if (affected.get(grammar) == null) {
+                staging.putGrammar(grammar);
+            }
+        }
+        Object grammarPool = fLoader.getProperty(XMLGRAMMAR_POOL);
+        try {
+            fLoader.setProperty(XMLGRAMMAR_POOL, staging);
+            for (int i = 0; i < fNamespaces.size(); i++) {
+                SchemaGrammar grammar = (SchemaGrammar) fGrammars.get(fNamespaces.elementAt(i));
+                if (affected.get(grammar) != null &&
+                        staging.getGrammar(grammar.getGrammarDescription()) == null) {
+                    fLoader.loadGrammar(getInputSource(grammar));
+                }
+            }
+        }
+        finally {
+            fLoader.setProperty(XMLGRAMMAR_POOL, grammarPool);
+        }
+        
+        for (int i = 0; i < fNamespaces.size(); i++) {
+            SchemaGrammar grammar = (SchemaGrammar) fGrammars.get(fNamespaces.elementAt(i));
+            if (affected.get(grammar) != null &&
+                    staging.getGrammar(grammar.getGrammarDescription()) == null) {
+                return null;
+            }
+        }
+        
+        // collect the new grammars, including those of namespaces
+        // imported for the first time
+        Vector rebuilt = new Vector();
+        Grammar[] grammars = staging.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        for (int i = 0; i < grammars.length; i++) {
+            SchemaGrammar grammar = (SchemaGrammar) grammars[i];
+            if (fGrammars.get(getKey(grammar)) != grammar) {
+                rebuilt.addElement(grammar);
+            }
+        }
+        
+        // replace the old grammars in one step
+        SchemaGrammar[] result = new SchemaGrammar[rebuilt.size()];
+        rebuilt.copyInto(result);
+        fGrammarPool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, result);
+        
+        // forget the stamps of all the replaced grammars before tracking
+        // the new ones, since tracking a grammar also tracks those it imports
+        Object[] replaced = new Object[result.length];
+        for (int i = 0; i < result.length; i++) {
+            replaced[i] = fGrammars.get(getKey(result[i]));
+        }
+        for (int i = 0; i < replaced.length; i++) {
+            if (replaced[i] != null) {
+                fStamps.remove(replaced[i]);
+            }
+        }
+        for (int i = 0; i < result.length; i++) {
+            track(result[i]);
+        }
+        return result;
+        
+    } // reload():SchemaGrammar[]
+
+    //
+    // Private methods
+    //
+
+    /** Remembers a grammar, and the grammars it imports, with the stamps of their documents. */
+    private void track(SchemaGrammar grammar) {
+        Vector grammars = new Vector();
+        grammars.addElement(grammar);
+        for (int i = 0; i < grammars.size(); i++) {
+            SchemaGrammar sg = (SchemaGrammar) grammars.elementAt(i);
+            String key = getKey(sg);
+            Object old = fGrammars.put(key, sg);
+            if (old == null) {
+                fNamespaces.addElement(key);
+            }
+            if (old != sg) {
+                StringList locations = sg.getDocumentLocations();
+                Stamp[] stamps = new Stamp[locations.getLength()];
+                for (int j = 0; j < stamps.length; j++) {
+                    stamps[j] = new Stamp(locations.item(j));
+                    stamps[j].fRecorded = stamps[j].read();
+                }
+                fStamps.put(sg, stamps);
+            }
+            Vector imported = sg.getImportedGrammars();
+            if (imported != null) {
+                for (int j = 0; j < imported.size(); j++) {
+                    SchemaGrammar ig = (SchemaGrammar) imported.elementAt(j);
+                    if (fGrammars.get(getKey(ig)) != ig && !grammars.contains(ig)) {
+                        grammars.addElement(ig);
+                    }
+                }
+            }
+        }
+    } // track(SchemaGrammar)
+
+    /** Returns true if one of the documents of the grammar has changed. */
+    private boolean hasChanged(SchemaGrammar grammar) {
+        Stamp[] stamps = (Stamp[]) fStamps.get(grammar);
+        if (stamps != null) {
+            for (int i = 0; i < stamps.length; i++) {
+                if (stamps[i].hasChanged()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    } // hasChanged(SchemaGrammar):boolean
+
+    /** Returns true if the grammar imports one of the given grammars. */
+    private boolean importsAny(SchemaGrammar grammar, Hashtable grammars) {
+        Vector imported = grammar.getImportedGrammars();
+        if (imported != null) {
+            for (int i = 0; i < imported.size(); i++) {
+                if (grammars.get(imported.elementAt(i)) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    } // importsAny(SchemaGrammar,Hashtable):boolean
+
+    /** Returns the source to load a grammar again from. */
+    private XMLInputSource getInputSource(SchemaGrammar grammar) {
+        StringList locations = grammar.getDocumentLocations();
+        if (locations.getLength() > 0 && locations.item(0) != null) {
+            return new XMLInputSource(null, locations.item(0), null);
+        }
+        XMLGrammarDescription desc = grammar.getGrammarDescription();
+        return new XMLInputSource(desc.getPublicId(), desc.getLiteralSystemId(), desc.getBaseSystemId());
+    } // getInputSource(SchemaGrammar):XMLInputSource
+
+    private static String getKey(SchemaGrammar grammar) {
+        String namespace = grammar.getTargetNamespace();
+        return (namespace != null) ? namespace : XMLSymbols.EMPTY_STRING;
+    } // getKey(SchemaGrammar):String
+
+    //
+    // Classes
+    //
+
+    /** The state of a schema document when it was loaded. */
+    private static final class Stamp {
+
+        /** The location of the document. */
+        final String fLocation;
+
+        /** True if the document could be read when it was loaded. */
+        boolean fRecorded;
+
+        long fLastModified;
+        int fLength;
+        long fChecksum;
+
+        Stamp(String location) {
+            fLocation = location;
+        }
+
+        /**
+         * Reads the state of the document into this stamp. Returns false
+         * if the document cannot be read.
+         */
+        boolean read() {
+            if (fLocation == null) {
+                return false;
+            }
+            InputStream stream = null;
+            try {
+                URLConnection connection = new URL(fLocation).openConnection();
+                stream = connection.getInputStream();
+                fLastModified = connection.getLastModified();
+                fLength = connection.getContentLength();
+                fChecksum = checksum(stream);
+                return true;
+            }
+            catch (IOException e) {
+                return false;
+            }
+            finally {
+                if (stream != null) {
+                    try {
+                        stream.close();
+                    }
+                    catch (IOException e) {
+                    }
+                }
+            }
+        } // read():boolean
+
+        /**
+         * Returns true if the document has been modified, or can no longer
+         * be read. The content is only compared when the modification time
+         * or the length of the document is unknown or has changed.
+         */
+        boolean hasChanged() {
+            if (!fRecorded) {
+                return false;
+            }
+            InputStream stream = null;
+            try {
+                URLConnection connection = new URL(fLocation).openConnection();
+                stream = connection.getInputStream();
+                long lastModified = connection.getLastModified();
+                int length = connection.getContentLength();
+                if (lastModified != 0 && lastModified == fLastModified &&
+                        length != -1 && length == fLength) {
+                    return false;
+                }
+                if (checksum(stream) != fChecksum) {
+                    return true;
+                }
+                // only touched; avoid reading it again next time
+                fLastModified = lastModified;
+                fLength = length;
+                return false;
+            }
+            catch (IOException e) {
+                return true;
+            }
+            finally {
+                if (stream != null) {
+                    try {
+                        stream.close();
+                    }
+                    catch (IOException e) {
+                    }
+                }
+            }
+        } // hasChanged():boolean
+
+        private static long checksum(InputStream stream) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                crc.update(buffer, 0, count);
+            }
+            return crc.getValue();
+        } // checksum(InputStream):long
+
+    } // class Stamp
+
+} // class SchemaGrammarReloader
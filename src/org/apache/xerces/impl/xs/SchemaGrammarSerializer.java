@@ -0,0 +1,2081 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Vector;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.dv.DVFactoryException;
+import org.apache.xerces.impl.dv.InvalidDatatypeFacetException;
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.SchemaDVFactory;
+import org.apache.xerces.impl.dv.ValidatedInfo;
+import org.apache.xerces.impl.dv.XSFacets;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.dv.xs.XSSimpleTypeDecl;
+import org.apache.xerces.impl.validation.ValidationState;
+import org.apache.xerces.impl.xpath.XPath;
+import org.apache.xerces.impl.xpath.XPathException;
+import org.apache.xerces.impl.xs.identity.Field;
+import org.apache.xerces.impl.xs.identity.IdentityConstraint;
+import org.apache.xerces.impl.xs.identity.KeyRef;
+import org.apache.xerces.impl.xs.identity.Selector;
+import org.apache.xerces.impl.xs.identity.UniqueOrKey;
+import org.apache.xerces.impl.xs.util.SimpleLocator;
+import org.apache.xerces.impl.xs.util.XSObjectListImpl;
+import org.apache.xerces.util.NamespaceSupport;
+import org.apache.xerces.util.SymbolHash;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xs.StringList;
+import org.apache.xerces.xs.XSAnnotation;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSObject;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
+import org.apache.xerces.xs.datatypes.ObjectList;
+import org.apache.xerces.xs.datatypes.XSQName;
+
+/**
+ * Writes compiled schema grammars to a compact binary form and reads them
+ * back, so that a set of schemas may be compiled once (for instance at
+ * build time) and later restored without parsing or traversing any schema
+ * document. The grammars read may be given to a grammar pool through
+ * <code>XMLGrammarPool.cacheGrammars</code>.
+ * <p>
+ * All the components reachable from the grammars written are stored,
+ * sharing the identity they had in memory. Global components of other
+ * namespaces are stored by name only: the built-in components of the
+ * schema and schema instance namespaces are found again on their own,
+ * while those of other namespaces are retrieved from the grammar pool
+ * given when reading. Simple types are rebuilt through the datatype
+ * factory from their base, item or member types and the facets they
+ * define themselves; default and fixed values are validated again.
+ * The content models of complex types are not stored: they are built
+ * again on first use, as they are for a grammar built from schema
+ * documents.
+ * <p>
+ * Objects of this class are not thread-safe.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class SchemaGrammarSerializer {
+
+    //
+    // Constants
+    //
+
+    /** Identifies a stream of serialized grammars ("XSGB"). */
+    private static final int MAGIC = 0x58534742;
+
+    /** Version of the serialized form. */
+    private static final int VERSION = 1;
+
+    // kinds of objects; objects are written and created in this order,
+    // so that an object is created after those needed to create it
+
+    private static final int GRAMMAR = 0;
+    private static final int EXTERNAL = 1;
+    private static final int ANNOTATION = 2;
+    private static final int SIMPLE_TYPE = 3;
+    private static final int UNIQUE_OR_KEY = 4;
+    private static final int KEYREF = 5;
+    private static final int COMPLEX_TYPE = 6;
+    private static final int ELEMENT = 7;
+    private static final int ATTRIBUTE = 8;
+    private static final int ATTRIBUTE_USE = 9;
+    private static final int ATTRIBUTE_GROUP = 10;
+    private static final int PARTICLE = 11;
+    private static final int MODEL_GROUP = 12;
+    private static final int WILDCARD = 13;
+    private static final int GROUP = 14;
+    private static final int NOTATION = 15;
+    private static final int KIND_COUNT = 16;
+
+    // where global components of another namespace are found
+
+    private static final int SOURCE_POOL = 0;
+    private static final int SOURCE_SCHEMA_NS = 1;
+    private static final int SOURCE_SCHEMA_NS_EXTENDED = 2;
+    private static final int SOURCE_XSI = 3;
+
+    /** Facets other than pattern and enumeration, in the order written. */
+    private static final short[] FACETS = {
+        XSSimpleTypeDefinition.FACET_LENGTH,
+        XSSimpleTypeDefinition.FACET_MINLENGTH,
+        XSSimpleTypeDefinition.FACET_MAXLENGTH,
+        XSSimpleTypeDefinition.FACET_WHITESPACE,
+        XSSimpleTypeDefinition.FACET_TOTALDIGITS,
+        XSSimpleTypeDefinition.FACET_FRACTIONDIGITS,
+        XSSimpleTypeDefinition.FACET_MAXINCLUSIVE,
+        XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE,
+        XSSimpleTypeDefinition.FACET_MININCLUSIVE,
+        XSSimpleTypeDefinition.FACET_MINEXCLUSIVE,
+    };
+
+    /** Lexical values of the whiteSpace facet, indexed by its value. */
+    private static final String[] WS_FACET_STRING = {
+        SchemaSymbols.ATTVAL_PRESERVE,
+        SchemaSymbols.ATTVAL_REPLACE,
+        SchemaSymbols.ATTVAL_COLLAPSE,
+    };
+
+    /** Empty array of namespace bindings. */
+    private static final String[] NO_BINDINGS = new String[0];
+
+    /** 
+     * Largest number of items allocated for a count read from the stream
+     * before the items themselves are read, so that a corrupt count fails
+     * on the end of the stream rather than on the allocation.
+     */
+    private static final int MAX_PREALLOCATED = 4096;
+
+    //
+    // Data
+    //
+
+    /** Symbol table used by the grammars read. */
+    private final SymbolTable fSymbolTable;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a serializer with its own symbol table. */
+    public SchemaGrammarSerializer() {
+        this(new SymbolTable());
+    } // <init>()
+
+    /** Constructs a serializer using the given symbol table for the grammars it reads. */
+    public SchemaGrammarSerializer(SymbolTable symbolTable) {
+        fSymbolTable = symbolTable;
+    } // <init>(SymbolTable)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Writes the given grammars and the components they contain to
+     * an output stream. The stream is flushed but not closed.
+     *
+     * @param grammars the grammars to write
+     * @param out      the stream to write to
+     * @throws IOException if the stream cannot be written, or if a
+     *                     grammar contains a component which cannot
+     *                     be serialized
+     */
+    public void writeGrammars(SchemaGrammar[] grammars, OutputStream out)
+        throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        new GrammarWriter(grammars, dataOut).write();
+        dataOut.flush();
+    } // writeGrammars(SchemaGrammar[],OutputStream)
+
+    /**
+     * Reads grammars previously written by <code>writeGrammars</code>.
+     *
+     * @param in   the stream to read from
+     * @param pool the pool in which the grammars of namespaces referred
+     *             to but not written are found, or <code>null</code>
+     * @return the grammars read, in the order they were written
+     * @throws IOException if the stream cannot be read, is not in the
+     *                     expected form, or refers to a component which
+     *                     cannot be found
+     */
+    public SchemaGrammar[] readGrammars(InputStream in, XMLGrammarPool pool)
+        throws IOException {
+        DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+        return new GrammarReader(dataIn, pool).read();
+    } // readGrammars(InputStream,XMLGrammarPool):SchemaGrammar[]
+
+    //
+    // Private static methods
+    //
+
+    /**
+     * Returns the keys and values of a table, sorted by key. The order of
+     * the entries of a table depends on the order in which they were added
+     * and on its hash function, so it is not kept when a grammar is read
+     * back; sorting them makes a grammar read back written as it was read.
+     * Keys which are components rather than names are sorted by the name
+     * of the component.
+     */
+    private static Object[] getEntries(SymbolHash table) {
+        Object[] entries = table.getEntries();
+        Object[][] pairs = new Object[entries.length / 2][];
+        for (int i = 0; i < pairs.length; i++) {
+            Object key = entries[i * 2];
+            if (!(key instanceof String)) {
+                XSObject component = (XSObject) key;
+                String namespace = component.getNamespace();
+                key = ((namespace != null) ? namespace : "") + ',' + component.getName();
+            }
+            pairs[i] = new Object[] { key, entries[i * 2], entries[i * 2 + 1] };
+        }
+        Arrays.sort(pairs, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return ((String) ((Object[]) o1)[0]).compareTo((String) ((Object[]) o2)[0]);
+            }
+        });
+        for (int i = 0; i < pairs.length; i++) {
+            entries[i * 2] = pairs[i][1];
+            entries[i * 2 + 1] = pairs[i][2];
+        }
+        return entries;
+    } // getEntries(SymbolHash):Object[]
+
+    /** Returns the kind of a component, or -1 if it cannot be serialized. */
+    private static int getKind(Object component) {
+        if (component instanceof XSAnnotationImpl) {
+            return ANNOTATION;
+        }
+        if (component instanceof XSSimpleTypeDecl) {
+            return SIMPLE_TYPE;
+        }
+        if (component instanceof UniqueOrKey) {
+            return UNIQUE_OR_KEY;
+        }
+        if (component instanceof KeyRef) {
+            return KEYREF;
+        }
+        if (component instanceof XSComplexTypeDecl) {
+            return COMPLEX_TYPE;
+        }
+        if (component instanceof XSElementDecl) {
+            return ELEMENT;
+        }
+        if (component instanceof XSAttributeDecl) {
+            return ATTRIBUTE;
+        }
+        if (component instanceof XSAttributeUseImpl) {
+            return ATTRIBUTE_USE;
+        }
+        if (component instanceof XSAttributeGroupDecl) {
+            return ATTRIBUTE_GROUP;
+        }
+        if (component instanceof XSParticleDecl) {
+            return PARTICLE;
+        }
+        if (component instanceof XSModelGroupImpl) {
+            return MODEL_GROUP;
+        }
+        if (component instanceof XSWildcardDecl) {
+            return WILDCARD;
+        }
+        if (component instanceof XSGroupDecl) {
+            return GROUP;
+        }
+        if (component instanceof XSNotationDecl) {
+            return NOTATION;
+        }
+        return -1;
+    } // getKind(Object):int
+
+    /** Returns whether a component of the given kind is a global component. */
+    private static boolean isGlobal(Object component, int kind) {
+        switch (kind) {
+            case SIMPLE_TYPE:
+            case COMPLEX_TYPE:
+                return !((XSTypeDefinition) component).getAnonymous();
+            case ELEMENT:
+                return ((XSElementDecl) component).fScope == XSConstants.SCOPE_GLOBAL;
+            case ATTRIBUTE:
+                return ((XSAttributeDecl) component).getScope() == XSConstants.SCOPE_GLOBAL;
+            case ATTRIBUTE_GROUP:
+                return ((XSAttributeGroupDecl) component).fName != null;
+            case UNIQUE_OR_KEY:
+            case KEYREF:
+            case GROUP:
+            case NOTATION:
+                return true;
+        }
+        return false;
+    } // isGlobal(Object,int):boolean
+
+    /** Looks up a global component of the given kind in a grammar. */
+    private static Object getGlobalComponent(SchemaGrammar grammar, int kind, String name) {
+        switch (kind) {
+            case SIMPLE_TYPE:
+            case COMPLEX_TYPE:
+                return grammar.getGlobalTypeDecl(name);
+            case ELEMENT:
+                return grammar.getGlobalElementDecl(name);
+            case ATTRIBUTE:
+                return grammar.getGlobalAttributeDecl(name);
+            case ATTRIBUTE_GROUP:
+                return grammar.getGlobalAttributeGroupDecl(name);
+            case GROUP:
+                return grammar.getGlobalGroupDecl(name);
+            case NOTATION:
+                return grammar.getGlobalNotationDecl(name);
+            case UNIQUE_OR_KEY:
+            case KEYREF:
+                return grammar.getIDConstraintDecl(name);
+        }
+        return null;
+    } // getGlobalComponent(SchemaGrammar,int,String):Object
+
+    /** Returns the annotation of a facet of a simple type, if any. */
+    private static XSAnnotation getFacetAnnotation(XSSimpleTypeDefinition type, short facet) {
+        if (!(type instanceof XSSimpleTypeDecl)) {
+            return null;
+        }
+        XSSimpleTypeDecl decl = (XSSimpleTypeDecl) type;
+        switch (facet) {
+            case XSSimpleTypeDefinition.FACET_LENGTH:
+                return decl.lengthAnnotation;
+            case XSSimpleTypeDefinition.FACET_MINLENGTH:
+                return decl.minLengthAnnotation;
+            case XSSimpleTypeDefinition.FACET_MAXLENGTH:
+                return decl.maxLengthAnnotation;
+            case XSSimpleTypeDefinition.FACET_WHITESPACE:
+                return decl.whiteSpaceAnnotation;
+            case XSSimpleTypeDefinition.FACET_TOTALDIGITS:
+                return decl.totalDigitsAnnotation;
+            case XSSimpleTypeDefinition.FACET_FRACTIONDIGITS:
+                return decl.fractionDigitsAnnotation;
+            case XSSimpleTypeDefinition.FACET_MAXINCLUSIVE:
+                return decl.maxInclusiveAnnotation;
+            case XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE:
+                return decl.maxExclusiveAnnotation;
+            case XSSimpleTypeDefinition.FACET_MININCLUSIVE:
+                return decl.minInclusiveAnnotation;
+            case XSSimpleTypeDefinition.FACET_MINEXCLUSIVE:
+                return decl.minExclusiveAnnotation;
+        }
+        return null;
+    } // getFacetAnnotation(XSSimpleTypeDefinition,short):XSAnnotation
+
+    /** Stores a facet value and its annotation in a set of facets. */
+    private static void setFacet(XSFacets facets, short facet, String value, XSAnnotation annotation)
+        throws IOException {
+        try {
+            switch (facet) {
+                case XSSimpleTypeDefinition.FACET_LENGTH:
+                    facets.length = Integer.parseInt(value);
+                    facets.lengthAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MINLENGTH:
+                    facets.minLength = Integer.parseInt(value);
+                    facets.minLengthAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MAXLENGTH:
+                    facets.maxLength = Integer.parseInt(value);
+                    facets.maxLengthAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_WHITESPACE:
+                    facets.whiteSpace = -1;
+                    for (short i = 0; i < WS_FACET_STRING.length; i++) {
+                        if (WS_FACET_STRING[i].equals(value)) {
+                            facets.whiteSpace = i;
+                        }
+                    }
+                    if (facets.whiteSpace == -1) {
+                        throw new IOException("Invalid whiteSpace facet '" + value + "'.");
+                    }
+                    facets.whiteSpaceAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_TOTALDIGITS:
+                    facets.totalDigits = Integer.parseInt(value);
+                    facets.totalDigitsAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_FRACTIONDIGITS:
+                    facets.fractionDigits = Integer.parseInt(value);
+                    facets.fractionDigitsAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MAXINCLUSIVE:
+                    facets.maxInclusive = value;
+                    facets.maxInclusiveAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE:
+                    facets.maxExclusive = value;
+                    facets.maxExclusiveAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MININCLUSIVE:
+                    facets.minInclusive = value;
+                    facets.minInclusiveAnnotation = annotation;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MINEXCLUSIVE:
+                    facets.minExclusive = value;
+                    facets.minExclusiveAnnotation = annotation;
+                    break;
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid facet value '" + value + "'.");
+        }
+    } // setFacet(XSFacets,short,String,XSAnnotation)
+
+    /**
+     * Collects the prefix and namespace of each QName in an actual value,
+     * as pairs of strings. QNames and NOTATIONs are the only values whose
+     * validation depends on the namespace bindings in scope.
+     */
+    private static void collectBindings(Object actualValue, Vector bindings) {
+        if (actualValue instanceof XSQName) {
+            QName qname = ((XSQName) actualValue).getXNIQName();
+            if (qname.prefix != null && qname.prefix.length() > 0 && qname.uri != null) {
+                bindings.addElement(qname.prefix);
+                bindings.addElement(qname.uri);
+            }
+        }
+        else if (actualValue instanceof ObjectList) {
+            ObjectList list = (ObjectList) actualValue;
+            for (int i = 0; i < list.getLength(); i++) {
+                collectBindings(list.item(i), bindings);
+            }
+        }
+    } // collectBindings(Object,Vector)
+
+    /** Collects the prefixed names tested by an XPath expression, as pairs of strings. */
+    private static void collectBindings(XPath xpath, Vector bindings) {
+        XPath.LocationPath[] paths = xpath.getLocationPaths();
+        for (int i = 0; i < paths.length; i++) {
+            XPath.Step[] steps = paths[i].steps;
+            for (int j = 0; j < steps.length; j++) {
+                QName name = steps[j].nodeTest.name;
+                if (name.prefix != null && name.prefix.length() > 0 && name.uri != null) {
+                    bindings.addElement(name.prefix);
+                    bindings.addElement(name.uri);
+                }
+            }
+        }
+    } // collectBindings(XPath,Vector)
+
+    /** Returns whether two string lists contain the same strings. */
+    private static boolean sameStrings(StringList list1, StringList list2) {
+        if (list1.getLength() != list2.getLength()) {
+            return false;
+        }
+        for (int i = 0; i < list1.getLength(); i++) {
+            if (!list1.item(i).equals(list2.item(i))) {
+                return false;
+            }
+        }
+        return true;
+    } // equals(StringList,StringList):boolean
+
+    //
+    // Classes
+    //
+
+    /**
+     * Key comparing objects by identity, so that distinct components
+     * which are equal are given different ids.
+     */
+    private static final class IdentityKey {
+
+        private final Object fObject;
+
+        IdentityKey(Object object) {
+            fObject = object;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(fObject);
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).fObject == fObject;
+        }
+
+    } // class IdentityKey
+
+    /**
+     * Writes one set of grammars. Every object is given an id; the kind
+     * and header of each object are written first, in order of ids,
+     * followed by the remaining fields of each object.
+     */
+    private static final class GrammarWriter {
+
+        private final SchemaGrammar[] fGrammars;
+        private final DataOutputStream fOut;
+
+        /** Ids of objects, by identity. */
+        private final HashMap fIds = new HashMap();
+
+        /** Objects found, by kind. */
+        private final Vector[] fFound = new Vector[KIND_COUNT];
+
+        /** Objects of which the fields have not yet been visited. */
+        private final Vector fPending = new Vector();
+
+        /** Kinds of the external components, by identity. */
+        private final HashMap fExternalKinds = new HashMap();
+
+        /** Grammars owning the annotations, by identity. */
+        private final HashMap fAnnotationOwners = new HashMap();
+
+        /** Grammar whose components are being visited. */
+        private SchemaGrammar fOwner;
+
+        /** Objects in order of ids. */
+        private Object[] fObjects;
+
+        /** Kinds of the objects, in order of ids. */
+        private int[] fKinds;
+
+        /** Indices of the strings written, by value. */
+        private final HashMap fStrings = new HashMap();
+
+        GrammarWriter(SchemaGrammar[] grammars, DataOutputStream out) {
+            fGrammars = grammars;
+            fOut = out;
+            for (int i = 0; i < KIND_COUNT; i++) {
+                fFound[i] = new Vector();
+            }
+        }
+
+        void write() throws IOException {
+            for (int i = 0; i < fGrammars.length; i++) {
+                add(fGrammars[i], GRAMMAR);
+            }
+            for (int i = 0; i < fGrammars.length; i++) {
+                fOwner = fGrammars[i];
+                visitGrammar(fGrammars[i]);
+                while (fPending.size() > 0) {
+                    Object o = fPending.remove(fPending.size() - 1);
+                    visit(o, getKind(o));
+                }
+            }
+            assignIds();
+
+            fOut.writeInt(MAGIC);
+            writeInt(VERSION);
+            writeInt(fGrammars.length);
+            writeInt(fObjects.length);
+            for (int i = 0; i < fObjects.length; i++) {
+                writeInt(fKinds[i]);
+                writeHeader(fObjects[i], fKinds[i]);
+            }
+            // the tables of a grammar are filled in once the components
+            // they contain are complete
+            for (int i = fGrammars.length; i < fObjects.length; i++) {
+                writeFields(fObjects[i], fKinds[i]);
+            }
+            for (int i = 0; i < fGrammars.length; i++) {
+                writeFields(fObjects[i], fKinds[i]);
+            }
+        }
+
+        //
+        // Finding objects
+        //
+
+        private void add(Object o, int kind) {
+            IdentityKey key = new IdentityKey(o);
+            if (fIds.containsKey(key)) {
+                return;
+            }
+            fIds.put(key, null);
+            fFound[kind].addElement(o);
+        }
+
+        private void addComponent(Object o) throws IOException {
+            if (o == null || fIds.containsKey(new IdentityKey(o))) {
+                return;
+            }
+            int kind = getKind(o);
+            if (kind == -1) {
+                throw new IOException("Cannot serialize component of " + o.getClass().getName() + ".");
+            }
+            if (isExternal(o, kind)) {
+                fExternalKinds.put(new IdentityKey(o), new Integer(kind));
+                add(o, EXTERNAL);
+                return;
+            }
+            add(o, kind);
+            if (kind == ANNOTATION) {
+                fAnnotationOwners.put(new IdentityKey(o), fOwner);
+            }
+            else {
+                fPending.addElement(o);
+            }
+        }
+
+        private void addComponents(XSObjectList list) throws IOException {
+            if (list != null) {
+                for (int i = 0; i < list.getLength(); i++) {
+                    addComponent(list.item(i));
+                }
+            }
+        }
+
+        private void addValues(SymbolHash table) throws IOException {
+            Object[] entries = getEntries(table);
+            for (int i = 1; i < entries.length; i += 2) {
+                addComponent(entries[i]);
+            }
+        }
+
+        /**
+         * Returns whether a component is a global component of a namespace
+         * whose grammar is not written, and is stored by name only.
+         */
+        private boolean isExternal(Object o, int kind) {
+            if (!isGlobal(o, kind)) {
+                return false;
+            }
+            String namespace = ((XSObject) o).getNamespace();
+            if (getSource(o, kind) != SOURCE_POOL) {
+                return true;
+            }
+            for (int i = 0; i < fGrammars.length; i++) {
+                if (fGrammars[i].getTargetNamespace() == namespace) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int getSource(Object o, int kind) {
+            String namespace = ((XSObject) o).getNamespace();
+            String name = ((XSObject) o).getName();
+            if (namespace == SchemaSymbols.URI_SCHEMAFORSCHEMA) {
+                if (getGlobalComponent(SchemaGrammar.SG_SchemaNS, kind, name) == o) {
+                    return SOURCE_SCHEMA_NS;
+                }
+                SchemaGrammar extended = SchemaGrammar.getS4SGrammar(Constants.SCHEMA_VERSION_1_0_EXTENDED);
+                if (getGlobalComponent(extended, kind, name) == o) {
+                    return SOURCE_SCHEMA_NS_EXTENDED;
+                }
+            }
+            else if (namespace == SchemaSymbols.URI_XSI) {
+                if (getGlobalComponent(SchemaGrammar.SG_XSI, kind, name) == o) {
+                    return SOURCE_XSI;
+                }
+            }
+            return SOURCE_POOL;
+        }
+
+        private void visitGrammar(SchemaGrammar grammar) throws IOException {
+            addValues(grammar.fGlobalAttrDecls);
+            addValues(grammar.fGlobalAttrGrpDecls);
+            addValues(grammar.fGlobalElemDecls);
+            addValues(grammar.fGlobalGroupDecls);
+            addValues(grammar.fGlobalNotationDecls);
+            addValues(grammar.fGlobalIDConstraintDecls);
+            addValues(grammar.fGlobalTypeDecls);
+            addValues(grammar.fGlobalAttrDeclsExt);
+            addValues(grammar.fGlobalAttrGrpDeclsExt);
+            addValues(grammar.fGlobalElemDeclsExt);
+            addValues(grammar.fGlobalGroupDeclsExt);
+            addValues(grammar.fGlobalNotationDeclsExt);
+            addValues(grammar.fGlobalIDConstraintDeclsExt);
+            addValues(grammar.fGlobalTypeDeclsExt);
+            addValues(grammar.fAllGlobalElemDecls);
+            addComponents(grammar.getAnnotations());
+            XSComplexTypeDecl[] types = grammar.getUncheckedComplexTypeDecls();
+            for (int i = 0; i < types.length; i++) {
+                addComponent(types[i]);
+            }
+            XSGroupDecl[] groups = grammar.getRedefinedGroupDecls();
+            for (int i = 0; i < groups.length; i++) {
+                addComponent(groups[i]);
+            }
+        }
+
+        private void visit(Object o, int kind) throws IOException {
+            switch (kind) {
+                case SIMPLE_TYPE: {
+                    XSSimpleTypeDecl type = (XSSimpleTypeDecl) o;
+                    addComponent(type.getBaseType());
+                    addComponent(type.getItemType());
+                    addComponents(type.getMemberTypes());
+                    addComponents(type.getAnnotations());
+                    for (int i = 0; i < FACETS.length; i++) {
+                        addComponent(getFacetAnnotation(type, FACETS[i]));
+                    }
+                    addComponents(type.patternAnnotations);
+                    addComponents(type.enumerationAnnotations);
+                    break;
+                }
+                case UNIQUE_OR_KEY:
+                    addComponents(((IdentityConstraint) o).getAnnotations());
+                    break;
+                case KEYREF:
+                    addComponent(((KeyRef) o).getKey());
+                    addComponents(((IdentityConstraint) o).getAnnotations());
+                    break;
+                case COMPLEX_TYPE: {
+                    XSComplexTypeDecl type = (XSComplexTypeDecl) o;
+                    addComponent(type.fBaseType);
+                    addComponent(type.fAttrGrp);
+                    addComponent(type.fXSSimpleType);
+                    addComponent(type.fParticle);
+                    addComponents(type.fAnnotations);
+                    break;
+                }
+                case ELEMENT: {
+                    XSElementDecl element = (XSElementDecl) o;
+                    addComponent(element.fType);
+                    addComponent(element.fEnclosingCT);
+                    addComponents(element.fAnnotations);
+                    addComponent(element.fSubGroup);
+                    for (int i = 0; i < element.fIDCPos; i++) {
+                        addComponent(element.fIDConstraints[i]);
+                    }
+                    break;
+                }
+                case ATTRIBUTE: {
+                    XSAttributeDecl attribute = (XSAttributeDecl) o;
+                    addComponent(attribute.fType);
+                    addComponent(attribute.fEnclosingCT);
+                    addComponents(attribute.fAnnotations);
+                    break;
+                }
+                case ATTRIBUTE_USE: {
+                    XSAttributeUseImpl use = (XSAttributeUseImpl) o;
+                    addComponent(use.fAttrDecl);
+                    addComponents(use.fAnnotations);
+                    break;
+                }
+                case ATTRIBUTE_GROUP: {
+                    XSAttributeGroupDecl group = (XSAttributeGroupDecl) o;
+                    for (int i = 0; i < group.fAttrUseNum; i++) {
+                        addComponent(group.fAttributeUses[i]);
+                    }
+                    addComponent(group.fAttributeWC);
+                    addComponents(group.fAnnotations);
+                    break;
+                }
+                case PARTICLE: {
+                    XSParticleDecl particle = (XSParticleDecl) o;
+                    addComponent(particle.fValue);
+                    addComponents(particle.fAnnotations);
+                    break;
+                }
+                case MODEL_GROUP: {
+                    XSModelGroupImpl group = (XSModelGroupImpl) o;
+                    for (int i = 0; i < group.fParticleCount; i++) {
+                        addComponent(group.fParticles[i]);
+                    }
+                    addComponents(group.fAnnotations);
+                    break;
+                }
+                case WILDCARD:
+                    addComponents(((XSWildcardDecl) o).fAnnotations);
+                    break;
+                case GROUP: {
+                    XSGroupDecl group = (XSGroupDecl) o;
+                    addComponent(group.fModelGroup);
+                    addComponents(group.fAnnotations);
+                    break;
+                }
+                case NOTATION:
+                    addComponents(((XSNotationDecl) o).fAnnotations);
+                    break;
+            }
+        }
+
+        /**
+         * Gives ids to the objects found, by kind. Simple types are ordered
+         * so that each one follows the types it is derived from.
+         */
+        private void assignIds() {
+            Vector simpleTypes = new Vector();
+            HashMap pending = new HashMap();
+            for (int i = 0; i < fFound[SIMPLE_TYPE].size(); i++) {
+                Object type = fFound[SIMPLE_TYPE].elementAt(i);
+                pending.put(new IdentityKey(type), type);
+            }
+            for (int i = 0; i < fFound[SIMPLE_TYPE].size(); i++) {
+                orderSimpleType((XSSimpleTypeDecl) fFound[SIMPLE_TYPE].elementAt(i), simpleTypes, pending);
+            }
+            fFound[SIMPLE_TYPE] = simpleTypes;
+
+            int count = 0;
+            for (int i = 0; i < KIND_COUNT; i++) {
+                count += fFound[i].size();
+            }
+            fObjects = new Object[count];
+            fKinds = new int[count];
+            int id = 0;
+            for (int i = 0; i < KIND_COUNT; i++) {
+                for (int j = 0; j < fFound[i].size(); j++) {
+                    fObjects[id] = fFound[i].elementAt(j);
+                    fKinds[id] = i;
+                    fIds.put(new IdentityKey(fObjects[id]), new Integer(id));
+                    id++;
+                }
+            }
+        }
+
+        private void orderSimpleType(XSSimpleTypeDefinition type, Vector ordered, HashMap pending) {
+            if (type == null || pending.remove(new IdentityKey(type)) == null) {
+                return;
+            }
+            XSTypeDefinition base = type.getBaseType();
+            if (base instanceof XSSimpleTypeDefinition) {
+                orderSimpleType((XSSimpleTypeDefinition) base, ordered, pending);
+            }
+            orderSimpleType(type.getItemType(), ordered, pending);
+            XSObjectList members = type.getMemberTypes();
+            for (int i = 0; i < members.getLength(); i++) {
+                orderSimpleType((XSSimpleTypeDefinition) members.item(i), ordered, pending);
+            }
+            ordered.addElement(type);
+        }
+
+        //
+        // Writing objects
+        //
+
+        private void writeHeader(Object o, int kind) throws IOException {
+            switch (kind) {
+                case GRAMMAR: {
+                    SchemaGrammar grammar = (SchemaGrammar) o;
+                    XSDDescription desc = (XSDDescription) grammar.getGrammarDescription();
+                    writeString(grammar.getTargetNamespace());
+                    writeString(desc.getPublicId());
+                    writeString(desc.getLiteralSystemId());
+                    writeString(desc.getBaseSystemId());
+                    writeString(desc.getExpandedSystemId());
+                    writeInt(desc.getContextType());
+                    writeStrings(desc.getLocationHints());
+                    break;
+                }
+                case EXTERNAL: {
+                    int componentKind = ((Integer) fExternalKinds.get(new IdentityKey(o))).intValue();
+                    writeInt(componentKind);
+                    writeInt(getSource(o, componentKind));
+                    writeString(((XSObject) o).getNamespace());
+                    writeString(((XSObject) o).getName());
+                    break;
+                }
+                case ANNOTATION:
+                    writeRef(fAnnotationOwners.get(new IdentityKey(o)));
+                    writeText(((XSAnnotationImpl) o).getAnnotationString());
+                    break;
+                case SIMPLE_TYPE:
+                    writeSimpleType((XSSimpleTypeDecl) o);
+                    break;
+                case UNIQUE_OR_KEY: {
+                    UniqueOrKey idc = (UniqueOrKey) o;
+                    writeString(idc.getNamespace());
+                    writeString(idc.getIdentityConstraintName());
+                    writeString(idc.getElementName());
+                    writeInt(idc.getCategory());
+                    break;
+                }
+                case KEYREF: {
+                    KeyRef idc = (KeyRef) o;
+                    writeString(idc.getNamespace());
+                    writeString(idc.getIdentityConstraintName());
+                    writeString(idc.getElementName());
+                    writeRef(idc.getKey());
+                    break;
+                }
+            }
+        }
+
+        private void writeSimpleType(XSSimpleTypeDecl type) throws IOException {
+            writeString(type.getTypeName());
+            writeString(type.getNamespace());
+            writeInt(type.getFinal());
+            fOut.writeBoolean(type.getAnonymous());
+            writeAnnotations(type.getAnnotations());
+
+            XSTypeDefinition base = type.getBaseType();
+            boolean fromAnySimpleType = base.getNamespace() == SchemaSymbols.URI_SCHEMAFORSCHEMA
+                && base.getName() == SchemaSymbols.ATTVAL_ANYSIMPLETYPE;
+            if (type.getVariety() == XSSimpleTypeDefinition.VARIETY_LIST && fromAnySimpleType) {
+                writeInt(XSSimpleTypeDefinition.VARIETY_LIST);
+                writeRef(type.getItemType());
+                return;
+            }
+            if (type.getVariety() == XSSimpleTypeDefinition.VARIETY_UNION && fromAnySimpleType) {
+                XSObjectList members = type.getMemberTypes();
+                writeInt(XSSimpleTypeDefinition.VARIETY_UNION);
+                writeInt(members.getLength());
+                for (int i = 0; i < members.getLength(); i++) {
+                    writeRef(members.item(i));
+                }
+                return;
+            }
+            writeInt(XSSimpleTypeDefinition.VARIETY_ABSENT);
+            writeRef(base);
+
+            // only the facets defined by the type itself are written; the
+            // others are inherited from the base type again when reading
+            XSSimpleTypeDefinition baseType = (XSSimpleTypeDefinition) base;
+            short defined = type.getDefinedFacets();
+            short fixed = type.getFixedFacets();
+            short baseDefined = baseType.getDefinedFacets();
+            short baseFixed = baseType.getFixedFacets();
+            short present = 0;
+            for (int i = 0; i < FACETS.length; i++) {
+                short facet = FACETS[i];
+                if ((defined & facet) != 0
+                    && ((baseDefined & facet) == 0
+                        || (fixed & facet) != (baseFixed & facet)
+                        || !type.getLexicalFacetValue(facet).equals(baseType.getLexicalFacetValue(facet))
+                        || getFacetAnnotation(type, facet) != getFacetAnnotation(baseType, facet))) {
+                    present |= facet;
+                }
+            }
+            StringList patterns = type.getLexicalPattern();
+            int ownAnnotations = 0;
+            if (patterns.getLength() > baseType.getLexicalPattern().getLength()) {
+                present |= XSSimpleTypeDefinition.FACET_PATTERN;
+                XSObjectList annotations = type.patternAnnotations;
+                XSObjectList baseAnnotations = (baseType instanceof XSSimpleTypeDecl) ?
+                    ((XSSimpleTypeDecl) baseType).patternAnnotations : null;
+                if (annotations != null && annotations != baseAnnotations) {
+                    ownAnnotations = annotations.getLength() -
+                        ((baseAnnotations != null) ? baseAnnotations.getLength() : 0);
+                }
+            }
+            StringList enumeration = type.getLexicalEnumeration();
+            if ((defined & XSSimpleTypeDefinition.FACET_ENUMERATION) != 0
+                && ((baseDefined & XSSimpleTypeDefinition.FACET_ENUMERATION) == 0
+                    || !sameStrings(enumeration, baseType.getLexicalEnumeration())
+                    || (fixed & XSSimpleTypeDefinition.FACET_ENUMERATION) !=
+                       (baseFixed & XSSimpleTypeDefinition.FACET_ENUMERATION)
+                    || !(baseType instanceof XSSimpleTypeDecl)
+                    || type.enumerationAnnotations != ((XSSimpleTypeDecl) baseType).enumerationAnnotations)) {
+                present |= XSSimpleTypeDefinition.FACET_ENUMERATION;
+            }
+
+            writeInt(present);
+            writeInt(fixed & present);
+            for (int i = 0; i < FACETS.length; i++) {
+                if ((present & FACETS[i]) != 0) {
+                    writeString(type.getLexicalFacetValue(FACETS[i]));
+                    writeRef(getFacetAnnotation(type, FACETS[i]));
+                }
+            }
+            if ((present & XSSimpleTypeDefinition.FACET_PATTERN) != 0) {
+                writeText(patterns.item(0));
+                writeInt(ownAnnotations);
+                for (int i = 0; i < ownAnnotations; i++) {
+                    writeRef(type.patternAnnotations.item(i));
+                }
+            }
+            if ((present & XSSimpleTypeDefinition.FACET_ENUMERATION) != 0) {
+                ObjectList values = type.getActualEnumeration();
+                writeInt(enumeration.getLength());
+                for (int i = 0; i < enumeration.getLength(); i++) {
+                    writeText(enumeration.item(i));
+                    Vector bindings = new Vector();
+                    collectBindings(values.item(i), bindings);
+                    writeBindings(bindings);
+                }
+                writeAnnotations(type.enumerationAnnotations);
+            }
+        }
+
+        private void writeFields(Object o, int kind) throws IOException {
+            switch (kind) {
+                case GRAMMAR:
+                    writeGrammar((SchemaGrammar) o);
+                    break;
+                case UNIQUE_OR_KEY:
+                case KEYREF: {
+                    IdentityConstraint idc = (IdentityConstraint) o;
+                    writeXPath(idc.getSelector().getXPath());
+                    writeInt(idc.getFieldCount());
+                    for (int i = 0; i < idc.getFieldCount(); i++) {
+                        writeXPath(idc.getFieldAt(i).getXPath());
+                    }
+                    writeAnnotations(idc.getAnnotations());
+                    break;
+                }
+                case COMPLEX_TYPE: {
+                    XSComplexTypeDecl type = (XSComplexTypeDecl) o;
+                    writeString(type.fName);
+                    writeString(type.fTargetNamespace);
+                    writeRef(type.fBaseType);
+                    writeInt(type.fDerivedBy);
+                    writeInt(type.fFinal);
+                    writeInt(type.fBlock);
+                    writeInt(type.fMiscFlags);
+                    writeRef(type.fAttrGrp);
+                    writeInt(type.fContentType);
+                    writeRef(type.fXSSimpleType);
+                    writeRef(type.fParticle);
+                    writeAnnotations(type.fAnnotations);
+                    break;
+                }
+                case ELEMENT: {
+                    XSElementDecl element = (XSElementDecl) o;
+                    writeString(element.fName);
+                    writeString(element.fTargetNamespace);
+                    writeRef(element.fType);
+                    writeInt(element.fMiscFlags);
+                    writeInt(element.fScope);
+                    writeRef(element.fEnclosingCT);
+                    writeInt(element.fBlock);
+                    writeInt(element.fFinal);
+                    writeAnnotations(element.fAnnotations);
+                    writeRef(element.fSubGroup);
+                    writeInt(element.fIDCPos);
+                    for (int i = 0; i < element.fIDCPos; i++) {
+                        writeRef(element.fIDConstraints[i]);
+                    }
+                    writeDefault(element.fDefault);
+                    break;
+                }
+                case ATTRIBUTE: {
+                    XSAttributeDecl attribute = (XSAttributeDecl) o;
+                    writeString(attribute.fName);
+                    writeString(attribute.fTargetNamespace);
+                    writeRef(attribute.fType);
+                    writeInt(attribute.fConstraintType);
+                    writeInt(attribute.fScope);
+                    writeRef(attribute.fEnclosingCT);
+                    writeAnnotations(attribute.fAnnotations);
+                    writeDefault(attribute.fDefault);
+                    break;
+                }
+                case ATTRIBUTE_USE: {
+                    XSAttributeUseImpl use = (XSAttributeUseImpl) o;
+                    writeRef(use.fAttrDecl);
+                    writeInt(use.fUse);
+                    writeInt(use.fConstraintType);
+                    writeAnnotations(use.fAnnotations);
+                    writeDefault(use.fDefault);
+                    break;
+                }
+                case ATTRIBUTE_GROUP: {
+                    XSAttributeGroupDecl group = (XSAttributeGroupDecl) o;
+                    writeString(group.fName);
+                    writeString(group.fTargetNamespace);
+                    writeInt(group.fAttrUseNum);
+                    for (int i = 0; i < group.fAttrUseNum; i++) {
+                        writeRef(group.fAttributeUses[i]);
+                    }
+                    writeRef(group.fAttributeWC);
+                    writeString(group.fIDAttrName);
+                    writeAnnotations(group.fAnnotations);
+                    break;
+                }
+                case PARTICLE: {
+                    XSParticleDecl particle = (XSParticleDecl) o;
+                    writeInt(particle.fType);
+                    writeRef(particle.fValue);
+                    writeInt(particle.fMinOccurs);
+                    writeInt(particle.fMaxOccurs);
+                    writeAnnotations(particle.fAnnotations);
+                    break;
+                }
+                case MODEL_GROUP: {
+                    XSModelGroupImpl group = (XSModelGroupImpl) o;
+                    writeInt(group.fCompositor);
+                    writeInt(group.fParticleCount);
+                    for (int i = 0; i < group.fParticleCount; i++) {
+                        writeRef(group.fParticles[i]);
+                    }
+                    writeAnnotations(group.fAnnotations);
+                    break;
+                }
+                case WILDCARD: {
+                    XSWildcardDecl wildcard = (XSWildcardDecl) o;
+                    writeInt(wildcard.fType);
+                    writeInt(wildcard.fProcessContents);
+                    writeStrings(wildcard.fNamespaceList);
+                    writeAnnotations(wildcard.fAnnotations);
+                    break;
+                }
+                case GROUP: {
+                    XSGroupDecl group = (XSGroupDecl) o;
+                    writeString(group.fName);
+                    writeString(group.fTargetNamespace);
+                    writeRef(group.fModelGroup);
+                    writeAnnotations(group.fAnnotations);
+                    break;
+                }
+                case NOTATION: {
+                    XSNotationDecl notation = (XSNotationDecl) o;
+                    writeString(notation.fName);
+                    writeString(notation.fTargetNamespace);
+                    writeString(notation.fPublicId);
+                    writeString(notation.fSystemId);
+                    writeAnnotations(notation.fAnnotations);
+                    break;
+                }
+            }
+        }
+
+        private void writeGrammar(SchemaGrammar grammar) throws IOException {
+            writeTable(grammar.fGlobalAttrDecls);
+            writeTable(grammar.fGlobalAttrGrpDecls);
+            writeTable(grammar.fGlobalElemDecls);
+            writeTable(grammar.fGlobalGroupDecls);
+            writeTable(grammar.fGlobalNotationDecls);
+            writeTable(grammar.fGlobalIDConstraintDecls);
+            writeTable(grammar.fGlobalTypeDecls);
+            writeTable(grammar.fGlobalAttrDeclsExt);
+            writeTable(grammar.fGlobalAttrGrpDeclsExt);
+            writeTable(grammar.fGlobalElemDeclsExt);
+            writeTable(grammar.fGlobalGroupDeclsExt);
+            writeTable(grammar.fGlobalNotationDeclsExt);
+            writeTable(grammar.fGlobalIDConstraintDeclsExt);
+            writeTable(grammar.fGlobalTypeDeclsExt);
+
+            Object[] entries = getEntries(grammar.fAllGlobalElemDecls);
+            writeInt(entries.length / 2);
+            for (int i = 1; i < entries.length; i += 2) {
+                writeRef(entries[i]);
+            }
+            writeAnnotations(grammar.getAnnotations());
+
+            XSComplexTypeDecl[] types = grammar.getUncheckedComplexTypeDecls();
+            SimpleLocator[] typeLocators = grammar.getUncheckedCTLocators();
+            writeInt(types.length);
+            for (int i = 0; i < types.length; i++) {
+                writeRef(types[i]);
+                writeLocator(typeLocators[i]);
+            }
+            XSGroupDecl[] groups = grammar.getRedefinedGroupDecls();
+            SimpleLocator[] groupLocators = grammar.getRGLocators();
+            writeInt(groups.length / 2);
+            for (int i = 0; i < groups.length; i += 2) {
+                writeRef(groups[i]);
+                writeRef(groups[i + 1]);
+                writeLocator(groupLocators[i / 2]);
+            }
+
+            Vector imported = grammar.getImportedGrammars();
+            if (imported == null) {
+                writeInt(-1);
+            }
+            else {
+                writeInt(imported.size());
+                for (int i = 0; i < imported.size(); i++) {
+                    writeString(((SchemaGrammar) imported.elementAt(i)).getTargetNamespace());
+                }
+            }
+            StringList locations = grammar.getDocumentLocations();
+            writeInt(locations.getLength());
+            for (int i = 0; i < locations.getLength(); i++) {
+                writeString(locations.item(i));
+            }
+            fOut.writeBoolean(grammar.fFullChecked);
+            fOut.writeBoolean(grammar.isImmutable());
+        }
+
+        private void writeTable(SymbolHash table) throws IOException {
+            Object[] entries = getEntries(table);
+            writeInt(entries.length / 2);
+            for (int i = 0; i < entries.length; i += 2) {
+                writeString((String) entries[i]);
+                writeRef(entries[i + 1]);
+            }
+        }
+
+        private void writeLocator(SimpleLocator locator) throws IOException {
+            fOut.writeBoolean(locator != null);
+            if (locator != null) {
+                writeString(locator.getLiteralSystemId());
+                writeString(locator.getExpandedSystemId());
+                writeInt(locator.getLineNumber());
+                writeInt(locator.getColumnNumber());
+                writeInt(locator.getCharacterOffset());
+            }
+        }
+
+        private void writeXPath(XPath xpath) throws IOException {
+            writeText(xpath.getExpression());
+            Vector bindings = new Vector();
+            collectBindings(xpath, bindings);
+            writeBindings(bindings);
+        }
+
+        private void writeDefault(ValidatedInfo value) throws IOException {
+            if (value == null) {
+                writeText(null);
+                return;
+            }
+            writeText(value.normalizedValue);
+            Vector bindings = new Vector();
+            collectBindings(value.actualValue, bindings);
+            writeBindings(bindings);
+        }
+
+        private void writeBindings(Vector bindings) throws IOException {
+            writeInt(bindings.size() / 2);
+            for (int i = 0; i < bindings.size(); i++) {
+                writeString((String) bindings.elementAt(i));
+            }
+        }
+
+        private void writeAnnotations(XSObjectList annotations) throws IOException {
+            if (annotations == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(annotations.getLength());
+            for (int i = 0; i < annotations.getLength(); i++) {
+                writeRef(annotations.item(i));
+            }
+        }
+
+        private void writeRef(Object o) throws IOException {
+            if (o == null) {
+                writeInt(0);
+                return;
+            }
+            Integer id = (Integer) fIds.get(new IdentityKey(o));
+            if (id == null) {
+                throw new IOException("Component " + o + " was not found.");
+            }
+            writeInt(id.intValue() + 1);
+        }
+
+        private void writeStrings(String[] strings) throws IOException {
+            if (strings == null) {
+                writeInt(-1);
+                return;
+            }
+            writeInt(strings.length);
+            for (int i = 0; i < strings.length; i++) {
+                writeString(strings[i]);
+            }
+        }
+
+        /**
+         * Writes a string which may occur many times: the characters are
+         * written on first occurrence, and an index thereafter.
+         */
+        private void writeString(String s) throws IOException {
+            if (s == null) {
+                writeInt(0);
+                return;
+            }
+            Integer index = (Integer) fStrings.get(s);
+            if (index != null) {
+                writeInt(index.intValue() + 2);
+                return;
+            }
+            fStrings.put(s, new Integer(fStrings.size()));
+            writeInt(1);
+            writeChars(s);
+        }
+
+        /** Writes a string which is not expected to occur again. */
+        private void writeText(String s) throws IOException {
+            fOut.writeBoolean(s != null);
+            if (s != null) {
+                writeChars(s);
+            }
+        }
+
+        private void writeChars(String s) throws IOException {
+            byte[] bytes = s.getBytes("UTF8");
+            writeInt(bytes.length);
+            fOut.write(bytes);
+        }
+
+        /** Writes an int in as few bytes as its magnitude requires. */
+        private void writeInt(int value) throws IOException {
+            int zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                fOut.writeByte((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            fOut.writeByte(zigzag);
+        }
+
+    } // class GrammarWriter
+
+    /**
+     * Reads one set of grammars: the objects are created from their
+     * headers, their fields are then filled in, and default values are
+     * validated once all the types are complete.
+     */
+    private final class GrammarReader {
+
+        private final DataInputStream fIn;
+        private final XMLGrammarPool fPool;
+
+        /** Objects in order of ids. */
+        private Object[] fObjects;
+
+        /** Kinds of the objects, in order of ids. */
+        private int[] fKinds;
+
+        /** Strings read, in order of first occurrence. */
+        private final Vector fStrings = new Vector();
+
+        /** Objects with a default value, followed by the value and its bindings. */
+        private final Vector fDefaults = new Vector();
+
+        /** Validation context used for facets and values. */
+        private final ValidationState fValidationState = new ValidationState();
+
+        private SchemaDVFactory fDVFactory;
+
+        GrammarReader(DataInputStream in, XMLGrammarPool pool) {
+            fIn = in;
+            fPool = pool;
+            fValidationState.setExtraChecking(false);
+            fValidationState.setSymbolTable(fSymbolTable);
+        }
+
+        SchemaGrammar[] read() throws IOException {
+            if (fIn.readInt() != MAGIC) {
+                throw new IOException("Not a serialized schema grammar.");
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of serialized schema grammars.");
+            }
+            try {
+                fDVFactory = SchemaDVFactory.getInstance();
+            }
+            catch (DVFactoryException e) {
+                throw new IOException(e.getMessage());
+            }
+            int grammarCount = readCount();
+            int count = readCount();
+            if (grammarCount > count) {
+                throw new IOException("Invalid grammar count " + grammarCount + ".");
+            }
+            fObjects = (Object[]) newArray(Object.class, count);
+            fKinds = new int[fObjects.length];
+            for (int i = 0; i < count; i++) {
+                if (i == fKinds.length) {
+                    fObjects = grow(fObjects, count);
+                    int[] kinds = new int[fObjects.length];
+                    System.arraycopy(fKinds, 0, kinds, 0, i);
+                    fKinds = kinds;
+                }
+                fKinds[i] = readInt();
+                fObjects[i] = readHeader(fKinds[i]);
+            }
+            SchemaGrammar[] grammars = new SchemaGrammar[grammarCount];
+            for (int i = 0; i < grammars.length; i++) {
+                grammars[i] = (SchemaGrammar) fObjects[i];
+            }
+            for (int i = grammars.length; i < count; i++) {
+                readFields(fObjects[i], fKinds[i], grammars);
+            }
+            for (int i = 0; i < grammars.length; i++) {
+                readFields(fObjects[i], fKinds[i], grammars);
+            }
+            for (int i = 0; i < fDefaults.size(); i += 3) {
+                validateDefault(fDefaults.elementAt(i),
+                        (ValidatedInfo) fDefaults.elementAt(i + 1),
+                        (NamespaceContext) fDefaults.elementAt(i + 2));
+            }
+            return grammars;
+        }
+
+        //
+        // Reading objects
+        //
+
+        private Object readHeader(int kind) throws IOException {
+            switch (kind) {
+                case GRAMMAR: {
+                    String namespace = readString();
+                    XSDDescription desc = new XSDDescription();
+                    desc.setValues(readString(), readString(), readString(), readString());
+                    desc.setNamespace(namespace);
+                    desc.setContextType((short) readInt());
+                    String[] hints = readStrings();
+                    if (hints != null) {
+                        desc.setLocationHints(hints);
+                    }
+                    return new SchemaGrammar(namespace, desc, fSymbolTable);
+                }
+                case EXTERNAL:
+                    return readExternal();
+                case ANNOTATION: {
+                    SchemaGrammar owner = (SchemaGrammar) readRef(SchemaGrammar.class);
+                    return new XSAnnotationImpl(readText(), owner);
+                }
+                case SIMPLE_TYPE:
+                    return readSimpleType();
+                case UNIQUE_OR_KEY:
+                    return new UniqueOrKey(readString(), readString(), readString(), (short) readInt());
+                case KEYREF:
+                    return new KeyRef(readString(), readString(), readString(), (UniqueOrKey) readRef(UniqueOrKey.class));
+                case COMPLEX_TYPE:
+                    return new XSComplexTypeDecl();
+                case ELEMENT:
+                    return new XSElementDecl();
+                case ATTRIBUTE:
+                    return new XSAttributeDecl();
+                case ATTRIBUTE_USE:
+                    return new XSAttributeUseImpl();
+                case ATTRIBUTE_GROUP:
+                    return new XSAttributeGroupDecl();
+                case PARTICLE:
+                    return new XSParticleDecl();
+                case MODEL_GROUP:
+                    return new XSModelGroupImpl();
+                case WILDCARD:
+                    return new XSWildcardDecl();
+                case GROUP:
+                    return new XSGroupDecl();
+                case NOTATION:
+                    return new XSNotationDecl();
+            }
+            throw new IOException("Unknown kind of object " + kind + ".");
+        }
+
+        private Object readExternal() throws IOException {
+            int kind = readInt();
+            int source = readInt();
+            String namespace = readString();
+            String name = readString();
+            SchemaGrammar grammar = null;
+            switch (source) {
+                case SOURCE_SCHEMA_NS:
+                    grammar = SchemaGrammar.SG_SchemaNS;
+                    break;
+                case SOURCE_SCHEMA_NS_EXTENDED:
+                    grammar = SchemaGrammar.getS4SGrammar(Constants.SCHEMA_VERSION_1_0_EXTENDED);
+                    break;
+                case SOURCE_XSI:
+                    grammar = SchemaGrammar.SG_XSI;
+                    break;
+                default:
+                    grammar = retrieveGrammar(namespace);
+            }
+            Object component = (grammar != null) ? getGlobalComponent(grammar, kind, name) : null;
+            if (component == null) {
+                throw new IOException("Component {" + namespace + "}" + name + " was not found.");
+            }
+            return component;
+        }
+
+        private SchemaGrammar retrieveGrammar(String namespace) {
+            if (fPool == null) {
+                return null;
+            }
+            XSDDescription desc = new XSDDescription();
+            desc.setNamespace(namespace);
+            desc.setContextType(XSDDescription.CONTEXT_PREPARSE);
+            Grammar grammar = fPool.retrieveGrammar(desc);
+            return (grammar instanceof SchemaGrammar) ? (SchemaGrammar) grammar : null;
+        }
+
+        private XSSimpleType readSimpleType() throws IOException {
+            String name = readString();
+            String namespace = readString();
+            short finalSet = (short) readInt();
+            boolean anonymous = fIn.readBoolean();
+            XSObjectList annotations = readAnnotations();
+            XSSimpleType type;
+            int variety = readInt();
+            if (variety == XSSimpleTypeDefinition.VARIETY_LIST) {
+                XSSimpleType itemType = (XSSimpleType) readRef(XSSimpleType.class);
+                type = fDVFactory.createTypeList(name, namespace, finalSet, itemType, annotations);
+            }
+            else if (variety == XSSimpleTypeDefinition.VARIETY_UNION) {
+                int count = readCount();
+                XSSimpleType[] memberTypes = (XSSimpleType[]) newArray(XSSimpleType.class, count);
+                for (int i = 0; i < count; i++) {
+                    memberTypes = (XSSimpleType[]) grow(memberTypes, i, count);
+                    memberTypes[i] = (XSSimpleType) readRef(XSSimpleType.class);
+                }
+                type = fDVFactory.createTypeUnion(name, namespace, finalSet, memberTypes, annotations);
+            }
+            else {
+                XSSimpleType base = (XSSimpleType) readRef(XSSimpleType.class);
+                type = fDVFactory.createTypeRestriction(name, namespace, finalSet, base, annotations);
+                short present = (short) readInt();
+                short fixed = (short) readInt();
+                if (present != 0) {
+                    applyFacets(type, present, fixed);
+                }
+            }
+            if (anonymous) {
+                ((XSSimpleTypeDecl) type).setAnonymous(true);
+            }
+            return type;
+        }
+
+        private void applyFacets(XSSimpleType type, short present, short fixed) throws IOException {
+            XSFacets facets = new XSFacets();
+            for (int i = 0; i < FACETS.length; i++) {
+                if ((present & FACETS[i]) != 0) {
+                    String value = readString();
+                    setFacet(facets, FACETS[i], value, (XSAnnotation) readRef(XSAnnotation.class));
+                }
+            }
+            if ((present & XSSimpleTypeDefinition.FACET_PATTERN) != 0) {
+                facets.pattern = readText();
+                int count = readInt();
+                if (count > 0) {
+                    facets.patternAnnotations = new XSObjectListImpl();
+                    for (int i = 0; i < count; i++) {
+                        facets.patternAnnotations.addXSObject((XSObject) readRef(XSAnnotationImpl.class));
+                    }
+                }
+            }
+            if ((present & XSSimpleTypeDefinition.FACET_ENUMERATION) != 0) {
+                int count = readCount();
+                facets.enumeration = new Vector(Math.min(count, MAX_PREALLOCATED));
+                Vector nsDecls = new Vector(Math.min(count, MAX_PREALLOCATED));
+                boolean hasBindings = false;
+                for (int i = 0; i < count; i++) {
+                    facets.enumeration.addElement(readText());
+                    String[] bindings = readBindings();
+                    hasBindings |= bindings.length > 0;
+                    nsDecls.addElement(createNamespaceContext(bindings));
+                }
+                if (hasBindings) {
+                    facets.enumNSDecls = nsDecls;
+                }
+                facets.enumAnnotations = readAnnotations();
+            }
+            try {
+                type.applyFacets(facets, present, fixed, fValidationState);
+            }
+            catch (InvalidDatatypeFacetException e) {
+                throw new IOException("Invalid facets for type '" + type.getName() + "': " + e.getMessage());
+            }
+        }
+
+        private void readFields(Object o, int kind, SchemaGrammar[] grammars) throws IOException {
+            switch (kind) {
+                case GRAMMAR:
+                    readGrammar((SchemaGrammar) o, grammars);
+                    break;
+                case UNIQUE_OR_KEY:
+                case KEYREF: {
+                    IdentityConstraint idc = (IdentityConstraint) o;
+                    try {
+                        String expression = readText();
+                        NamespaceContext context = createNamespaceContext(readBindings());
+                        idc.setSelector(new Selector(new Selector.XPath(expression, fSymbolTable, context), idc));
+                        int count = readInt();
+                        for (int i = 0; i < count; i++) {
+                            expression = readText();
+                            context = createNamespaceContext(readBindings());
+                            idc.addField(new Field(new Field.XPath(expression, fSymbolTable, context), idc));
+                        }
+                    }
+                    catch (XPathException e) {
+                        throw new IOException("Invalid XPath in identity constraint '" + idc.getName() + "'.");
+                    }
+                    XSObjectList annotations = readAnnotations();
+                    if (annotations != null) {
+                        for (int i = 0; i < annotations.getLength(); i++) {
+                            idc.addAnnotation((XSAnnotationImpl) annotations.item(i));
+                        }
+                    }
+                    break;
+                }
+                case COMPLEX_TYPE: {
+                    XSComplexTypeDecl type = (XSComplexTypeDecl) o;
+                    type.fName = readString();
+                    type.fTargetNamespace = readString();
+                    type.fBaseType = (XSTypeDefinition) readRef(XSTypeDefinition.class);
+                    type.fDerivedBy = (short) readInt();
+                    type.fFinal = (short) readInt();
+                    type.fBlock = (short) readInt();
+                    type.fMiscFlags = (short) readInt();
+                    type.fAttrGrp = (XSAttributeGroupDecl) readRef(XSAttributeGroupDecl.class);
+                    type.fContentType = (short) readInt();
+                    type.fXSSimpleType = (XSSimpleType) readRef(XSSimpleType.class);
+                    type.fParticle = (XSParticleDecl) readRef(XSParticleDecl.class);
+                    type.fAnnotations = readAnnotations();
+                    break;
+                }
+                case ELEMENT: {
+                    XSElementDecl element = (XSElementDecl) o;
+                    element.fName = readString();
+                    element.fTargetNamespace = readString();
+                    element.fType = (XSTypeDefinition) readRef(XSTypeDefinition.class);
+                    element.fMiscFlags = (short) readInt();
+                    element.fScope = (short) readInt();
+                    element.fEnclosingCT = (XSComplexTypeDecl) readRef(XSComplexTypeDecl.class);
+                    element.fBlock = (short) readInt();
+                    element.fFinal = (short) readInt();
+                    element.fAnnotations = readAnnotations();
+                    element.fSubGroup = (XSElementDecl) readRef(XSElementDecl.class);
+                    int count = readInt();
+                    for (int i = 0; i < count; i++) {
+                        element.addIDConstraint((IdentityConstraint) readRef(IdentityConstraint.class));
+                    }
+                    element.fDefault = readDefault(element);
+                    break;
+                }
+                case ATTRIBUTE: {
+                    XSAttributeDecl attribute = (XSAttributeDecl) o;
+                    attribute.fName = readString();
+                    attribute.fTargetNamespace = readString();
+                    attribute.fType = (XSSimpleType) readRef(XSSimpleType.class);
+                    attribute.fConstraintType = (short) readInt();
+                    attribute.fScope = (short) readInt();
+                    attribute.fEnclosingCT = (XSComplexTypeDecl) readRef(XSComplexTypeDecl.class);
+                    attribute.fAnnotations = readAnnotations();
+                    attribute.fDefault = readDefault(attribute);
+                    break;
+                }
+                case ATTRIBUTE_USE: {
+                    XSAttributeUseImpl use = (XSAttributeUseImpl) o;
+                    use.fAttrDecl = (XSAttributeDecl) readRef(XSAttributeDecl.class);
+                    use.fUse = (short) readInt();
+                    use.fConstraintType = (short) readInt();
+                    use.fAnnotations = readAnnotations();
+                    use.fDefault = readDefault(use);
+                    break;
+                }
+                case ATTRIBUTE_GROUP: {
+                    XSAttributeGroupDecl group = (XSAttributeGroupDecl) o;
+                    group.fName = readString();
+                    group.fTargetNamespace = readString();
+                    int count = readCount();
+                    for (int i = 0; i < count; i++) {
+                        group.fAttributeUses = (XSAttributeUseImpl[]) grow(group.fAttributeUses, i, count);
+                        group.fAttributeUses[i] = (XSAttributeUseImpl) readRef(XSAttributeUseImpl.class);
+                    }
+                    group.fAttrUseNum = count;
+                    group.fAttributeWC = (XSWildcardDecl) readRef(XSWildcardDecl.class);
+                    group.fIDAttrName = readString();
+                    group.fAnnotations = readAnnotations();
+                    break;
+                }
+                case PARTICLE: {
+                    XSParticleDecl particle = (XSParticleDecl) o;
+                    particle.fType = (short) readInt();
+                    particle.fValue = (XSTerm) readRef(XSTerm.class);
+                    particle.fMinOccurs = readInt();
+                    particle.fMaxOccurs = readInt();
+                    particle.fAnnotations = readAnnotations();
+                    break;
+                }
+                case MODEL_GROUP: {
+                    XSModelGroupImpl group = (XSModelGroupImpl) o;
+                    group.fCompositor = (short) readInt();
+                    int count = readCount();
+                    group.fParticles = (XSParticleDecl[]) newArray(XSParticleDecl.class, count);
+                    for (int i = 0; i < count; i++) {
+                        group.fParticles = (XSParticleDecl[]) grow(group.fParticles, i, count);
+                        group.fParticles[i] = (XSParticleDecl) readRef(XSParticleDecl.class);
+                    }
+                    group.fParticleCount = count;
+                    group.fAnnotations = readAnnotations();
+                    break;
+                }
+                case WILDCARD: {
+                    XSWildcardDecl wildcard = (XSWildcardDecl) o;
+                    wildcard.fType = (short) readInt();
+                    wildcard.fProcessContents = (short) readInt();
+                    wildcard.fNamespaceList = readStrings();
+                    wildcard.fAnnotations = readAnnotations();
+                    break;
+                }
+                case GROUP: {
+                    XSGroupDecl group = (XSGroupDecl) o;
+                    group.fName = readString();
+                    group.fTargetNamespace = readString();
+                    group.fModelGroup = (XSModelGroupImpl) readRef(XSModelGroupImpl.class);
+                    group.fAnnotations = readAnnotations();
+                    break;
+                }
+                case NOTATION: {
+                    XSNotationDecl notation = (XSNotationDecl) o;
+                    notation.fName = readString();
+                    notation.fTargetNamespace = readString();
+                    notation.fPublicId = readString();
+                    notation.fSystemId = readString();
+                    notation.fAnnotations = readAnnotations();
+                    break;
+                }
+            }
+        }
+
+        private void readGrammar(SchemaGrammar grammar, SchemaGrammar[] grammars) throws IOException {
+            int count = readInt();
+            for (int i = 0; i < count; i++) {
+                readString();
+                grammar.addGlobalAttributeDecl((XSAttributeDecl) readGlobal(XSAttributeDecl.class));
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                readString();
+                grammar.addGlobalAttributeGroupDecl((XSAttributeGroupDecl) readGlobal(XSAttributeGroupDecl.class));
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                readString();
+                grammar.addGlobalElementDecl((XSElementDecl) readGlobal(XSElementDecl.class));
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                readString();
+                grammar.addGlobalGroupDecl((XSGroupDecl) readGlobal(XSGroupDecl.class));
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                readString();
+                grammar.addGlobalNotationDecl((XSNotationDecl) readGlobal(XSNotationDecl.class));
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                grammar.fGlobalIDConstraintDecls.put(readKey(), readGlobal(IdentityConstraint.class));
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                readString();
+                grammar.addGlobalTypeDecl((XSTypeDefinition) readGlobal(XSTypeDefinition.class));
+            }
+
+            // the keys of the extended tables are "location,name"
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                String location = readLocation();
+                grammar.addGlobalAttributeDecl((XSAttributeDecl) readGlobal(XSAttributeDecl.class), location);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                String location = readLocation();
+                grammar.addGlobalAttributeGroupDecl((XSAttributeGroupDecl) readGlobal(XSAttributeGroupDecl.class), location);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                String location = readLocation();
+                grammar.addGlobalElementDecl((XSElementDecl) readGlobal(XSElementDecl.class), location);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                String location = readLocation();
+                grammar.addGlobalGroupDecl((XSGroupDecl) readGlobal(XSGroupDecl.class), location);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                String location = readLocation();
+                grammar.addGlobalNotationDecl((XSNotationDecl) readGlobal(XSNotationDecl.class), location);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                grammar.fGlobalIDConstraintDeclsExt.put(readKey(), readGlobal(IdentityConstraint.class));
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                String location = readLocation();
+                grammar.addGlobalTypeDecl((XSTypeDefinition) readGlobal(XSTypeDefinition.class), location);
+            }
+
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                grammar.addGlobalElementDeclAll((XSElementDecl) readGlobal(XSElementDecl.class));
+            }
+            XSObjectList annotations = readAnnotations();
+            if (annotations != null) {
+                for (int i = 0; i < annotations.getLength(); i++) {
+                    grammar.addAnnotation((XSAnnotationImpl) annotations.item(i));
+                }
+            }
+
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                XSComplexTypeDecl type = (XSComplexTypeDecl) readRef(XSComplexTypeDecl.class);
+                grammar.addComplexTypeDecl(type, readLocator());
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                XSGroupDecl derived = (XSGroupDecl) readRef(XSGroupDecl.class);
+                XSGroupDecl base = (XSGroupDecl) readRef(XSGroupDecl.class);
+                grammar.addRedefinedGroupDecl(derived, base, readLocator());
+            }
+
+            count = readInt();
+            if (count >= 0) {
+                Vector imported = new Vector(Math.min(count, MAX_PREALLOCATED));
+                for (int i = 0; i < count; i++) {
+                    String namespace = readString();
+                    SchemaGrammar importedGrammar = null;
+                    for (int j = 0; j < grammars.length && importedGrammar == null; j++) {
+                        if (grammars[j].getTargetNamespace() == namespace) {
+                            importedGrammar = grammars[j];
+                        }
+                    }
+                    if (importedGrammar == null) {
+                        importedGrammar = retrieveGrammar(namespace);
+                    }
+                    if (importedGrammar == null) {
+                        throw new IOException("Imported grammar for namespace '" + namespace + "' was not found.");
+                    }
+                    imported.addElement(importedGrammar);
+                }
+                grammar.setImportedGrammars(imported);
+            }
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                grammar.addDocument(null, readString());
+            }
+            grammar.fFullChecked = fIn.readBoolean();
+            grammar.setImmutable(fIn.readBoolean());
+        }
+
+        /** Reads the key of an extended table and returns the location it begins with. */
+        private String readLocation() throws IOException {
+            String key = readKey();
+            int comma = key.lastIndexOf(',');
+            if (comma < 0) {
+                throw new IOException("Invalid key '" + key + "'.");
+            }
+            String location = key.substring(0, comma);
+            return (location.length() > 0) ? location : null;
+        }
+
+        private SimpleLocator readLocator() throws IOException {
+            if (!fIn.readBoolean()) {
+                return null;
+            }
+            String lsid = readString();
+            String esid = readString();
+            int line = readInt();
+            int column = readInt();
+            return new SimpleLocator(lsid, esid, line, column, readInt());
+        }
+
+        private ValidatedInfo readDefault(Object component) throws IOException {
+            String value = readText();
+            if (value == null) {
+                return null;
+            }
+            ValidatedInfo info = new ValidatedInfo();
+            info.normalizedValue = value;
+            fDefaults.addElement(component);
+            fDefaults.addElement(info);
+            fDefaults.addElement(createNamespaceContext(readBindings()));
+            return info;
+        }
+
+        private void validateDefault(Object component, ValidatedInfo info, NamespaceContext context)
+            throws IOException {
+            fValidationState.setNamespaceSupport(context);
+            if (component instanceof XSElementDecl) {
+                XSElementDecl element = (XSElementDecl) component;
+                if (XSConstraints.ElementDefaultValidImmediate(element.fType, info.normalizedValue, fValidationState, info) == null) {
+                    throw new IOException("Invalid value constraint for element '" + element.fName + "'.");
+                }
+                return;
+            }
+            XSSimpleType type = (component instanceof XSAttributeDecl) ?
+                ((XSAttributeDecl) component).fType : ((XSAttributeUseImpl) component).fAttrDecl.fType;
+            try {
+                type.validate(info.normalizedValue, fValidationState, info);
+            }
+            catch (InvalidDatatypeValueException e) {
+                throw new IOException("Invalid value constraint '" + info.normalizedValue + "'.");
+            }
+        }
+
+        private NamespaceContext createNamespaceContext(String[] bindings) {
+            NamespaceSupport context = new NamespaceSupport();
+            context.reset();
+            for (int i = 0; i < bindings.length; i += 2) {
+                context.declarePrefix(bindings[i], bindings[i + 1]);
+            }
+            return context;
+        }
+
+        private String[] readBindings() throws IOException {
+            int count = readCount();
+            if (count == 0) {
+                return NO_BINDINGS;
+            }
+            if (count > Integer.MAX_VALUE / 2) {
+                throw new IOException("Invalid count " + count + ".");
+            }
+            count *= 2;
+            String[] bindings = (String[]) newArray(String.class, count);
+            for (int i = 0; i < count; i++) {
+                bindings = (String[]) grow(bindings, i, count);
+                bindings[i] = readString();
+            }
+            return bindings;
+        }
+
+        private XSObjectListImpl readAnnotations() throws IOException {
+            int count = readInt();
+            if (count == -1) {
+                return null;
+            }
+            if (count == 0) {
+                return XSObjectListImpl.EMPTY_LIST;
+            }
+            if (count < 0) {
+                throw new IOException("Invalid count " + count + ".");
+            }
+            XSObject[] annotations = (XSObject[]) newArray(XSObject.class, count);
+            for (int i = 0; i < count; i++) {
+                annotations = (XSObject[]) grow(annotations, i, count);
+                annotations[i] = (XSObject) readRef(XSAnnotationImpl.class);
+            }
+            return new XSObjectListImpl(annotations, count);
+        }
+
+        /** Reads a reference to an object of the given class, or null. */
+        private Object readRef(Class expected) throws IOException {
+            int id = readInt();
+            if (id == 0) {
+                return null;
+            }
+            if (id < 0 || id > fObjects.length) {
+                throw new IOException("Invalid reference " + id + ".");
+            }
+            Object o = fObjects[id - 1];
+            if (o == null) {
+                throw new IOException("Reference " + id + " to an object not yet read.");
+            }
+            if (!expected.isInstance(o)) {
+                throw new IOException("Reference " + id + " to " + o.getClass().getName() + 
+                        " where " + expected.getName() + " was expected.");
+            }
+            return o;
+        }
+
+        /** Reads a reference to a global component of the given class, which must have a name. */
+        private Object readGlobal(Class expected) throws IOException {
+            XSObject o = (XSObject) readRef(expected);
+            if (o == null || o.getName() == null) {
+                throw new IOException("Invalid global component " + o + ".");
+            }
+            return o;
+        }
+
+        private String[] readStrings() throws IOException {
+            int count = readInt();
+            if (count == -1) {
+                return null;
+            }
+            if (count < 0) {
+                throw new IOException("Invalid count " + count + ".");
+            }
+            String[] strings = (String[]) newArray(String.class, count);
+            for (int i = 0; i < count; i++) {
+                strings = (String[]) grow(strings, i, count);
+                strings[i] = readString();
+            }
+            return strings;
+        }
+
+        /** Reads a string written by <code>writeString</code>; names are added to the symbol table. */
+        private String readString() throws IOException {
+            int index = readInt();
+            if (index == 0) {
+                return null;
+            }
+            if (index == 1) {
+                String s = fSymbolTable.addSymbol(readChars());
+                fStrings.addElement(s);
+                return s;
+            }
+            if (index < 0 || index - 2 >= fStrings.size()) {
+                throw new IOException("Invalid string reference " + index + ".");
+            }
+            return (String) fStrings.elementAt(index - 2);
+        }
+
+        /** Reads the key of a table, which cannot be null. */
+        private String readKey() throws IOException {
+            String key = readString();
+            if (key == null) {
+                throw new IOException("Missing key.");
+            }
+            return key;
+        }
+
+        private String readText() throws IOException {
+            return fIn.readBoolean() ? readChars() : null;
+        }
+
+        private String readChars() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                throw new IOException("Invalid string length " + length + ".");
+            }
+            byte[] bytes = new byte[Math.min(length, MAX_PREALLOCATED)];
+            fIn.readFully(bytes);
+            while (bytes.length < length) {
+                byte[] grown = new byte[bytes.length <= length / 2 ? bytes.length * 2 : length];
+                System.arraycopy(bytes, 0, grown, 0, bytes.length);
+                fIn.readFully(grown, bytes.length, grown.length - bytes.length);
+                bytes = grown;
+            }
+            return new String(bytes, "UTF8");
+        }
+
+        /** Reads the number of items which follow, which cannot be negative. */
+        private int readCount() throws IOException {
+            int count = readInt();
+            if (count < 0) {
+                throw new IOException("Invalid count " + count + ".");
+            }
+            return count;
+        }
+
+        /** 
+         * Creates an array for the given number of items read from the
+         * stream, of at most <code>MAX_PREALLOCATED</code> items.
+         */
+        private Object newArray(Class type, int count) {
+            return Array.newInstance(type, Math.min(count, MAX_PREALLOCATED));
+        }
+
+        /** 
+         * Returns the given array if it has room for the item at the given
+         * index, or else a larger copy of at most <code>count</code> items.
+         */
+        private Object[] grow(Object[] array, int index, int count) {
+            return (index < array.length) ? array : grow(array, count);
+        }
+
+        private Object[] grow(Object[] array, int count) {
+            int length = (array.length <= count / 2) ? array.length * 2 : count;
+            Object[] grown = (Object[]) Array.newInstance(array.getClass().getComponentType(), 
+                    Math.max(length, 1));
+            System.arraycopy(array, 0, grown, 0, array.length);
+            return grown;
+        }
+
+        private int readInt() throws IOException {
+            int zigzag = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = fIn.readUnsignedByte();
+                zigzag |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IOException("Malformed integer.");
+        }
+
+    } // class GrammarReader
+
+} // class SchemaGrammarSerializer
@@ -82,6 +82,12 @@ public class SubstitutionGroupHandler {
         return null;
     }
 
+    // get the global element decl for an element with the given qname,
+    // whose substitution groups are those the element may substitute for
+    public XSElementDecl getGlobalElementDecl(QName element) {
+        return fXSElementDeclHelper.getGlobalElementDecl(element);
+    }
+
     // 3.3.6 Substitution Group OK (Transitive)
     // check whether element can substitute exemplar
     protected boolean substitutionGroupOK(XSElementDecl element, XSElementDecl exemplar, short blockingConstraint) {
@@ -119,6 +119,10 @@ XSLoader, DOMConfiguration {
     /** Feature identifier: validate annotations. */
     protected static final String VALIDATE_ANNOTATIONS =
         Constants.XERCES_FEATURE_PREFIX + Constants.VALIDATE_ANNOTATIONS_FEATURE;
+    
+    /** Feature identifier: defer annotations. */
+    protected static final String DEFER_ANNOTATIONS =
+        Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_ANNOTATIONS_FEATURE;
         
     /** Feature: disallow doctype*/
     protected static final String DISALLOW_DOCTYPE = 
@@ -150,6 +154,14 @@ XSLoader, DOMConfiguration {
     protected static final String SCHEMA_DV_FACTORY = 
         Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_DV_FACTORY_PROPERTY;
     
+    /** Property identifier: schema DOM cache */
+    protected static final String SCHEMA_DOM_CACHE = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_DOM_CACHE_PROPERTY;
+    
+    /** Property identifier: schema parse threads */
+    protected static final String SCHEMA_PARSE_THREADS = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_PARSE_THREADS_PROPERTY;
+    
     // recognized features:
     private static final String[] RECOGNIZED_FEATURES = {
         SCHEMA_FULL_CHECKING,
@@ -160,6 +172,7 @@ XSLoader, DOMConfiguration {
         DISALLOW_DOCTYPE,
         GENERATE_SYNTHETIC_ANNOTATIONS,
         VALIDATE_ANNOTATIONS,
+        DEFER_ANNOTATIONS,
         HONOUR_ALL_SCHEMALOCATIONS,
         NAMESPACE_GROWTH,
         TOLERATE_DUPLICATES
@@ -222,7 +235,9 @@ XSLoader, DOMConfiguration {
         JAXP_SCHEMA_SOURCE,
         SECURITY_MANAGER,
         LOCALE,
-        SCHEMA_DV_FACTORY
+        SCHEMA_DV_FACTORY,
+        SCHEMA_DOM_CACHE,
+        SCHEMA_PARSE_THREADS
     };
     
     // Data
@@ -1203,6 +1218,7 @@ XSLoader, DOMConfiguration {
             if (name.equals(Constants.DOM_VALIDATE) ||
                 name.equals(SCHEMA_FULL_CHECKING) ||
                 name.equals(VALIDATE_ANNOTATIONS) ||
+                name.equals(DEFER_ANNOTATIONS) ||
                 name.equals(CONTINUE_AFTER_FATAL_ERROR) ||
                 name.equals(ALLOW_JAVA_ENCODINGS) ||
                 name.equals(STANDARD_URI_CONFORMANT_FEATURE) ||
@@ -1225,7 +1241,9 @@ XSLoader, DOMConfiguration {
             name.equals(SCHEMA_LOCATION) ||
             name.equals(SCHEMA_NONS_LOCATION) ||
             name.equals(JAXP_SCHEMA_SOURCE) ||
-            name.equals(SCHEMA_DV_FACTORY)) {
+            name.equals(SCHEMA_DV_FACTORY) ||
+            name.equals(SCHEMA_DOM_CACHE) ||
+            name.equals(SCHEMA_PARSE_THREADS)) {
             return true;
         }
         return false;
@@ -1284,6 +1302,7 @@ XSLoader, DOMConfiguration {
             v.add(ALLOW_JAVA_ENCODINGS);
             v.add(STANDARD_URI_CONFORMANT_FEATURE);
             v.add(VALIDATE_ANNOTATIONS);
+            v.add(DEFER_ANNOTATIONS);
             v.add(GENERATE_SYNTHETIC_ANNOTATIONS);
             v.add(HONOUR_ALL_SCHEMALOCATIONS);
             v.add(NAMESPACE_GROWTH);
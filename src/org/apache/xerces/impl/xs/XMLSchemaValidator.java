@@ -162,6 +162,10 @@ public class XMLSchemaValidator
     protected static final String VALIDATE_ANNOTATIONS =
         Constants.XERCES_FEATURE_PREFIX + Constants.VALIDATE_ANNOTATIONS_FEATURE;
     
+    /** Feature identifier: defer annotations. */
+    protected static final String DEFER_ANNOTATIONS =
+        Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_ANNOTATIONS_FEATURE;
+    
     /** Feature identifier: honour all schemaLocations */
     protected static final String HONOUR_ALL_SCHEMALOCATIONS = 
         Constants.XERCES_FEATURE_PREFIX + Constants.HONOUR_ALL_SCHEMALOCATIONS_FEATURE;
@@ -253,6 +257,14 @@ public class XMLSchemaValidator
     protected static final String SCHEMA_DV_FACTORY = 
         Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_DV_FACTORY_PROPERTY;
     
+    /** Property identifier: schema DOM cache. */
+    protected static final String SCHEMA_DOM_CACHE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_DOM_CACHE_PROPERTY;
+    
+    /** Property identifier: schema parse threads. */
+    protected static final String SCHEMA_PARSE_THREADS =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_PARSE_THREADS_PROPERTY;
+    
     // recognized features and properties
 
     /** Recognized features. */
@@ -267,6 +279,7 @@ public class XMLSchemaValidator
             STANDARD_URI_CONFORMANT_FEATURE,
             GENERATE_SYNTHETIC_ANNOTATIONS,
             VALIDATE_ANNOTATIONS,
+            DEFER_ANNOTATIONS,
             HONOUR_ALL_SCHEMALOCATIONS,
             USE_GRAMMAR_POOL_ONLY,
             IGNORE_XSI_TYPE,
@@ -305,6 +318,7 @@ public class XMLSchemaValidator
         null,
         null,
         null,
+        null,
         null
     };
 
@@ -322,11 +336,13 @@ public class XMLSchemaValidator
             ROOT_TYPE_DEF,
             ROOT_ELEMENT_DECL,
             SCHEMA_DV_FACTORY,
+            SCHEMA_DOM_CACHE,
+            SCHEMA_PARSE_THREADS,
         };
 
     /** Property defaults. */
     private static final Object[] PROPERTY_DEFAULTS =
-        { null, null, null, null, null, null, null, null, null, null, null};
+        { null, null, null, null, null, null, null, null, null, null, null, null, null};
 
     // this is the number of valuestores of each kind
     // we expect an element to have.  It's almost
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.StringReader;
 
 import org.apache.xerces.dom.CoreDocumentImpl;
+import org.apache.xerces.impl.xs.opti.SchemaAnnotationReader;
 import org.apache.xerces.parsers.DOMParser;
 import org.apache.xerces.parsers.SAXParser;
 import org.apache.xerces.xs.XSAnnotation;
@@ -51,12 +52,35 @@ public class XSAnnotationImpl implements XSAnnotation {
     // from here when we need them
     private SchemaGrammar fGrammar = null;
 
+    // reads the content of a deferred annotation; null once the
+    // content has been read
+    private SchemaAnnotationReader fReader = null;
+
+    // the number of a deferred annotation in its document
+    private int fIndex;
+
+    // the non-schema attributes of the parent of a deferred annotation,
+    // which are added to the annotation once its content has been read
+    private String fLocalAttrs = null;
+
     // constructors
     public XSAnnotationImpl(String contents, SchemaGrammar grammar) {
         fData = contents;
         fGrammar = grammar;
     }
 
+    /**
+     * Constructs an annotation whose content is read from its document 
+     * the first time it is needed.
+     */
+    public XSAnnotationImpl(SchemaAnnotationReader reader, int index, 
+            String localAttrs, SchemaGrammar grammar) {
+        fReader = reader;
+        fIndex = index;
+        fLocalAttrs = localAttrs;
+        fGrammar = grammar;
+    }
+
     /**
      *  Write contents of the annotation to the specified DOM object. If the 
      * specified <code>target</code> object is a DOM in-scope namespace 
@@ -73,6 +97,10 @@ public class XSAnnotationImpl implements XSAnnotation {
      */
     public boolean writeAnnotation(Object target, 
                                    short targetType) {
+        if (getData() == null) {
+            // the content of a deferred annotation could not be read
+            return false;
+        }
         if(targetType == XSAnnotation.W3C_DOM_ELEMENT || targetType == XSAnnotation.W3C_DOM_DOCUMENT) {
             writeToDOM((Node)target, targetType);
             return true;
@@ -87,7 +115,7 @@ public class XSAnnotationImpl implements XSAnnotation {
      * A text representation of annotation.
      */
     public String getAnnotationString() {
-        return fData;
+        return getData();
     }
 
     // XSObject methods
@@ -126,10 +154,30 @@ public class XSAnnotationImpl implements XSAnnotation {
     }
 
     // private methods
+
+    // returns the content, reading it first if the annotation was deferred
+    private synchronized String getData() {
+        if (fReader != null) {
+            String contents = fReader.getAnnotation(fIndex);
+            if (contents != null && fLocalAttrs != null) {
+                // splice the attributes in immediately after the annotation token
+                int annotationTokenEnd = contents.indexOf(SchemaSymbols.ELT_ANNOTATION);
+                if (annotationTokenEnd != -1) {
+                    annotationTokenEnd += SchemaSymbols.ELT_ANNOTATION.length();
+                    contents = contents.substring(0, annotationTokenEnd) + fLocalAttrs +
+                        contents.substring(annotationTokenEnd);
+                }
+            }
+            fData = contents;
+            fReader = null;
+            fLocalAttrs = null;
+        }
+        return fData;
+    }
     private synchronized void writeToSAX(ContentHandler handler) {
         // nothing must go wrong with this parse...
         SAXParser parser = fGrammar.getSAXParser();
-        StringReader aReader = new StringReader(fData);
+        StringReader aReader = new StringReader(getData());
         InputSource aSource = new InputSource(aReader);
         parser.setContentHandler(handler);
         try {
@@ -153,7 +201,7 @@ public class XSAnnotationImpl implements XSAnnotation {
         Document futureOwner = (type == XSAnnotation.W3C_DOM_ELEMENT) ? 
                 target.getOwnerDocument() : (Document)target;
         DOMParser parser = fGrammar.getDOMParser();
-        StringReader aReader = new StringReader(fData);
+        StringReader aReader = new StringReader(getData());
         InputSource aSource = new InputSource(aReader);
         try {
             parser.parse(aSource);
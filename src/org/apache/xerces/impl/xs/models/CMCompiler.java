@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.models;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.XMLErrorReporter;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.impl.xs.XSMessageFormatter;
+import org.apache.xerces.util.SecurityManager;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSModelGroup;
+import org.apache.xerces.xs.XSModelGroupDefinition;
+import org.apache.xerces.xs.XSNamedMap;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSParticle;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
+
+/**
+ * Builds the content models of all the complex types of a set of
+ * grammars ahead of time.
+ * <p>
+ * Content models are otherwise built the first time an element of a
+ * type is validated, so the cost of building them falls on the first
+ * documents validated against a grammar. Compiling them eagerly, for
+ * instance after the grammars have been put in a pool, moves this cost
+ * to a time of the application's choosing. The types may be divided
+ * between several threads, each with its own <code>CMBuilder</code>;
+ * a content model is built once per type regardless of the number of
+ * threads, as <code>XSComplexTypeDecl.getContentModel</code> is
+ * synchronized.
+ * <p>
+ * As during validation, the number of nodes of a content model may be
+ * limited by a security manager; a content model over the limit is
+ * reported as a fatal error to the error reporter, which may be called
+ * on any of the threads.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class CMCompiler {
+
+    /** Property identifier: error reporter. */
+    private static final String ERROR_REPORTER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ERROR_REPORTER_PROPERTY;
+
+    /** Property identifier: security manager. */
+    private static final String SECURITY_MANAGER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SECURITY_MANAGER_PROPERTY;
+
+    /** Number of threads building content models. */
+    private final int fThreadCount;
+
+    /** Error reporter to which a content model over the limit is reported. */
+    private final XMLErrorReporter fErrorReporter;
+
+    /** Security manager limiting the size of content models, or null. */
+    private final SecurityManager fSecurityManager;
+
+    /** Types of which the content model is to be built. */
+    private XSComplexTypeDecl[] fTypes;
+
+    /** Index of the next type to build. */
+    private int fNextType;
+
+    /** The first exception or error thrown while building a content model. */
+    private Throwable fError;
+
+    /** Constructs a compiler which builds content models on the calling thread. */
+    public CMCompiler() {
+        this(1);
+    } // <init>()
+
+    /**
+     * Constructs a compiler which builds content models on the given
+     * number of threads. If the number is less than two, content models
+     * are built on the calling thread.
+     */
+    public CMCompiler(int threadCount) {
+        this(threadCount, null, null);
+    } // <init>(int)
+
+    /**
+     * Constructs a compiler which builds content models on the given
+     * number of threads, within the limits of the given security manager.
+     *
+     * @param threadCount     the number of threads; if less than two,
+     *                        content models are built on the calling thread
+     * @param errorReporter   the error reporter, or <code>null</code> to 
+     *                        report errors to the standard error stream
+     * @param securityManager the security manager, or <code>null</code>
+     *                        if the size of content models is not limited
+     */
+    public CMCompiler(int threadCount, XMLErrorReporter errorReporter, 
+            SecurityManager securityManager) {
+        fThreadCount = threadCount;
+        if (errorReporter == null && securityManager != null) {
+            errorReporter = new XMLErrorReporter();
+            errorReporter.putMessageFormatter(XSMessageFormatter.SCHEMA_DOMAIN, new XSMessageFormatter());
+        }
+        fErrorReporter = errorReporter;
+        fSecurityManager = securityManager;
+    } // <init>(int,XMLErrorReporter,SecurityManager)
+
+    /**
+     * Builds the content model of every complex type in the given
+     * grammars, including anonymous types, and returns once all have
+     * been built. If building a content model throws, the remaining
+     * types are skipped and the first exception or error thrown is
+     * rethrown on the calling thread.
+     *
+     * @param grammars the grammars whose content models are built
+     * @return the number of complex types found
+     */
+    public int compile(SchemaGrammar[] grammars) {
+        Vector types = new Vector();
+        HashMap visited = new HashMap();
+        for (int i = 0; i < grammars.length; i++) {
+            XSNamedMap map = grammars[i].getComponents(XSConstants.TYPE_DEFINITION);
+            for (int j = 0; j < map.getLength(); j++) {
+                addType((XSTypeDefinition) map.item(j), types, visited);
+            }
+            map = grammars[i].getComponents(XSConstants.ELEMENT_DECLARATION);
+            for (int j = 0; j < map.getLength(); j++) {
+                addType(((XSElementDeclaration) map.item(j)).getTypeDefinition(), types, visited);
+            }
+            map = grammars[i].getComponents(XSConstants.MODEL_GROUP_DEFINITION);
+            for (int j = 0; j < map.getLength(); j++) {
+                addTypes(((XSModelGroupDefinition) map.item(j)).getModelGroup(), types, visited);
+            }
+        }
+        synchronized (this) {
+            fTypes = new XSComplexTypeDecl[types.size()];
+            types.copyInto(fTypes);
+            fNextType = 0;
+            fError = null;
+        }
+        if (fThreadCount < 2 || fTypes.length < 2) {
+            build();
+        }
+        else {
+            Thread[] threads = new Thread[Math.min(fThreadCount, fTypes.length)];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread() {
+                    public void run() {
+                        build();
+                    }
+                };
+                threads[i].start();
+            }
+            boolean interrupted = false;
+            for (int i = 0; i < threads.length; i++) {
+                while (threads[i].isAlive()) {
+                    try {
+                        threads[i].join();
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Throwable error;
+        synchronized (this) {
+            error = fError;
+            fTypes = null;
+            fError = null;
+        }
+        // rethrow on the calling thread what was thrown on a worker
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error != null) {
+            throw (RuntimeException) error;
+        }
+        return types.size();
+    } // compile(SchemaGrammar[]):int
+
+    //
+    // Private methods
+    //
+
+    /** Builds content models until none are left. */
+    private void build() {
+        CMNodeFactory nodeFactory = new CMNodeFactory();
+        nodeFactory.setProperty(ERROR_REPORTER, fErrorReporter);
+        nodeFactory.setProperty(SECURITY_MANAGER, fSecurityManager);
+        CMBuilder builder = new CMBuilder(nodeFactory);
+        XSComplexTypeDecl type;
+        while ((type = nextType()) != null) {
+            try {
+                type.getContentModel(builder);
+            }
+            catch (Throwable e) {
+                synchronized (this) {
+                    if (fError == null) {
+                        fError = e;
+                    }
+                    // stop the other threads
+                    fNextType = fTypes.length;
+                }
+            }
+        }
+    } // build()
+
+    private synchronized XSComplexTypeDecl nextType() {
+        return (fNextType < fTypes.length) ? fTypes[fNextType++] : null;
+    } // nextType():XSComplexTypeDecl
+
+    /** Adds a complex type, and the types of the elements in its content, to the list. */
+    private void addType(XSTypeDefinition type, Vector types, HashMap visited) {
+        while (type instanceof XSComplexTypeDecl && !visited.containsKey(type)) {
+            visited.put(type, type);
+            types.addElement(type);
+            XSParticle particle = ((XSComplexTypeDefinition) type).getParticle();
+            if (particle != null) {
+                addTypes(particle.getTerm(), types, visited);
+            }
+            type = type.getBaseType();
+        }
+    } // addType(XSTypeDefinition,Vector,HashMap)
+
+    private void addTypes(XSTerm term, Vector types, HashMap visited) {
+        if (term instanceof XSElementDeclaration) {
+            addType(((XSElementDeclaration) term).getTypeDefinition(), types, visited);
+        }
+        else if (term instanceof XSModelGroup) {
+            XSObjectList particles = ((XSModelGroup) term).getParticles();
+            for (int i = 0; i < particles.getLength(); i++) {
+                addTypes(((XSParticle) particles.item(i)).getTerm(), types, visited);
+            }
+        }
+    } // addTypes(XSTerm,Vector,HashMap)
+
+} // class CMCompiler
@@ -31,6 +31,7 @@ import org.apache.xerces.impl.xs.XSModelGroupImpl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 import org.apache.xerces.impl.xs.XSWildcardDecl;
 import org.apache.xerces.xni.QName;
+import org.apache.xerces.xs.XSConstants;
 
 /**
  * DFAContentModel is the implementation of XSCMValidator that does
@@ -136,6 +137,33 @@ public class XSDFACM
      */
     private int fTransTable[][] = null;
     
+    /**
+     * The transition table compressed by row displacement, which replaces
+     * fTransTable when it is smaller. The transition of state s on the
+     * element at index e is fTransNext[fTransBase[s] + e] if
+     * fTransCheck[fTransBase[s] + e] is s, and -1 otherwise.
+     */
+    private int fTransBase[] = null;
+    private int fTransNext[] = null;
+    private int fTransCheck[] = null;
+    
+    /**
+     * A hash of the names of the element declarations in the element map.
+     * Each bucket holds the first index of a chain of element indexes, in
+     * increasing order, continued by fNameChain; -1 ends a chain.
+     */
+    private int fNameBuckets[] = null;
+    private int fNameChain[] = null;
+    
+    /** The indexes of the wildcards in the element map, in increasing order. */
+    private int fWildcards[] = null;
+    
+    /** 
+     * Whether the element map contains a declaration which may be 
+     * substituted by elements of another name.
+     */
+    private boolean fHasSubstitutableDecl;
+    
     /**
      * Array containing occurence information for looping states 
      * which use counters to check minOccurs/maxOccurs.
@@ -158,6 +186,39 @@ public class XSDFACM
         }
     }
 
+    /** The signature of a DFA state, used to split classes of states. */
+    private static final class Signature {
+        private final int[] fValues;
+        private final int fHashCode;
+        Signature(int[] values, int length) {
+            fValues = new int[length];
+            System.arraycopy(values, 0, fValues, 0, length);
+            int hashCode = length;
+            for (int i = 0; i < length; i++) {
+                hashCode = hashCode * 31 + values[i];
+            }
+            fHashCode = hashCode;
+        }
+        public int hashCode() {
+            return fHashCode;
+        }
+        public boolean equals(Object o) {
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            final int[] values = ((Signature)o).fValues;
+            if (values.length != fValues.length) {
+                return false;
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != fValues[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * The number of valid entries in the transition table, and in the other
      * related tables such as fFinalStateFlags.
@@ -259,28 +320,7 @@ public class XSDFACM
             return findMatchingDecl(curElem, subGroupHandler);
         }
 
-        int nextState = 0;
-        int elemIndex = 0;
-        Object matchingDecl = null;
-
-        for (; elemIndex < fElemMapSize; elemIndex++) {
-            nextState = fTransTable[curState][elemIndex];
-            if (nextState == -1)
-                continue;
-            int type = fElemMapType[elemIndex] ;
-            if (type == XSParticleDecl.PARTICLE_ELEMENT) {
-                matchingDecl = subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[elemIndex]);
-                if (matchingDecl != null) {
-                    break;
-                }
-            }
-            else if (type == XSParticleDecl.PARTICLE_WILDCARD) {
-                if (((XSWildcardDecl)fElemMap[elemIndex]).allowNamespace(curElem.uri)) {
-                    matchingDecl = fElemMap[elemIndex];
-                    break;
-                }
-            }
-        }
+        int elemIndex = firstTransition(curElem, curState, subGroupHandler);
 
         // if we still can't find a match, set the state to first_error
         // and return null
@@ -290,6 +330,11 @@ public class XSDFACM
             return findMatchingDecl(curElem, subGroupHandler);
         }
         
+        int nextState = transition(curState, elemIndex);
+        Object matchingDecl = (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_ELEMENT) ?
+                subGroupHandler.getMatchingElemDecl(curElem, (XSElementDecl)fElemMap[elemIndex]) :
+                fElemMap[elemIndex];
+        
         if (fCountingStates != null) {
             Occurence o = fCountingStates[curState];
             if (o != null) {
@@ -381,7 +426,7 @@ public class XSDFACM
         Object matchingDecl = null;
         
         while (++elemIndex < fElemMapSize) {
-            nextState = fTransTable[curState][elemIndex];
+            nextState = transition(curState, elemIndex);
             if (nextState == -1)
                 continue;
             int type = fElemMapType[elemIndex] ;
@@ -416,6 +461,72 @@ public class XSDFACM
         return matchingDecl;
     } // findMatchingDecl(QName, int[], SubstitutionGroupHandler, int): Object
 
+    /**
+     * Returns the lowest index in the element map of a declaration which
+     * matches the given element and has a transition from the given state,
+     * or the size of the element map if there is none.
+     */
+    private int firstTransition(QName curElem, int curState, SubstitutionGroupHandler subGroupHandler) {
+        // declarations of the same name
+        int elemIndex = firstTransition(curElem.localpart, curElem.uri, 
+                curElem, curState, subGroupHandler, fElemMapSize);
+        // declarations of the heads of the substitution groups of the element
+        if (fHasSubstitutableDecl) {
+            XSElementDecl elemDecl = subGroupHandler.getGlobalElementDecl(curElem);
+            if (elemDecl != null) {
+                for (XSElementDecl head = elemDecl.fSubGroup; head != null; head = head.fSubGroup) {
+                    elemIndex = firstTransition(head.fName, head.fTargetNamespace,
+                            curElem, curState, subGroupHandler, elemIndex);
+                }
+            }
+        }
+        // wildcards
+        for (int i = 0; i < fWildcards.length && fWildcards[i] < elemIndex; i++) {
+            final int wildcardIndex = fWildcards[i];
+            if (transition(curState, wildcardIndex) != -1 &&
+                ((XSWildcardDecl)fElemMap[wildcardIndex]).allowNamespace(curElem.uri)) {
+                return wildcardIndex;
+            }
+        }
+        return elemIndex;
+    } // firstTransition(QName, int, SubstitutionGroupHandler): int
+    
+    /**
+     * Returns the lowest index, below the given limit, of a declaration with 
+     * the given name which matches the given element and has a transition 
+     * from the given state, or the limit if there is none.
+     */
+    private int firstTransition(String localpart, String uri, QName curElem, 
+            int curState, SubstitutionGroupHandler subGroupHandler, int limit) {
+        for (int elemIndex = fNameBuckets[hashName(localpart, uri) & (fNameBuckets.length - 1)]; 
+            elemIndex != -1 && elemIndex < limit; elemIndex = fNameChain[elemIndex]) {
+            final XSElementDecl decl = (XSElementDecl)fElemMap[elemIndex];
+            if (decl.fName == localpart && decl.fTargetNamespace == uri &&
+                transition(curState, elemIndex) != -1 &&
+                subGroupHandler.getMatchingElemDecl(curElem, decl) != null) {
+                return elemIndex;
+            }
+        }
+        return limit;
+    } // firstTransition(String, String, QName, int, SubstitutionGroupHandler, int): int
+    
+    /** Returns the state reached from the given state on the given element index, or -1. */
+    private int transition(int state, int elemIndex) {
+        if (fTransTable != null) {
+            return fTransTable[state][elemIndex];
+        }
+        final int i = fTransBase[state] + elemIndex;
+        return (i < fTransCheck.length && fTransCheck[i] == state) ? fTransNext[i] : -1;
+    } // transition(int, int): int
+
+    private static int hashName(String localpart, String uri) {
+        int hash = localpart.hashCode();
+        if (uri != null) {
+            hash = hash * 31 + uri.hashCode();
+        }
+        return hash & 0x7FFFFFFF;
+    } // hashName(String, String): int
+
     // This method returns the start states of the content model.
     public int[] startContentModel() {
         // [0] : the current state
@@ -809,6 +920,24 @@ public class XSDFACM
             }
         }
 
+        fTransTableSize = curState;
+        
+        //
+        //  Merge the equivalent states. Counting states are tied to the
+        //  loops found above, so models which use them are left as built.
+        //
+        if (fCountingStates == null) {
+            minimizeDFA();
+        }
+        
+        //
+        //  Index the element map by name and compress the transition
+        //  table, so that finding the transition for an element does not
+        //  depend on the size of the content model.
+        //
+        buildNameIndex();
+        compactTransTable();
+
         //
         //  And now we can say bye bye to the temp representation since we've
         //  built the DFA.
@@ -989,6 +1118,230 @@ public class XSDFACM
         return retArray;
     }
 
+    /**
+     * Merges the equivalent states of the DFA by partition refinement.
+     * Two states are equivalent if both or neither are final and, for
+     * each element, both have no transition or both move to equivalent
+     * states. Expanded occurrence ranges such as (a,b?){0,50} leave
+     * many such states behind.
+     */
+    private void minimizeDFA() {
+        final int stateCount = fTransTableSize;
+        if (stateCount < 2) {
+            return;
+        }
+
+        // start with the final and the non-final states
+        int[] classOf = new int[stateCount];
+        int classCount = 0;
+        for (int state = 0; state < stateCount; state++) {
+            classOf[state] = (fFinalStateFlags[state] == fFinalStateFlags[0]) ? 0 : 1;
+            if (classOf[state] == 1) {
+                classCount = 2;
+            }
+        }
+        if (classCount == 0) {
+            classCount = 1;
+        }
+
+        // split the classes on their transitions until nothing changes;
+        // classes are numbered in order of their first state, so the
+        // start state stays in class 0
+        final int[] signature = new int[1 + 2 * fElemMapSize];
+        int[] representatives = null;
+        for (;;) {
+            HashMap classes = new HashMap();
+            int[] newClassOf = new int[stateCount];
+            int[] newRepresentatives = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                final int[] row = fTransTable[state];
+                int length = 0;
+                signature[length++] = classOf[state];
+                for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
+                    if (row[elemIndex] != -1) {
+                        signature[length++] = elemIndex;
+                        signature[length++] = classOf[row[elemIndex]];
+                    }
+                }
+                Signature key = new Signature(signature, length);
+                Integer classObj = (Integer)classes.get(key);
+                if (classObj == null) {
+                    classObj = new Integer(classes.size());
+                    classes.put(key, classObj);
+                    newRepresentatives[classObj.intValue()] = state;
+                }
+                newClassOf[state] = classObj.intValue();
+            }
+            final int newClassCount = classes.size();
+            classOf = newClassOf;
+            representatives = newRepresentatives;
+            if (newClassCount == classCount) {
+                break;
+            }
+            classCount = newClassCount;
+        }
+        if (classCount == stateCount) {
+            return;
+        }
+
+        // build the tables of the merged states
+        int[][] transTable = new int[classCount][];
+        boolean[] finalStateFlags = new boolean[classCount];
+        for (int i = 0; i < classCount; i++) {
+            final int[] row = fTransTable[representatives[i]];
+            final int[] newRow = new int[fElemMapSize];
+            for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
+                newRow[elemIndex] = (row[elemIndex] != -1) ? classOf[row[elemIndex]] : -1;
+            }
+            transTable[i] = newRow;
+            finalStateFlags[i] = fFinalStateFlags[representatives[i]];
+        }
+        fTransTable = transTable;
+        fFinalStateFlags = finalStateFlags;
+        fTransTableSize = classCount;
+    } // minimizeDFA()
+
+    /** Builds the hash of the element names and the list of wildcards. */
+    private void buildNameIndex() {
+        int buckets = 1;
+        while (buckets < fElemMapSize) {
+            buckets <<= 1;
+        }
+        fNameBuckets = new int[buckets];
+        for (int i = 0; i < buckets; i++) {
+            fNameBuckets[i] = -1;
+        }
+        fNameChain = new int[fElemMapSize];
+        int wildcardCount = 0;
+        // insert from the highest index so that chains are in increasing order
+        for (int elemIndex = fElemMapSize - 1; elemIndex >= 0; elemIndex--) {
+            fNameChain[elemIndex] = -1;
+            if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_ELEMENT) {
+                XSElementDecl decl = (XSElementDecl)fElemMap[elemIndex];
+                int bucket = hashName(decl.fName, decl.fTargetNamespace) & (buckets - 1);
+                fNameChain[elemIndex] = fNameBuckets[bucket];
+                fNameBuckets[bucket] = elemIndex;
+                if (decl.fScope == XSConstants.SCOPE_GLOBAL &&
+                    (decl.fBlock & XSConstants.DERIVATION_SUBSTITUTION) == 0) {
+                    fHasSubstitutableDecl = true;
+                }
+            }
+            else if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_WILDCARD) {
+                wildcardCount++;
+            }
+        }
+        fWildcards = new int[wildcardCount];
+        for (int elemIndex = 0, i = 0; elemIndex < fElemMapSize; elemIndex++) {
+            if (fElemMapType[elemIndex] == XSParticleDecl.PARTICLE_WILDCARD) {
+                fWildcards[i++] = elemIndex;
+            }
+        }
+    } // buildNameIndex()
+
+    /**
+     * Compresses the transition table by row displacement: the rows are
+     * overlaid in a single array, each shifted so that its transitions
+     * fall in slots no other row uses. The compressed table replaces the
+     * full one if it is smaller.
+     */
+    private void compactTransTable() {
+        final int stateCount = fTransTableSize;
+        if (stateCount == 0 || fElemMapSize == 0) {
+            return;
+        }
+        
+        // place the rows with the most transitions first
+        int[] transCounts = new int[stateCount];
+        int[] countStarts = new int[fElemMapSize + 2];
+        for (int state = 0; state < stateCount; state++) {
+            int count = 0;
+            final int[] row = fTransTable[state];
+            for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
+                if (row[elemIndex] != -1) {
+                    count++;
+                }
+            }
+            transCounts[state] = count;
+            countStarts[fElemMapSize - count + 1]++;
+        }
+        for (int i = 1; i < countStarts.length; i++) {
+            countStarts[i] += countStarts[i - 1];
+        }
+        int[] order = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            order[countStarts[fElemMapSize - transCounts[state]]++] = state;
+        }
+        
+        int[] base = new int[stateCount];
+        int[] next = new int[fElemMapSize * 2];
+        int[] check = new int[next.length];
+        for (int i = 0; i < check.length; i++) {
+            check[i] = -1;
+        }
+        int length = 0;
+        int firstFree = 0;
+        for (int i = 0; i < stateCount; i++) {
+            final int state = order[i];
+            final int[] row = fTransTable[state];
+            if (transCounts[state] == 0) {
+                // no slot of the table is checked against this state
+                continue;
+            }
+            int firstElem = 0;
+            while (row[firstElem] == -1) {
+                firstElem++;
+            }
+            int offset = Math.max(firstFree - firstElem, 0);
+            while (true) {
+                if (offset + fElemMapSize > check.length) {
+                    final int newLength = Math.max(check.length * 2, offset + fElemMapSize);
+                    int[] newNext = new int[newLength];
+                    int[] newCheck = new int[newLength];
+                    System.arraycopy(next, 0, newNext, 0, next.length);
+                    System.arraycopy(check, 0, newCheck, 0, check.length);
+                    for (int j = check.length; j < newLength; j++) {
+                        newCheck[j] = -1;
+                    }
+                    next = newNext;
+                    check = newCheck;
+                }
+                int elemIndex = firstElem;
+                while (elemIndex < fElemMapSize && 
+                       (row[elemIndex] == -1 || check[offset + elemIndex] == -1)) {
+                    elemIndex++;
+                }
+                if (elemIndex == fElemMapSize) {
+                    break;
+                }
+                offset++;
+            }
+            base[state] = offset;
+            for (int elemIndex = firstElem; elemIndex < fElemMapSize; elemIndex++) {
+                if (row[elemIndex] != -1) {
+                    next[offset + elemIndex] = row[elemIndex];
+                    check[offset + elemIndex] = state;
+                    if (offset + elemIndex >= length) {
+                        length = offset + elemIndex + 1;
+                    }
+                }
+            }
+            while (firstFree < check.length && check[firstFree] != -1) {
+                firstFree++;
+            }
+        }
+        
+        // keep the full table unless the compressed one is smaller
+        if (stateCount + 2 * length >= stateCount * fElemMapSize) {
+            return;
+        }
+        fTransBase = base;
+        fTransNext = new int[length];
+        fTransCheck = new int[length];
+        System.arraycopy(next, 0, fTransNext, 0, length);
+        System.arraycopy(check, 0, fTransCheck, 0, length);
+        fTransTable = null;
+    } // compactTransTable()
+
     /** Post tree build initialization. */
     private void postTreeBuildInit(CMNode nodeCur) throws RuntimeException {
         // Set the maximum states on this node
@@ -1040,11 +1393,13 @@ public class XSDFACM
         byte conflictTable[][] = new byte[fElemMapSize][fElemMapSize];
 
         // for each state, check whether it has overlap transitions
-        for (int i = 0; i < fTransTable.length && fTransTable[i] != null; i++) {
+        for (int i = 0; i < fTransTableSize; i++) {
             for (int j = 0; j < fElemMapSize; j++) {
+                if (transition(i, j) == -1) {
+                    continue;
+                }
                 for (int k = j+1; k < fElemMapSize; k++) {
-                    if (fTransTable[i][j] != -1 &&
-                        fTransTable[i][k] != -1) {
+                    if (transition(i, k) != -1) {
                         if (conflictTable[j][k] == 0) {
                             if (XSConstraints.overlapUPA
                                     (fElemMap[j], fElemMap[k],
@@ -1055,7 +1410,7 @@ public class XSDFACM
                                     // loops back to "i" then the two particles do not overlap if
                                     // minOccurs == maxOccurs.
                                     if (o != null && 
-                                        fTransTable[i][j] == i ^ fTransTable[i][k] == i && 
+                                        transition(i, j) == i ^ transition(i, k) == i && 
                                         o.minOccurs == o.maxOccurs) {
                                         conflictTable[j][k] = (byte) -1;
                                         continue;
@@ -1119,7 +1474,7 @@ public class XSDFACM
 
         Vector ret = new Vector();
         for (int elemIndex = 0; elemIndex < fElemMapSize; elemIndex++) {
-            int nextState = fTransTable[curState][elemIndex];
+            int nextState = transition(curState, elemIndex);
             if (nextState != -1) {
                 if (o != null) {
                     if (curState == nextState) {
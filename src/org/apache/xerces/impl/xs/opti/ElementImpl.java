@@ -32,8 +32,18 @@ import org.w3c.dom.Node;
  */
 public class ElementImpl extends DefaultElement {
     
+    /** 
+     * The number of entries per attribute in <code>attrs</code>: the
+     * prefix, local part, raw name, uri and value of the attribute.
+     */
+    static final int ATTR_FIELDS = 5;
+    
     SchemaDOM schemaDOM;
-    Attr[] attrs;
+    /** 
+     * The attributes of this element, packed into a single array.
+     * Attr nodes are only created when they are asked for.
+     */
+    String[] attrs;
     int row;
     int col;
     int parentRow;
@@ -43,6 +53,9 @@ public class ElementImpl extends DefaultElement {
     int charOffset;
     String fAnnotation;
     String fSyntheticAnnotation;
+    // the number of this element's annotation in its document
+    // if the annotation was deferred; -1 otherwise
+    int fAnnotationIndex = -1;
     
     public ElementImpl(int line, int column, int offset) {
         row = -1;
@@ -144,7 +157,11 @@ public class ElementImpl extends DefaultElement {
     
     
     public NamedNodeMap getAttributes() {
-        return new NamedNodeMapImpl(attrs);
+        Attr[] attrNodes = new Attr[attrs.length / ATTR_FIELDS];
+        for (int i=0; i<attrNodes.length; i++) {
+            attrNodes[i] = createAttr(i * ATTR_FIELDS);
+        }
+        return new NamedNodeMapImpl(attrNodes);
     }
     
     
@@ -164,30 +181,21 @@ public class ElementImpl extends DefaultElement {
     
     
     public String getAttribute(String name) {
-        
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                return attrs[i].getValue();
-            }
-        }
-        return "";
+        int index = indexOf(name);
+        return (index == -1) ? "" : attrs[index + 4];
     }
     
     
     public Attr getAttributeNode(String name) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                return attrs[i];
-            }
-        }
-        return null;
+        int index = indexOf(name);
+        return (index == -1) ? null : createAttr(index);
     }
     
     
     public String getAttributeNS(String namespaceURI, String localName) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getLocalName().equals(localName) && nsEquals(attrs[i].getNamespaceURI(), namespaceURI)) {
-                return attrs[i].getValue();
+        for (int i=0; i<attrs.length; i+=ATTR_FIELDS) {
+            if (attrs[i + 1].equals(localName) && nsEquals(attrs[i + 3], namespaceURI)) {
+                return attrs[i + 4];
             }
         }
         return "";
@@ -195,41 +203,25 @@ public class ElementImpl extends DefaultElement {
     
     
     public Attr getAttributeNodeNS(String namespaceURI, String localName) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(localName) && nsEquals(attrs[i].getNamespaceURI(), namespaceURI)) {
-                return attrs[i];
-            }
-        }
-        return null;
+        int index = indexOfNS(namespaceURI, localName);
+        return (index == -1) ? null : createAttr(index);
     }
     
     
     public boolean hasAttribute(String name) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(name) != -1;
     }
     
     
     public boolean hasAttributeNS(String namespaceURI, String localName) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(localName) && nsEquals(attrs[i].getNamespaceURI(), namespaceURI)) {
-                return true;
-            }
-        }
-        return false;
+        return indexOfNS(namespaceURI, localName) != -1;
     }
     
     
     public void setAttribute(String name, String value) {
-        for (int i=0; i<attrs.length; i++) {
-            if (attrs[i].getName().equals(name)) {
-                attrs[i].setValue(value);
-                return;
-            }
+        int index = indexOf(name);
+        if (index != -1) {
+            attrs[index + 4] = value;
         }
     }
     
@@ -256,6 +248,44 @@ public class ElementImpl extends DefaultElement {
         return fSyntheticAnnotation;
     }
     
+    /** 
+     * Returns the reader of this element's annotation if the annotation
+     * was deferred, or <code>null</code>.
+     */
+    public SchemaAnnotationReader getAnnotationReader() {
+        return (fAnnotationIndex != -1) ? schemaDOM.fAnnotationReader : null;
+    }
+    
+    /** Returns the number of this element's deferred annotation in its document. */
+    public int getAnnotationIndex() {
+        return fAnnotationIndex;
+    }
+    
+    /** Returns the index in <code>attrs</code> of the attribute with the given name, or -1. */
+    private int indexOf(String name) {
+        for (int i=0; i<attrs.length; i+=ATTR_FIELDS) {
+            if (attrs[i + 2].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private int indexOfNS(String namespaceURI, String localName) {
+        for (int i=0; i<attrs.length; i+=ATTR_FIELDS) {
+            if (attrs[i + 1].equals(localName) && nsEquals(attrs[i + 3], namespaceURI)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /** Creates an Attr node for the attribute at the given index in <code>attrs</code>. */
+    private Attr createAttr(int index) {
+        return new AttrImpl(this, attrs[index], attrs[index + 1],
+                attrs[index + 2], attrs[index + 3], attrs[index + 4]);
+    }
+    
     /**
      * Compares two namespace URIs with an extra case for null entries
      */
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.opti;
+
+import java.security.MessageDigest;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.w3c.dom.Node;
+
+/**
+ * Reads the annotations of a schema document on demand.
+ * <p>
+ * When annotations are deferred, the schema DOM parser does not 
+ * serialize the content of the annotations of a document; it only 
+ * numbers them in document order. The first time the text of one of 
+ * them is asked for, the document is parsed again from its system 
+ * identifier and the text of all its annotations is kept, provided the
+ * digest of the parse events matches the digest of the first parse.
+ * 
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public final class SchemaAnnotationReader {
+    
+    //
+    // Constants
+    //
+    
+    /** Features copied from the configuration of the original parser. */
+    private static final String[] FEATURES = {
+        Constants.XERCES_FEATURE_PREFIX + Constants.ALLOW_JAVA_ENCODINGS_FEATURE,
+        Constants.XERCES_FEATURE_PREFIX + Constants.STANDARD_URI_CONFORMANT_FEATURE,
+        Constants.XERCES_FEATURE_PREFIX + Constants.DISALLOW_DOCTYPE_DECL_FEATURE,
+    };
+    
+    /** Property identifier: entity resolver. */
+    private static final String ENTITY_RESOLVER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ENTITY_RESOLVER_PROPERTY;
+    
+    /** Property identifier: error handler. */
+    private static final String ERROR_HANDLER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ERROR_HANDLER_PROPERTY;
+    
+    /** Property identifier: security manager. */
+    private static final String SECURITY_MANAGER =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SECURITY_MANAGER_PROPERTY;
+    
+    /** Ignores the errors of the second parse; they were reported by the first. */
+    private static final XMLErrorHandler IGNORE_ERRORS = new XMLErrorHandler() {
+        public void warning(String domain, String key, XMLParseException exception) {}
+        public void error(String domain, String key, XMLParseException exception) {}
+        public void fatalError(String domain, String key, XMLParseException exception) {}
+    };
+    
+    //
+    // Data
+    //
+    
+    /** The expanded system identifier of the document. */
+    private final String fSystemId;
+    
+    private final boolean[] fFeatureValues = new boolean[FEATURES.length];
+    private final XMLEntityResolver fEntityResolver;
+    private final Object fSecurityManager;
+    
+    /** The number of annotations found by the first parse. */
+    int fCount;
+    
+    /** The digest of the parse events of the first parse, or null. */
+    byte[] fDigest;
+    
+    /** The text of the annotations, once the document has been read again. */
+    private String[] fAnnotations;
+    
+    //
+    // Constructors
+    //
+    
+    SchemaAnnotationReader(String systemId, XMLParserConfiguration config) {
+        fSystemId = systemId;
+        for (int i = 0; i < FEATURES.length; i++) {
+            fFeatureValues[i] = config.getFeature(FEATURES[i]);
+        }
+        fEntityResolver = (XMLEntityResolver) config.getProperty(ENTITY_RESOLVER);
+        fSecurityManager = config.getProperty(SECURITY_MANAGER);
+    }
+    
+    //
+    // Public methods
+    //
+    
+    /** Returns the system identifier of the document. */
+    public String getSystemId() {
+        return fSystemId;
+    } // getSystemId():String
+    
+    /**
+     * Returns the text of the annotation with the given number, or 
+     * <code>null</code> if the document can no longer be read or no 
+     * longer has the annotations it had when it was first parsed.
+     */
+    public synchronized String getAnnotation(int index) {
+        if (fAnnotations == null) {
+            fAnnotations = readAnnotations();
+        }
+        return (index < fAnnotations.length) ? fAnnotations[index] : null;
+    } // getAnnotation(int):String
+    
+    //
+    // Private methods
+    //
+    
+    private String[] readAnnotations() {
+        SchemaDOMParser parser = new SchemaDOMParser(new SchemaParsingConfig());
+        for (int i = 0; i < FEATURES.length; i++) {
+            parser.setFeature(FEATURES[i], fFeatureValues[i]);
+        }
+        if (fEntityResolver != null) {
+            parser.setEntityResolver(fEntityResolver);
+        }
+        if (fSecurityManager != null) {
+            parser.setProperty(SECURITY_MANAGER, fSecurityManager);
+        }
+        parser.setProperty(ERROR_HANDLER, IGNORE_ERRORS);
+        parser.fComputeDigest = fDigest != null;
+        String[] annotations = new String[fCount];
+        try {
+            parser.parse(new XMLInputSource(null, fSystemId, null));
+            if ((fDigest != null && !MessageDigest.isEqual(fDigest, parser.getDocumentDigest())) ||
+                    collect(parser.getDocument().getDocumentElement(), annotations, 0) != fCount) {
+                annotations = new String[0];
+            }
+        }
+        catch (Exception e) {
+            annotations = new String[0];
+        }
+        return annotations;
+    } // readAnnotations():String[]
+    
+    /** 
+     * Collects the text of the annotations below the given node in 
+     * document order, returning the number found so far. 
+     */
+    private static int collect(Node node, String[] annotations, int count) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String annotation = ((ElementImpl) child).getAnnotation();
+            if (annotation != null) {
+                if (count < annotations.length) {
+                    annotations[count] = annotation;
+                }
+                count++;
+            }
+            else {
+                count = collect(child, annotations, count);
+            }
+        }
+        return count;
+    } // collect(Node,String[],int):int
+    
+} // class SchemaAnnotationReader
@@ -44,6 +44,9 @@ public class SchemaDOM extends DefaultDocument {
     static final int relationsRowResizeFactor = 15;
     static final int relationsColResizeFactor = 10;
     
+    /** Attributes of elements which have none. */
+    private static final String[] NO_ATTRS = new String[0];
+    
     NodeImpl[][] relations;
     // parent must be an element in this scheme
     ElementImpl parent;
@@ -54,6 +57,11 @@ public class SchemaDOM extends DefaultDocument {
     
     // for annotation support:
     private StringBuffer fAnnotationBuffer = null;
+    // reads the annotations of this document again if they are
+    // deferred; null if the annotations are serialized as parsed
+    SchemaAnnotationReader fAnnotationReader;
+    // whether the annotation being parsed is deferred
+    private boolean fDeferringAnnotation;
     
     public SchemaDOM() {
         reset();
@@ -96,14 +104,14 @@ public class SchemaDOM extends DefaultDocument {
         node.schemaDOM = this;
         
         // set the attributes
-        Attr[] attrs = new Attr[attributes.getLength()];
-        for (int i=0; i<attributes.getLength(); i++) {
-            attrs[i] = new AttrImpl(node, 
-                    attributes.getPrefix(i), 
-                    attributes.getLocalName(i), 
-                    attributes.getQName(i), 
-                    attributes.getURI(i), 
-                    attributes.getValue(i));
+        final int attrCount = attributes.getLength();
+        String[] attrs = attrCount == 0 ? NO_ATTRS : new String[attrCount * ElementImpl.ATTR_FIELDS];
+        for (int i=0, j=0; i<attrCount; i++) {
+            attrs[j++] = attributes.getPrefix(i);
+            attrs[j++] = attributes.getLocalName(i);
+            attrs[j++] = attributes.getQName(i);
+            attrs[j++] = attributes.getURI(i);
+            attrs[j++] = attributes.getValue(i);
         }
         node.attrs = attrs;
         
@@ -115,6 +123,8 @@ public class SchemaDOM extends DefaultDocument {
         // store the current parent
         //if (relations[currLoc][0] == null || relations[currLoc][0] != parent) {
         if (relations[currLoc][0] != parent) {
+            // rows are only allocated once a parent has children
+            relations[nextFreeLoc] = new NodeImpl[relationsColResizeFactor];
             relations[nextFreeLoc][0] = parent;
             currLoc = nextFreeLoc++;
         }
@@ -149,6 +159,9 @@ public class SchemaDOM extends DefaultDocument {
     
     // note that this will only be called within appinfo/documentation
     void comment(XMLString text) {
+        if (fDeferringAnnotation) {
+            return;
+        }
         fAnnotationBuffer.append("<!--");
         if (text.length > 0) {
             fAnnotationBuffer.append(text.ch, text.offset, text.length);
@@ -158,6 +171,9 @@ public class SchemaDOM extends DefaultDocument {
     
     // note that this will only be called within appinfo/documentation
     void processingInstruction(String target, XMLString data) {
+        if (fDeferringAnnotation) {
+            return;
+        }
         fAnnotationBuffer.append("<?").append(target);
         if (data.length > 0) {
             fAnnotationBuffer.append(' ').append(data.ch, data.offset, data.length);
@@ -167,6 +183,9 @@ public class SchemaDOM extends DefaultDocument {
     
     // note that this will only be called within appinfo/documentation
     void characters(XMLString text) {
+        if (fDeferringAnnotation) {
+            return;
+        }
         
         // escape characters if necessary
         if (!inCDATA) {
@@ -207,6 +226,11 @@ public class SchemaDOM extends DefaultDocument {
     }
     
     void endAnnotation(QName elemName, ElementImpl annotation) {
+        if (fDeferringAnnotation) {
+            annotation.fAnnotationIndex = fAnnotationReader.fCount++;
+            fDeferringAnnotation = false;
+            return;
+        }
         fAnnotationBuffer.append("\n</").append(elemName.rawname).append(">");
         annotation.fAnnotation = fAnnotationBuffer.toString();
         // apparently, there is no sensible way of resetting these things
@@ -218,6 +242,9 @@ public class SchemaDOM extends DefaultDocument {
     }
     
     void endAnnotationElement(String elemRawName) {
+        if (fDeferringAnnotation) {
+            return;
+        }
         fAnnotationBuffer.append("</").append(elemRawName).append(">");
     }
     
@@ -242,11 +269,17 @@ public class SchemaDOM extends DefaultDocument {
     }
     
     void startAnnotationCDATA() {
+        if (fDeferringAnnotation) {
+            return;
+        }
         inCDATA = true;
         fAnnotationBuffer.append("<![CDATA[");
     }
     
     void endAnnotationCDATA() {
+        if (fDeferringAnnotation) {
+            return;
+        }
         fAnnotationBuffer.append("]]>");
         inCDATA = false;
     }
@@ -254,12 +287,33 @@ public class SchemaDOM extends DefaultDocument {
     private void resizeRelations() {
         NodeImpl[][] temp = new NodeImpl[relations.length+relationsRowResizeFactor][];
         System.arraycopy(relations, 0, temp, 0, relations.length);
-        for (int i = relations.length ; i < temp.length ; i++) {
-            temp[i] = new NodeImpl[relationsColResizeFactor];
-        }
         relations = temp;
     }
     
+    /**
+     * Trims the relations table to the rows in use, and each row to 
+     * the children it holds. Called once the document is complete.
+     */
+    void trimRelations() {
+        if (nextFreeLoc < relations.length) {
+            NodeImpl[][] temp = new NodeImpl[nextFreeLoc][];
+            System.arraycopy(relations, 0, temp, 0, nextFreeLoc);
+            relations = temp;
+        }
+        for (int i = 0; i < relations.length; i++) {
+            NodeImpl[] row = relations[i];
+            int length = row.length;
+            while (length > 2 && row[length - 1] == null) {
+                --length;
+            }
+            if (length < row.length) {
+                NodeImpl[] temp = new NodeImpl[length];
+                System.arraycopy(row, 0, temp, 0, length);
+                relations[i] = temp;
+            }
+        }
+    }
+    
     private void resizeRelations(int i) {
         NodeImpl[] temp = new NodeImpl[relations[i].length+relationsColResizeFactor];
         System.arraycopy(relations[i], 0, temp, 0, relations[i].length);
@@ -271,7 +325,7 @@ public class SchemaDOM extends DefaultDocument {
         
         // help out the garbage collector
         if(relations != null) 
-            for(int i=0; i<relations.length; i++) 
+            for(int i=0; i<relations.length && relations[i] != null; i++) 
                 for(int j=0; j<relations[i].length; j++) 
                     relations[i][j] = null;
         relations = new NodeImpl[relationsRowResizeFactor][];
@@ -280,13 +334,61 @@ public class SchemaDOM extends DefaultDocument {
         currLoc = 0;
         nextFreeLoc = 1;
         inCDATA = false;
-        for (int i=0; i<relationsRowResizeFactor; i++) {
-            relations[i] = new NodeImpl[relationsColResizeFactor];
-        }
+        relations[currLoc] = new NodeImpl[relationsColResizeFactor];
         relations[currLoc][0] = parent;
     }
     
     
+    /**
+     * Returns a copy of this document. The copy shares no nodes with 
+     * this document, so either may be changed (for instance by hiding
+     * nodes) without affecting the other.
+     */
+    SchemaDOM copy() {
+        SchemaDOM copy = new SchemaDOM();
+        NodeImpl[][] relations = new NodeImpl[this.relations.length][];
+        // copy the children first
+        for (int i = 0; i < nextFreeLoc; i++) {
+            relations[i] = new NodeImpl[this.relations[i].length];
+            for (int j = 1; j < relations[i].length; j++) {
+                ElementImpl element = (ElementImpl) this.relations[i][j];
+                if (element != null) {
+                    relations[i][j] = copy(element, copy);
+                }
+            }
+        }
+        // then point each row at the copy of its parent
+        ElementImpl root = copy((ElementImpl) this.relations[0][0], copy);
+        for (int i = 0; i < nextFreeLoc; i++) {
+            ElementImpl element = (ElementImpl) this.relations[i][0];
+            if (element != null) {
+                relations[i][0] = (element.row == -1) ? root : relations[element.row][element.col];
+            }
+        }
+        copy.relations = relations;
+        copy.parent = root;
+        copy.currLoc = 0;
+        copy.nextFreeLoc = nextFreeLoc;
+        copy.fAnnotationReader = fAnnotationReader;
+        copy.setDocumentURI(getDocumentURI());
+        return copy;
+    }
+    
+    private static ElementImpl copy(ElementImpl element, SchemaDOM schemaDOM) {
+        ElementImpl copy = new ElementImpl(element.prefix, element.localpart,
+                element.rawname, element.uri, element.line, element.column, element.charOffset);
+        copy.schemaDOM = schemaDOM;
+        copy.row = element.row;
+        copy.col = element.col;
+        copy.parentRow = element.parentRow;
+        copy.fAnnotation = element.fAnnotation;
+        copy.fAnnotationIndex = element.fAnnotationIndex;
+        copy.fSyntheticAnnotation = element.fSyntheticAnnotation;
+        copy.attrs = (element.attrs == null || element.attrs.length == 0) ?
+                NO_ATTRS : (String[]) element.attrs.clone();
+        return copy;
+    }
+    
     public void printDOM() {
         /*
          for (int i=0; i<relations.length; i++) {
@@ -351,6 +453,11 @@ public class SchemaDOM extends DefaultDocument {
     // commence the serialization of an annotation
     void startAnnotation(QName elemName, XMLAttributes attributes,
             NamespaceContext namespaceContext) {
+        if (fAnnotationReader != null) {
+            // the content is read again when it is asked for
+            fDeferringAnnotation = true;
+            return;
+        }
         startAnnotation(elemName.rawname, attributes, namespaceContext);
     }
     void startAnnotation(String elemRawName, XMLAttributes attributes,
@@ -400,6 +507,9 @@ public class SchemaDOM extends DefaultDocument {
         startAnnotationElement(elemName.rawname, attributes);
     }
     void startAnnotationElement(String elemRawName, XMLAttributes attributes) {
+        if (fDeferringAnnotation) {
+            return;
+        }
         fAnnotationBuffer.append("<").append(elemRawName);
         for(int i=0; i<attributes.getLength(); i++) {
             String aValue = attributes.getValue(i);
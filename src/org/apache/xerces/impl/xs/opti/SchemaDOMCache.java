@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.opti;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Hashtable;
+
+import org.w3c.dom.Document;
+
+/**
+ * A cache of parsed schema documents, which may be shared by several
+ * schema loaders and used from several threads.
+ * <p>
+ * Documents are keyed by their expanded system id, the digest of
+ * their content and the settings of the parser which built them, so a
+ * document whose content has changed, or which is to be parsed with 
+ * other settings, is parsed again. The cache keeps a pristine copy of each document and hands
+ * out copies of it, since the schema handler changes the documents it
+ * traverses. Copying a document is much cheaper than parsing it. When
+ * the cache is full, the least recently used document is dropped.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+public class SchemaDOMCache {
+
+    //
+    // Constants
+    //
+
+    /** Default maximum number of documents. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    //
+    // Data
+    //
+
+    /** Maximum number of documents. */
+    private final int fCapacity;
+
+    /** Map from system id to entry. */
+    private final Hashtable fEntries = new Hashtable();
+
+    /** Head of the list of entries, from most to least recently used. */
+    private final Entry fHead = new Entry(null, null, null, null);
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a cache holding up to the default number of documents. */
+    public SchemaDOMCache() {
+        this(DEFAULT_CAPACITY);
+    } // <init>()
+
+    /** Constructs a cache holding up to the given number of documents. */
+    public SchemaDOMCache(int capacity) {
+        fCapacity = Math.max(capacity, 1);
+        fHead.fNext = fHead.fPrevious = fHead;
+    } // <init>(int)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Returns a copy of the document cached for the given system id, or
+     * null if no document is cached for it with the same content digest
+     * and parsed with the same settings.
+     */
+    public Document getDocument(String systemId, byte[] digest, String settings) {
+        SchemaDOM document;
+        synchronized (this) {
+            Entry entry = (Entry) fEntries.get(systemId);
+            if (entry == null || !entry.fSettings.equals(settings) ||
+                    !MessageDigest.isEqual(entry.fDigest, digest)) {
+                return null;
+            }
+            unlink(entry);
+            link(entry);
+            document = entry.fDocument;
+        }
+        // the cached document is never changed, so it may
+        // be copied by several threads at once
+        return document.copy();
+    } // getDocument(String,byte[],String):Document
+
+    /**
+     * Caches a copy of the given document, parsed from content with the
+     * given digest and with the given settings. Documents other than
+     * those built by the schema parser are not cached.
+     */
+    public void putDocument(String systemId, byte[] digest, String settings,
+            Document document) {
+        if (systemId == null || !(document instanceof SchemaDOM)) {
+            return;
+        }
+        Entry entry = new Entry(systemId, digest, settings, 
+                ((SchemaDOM) document).copy());
+        synchronized (this) {
+            Entry old = (Entry) fEntries.put(systemId, entry);
+            if (old != null) {
+                unlink(old);
+            }
+            link(entry);
+            while (fEntries.size() > fCapacity) {
+                Entry last = fHead.fPrevious;
+                unlink(last);
+                fEntries.remove(last.fSystemId);
+            }
+        }
+    } // putDocument(String,byte[],String,Document)
+
+    /** Removes all the documents from the cache. */
+    public synchronized void clear() {
+        fEntries.clear();
+        fHead.fNext = fHead.fPrevious = fHead;
+    } // clear()
+
+    /** Returns the number of documents in the cache. */
+    public synchronized int getSize() {
+        return fEntries.size();
+    } // getSize():int
+
+    /**
+     * Returns the digest of the given document content, to be used as
+     * a key of this cache.
+     */
+    public static byte[] digest(byte[] content, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(content, offset, length);
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java platform provides SHA-1; fall back to
+            // the content itself otherwise
+            byte[] copy = new byte[length];
+            System.arraycopy(content, offset, copy, 0, length);
+            return copy;
+        }
+    } // digest(byte[],int,int):byte[]
+
+    //
+    // Private methods
+    //
+
+    private void link(Entry entry) {
+        entry.fNext = fHead.fNext;
+        entry.fPrevious = fHead;
+        fHead.fNext.fPrevious = entry;
+        fHead.fNext = entry;
+    } // link(Entry)
+
+    private void unlink(Entry entry) {
+        entry.fPrevious.fNext = entry.fNext;
+        entry.fNext.fPrevious = entry.fPrevious;
+        entry.fNext = entry.fPrevious = null;
+    } // unlink(Entry)
+
+    //
+    // Classes
+    //
+
+    /** A cached document. */
+    private static final class Entry {
+
+        final String fSystemId;
+        final byte[] fDigest;
+        final String fSettings;
+        final SchemaDOM fDocument;
+
+        Entry fPrevious;
+        Entry fNext;
+
+        Entry(String systemId, byte[] digest, String settings, SchemaDOM document) {
+            fSystemId = systemId;
+            fDigest = digest;
+            fSettings = settings;
+            fDocument = document;
+        }
+
+    } // class Entry
+
+} // class SchemaDOMCache
@@ -18,6 +18,8 @@
 package org.apache.xerces.impl.xs.opti;
 
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.apache.xerces.impl.Constants;
 import org.apache.xerces.impl.XMLErrorReporter;
@@ -59,6 +61,10 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
     public static final String GENERATE_SYNTHETIC_ANNOTATION =
         Constants.XERCES_FEATURE_PREFIX + Constants.GENERATE_SYNTHETIC_ANNOTATIONS_FEATURE;
     
+    /** Feature identifier: defer annotations. */
+    public static final String DEFER_ANNOTATIONS =
+        Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_ANNOTATIONS_FEATURE;
+    
     // the locator containing line/column information
     protected XMLLocator   fLocator;
     
@@ -95,6 +101,25 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
     // Use to report the error when characters are not allowed.
     XMLErrorReporter fErrorReporter;
     
+    // whether the document has a document type declaration
+    private boolean fHasDoctype = false;
+    
+    // whether the document being parsed can be read again from its
+    // system identifier, which annotations must be to be deferred
+    private boolean fRereadable = false;
+    
+    // digest of the parse events of the document, computed when its
+    // annotations are deferred so that the annotation reader can check
+    // that the document it reads again is the same one
+    private MessageDigest fDigest = null;
+    private byte[] fDigestBuffer = null;
+    
+    // whether to compute the digest whether annotations are deferred or not
+    boolean fComputeDigest = false;
+    
+    // the digest of the document last parsed, if computed
+    private byte[] fDocumentDigest = null;
+    
     // fields for generate-synthetic annotations feature
     private boolean fGenerateSyntheticAnnotation = false;
     private BooleanStack fHasNonSchemaAttributes = new BooleanStack();
@@ -117,11 +142,45 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
         fAnnotationDepth = -1;
         fInnerAnnotationDepth = -1;
         fDepth = -1;
+        fHasDoctype = false;
         fLocator = locator;
         fNamespaceContext = namespaceContext;
         schemaDOM.setDocumentURI(locator.getExpandedSystemId());
+        fDocumentDigest = null;
+        fDigest = null;
+        if (fRereadable && config.getFeature(DEFER_ANNOTATIONS)) {
+            schemaDOM.fAnnotationReader = 
+                new SchemaAnnotationReader(locator.getExpandedSystemId(), config);
+            fDigest = createDigest();
+        }
+        else if (fComputeDigest) {
+            fDigest = createDigest();
+        }
     } // startDocument(XMLLocator,String,NamespaceContext, Augmentations)
     
+    /**
+     * Notifies of the presence of the DOCTYPE line in the document.
+     * 
+     * @param rootElement The name of the root element.
+     * @param publicId    The public identifier if an external DTD or null
+     *                    if the external DTD is specified using SYSTEM.
+     * @param systemId    The system identifier if an external DTD, null
+     *                    otherwise.
+     * @param augs        Additional information that may include infoset augmentations
+     *
+     * @throws XNIException Thrown by handler to signal an error.
+     */
+    public void doctypeDecl(String rootElement, String publicId, String systemId, Augmentations augs)
+        throws XNIException {
+        fHasDoctype = true;
+        if (fDigest != null) {
+            digest(EVENT_DOCTYPE);
+            digest(rootElement);
+            digest(publicId);
+            digest(systemId);
+        }
+    } // doctypeDecl(String,String,String,Augmentations)
+    
     /**
      * The end of the document.
      * @param augs     Additional information that may include infoset augmentations
@@ -129,6 +188,15 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      * @throws XNIException Thrown by handler to signal an error.
      */
     public void endDocument(Augmentations augs) throws XNIException {
+        // the document is complete; release the unused parts of the relations table
+        schemaDOM.trimRelations();
+        if (fDigest != null) {
+            fDocumentDigest = fDigest.digest();
+            fDigest = null;
+            if (schemaDOM.fAnnotationReader != null) {
+                schemaDOM.fAnnotationReader.fDigest = fDocumentDigest;
+            }
+        }
         // To debug the DOM created uncomment the line below
         // schemaDOM.printDOM();
     } // endDocument()
@@ -144,6 +212,10 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      *                   Thrown by application to signal an error.
      */
     public void comment(XMLString text, Augmentations augs) throws XNIException {
+        if (fDigest != null) {
+            digest(EVENT_COMMENT);
+            digest(text.ch, text.offset, text.length);
+        }
         if(fAnnotationDepth > -1) {
             schemaDOM.comment(text);
         }
@@ -169,6 +241,13 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      */
     public void processingInstruction(String target, XMLString data, Augmentations augs)
     throws XNIException {
+        if (fDigest != null) {
+            digest(EVENT_PROCESSING_INSTRUCTION);
+            digest(target);
+            if (data != null) {
+                digest(data.ch, data.offset, data.length);
+            }
+        }
         if (fAnnotationDepth > -1) {
             schemaDOM.processingInstruction(target, data);
         }
@@ -184,6 +263,9 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      *                   Thrown by handler to signal an error.
      */
     public void characters(XMLString text, Augmentations augs) throws XNIException {
+        if (fDigest != null) {
+            digestCharacters(text.ch, text.offset, text.length);
+        }
         // when it's not within xs:appinfo or xs:documentation
         if (fInnerAnnotationDepth == -1 ) {
             for (int i=text.offset; i<text.offset+text.length; i++) {
@@ -226,6 +308,9 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
     public void startElement(QName element, XMLAttributes attributes, Augmentations augs)
     throws XNIException {
         
+        if (fDigest != null) {
+            digest(EVENT_START_ELEMENT, element, attributes);
+        }
         fDepth++;
         // while it is true that non-whitespace character data
         // may only occur in appInfo or documentation
@@ -284,6 +369,9 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
     public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs)
     throws XNIException {
         
+        if (fDigest != null) {
+            digest(EVENT_EMPTY_ELEMENT, element, attributes);
+        }
         if (fGenerateSyntheticAnnotation && fAnnotationDepth == -1 && 
                 element.uri == SchemaSymbols.URI_SCHEMAFORSCHEMA && element.localpart != SchemaSymbols.ELT_ANNOTATION && hasNonSchemaAttributes(element, attributes)) { 
             
@@ -357,6 +445,9 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      */
     public void endElement(QName element, Augmentations augs) throws XNIException {
         
+        if (fDigest != null) {
+            digest(EVENT_END_ELEMENT);
+        }
         // when we reach the endElement of xs:appinfo or xs:documentation,
         // change fInnerAnnotationDepth to -1
         if(fAnnotationDepth > -1) {
@@ -392,6 +483,80 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
         
     }
     
+    //
+    // Digest methods
+    //
+    
+    // kinds of parse events in the digest
+    private static final byte EVENT_START_ELEMENT = 1;
+    private static final byte EVENT_EMPTY_ELEMENT = 2;
+    private static final byte EVENT_END_ELEMENT = 3;
+    private static final byte EVENT_COMMENT = 4;
+    private static final byte EVENT_PROCESSING_INSTRUCTION = 5;
+    private static final byte EVENT_START_CDATA = 6;
+    private static final byte EVENT_END_CDATA = 7;
+    private static final byte EVENT_DOCTYPE = 8;
+    
+    /** Returns a new digest, or null if none is available. */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+    
+    private void digest(byte event) {
+        fDigest.update(event);
+    }
+    
+    private void digest(byte event, QName element, XMLAttributes attributes) {
+        fDigest.update(event);
+        digest(element.rawname);
+        digest(element.uri);
+        final int length = attributes.getLength();
+        for (int i = 0; i < length; ++i) {
+            digest(attributes.getQName(i));
+            digest(attributes.getURI(i));
+            digest(attributes.getValue(i));
+        }
+    }
+    
+    /** 
+     * Adds character content without a length, so that the digest does not
+     * depend on how the scanner splits the content into calls.
+     */
+    private void digestCharacters(char[] ch, int offset, int length) {
+        if (fDigestBuffer == null || fDigestBuffer.length < length * 2) {
+            fDigestBuffer = new byte[Math.max(length * 2, 256)];
+        }
+        for (int i = 0; i < length; ++i) {
+            final char c = ch[offset + i];
+            fDigestBuffer[i * 2] = (byte) (c >> 8);
+            fDigestBuffer[i * 2 + 1] = (byte) c;
+        }
+        fDigest.update(fDigestBuffer, 0, length * 2);
+    }
+    
+    private void digest(char[] ch, int offset, int length) {
+        fDigest.update((byte) (length >> 24));
+        fDigest.update((byte) (length >> 16));
+        fDigest.update((byte) (length >> 8));
+        fDigest.update((byte) length);
+        digestCharacters(ch, offset, length);
+    }
+    
+    private void digest(String s) {
+        if (s == null) {
+            fDigest.update((byte) 0);
+        }
+        else {
+            fDigest.update((byte) 1);
+            digest(s.toCharArray(), 0, s.length());
+        }
+    }
+    
     /**
      * @param attributes
      * @return
@@ -425,6 +590,9 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      *                   Thrown by handler to signal an error.
      */
     public void ignorableWhitespace(XMLString text, Augmentations augs) throws XNIException {
+        if (fDigest != null) {
+            digestCharacters(text.ch, text.offset, text.length);
+        }
         // unlikely to be called, but you never know...
         if (fAnnotationDepth != -1 ) {
             schemaDOM.characters(text);
@@ -440,6 +608,9 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      *                   Thrown by handler to signal an error.
      */
     public void startCDATA(Augmentations augs) throws XNIException {
+        if (fDigest != null) {
+            digest(EVENT_START_CDATA);
+        }
         // only deal with CDATA boundaries within an annotation.
         if (fAnnotationDepth != -1) {
             schemaDOM.startAnnotationCDATA();
@@ -455,6 +626,9 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      *                   Thrown by handler to signal an error.
      */
     public void endCDATA(Augmentations augs) throws XNIException {
+        if (fDigest != null) {
+            digest(EVENT_END_CDATA);
+        }
         // only deal with CDATA boundaries within an annotation.
         if (fAnnotationDepth != -1) {
             schemaDOM.endAnnotationCDATA();
@@ -473,6 +647,22 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
         return schemaDOM;
     }
     
+    /**
+     * Returns the digest of the parse events of the document last parsed,
+     * or null if it was not computed.
+     */
+    byte[] getDocumentDigest() {
+        return fDocumentDigest;
+    }
+    
+    /**
+     * Returns true if the document last parsed had a document type
+     * declaration.
+     */
+    public boolean hasDoctype() {
+        return fHasDoctype;
+    }
+    
     /**
      * Delegates to SchemaParsingConfig.setFeature
      * @param featureId
@@ -517,6 +707,14 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
     	config.setEntityResolver(er);
     }
     
+    /**
+     * Delegates to SchemaParsingConfig.getEntityResolver.
+     * @return XMLEntityResolver
+     */
+    public XMLEntityResolver getEntityResolver() {
+        return config.getEntityResolver();
+    }
+    
     /**
      * Delegates parsing to SchemaParsingConfig
      * 
@@ -524,7 +722,18 @@ public class SchemaDOMParser extends DefaultXMLDocumentHandler {
      * @throws IOException
      */
     public void parse(XMLInputSource inputSource) throws IOException {
-        config.parse(inputSource);
+        // a document supplied as a stream may not be the one
+        // found at its system identifier
+        fRereadable = inputSource.getClass() == XMLInputSource.class &&
+            inputSource.getByteStream() == null && 
+            inputSource.getCharacterStream() == null &&
+            inputSource.getSystemId() != null;
+        try {
+            config.parse(inputSource);
+        }
+        finally {
+            fRereadable = false;
+        }
     }
     
     /**
@@ -108,6 +108,10 @@ public class SchemaParsingConfig extends BasicParserConfiguration
     protected static final String GENERATE_SYNTHETIC_ANNOTATIONS = 
         Constants.XERCES_FEATURE_PREFIX + Constants.GENERATE_SYNTHETIC_ANNOTATIONS_FEATURE;
     
+    /** Feature identifier: defer annotations. */
+    protected static final String DEFER_ANNOTATIONS = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_ANNOTATIONS_FEATURE;
+    
     
     // property identifiers
     
@@ -296,7 +300,8 @@ public class SchemaParsingConfig extends BasicParserConfiguration
             PARSER_SETTINGS, WARN_ON_DUPLICATE_ATTDEF,   WARN_ON_UNDECLARED_ELEMDEF,
             ALLOW_JAVA_ENCODINGS,       CONTINUE_AFTER_FATAL_ERROR,
             LOAD_EXTERNAL_DTD,          NOTIFY_BUILTIN_REFS,
-            NOTIFY_CHAR_REFS, GENERATE_SYNTHETIC_ANNOTATIONS
+            NOTIFY_CHAR_REFS, GENERATE_SYNTHETIC_ANNOTATIONS,
+            DEFER_ANNOTATIONS
         };
         addRecognizedFeatures(recognizedFeatures);
         fFeatures.put(PARSER_SETTINGS, Boolean.TRUE);
@@ -310,6 +315,7 @@ public class SchemaParsingConfig extends BasicParserConfiguration
         fFeatures.put(NOTIFY_BUILTIN_REFS, Boolean.FALSE);
         fFeatures.put(NOTIFY_CHAR_REFS, Boolean.FALSE);
         fFeatures.put(GENERATE_SYNTHETIC_ANNOTATIONS, Boolean.FALSE);
+        fFeatures.put(DEFER_ANNOTATIONS, Boolean.FALSE);
         
         // add default recognized properties
         final String[] recognizedProperties = {
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.traversers;
+
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+/**
+ * Passes errors on to another error handler, if any, and remembers
+ * whether any were reported.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class ErrorRecorder implements XMLErrorHandler {
+
+    /** The error handler errors are passed on to, or null. */
+    private final XMLErrorHandler fErrorHandler;
+
+    /** True if anything was reported. */
+    boolean fReported = false;
+
+    /** Constructs a recorder which only remembers. */
+    ErrorRecorder() {
+        this(null);
+    } // <init>()
+
+    /** Constructs a recorder passing errors on to the given handler. */
+    ErrorRecorder(XMLErrorHandler errorHandler) {
+        fErrorHandler = errorHandler;
+    } // <init>(XMLErrorHandler)
+
+    public void warning(String domain, String key, XMLParseException exception) throws XNIException {
+        fReported = true;
+        if (fErrorHandler != null) {
+            fErrorHandler.warning(domain, key, exception);
+        }
+    } // warning(String,String,XMLParseException)
+
+    public void error(String domain, String key, XMLParseException exception) throws XNIException {
+        fReported = true;
+        if (fErrorHandler != null) {
+            fErrorHandler.error(domain, key, exception);
+        }
+    } // error(String,String,XMLParseException)
+
+    public void fatalError(String domain, String key, XMLParseException exception) throws XNIException {
+        fReported = true;
+        if (fErrorHandler != null) {
+            fErrorHandler.fatalError(domain, key, exception);
+        }
+    } // fatalError(String,String,XMLParseException)
+
+} // class ErrorRecorder
@@ -0,0 +1,482 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.impl.xs.traversers;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.apache.xerces.impl.XMLEntityManager;
+import org.apache.xerces.impl.xs.SchemaSymbols;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.impl.xs.opti.SchemaDOM;
+import org.apache.xerces.impl.xs.opti.SchemaDOMParser;
+import org.apache.xerces.impl.xs.opti.SchemaParsingConfig;
+import org.apache.xerces.util.DOMUtil;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Parses the schema documents referenced by include, import and
+ * redefine elements on background threads, ahead of the point where
+ * the schema handler asks for them.
+ * <p>
+ * Each document given to the prefetcher is scanned for references to
+ * other schema documents. Each reference is resolved as the schema
+ * handler resolves it, through its entity resolver and the schema
+ * location pairs, and every system id not seen before is queued. A
+ * reference resolved to a stream or to a source other than a plain
+ * <code>XMLInputSource</code> is left for the schema handler to read.
+ * Worker threads, each with its own <code>SchemaDOMParser</code>, parse
+ * the queued documents and scan them in turn, so the whole set of
+ * documents reachable from the root is parsed concurrently while the
+ * schema handler builds its trees serially. The handler then takes the
+ * document parsed for a location instead of parsing it itself.
+ * <p>
+ * A document whose parse reported a warning or an error is discarded,
+ * so that the schema handler parses it again and reports the errors in
+ * document order through the application's error handler.
+ * <p>
+ * Nothing is prefetched while the application has set an entity
+ * resolver, since it would be called on the worker threads.
+ *
+ * @xerces.internal
+ *
+ * @version $Id$
+ */
+final class SchemaDocumentPrefetcher {
+
+    //
+    // Constants
+    //
+
+    /** Features copied from the schema handler's parser. */
+    private static final String[] FEATURES = {
+        XSDHandler.ALLOW_JAVA_ENCODINGS,
+        XSDHandler.STANDARD_URI_CONFORMANT_FEATURE,
+        XSDHandler.DISALLOW_DOCTYPE,
+        XSDHandler.GENERATE_SYNTHETIC_ANNOTATIONS,
+        XSDHandler.DEFER_ANNOTATIONS,
+    };
+
+    // states of a document
+    private static final int QUEUED = 0;
+    private static final int PARSING = 1;
+    private static final int PARSED = 2;
+    private static final int TAKEN = 3;
+
+    //
+    // Data
+    //
+
+    /** Maximum number of worker threads. */
+    private int fThreadCount;
+
+    /** Number of worker threads running. */
+    private int fRunning;
+
+    /** Number of worker threads not yet finished, including stopped ones. */
+    private int fAlive;
+
+    /** Incremented each time the prefetcher is stopped. */
+    private int fGeneration;
+
+    /** True if documents are being prefetched. */
+    private boolean fActive;
+
+    /** Feature values copied from the schema handler's parser. */
+    private final boolean[] fFeatureValues = new boolean[FEATURES.length];
+
+    /** Security manager of the schema handler's parser. */
+    private Object fSecurityManager;
+
+    /** Entity resolver of the schema handler. */
+    private XMLEntityResolver fEntityResolver;
+
+    /** Schema location pairs of the schema handler. */
+    private Hashtable fLocationPairs;
+
+    /** Map from expanded system id to the entry of a document. */
+    private final Hashtable fEntries = new Hashtable();
+
+    /** Entries waiting to be parsed. */
+    private final Vector fQueue = new Vector();
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Starts prefetching documents on up to the given number of threads,
+     * with the parser settings of the given schema parser. Any documents
+     * left from a previous schema are discarded. Nothing is prefetched
+     * if the parser has an entity resolver.
+     *
+     * @param parser         the schema handler's parser
+     * @param entityResolver the entity resolver of the schema handler
+     * @param locationPairs  the schema location pairs of the schema handler
+     * @param threadCount    the maximum number of worker threads
+     */
+    public synchronized void start(SchemaDOMParser parser, XMLEntityResolver entityResolver,
+            Hashtable locationPairs, int threadCount) {
+        stop();
+        if (parser.getEntityResolver() != null || entityResolver == null) {
+            return;
+        }
+        for (int i = 0; i < FEATURES.length; i++) {
+            try {
+                fFeatureValues[i] = parser.getFeature(FEATURES[i]);
+            }
+            catch (XNIException e) {
+                fFeatureValues[i] = false;
+            }
+        }
+        try {
+            fSecurityManager = parser.getProperty(XSDHandler.SECURITY_MANAGER);
+        }
+        catch (XNIException e) {
+            fSecurityManager = null;
+        }
+        fEntityResolver = entityResolver;
+        fLocationPairs = locationPairs != null ? locationPairs : new Hashtable();
+        fThreadCount = threadCount;
+        fActive = true;
+    } // start(SchemaDOMParser,XMLEntityResolver,Hashtable,int)
+
+    /**
+     * Stops prefetching. Documents being parsed are finished by their
+     * threads and thrown away.
+     */
+    public synchronized void stop() {
+        if (fActive) {
+            fActive = false;
+            fGeneration++;
+            fRunning = 0;
+            fEntries.clear();
+            fQueue.removeAllElements();
+            fSecurityManager = null;
+            fEntityResolver = null;
+            fLocationPairs = null;
+            notifyAll();
+        }
+    } // stop()
+
+    /**
+     * Queues the schema documents referenced by the children of the
+     * given schema element. The location of the document itself is
+     * recorded so that it is not queued again.
+     *
+     * @param schemaRoot the root element of a schema document
+     * @param systemId   the expanded system id of the document
+     */
+    public void scan(Element schemaRoot, String systemId) {
+        int generation;
+        synchronized (this) {
+            generation = fGeneration;
+        }
+        scan(schemaRoot, systemId, generation);
+    } // scan(Element,String)
+
+    /**
+     * Returns the document parsed for the given expanded system id,
+     * waiting for its parse to finish if needed. Returns null if the
+     * document was not prefetched, if it has already been taken, or
+     * if its parse reported an error.
+     */
+    public synchronized Document take(String systemId) {
+        Entry entry = fActive ? (Entry) fEntries.get(systemId) : null;
+        if (entry == null) {
+            return null;
+        }
+        if (entry.fState == QUEUED) {
+            // no worker has got to it yet; the caller parses it itself
+            fQueue.removeElement(entry);
+            entry.fState = TAKEN;
+            return null;
+        }
+        int generation = fGeneration;
+        boolean interrupted = false;
+        while (entry.fState == PARSING && generation == fGeneration) {
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Document document = entry.fDocument;
+        entry.fDocument = null;
+        entry.fState = TAKEN;
+        return document;
+    } // take(String):Document
+
+    //
+    // Package methods
+    //
+
+    /** Returns true if documents are being prefetched. */
+    synchronized boolean isActive() {
+        return fActive;
+    } // isActive():boolean
+
+    /**
+     * Waits up to the given number of milliseconds for all worker
+     * threads to finish, including those left from a stopped prefetch.
+     * Returns true if no worker thread is left.
+     */
+    synchronized boolean waitForWorkers(long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while (fAlive > 0 && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return fAlive == 0;
+    } // waitForWorkers(long):boolean
+
+    //
+    // Private methods
+    //
+
+    /** Queues the documents referenced by a schema document. */
+    private void scan(Element schemaRoot, String systemId, int generation) {
+        if (schemaRoot == null || systemId == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!fActive || generation != fGeneration) {
+                return;
+            }
+            if (fEntries.get(systemId) == null) {
+                fEntries.put(systemId, new Entry(null, TAKEN));
+            }
+        }
+        String targetNamespace = null;
+        if (DOMUtil.getAttr(schemaRoot, SchemaSymbols.ATT_TARGETNAMESPACE) != null) {
+            targetNamespace = DOMUtil.getAttrValue(schemaRoot, SchemaSymbols.ATT_TARGETNAMESPACE);
+        }
+        for (Element child = DOMUtil.getFirstChildElement(schemaRoot);
+        child != null;
+        child = DOMUtil.getNextSiblingElement(child)) {
+            if (DOMUtil.getNamespaceURI(child) != SchemaSymbols.URI_SCHEMAFORSCHEMA) {
+                continue;
+            }
+            String localName = DOMUtil.getLocalName(child);
+            XSDDescription desc = new XSDDescription();
+            if (localName.equals(SchemaSymbols.ELT_IMPORT)) {
+                desc.setContextType(XSDDescription.CONTEXT_IMPORT);
+                if (DOMUtil.getAttr(child, SchemaSymbols.ATT_NAMESPACE) != null) {
+                    desc.setTargetNamespace(DOMUtil.getAttrValue(child, SchemaSymbols.ATT_NAMESPACE));
+                }
+            }
+            else if (localName.equals(SchemaSymbols.ELT_INCLUDE)) {
+                desc.setContextType(XSDDescription.CONTEXT_INCLUDE);
+                desc.setTargetNamespace(targetNamespace);
+            }
+            else if (localName.equals(SchemaSymbols.ELT_REDEFINE)) {
+                desc.setContextType(XSDDescription.CONTEXT_REDEFINE);
+                desc.setTargetNamespace(targetNamespace);
+            }
+            else {
+                continue;
+            }
+            String location = null;
+            if (DOMUtil.getAttr(child, SchemaSymbols.ATT_SCHEMALOCATION) != null) {
+                location = DOMUtil.getAttrValue(child, SchemaSymbols.ATT_SCHEMALOCATION).trim();
+            }
+            desc.setBaseSystemId(systemId);
+            desc.setLiteralSystemId(location);
+            desc.setLocationHints(new String[]{location});
+            queue(desc, generation);
+        }
+    } // scan(Element,String,int)
+
+    /**
+     * Resolves a reference to a schema document, and queues the document
+     * for parsing if it is a plain system id which has not been seen
+     * before.
+     */
+    private void queue(XSDDescription desc, int generation) {
+        XMLEntityResolver entityResolver;
+        Hashtable locationPairs;
+        synchronized (this) {
+            if (!fActive || generation != fGeneration) {
+                return;
+            }
+            entityResolver = fEntityResolver;
+            locationPairs = fLocationPairs;
+        }
+        XMLInputSource source;
+        String systemId;
+        try {
+            source = XMLSchemaLoader.resolveDocument(desc, locationPairs, entityResolver);
+            if (source == null || source.getClass() != XMLInputSource.class ||
+                source.getByteStream() != null || source.getCharacterStream() != null ||
+                source.getSystemId() == null) {
+                return;
+            }
+            systemId = XMLEntityManager.expandSystemId(source.getSystemId(), source.getBaseSystemId(), false);
+        }
+        catch (IOException e) {
+            // left for the schema handler to report
+            return;
+        }
+        if (systemId == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!fActive || generation != fGeneration || fEntries.get(systemId) != null) {
+                return;
+            }
+            Entry entry = new Entry(source, QUEUED);
+            fEntries.put(systemId, entry);
+            fQueue.addElement(entry);
+            if (fRunning < fThreadCount) {
+                fRunning++;
+                fAlive++;
+                Thread thread = new Worker(fGeneration);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    } // queue(XSDDescription,int)
+
+    /**
+     * Returns the next document to parse, or null if the queue is empty
+     * or the prefetcher has been stopped since the worker was started.
+     */
+    private synchronized Entry next(int generation) {
+        if (generation != fGeneration) {
+            return null;
+        }
+        if (fQueue.isEmpty()) {
+            fRunning--;
+            return null;
+        }
+        Entry entry = (Entry) fQueue.elementAt(0);
+        fQueue.removeElementAt(0);
+        entry.fState = PARSING;
+        return entry;
+    } // next(int):Entry
+
+    /** Records the result of parsing a document. */
+    private synchronized void parsed(Entry entry, Document document) {
+        entry.fDocument = document;
+        entry.fState = PARSED;
+        notifyAll();
+    } // parsed(Entry,Document)
+
+    /** Records the end of a worker thread. */
+    private synchronized void exited() {
+        fAlive--;
+        notifyAll();
+    } // exited()
+
+    /** Creates a parser configured as the schema handler's parser. */
+    private synchronized SchemaDOMParser createParser(ErrorRecorder errorRecorder) {
+        SchemaDOMParser parser = new SchemaDOMParser(new SchemaParsingConfig());
+        for (int i = 0; i < FEATURES.length; i++) {
+            try {
+                parser.setFeature(FEATURES[i], fFeatureValues[i]);
+            }
+            catch (XNIException e) {
+            }
+        }
+        if (fSecurityManager != null) {
+            parser.setProperty(XSDHandler.SECURITY_MANAGER, fSecurityManager);
+        }
+        parser.setProperty(XSDHandler.ERROR_HANDLER, errorRecorder);
+        return parser;
+    } // createParser(ErrorRecorder):SchemaDOMParser
+
+    //
+    // Classes
+    //
+
+    /** A schema document known to the prefetcher. */
+    private static final class Entry {
+
+        /** The resolved source of the document. */
+        final XMLInputSource fSource;
+
+        /** The state of the document. */
+        int fState;
+
+        /** The parsed document, or null if the parse failed. */
+        Document fDocument;
+
+        Entry(XMLInputSource source, int state) {
+            fSource = source;
+            fState = state;
+        }
+
+    } // class Entry
+
+    /** Parses queued documents until the queue is empty. */
+    private final class Worker extends Thread {
+
+        private final int fWorkerGeneration;
+
+        Worker(int generation) {
+            fWorkerGeneration = generation;
+        }
+
+        public void run() {
+            try {
+                ErrorRecorder errorRecorder = new ErrorRecorder();
+                SchemaDOMParser parser = createParser(errorRecorder);
+                Entry entry;
+                while ((entry = next(fWorkerGeneration)) != null) {
+                    Document document = null;
+                    errorRecorder.fReported = false;
+                    try {
+                        parser.parse(entry.fSource);
+                        if (!errorRecorder.fReported) {
+                            document = parser.getDocument();
+                        }
+                        if (document != null) {
+                            String systemId = ((SchemaDOM) document).getDocumentURI();
+                            if (systemId == null) {
+                                systemId = XMLEntityManager.expandSystemId(entry.fSource.getSystemId(),
+                                        entry.fSource.getBaseSystemId(), false);
+                            }
+                            scan(DOMUtil.getRoot(document), systemId, fWorkerGeneration);
+                        }
+                    }
+                    catch (Exception e) {
+                        // the schema handler parses it again and reports the error
+                        document = null;
+                    }
+                    parsed(entry, document);
+                }
+            }
+            finally {
+                exited();
+            }
+        }
+
+    } // class Worker
+
+} // class SchemaDocumentPrefetcher
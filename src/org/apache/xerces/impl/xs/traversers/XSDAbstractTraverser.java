@@ -33,6 +33,8 @@ import org.apache.xerces.impl.xs.XSComplexTypeDecl;
 import org.apache.xerces.impl.xs.XSElementDecl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 import org.apache.xerces.impl.xs.XSWildcardDecl;
+import org.apache.xerces.impl.xs.opti.ElementImpl;
+import org.apache.xerces.impl.xs.opti.SchemaAnnotationReader;
 import org.apache.xerces.impl.xs.util.XInt;
 import org.apache.xerces.impl.xs.util.XSObjectListImpl;
 import org.apache.xerces.util.DOMUtil;
@@ -132,9 +134,15 @@ abstract class XSDAbstractTraverser {
             }
             while (child != null);
         }
-        // if contents was null, must have been some kind of error;
-        // nothing to contribute to PSVI
-        if (contents == null) return null;
+        // if contents was null, the annotation was deferred or there
+        // must have been some kind of error; nothing to contribute to PSVI
+        SchemaAnnotationReader reader = null;
+        if (contents == null) {
+            if (annotationDecl instanceof ElementImpl) {
+                reader = ((ElementImpl) annotationDecl).getAnnotationReader();
+            }
+            if (reader == null) return null;
+        }
         
         // find the grammar; fSchemaHandler must be known!
         SchemaGrammar grammar = fSchemaHandler.getGrammar(schemaDoc.fTargetNamespace);
@@ -171,6 +179,11 @@ abstract class XSDAbstractTraverser {
                 localStrBuffer.append(value)
                 .append("\" ");
             }
+            if (reader != null) {
+                // the attributes are spliced in once the content has been read
+                return new XSAnnotationImpl(reader, ((ElementImpl) annotationDecl).getAnnotationIndex(), 
+                        localStrBuffer.toString(), grammar);
+            }
             // and now splice it into place; immediately after the annotation token, for simplicity's sake
             StringBuffer contentBuffer = new StringBuffer(contents.length() + localStrBuffer.length());
             int annotationTokenEnd = contents.indexOf(SchemaSymbols.ELT_ANNOTATION);
@@ -186,6 +199,10 @@ abstract class XSDAbstractTraverser {
             }
             return new XSAnnotationImpl(annotation, grammar);
         } else {
+            if (reader != null) {
+                return new XSAnnotationImpl(reader, ((ElementImpl) annotationDecl).getAnnotationIndex(), 
+                        null, grammar);
+            }
             if (fValidateAnnotations) {
                 schemaDoc.addAnnotation(new XSAnnotationInfo(contents, annotationDecl));
             }
@@ -18,6 +18,7 @@
 package org.apache.xerces.impl.xs.traversers;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -54,17 +55,22 @@ import org.apache.xerces.impl.xs.XSNotationDecl;
 import org.apache.xerces.impl.xs.XSParticleDecl;
 import org.apache.xerces.impl.xs.identity.IdentityConstraint;
 import org.apache.xerces.impl.xs.opti.ElementImpl;
+import org.apache.xerces.impl.xs.opti.SchemaDOMCache;
 import org.apache.xerces.impl.xs.opti.SchemaDOMParser;
 import org.apache.xerces.impl.xs.opti.SchemaParsingConfig;
 import org.apache.xerces.impl.xs.util.SimpleLocator;
 import org.apache.xerces.impl.xs.util.XSInputSource;
 import org.apache.xerces.parsers.SAXParser;
 import org.apache.xerces.parsers.XML11Configuration;
+import org.apache.xerces.util.ByteArrayInputSource;
+import org.apache.xerces.util.CharArrayInputSource;
 import org.apache.xerces.util.DOMInputSource;
 import org.apache.xerces.util.DOMUtil;
 import org.apache.xerces.util.DefaultErrorHandler;
 import org.apache.xerces.util.ErrorHandlerWrapper;
+import org.apache.xerces.util.HTTPInputSource;
 import org.apache.xerces.util.SAXInputSource;
+import org.apache.xerces.util.SecurityManager;
 import org.apache.xerces.util.StAXInputSource;
 import org.apache.xerces.util.StAXLocationWrapper;
 import org.apache.xerces.util.SymbolHash;
@@ -171,6 +177,10 @@ public class XSDHandler {
     protected static final String TOLERATE_DUPLICATES = 
       Constants.XERCES_FEATURE_PREFIX + Constants.TOLERATE_DUPLICATES_FEATURE;
     
+    /** Feature identifier: defer annotations */
+    protected static final String DEFER_ANNOTATIONS = 
+      Constants.XERCES_FEATURE_PREFIX + Constants.DEFER_ANNOTATIONS_FEATURE;
+    
     /** Feature identifier: namespace prefixes. */
     private static final String NAMESPACE_PREFIXES =
         Constants.SAX_FEATURE_PREFIX + Constants.NAMESPACE_PREFIXES_FEATURE;
@@ -214,6 +224,14 @@ public class XSDHandler {
     protected static final String LOCALE =
         Constants.XERCES_PROPERTY_PREFIX + Constants.LOCALE_PROPERTY;
     
+    /** Property identifier: schema DOM cache. */
+    protected static final String SCHEMA_DOM_CACHE =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_DOM_CACHE_PROPERTY;
+    
+    /** Property identifier: schema parse threads. */
+    protected static final String SCHEMA_PARSE_THREADS =
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_PARSE_THREADS_PROPERTY;
+    
     protected static final boolean DEBUG_NODE_POOL = false;
     
     // Data
@@ -408,6 +426,9 @@ public class XSDHandler {
     
     SchemaDVFactory fDVFactory;
     SchemaDOMParser fSchemaParser;
+    SchemaDocumentPrefetcher fPrefetcher;
+    SchemaDOMCache fSchemaDOMCache;
+    int fSchemaParseThreads = 0;
     SchemaContentHandler fXSContentHandler;
     StAXSchemaParser fStAXSchemaParser;
     XML11Configuration fAnnotationValidator;
@@ -534,146 +555,162 @@ public class XSDHandler {
         // parsing schemas
         prepareForParse();       
         
-        Element schemaRoot = null;
-        // first phase:  construct trees.
-        if (is instanceof DOMInputSource) {
-            schemaRoot = getSchemaDocument(schemaNamespace, (DOMInputSource) is,
-                    referType == XSDDescription.CONTEXT_PREPARSE,
-                    referType, null); 
-        } // DOMInputSource
-        else if (is instanceof SAXInputSource) {
-        	schemaRoot = getSchemaDocument(schemaNamespace, (SAXInputSource) is,
-                    referType == XSDDescription.CONTEXT_PREPARSE,
-                    referType, null);     
-        } // SAXInputSource
-        else if (is instanceof StAXInputSource) {
-            schemaRoot = getSchemaDocument(schemaNamespace, (StAXInputSource) is,
-                    referType == XSDDescription.CONTEXT_PREPARSE,
-                    referType, null);
-        } // StAXInputSource
-        else if (is instanceof XSInputSource) {
-            schemaRoot = getSchemaDocument((XSInputSource) is, desc);
-        } // XSInputSource
-        else {
-        	schemaRoot = getSchemaDocument(schemaNamespace, is,
-                  referType == XSDDescription.CONTEXT_PREPARSE,
-                  referType, null);
+        try {
+            // parse the documents referenced by the schema on other threads
+            if (fSchemaParseThreads > 0) {
+                if (fPrefetcher == null) {
+                    fPrefetcher = new SchemaDocumentPrefetcher();
+                }
+                fPrefetcher.start(fSchemaParser, fEntityResolver, fLocationPairs, fSchemaParseThreads);
+            }
+        
+            Element schemaRoot = null;
+            // first phase:  construct trees.
+            if (is instanceof DOMInputSource) {
+                schemaRoot = getSchemaDocument(schemaNamespace, (DOMInputSource) is,
+                        referType == XSDDescription.CONTEXT_PREPARSE,
+                        referType, null); 
+            } // DOMInputSource
+            else if (is instanceof SAXInputSource) {
+            	schemaRoot = getSchemaDocument(schemaNamespace, (SAXInputSource) is,
+                        referType == XSDDescription.CONTEXT_PREPARSE,
+                        referType, null);     
+            } // SAXInputSource
+            else if (is instanceof StAXInputSource) {
+                schemaRoot = getSchemaDocument(schemaNamespace, (StAXInputSource) is,
+                        referType == XSDDescription.CONTEXT_PREPARSE,
+                        referType, null);
+            } // StAXInputSource
+            else if (is instanceof XSInputSource) {
+                schemaRoot = getSchemaDocument((XSInputSource) is, desc);
+            } // XSInputSource
+            else {
+            	schemaRoot = getSchemaDocument(schemaNamespace, is,
+                      referType == XSDDescription.CONTEXT_PREPARSE,
+                      referType, null);
              
-        } //is instanceof XMLInputSource
-
-        if (schemaRoot == null) {
-            if (is instanceof XSInputSource) {
-                // Need to return a grammar. If the XSInputSource has a list
-                // of grammar objects, then get the first one and return it.
-                // If it has a list of components, then get the grammar that
-                // contains the first component and return it.
-                // If we return null, the XMLSchemaLoader will think nothing
-                // was loaded, and will not try to put the grammar objects
-                // into the grammar pool.
-                XSInputSource xsinput = (XSInputSource)is;
-                SchemaGrammar[] grammars = xsinput.getGrammars();
-                if (grammars != null && grammars.length > 0) {
-                    grammar = fGrammarBucket.getGrammar(grammars[0].getTargetNamespace());
+            } //is instanceof XMLInputSource
+
+            if (schemaRoot == null) {
+                if (is instanceof XSInputSource) {
+                    // Need to return a grammar. If the XSInputSource has a list
+                    // of grammar objects, then get the first one and return it.
+                    // If it has a list of components, then get the grammar that
+                    // contains the first component and return it.
+                    // If we return null, the XMLSchemaLoader will think nothing
+                    // was loaded, and will not try to put the grammar objects
+                    // into the grammar pool.
+                    XSInputSource xsinput = (XSInputSource)is;
+                    SchemaGrammar[] grammars = xsinput.getGrammars();
+                    if (grammars != null && grammars.length > 0) {
+                        grammar = fGrammarBucket.getGrammar(grammars[0].getTargetNamespace());
+                    }
+                    else {
+                        XSObject[] components = xsinput.getComponents();
+                        if (components != null && components.length > 0) {
+                            grammar = fGrammarBucket.getGrammar(components[0].getNamespace());
+                        }
+                    }
+                }
+                // something went wrong right off the hop
+                return grammar;
+            }
+
+            if (referType == XSDDescription.CONTEXT_PREPARSE) {
+            	Element schemaElem = schemaRoot;
+                schemaNamespace = DOMUtil.getAttrValue(schemaElem, SchemaSymbols.ATT_TARGETNAMESPACE);
+                if(schemaNamespace != null && schemaNamespace.length() > 0) {
+                    // Since now we've discovered a namespace, we need to update xsd key
+                    // and store this schema in traversed schemas bucket
+                    schemaNamespace = fSymbolTable.addSymbol(schemaNamespace);
+                    desc.setTargetNamespace(schemaNamespace);
                 }
                 else {
-                    XSObject[] components = xsinput.getComponents();
-                    if (components != null && components.length > 0) {
-                        grammar = fGrammarBucket.getGrammar(components[0].getNamespace());
+                    schemaNamespace = null;
+                }
+                grammar = findGrammar(desc, fNamespaceGrowth);
+                String schemaId = XMLEntityManager.expandSystemId(is.getSystemId(), is.getBaseSystemId(), false);
+                if (grammar != null) {
+                    // When namespace growth is enabled and a null location is provided we cannot tell
+                    // whether we've loaded this schema document before so we must assume that we haven't.
+                    if (!fNamespaceGrowth || (schemaId != null && grammar.getDocumentLocations().contains(schemaId))) {
+                        return grammar; 
                     }
                 }
-            }
-            // something went wrong right off the hop
-            return grammar;
-        }
 
-        if (referType == XSDDescription.CONTEXT_PREPARSE) {
-        	Element schemaElem = schemaRoot;
-            schemaNamespace = DOMUtil.getAttrValue(schemaElem, SchemaSymbols.ATT_TARGETNAMESPACE);
-            if(schemaNamespace != null && schemaNamespace.length() > 0) {
-                // Since now we've discovered a namespace, we need to update xsd key
-                // and store this schema in traversed schemas bucket
-                schemaNamespace = fSymbolTable.addSymbol(schemaNamespace);
-                desc.setTargetNamespace(schemaNamespace);
-            }
-            else {
-                schemaNamespace = null;
-            }
-            grammar = findGrammar(desc, fNamespaceGrowth);
-            String schemaId = XMLEntityManager.expandSystemId(is.getSystemId(), is.getBaseSystemId(), false);
-            if (grammar != null) {
-                // When namespace growth is enabled and a null location is provided we cannot tell
-                // whether we've loaded this schema document before so we must assume that we haven't.
-                if (!fNamespaceGrowth || (schemaId != null && grammar.getDocumentLocations().contains(schemaId))) {
-                    return grammar; 
+                XSDKey key = new XSDKey(schemaId, referType, schemaNamespace);
+                fTraversed.put(key, schemaRoot);
+                if (schemaId != null) {
+                	fDoc2SystemId.put(schemaRoot, schemaId);
                 }
             }
 
-            XSDKey key = new XSDKey(schemaId, referType, schemaNamespace);
-            fTraversed.put(key, schemaRoot);
-            if (schemaId != null) {
-            	fDoc2SystemId.put(schemaRoot, schemaId);
+            // before constructing trees and traversing a schema, need to reset
+            // all traversers and clear all registries
+            prepareForTraverse();
+        
+            fRoot = constructTrees(schemaRoot, is.getSystemId(), desc, grammar != null);
+            // all the documents have been parsed by now
+            stopPrefetching();
+            if (fRoot == null) {
+                return null;
             }
-        }
-
-        // before constructing trees and traversing a schema, need to reset
-        // all traversers and clear all registries
-        prepareForTraverse();
         
-        fRoot = constructTrees(schemaRoot, is.getSystemId(), desc, grammar != null);
-        if (fRoot == null) {
-            return null;
-        }
+            // second phase:  fill global registries.
+            buildGlobalNameRegistries();
         
-        // second phase:  fill global registries.
-        buildGlobalNameRegistries();
+            // third phase:  call traversers
+            ArrayList annotationInfo = fValidateAnnotations ? new ArrayList() : null;
+            traverseSchemas(annotationInfo);
         
-        // third phase:  call traversers
-        ArrayList annotationInfo = fValidateAnnotations ? new ArrayList() : null;
-        traverseSchemas(annotationInfo);
+            // fourth phase: handle local element decls
+            traverseLocalElements();
         
-        // fourth phase: handle local element decls
-        traverseLocalElements();
+            // fifth phase:  handle Keyrefs
+            resolveKeyRefs();
         
-        // fifth phase:  handle Keyrefs
-        resolveKeyRefs();
+            // sixth phase:  validate attribute of non-schema namespaces
+            // REVISIT: skip this for now. we really don't want to do it.
+            //fAttributeChecker.checkNonSchemaAttributes(fGrammarBucket);
         
-        // sixth phase:  validate attribute of non-schema namespaces
-        // REVISIT: skip this for now. we really don't want to do it.
-        //fAttributeChecker.checkNonSchemaAttributes(fGrammarBucket);
+            // seventh phase:  store imported grammars
+            // for all grammars with <import>s
+            for (int i = fAllTNSs.size() - 1; i >= 0; i--) {
+                // get its target namespace
+                String tns = (String)fAllTNSs.elementAt(i);
+                // get all namespaces it imports
+                Vector ins = (Vector)fImportMap.get(tns);
+                // get the grammar
+                SchemaGrammar sg = fGrammarBucket.getGrammar(emptyString2Null(tns));
+                if (sg == null)
+                    continue;
+                SchemaGrammar isg;
+                // for imported namespace
+                int count = 0;
+                for (int j = 0; j < ins.size(); j++) {
+                    // get imported grammar
+                    isg = fGrammarBucket.getGrammar((String)ins.elementAt(j));
+                    // reuse the same vector
+                    if (isg != null)
+                        ins.setElementAt(isg, count++);
+                }
+                ins.setSize(count);
+                // set the imported grammars
+                sg.setImportedGrammars(ins);
+            }
         
-        // seventh phase:  store imported grammars
-        // for all grammars with <import>s
-        for (int i = fAllTNSs.size() - 1; i >= 0; i--) {
-            // get its target namespace
-            String tns = (String)fAllTNSs.elementAt(i);
-            // get all namespaces it imports
-            Vector ins = (Vector)fImportMap.get(tns);
-            // get the grammar
-            SchemaGrammar sg = fGrammarBucket.getGrammar(emptyString2Null(tns));
-            if (sg == null)
-                continue;
-            SchemaGrammar isg;
-            // for imported namespace
-            int count = 0;
-            for (int j = 0; j < ins.size(); j++) {
-                // get imported grammar
-                isg = fGrammarBucket.getGrammar((String)ins.elementAt(j));
-                // reuse the same vector
-                if (isg != null)
-                    ins.setElementAt(isg, count++);
-            }
-            ins.setSize(count);
-            // set the imported grammars
-            sg.setImportedGrammars(ins);
+            /** validate annotations **/
+            if (fValidateAnnotations && annotationInfo.size() > 0) {
+                validateAnnotations(annotationInfo);
+            }
+
+            // and return.
+            return fGrammarBucket.getGrammar(fRoot.fTargetNamespace);
         }
-        
-        /** validate annotations **/
-        if (fValidateAnnotations && annotationInfo.size() > 0) {
-            validateAnnotations(annotationInfo);
+        finally {
+            // stop the workers however the load ends
+            stopPrefetching();
         }
-
-        // and return.
-        return fGrammarBucket.getGrammar(fRoot.fTargetNamespace);
     } // end parseSchema
     
     private void validateAnnotations(ArrayList annotationInfo) {
@@ -2148,7 +2185,9 @@ public class XSDHandler {
             if (schemaSource != null &&
                     (schemaSource.getSystemId() != null ||
                             schemaSource.getByteStream() != null ||
-                            schemaSource.getCharacterStream() != null)) {
+                            schemaSource.getCharacterStream() != null ||
+                            schemaSource instanceof ByteArrayInputSource ||
+                            schemaSource instanceof CharArrayInputSource)) {
                 
                 // When the system id of the input source is used, first try to
                 // expand it, and check whether the same document has been
@@ -2165,8 +2204,27 @@ public class XSDHandler {
                     }
                 }
                 
-                fSchemaParser.parse(schemaSource);
-                Document schemaDocument = fSchemaParser.getDocument();
+                // Take the document from the prefetcher if it was parsed
+                // there, or else from the schema DOM cache. Only system ids
+                // are prefetched or cached; a stream supplied by an entity
+                // resolver is always parsed here.
+                Document schemaDocument = null;
+                boolean fromSystemId = schemaId != null &&
+                        schemaSource.getByteStream() == null &&
+                        schemaSource.getCharacterStream() == null;
+                if (fPrefetcher != null && fromSystemId &&
+                        schemaSource.getClass() == XMLInputSource.class) {
+                    schemaDocument = fPrefetcher.take(schemaId);
+                }
+                if (schemaDocument == null && fSchemaDOMCache != null && fromSystemId &&
+                        (schemaSource.getClass() == XMLInputSource.class ||
+                         schemaSource instanceof HTTPInputSource)) {
+                    schemaDocument = getCachedSchemaDocument(schemaSource, schemaId);
+                }
+                if (schemaDocument == null) {
+                    fSchemaParser.parse(schemaSource);
+                    schemaDocument = fSchemaParser.getDocument();
+                }
                 schemaElement = schemaDocument != null ? DOMUtil.getRoot(schemaDocument) : null;
                 return getSchemaDocument0(key, schemaId, schemaElement);
             }
@@ -2455,10 +2513,115 @@ public class XSDHandler {
         if (schemaId != null) {
             fDoc2SystemId.put(schemaElement, schemaId);
         }
+        // start parsing the documents this one refers to
+        if (fPrefetcher != null && schemaElement != null) {
+            fPrefetcher.scan(schemaElement, doc2SystemId(schemaElement));
+        }
         fLastSchemaWasDuplicate = false;
         return schemaElement;
     } // getSchemaDocument0(XSDKey, String, Element): Element
     
+    /**
+     * Returns the document for the given source from the schema DOM cache,
+     * parsing it and adding it to the cache if its content has changed or
+     * it is not in the cache yet. Returns null if the document cannot be
+     * read, in which case it is parsed as usual so that the error is
+     * reported.
+     */
+    private Document getCachedSchemaDocument(XMLInputSource schemaSource, String schemaId) 
+        throws IOException {
+        
+        // read the content to check it against the cached document
+        byte[] content = new byte[8192];
+        int length = 0;
+        InputStream stream = null;
+        try {
+            stream = XMLEntityManager.openInputStream(schemaSource, schemaId);
+            int count;
+            while ((count = stream.read(content, length, content.length - length)) != -1) {
+                length += count;
+                if (length == content.length) {
+                    byte[] newContent = new byte[content.length << 1];
+                    System.arraycopy(content, 0, newContent, 0, length);
+                    content = newContent;
+                }
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                }
+                catch (IOException e) {}
+            }
+        }
+        byte[] digest = SchemaDOMCache.digest(content, 0, length);
+        String settings = getSchemaParserSettings(schemaSource);
+        Document schemaDocument = fSchemaDOMCache.getDocument(schemaId, digest, settings);
+        if (schemaDocument != null) {
+            return schemaDocument;
+        }
+        
+        // parse the content read, and cache the document unless the parser
+        // reported something, which would be lost on later uses, or it has
+        // a DTD, which may depend on external content
+        XMLErrorHandler errorHandler = (XMLErrorHandler) fSchemaParser.getProperty(ERROR_HANDLER);
+        ErrorRecorder errorRecorder = new ErrorRecorder(errorHandler);
+        fSchemaParser.setProperty(ERROR_HANDLER, errorRecorder);
+        try {
+            fSchemaParser.parse(new ByteArrayInputSource(schemaSource.getPublicId(),
+                    schemaSource.getSystemId(), schemaSource.getBaseSystemId(), 
+                    content, 0, length, schemaSource.getEncoding()));
+        }
+        finally {
+            fSchemaParser.setProperty(ERROR_HANDLER, errorHandler);
+        }
+        schemaDocument = fSchemaParser.getDocument();
+        if (schemaDocument != null && !errorRecorder.fReported && !fSchemaParser.hasDoctype()) {
+            fSchemaDOMCache.putDocument(schemaId, digest, settings, schemaDocument);
+        }
+        return schemaDocument;
+        
+    } // getCachedSchemaDocument(XMLInputSource, String): Document
+    
+    /**
+     * Returns the settings with which a document is parsed from the given
+     * source which can change the document or the errors reported, as a
+     * part of its key in the schema DOM cache.
+     */
+    private String getSchemaParserSettings(XMLInputSource schemaSource) {
+        StringBuffer settings = new StringBuffer();
+        settings.append(fSchemaParser.getFeature(GENERATE_SYNTHETIC_ANNOTATIONS) ? 'a' : '-');
+        settings.append(fSchemaParser.getFeature(ALLOW_JAVA_ENCODINGS) ? 'j' : '-');
+        settings.append(fSchemaParser.getFeature(DISALLOW_DOCTYPE) ? 'd' : '-');
+        Object securityManager = fSchemaParser.getProperty(SECURITY_MANAGER);
+        if (securityManager instanceof SecurityManager) {
+            settings.append(((SecurityManager) securityManager).getEntityExpansionLimit());
+            settings.append(',');
+            settings.append(((SecurityManager) securityManager).getMaxOccurNodeLimit());
+        }
+        else if (securityManager != null) {
+            settings.append(securityManager.getClass().getName());
+        }
+        if (schemaSource.getEncoding() != null) {
+            settings.append(' ').append(schemaSource.getEncoding());
+        }
+        return settings.toString();
+    } // getSchemaParserSettings(XMLInputSource): String
+    
+    /**
+     * Stops parsing documents on other threads, and discards the
+     * documents which have not been used.
+     */
+    private void stopPrefetching() {
+        if (fPrefetcher != null) {
+            fPrefetcher.stop();
+        }
+    } // stopPrefetching()
+    
     /**
      * Error handling code shared between the various getSchemaDocument() methods.
      */
@@ -3544,6 +3707,15 @@ public class XSDHandler {
             fValidateAnnotations = false;
         }
         
+        // annotations which are validated are needed as they are parsed
+        boolean deferAnnotations;
+        try {
+            deferAnnotations = componentManager.getFeature(DEFER_ANNOTATIONS) && !fValidateAnnotations;
+        } catch (XMLConfigurationException e) {
+            deferAnnotations = false;
+        }
+        fSchemaParser.setFeature(DEFER_ANNOTATIONS, deferAnnotations);
+        
         try {
             fHonourAllSchemaLocations = componentManager.getFeature(HONOUR_ALL_SCHEMALOCATIONS);
         } catch (XMLConfigurationException e) {
@@ -3588,6 +3760,19 @@ public class XSDHandler {
         } catch (XMLConfigurationException e) {
             fGrammarPool = null;
         }
+        
+        try {
+            fSchemaDOMCache = (SchemaDOMCache) componentManager.getProperty(SCHEMA_DOM_CACHE);
+        } catch (XMLConfigurationException e) {
+            fSchemaDOMCache = null;
+        }
+        
+        try {
+            Integer threads = (Integer) componentManager.getProperty(SCHEMA_PARSE_THREADS);
+            fSchemaParseThreads = (threads != null) ? threads.intValue() : 0;
+        } catch (XMLConfigurationException e) {
+            fSchemaParseThreads = 0;
+        }
         // security features
         try {
             fSchemaParser.setFeature( DISALLOW_DOCTYPE,
@@ -20,8 +20,11 @@ package org.apache.xerces.impl.xs.util;
 import java.util.ArrayList;
 
 import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.XMLErrorReporter;
 import org.apache.xerces.impl.xs.SchemaGrammar;
 import org.apache.xerces.impl.xs.XSModelImpl;
+import org.apache.xerces.impl.xs.models.CMCompiler;
+import org.apache.xerces.util.SecurityManager;
 import org.apache.xerces.util.XMLGrammarPoolImpl;
 import org.apache.xerces.xni.grammars.XMLGrammarDescription;
 import org.apache.xerces.xs.XSModel;
@@ -67,4 +70,47 @@ public class XSGrammarPool extends XMLGrammarPoolImpl {
         return new XSModelImpl(grammars, schemaVersion);
     }
 
+    /**
+     * Builds the content models of all the complex types in the schema
+     * grammars of this pool, so that they are not built while the first
+     * documents are being validated.
+     *
+     * @param threadCount the number of threads on which content models
+     *                    are built; if less than two, they are built on
+     *                    the calling thread
+     * @return the number of complex types found
+     */
+    public int compileContentModels(int threadCount) {
+        return compileContentModels(threadCount, null, null);
+    }
+
+    /**
+     * Builds the content models of all the complex types in the schema
+     * grammars of this pool, within the limits of the given security 
+     * manager.
+     *
+     * @param threadCount     the number of threads on which content models
+     *                        are built; if less than two, they are built on
+     *                        the calling thread
+     * @param errorReporter   the error reporter to which a content model 
+     *                        over the limit is reported, or <code>null</code>
+     * @param securityManager the security manager, or <code>null</code>
+     * @return the number of complex types found
+     */
+    public int compileContentModels(int threadCount, XMLErrorReporter errorReporter,
+            SecurityManager securityManager) {
+        ArrayList list = new ArrayList();
+        synchronized (fGrammars) {
+            for (int i = 0; i < fGrammars.length; i++) {
+                for (Entry entry = fGrammars[i] ; entry != null ; entry = entry.next) {
+                    if (entry.desc.getGrammarType().equals(XMLGrammarDescription.XML_SCHEMA)) {
+                        list.add(entry.grammar);
+                    }
+                }
+            }
+        }
+        SchemaGrammar[] gs = (SchemaGrammar[])list.toArray(new SchemaGrammar[list.size()]);
+        return new CMCompiler(threadCount, errorReporter, securityManager).compile(gs);
+    }
+
 } // class XSGrammarPool
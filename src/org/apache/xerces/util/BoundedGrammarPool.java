@@ -0,0 +1,764 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+import java.util.HashMap;
+
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLAttributeDecl;
+import org.apache.xerces.impl.dtd.XMLElementDecl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.grammars.XMLSchemaDescription;
+import org.apache.xerces.xni.grammars.XSGrammar;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSModelGroup;
+import org.apache.xerces.xs.XSModelGroupDefinition;
+import org.apache.xerces.xs.XSNamedMap;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSParticle;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
+
+/**
+ * <p>A grammar pool with an explicit capacity, expressed as a maximum
+ * number of grammars, a maximum estimated size of the grammars, or both.
+ * When adding a grammar exceeds the capacity, the grammars which were
+ * least recently retrieved from the pool are evicted until the pool
+ * fits again. The grammar just added is never evicted, so a single
+ * grammar larger than the capacity still stays in the pool until the 
+ * next one is added.</p>
+ * 
+ * <p>The size of a grammar is estimated by <code>getGrammarSize</code>
+ * from the number of declarations, definitions and particles it holds.
+ * The estimate is meant to compare grammars with one another, not to 
+ * measure their footprint exactly.</p>
+ * 
+ * <p>The pool counts the retrievals which found a grammar (hits), those
+ * which did not (misses) and the grammars it evicted. It also measures 
+ * the time between a miss and the addition of the grammar which was 
+ * missing, which is the time the parser spent loading it. Subclasses may
+ * observe loads and evictions by overriding <code>grammarLoaded</code> 
+ * and <code>grammarEvicted</code>.</p>
+ * 
+ * <p>Like <code>SoftReferenceGrammarPool</code>, this pool does not return
+ * an initial set of grammars, so that every grammar a validator uses is
+ * retrieved individually and its use is recorded.</p>
+ *
+ * @version $Id$
+ */
+public class BoundedGrammarPool implements XMLGrammarPool {
+    
+    //
+    // Constants
+    //
+    
+    /** Default size. */
+    protected static final int TABLE_SIZE = 11;
+    
+    /** Zero length grammar array. */
+    protected static final Grammar [] ZERO_LENGTH_GRAMMAR_ARRAY = new Grammar [0];
+    
+    /** Number of misses remembered to measure load times. */
+    protected static final int PENDING_LOAD_COUNT = 16;
+    
+    // estimated sizes in bytes
+    
+    /** Estimated size of an empty grammar. */
+    protected static final long GRAMMAR_SIZE = 2048;
+    
+    /** Estimated size of an element declaration. */
+    protected static final long ELEMENT_DECL_SIZE = 160;
+    
+    /** Estimated size of an attribute declaration or use. */
+    protected static final long ATTRIBUTE_DECL_SIZE = 96;
+    
+    /** Estimated size of a type definition. */
+    protected static final long TYPE_DEFINITION_SIZE = 320;
+    
+    /** Estimated size of a particle of a content model. */
+    protected static final long PARTICLE_SIZE = 64;
+    
+    /** Estimated size of a group, attribute group or notation. */
+    protected static final long GROUP_SIZE = 128;
+    
+    //
+    // Data
+    //
+    
+    /** Grammars. */
+    protected Entry [] fGrammars = null;
+    
+    /** Flag indicating whether this pool is locked */
+    protected boolean fPoolIsLocked;
+    
+    /** The number of grammars in the pool */
+    protected int fGrammarCount = 0;
+    
+    /** The maximum number of grammars, or zero if unbounded. */
+    protected final int fMaxGrammarCount;
+    
+    /** The maximum estimated size of the grammars, or zero if unbounded. */
+    protected final long fMaxSize;
+    
+    /** The estimated size of the grammars in the pool. */
+    protected long fSize = 0;
+    
+    /** Most recently used entry. */
+    private Entry fHead;
+    
+    /** Least recently used entry. */
+    private Entry fTail;
+    
+    // statistics
+    
+    private long fHits;
+    private long fMisses;
+    private long fEvictions;
+    private long fLoads;
+    private long fLoadTime;
+    
+    /** Recent misses which may be followed by a load, oldest first. */
+    private final XMLGrammarDescription [] fPendingDescs = new XMLGrammarDescription[PENDING_LOAD_COUNT];
+    private final long [] fPendingTimes = new long[PENDING_LOAD_COUNT];
+    private int fPendingCount = 0;
+    
+    //
+    // Constructors
+    //
+    
+    /** 
+     * Constructs a grammar pool holding at most the given number of grammars.
+     * 
+     * @param maxGrammarCount The maximum number of grammars.
+     */
+    public BoundedGrammarPool(int maxGrammarCount) {
+        this(maxGrammarCount, 0);
+    } // <init>(int)
+    
+    /** 
+     * Constructs a grammar pool of the given capacity.
+     * 
+     * @param maxGrammarCount The maximum number of grammars, or zero 
+     *                        if the number of grammars is unbounded.
+     * @param maxSize         The maximum estimated size in bytes of the
+     *                        grammars, or zero if their size is unbounded.
+     * @throws IllegalArgumentException if either bound is negative.
+     */
+    public BoundedGrammarPool(int maxGrammarCount, long maxSize) {
+        if (maxGrammarCount < 0) {
+            throw new IllegalArgumentException("Illegal grammar count: " + maxGrammarCount);
+        }
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal size: " + maxSize);
+        }
+        fGrammars = new Entry[TABLE_SIZE];
+        fPoolIsLocked = false;
+        fMaxGrammarCount = maxGrammarCount;
+        fMaxSize = maxSize;
+    } // <init>(int,long)
+    
+    //
+    // XMLGrammarPool methods
+    //
+    
+    /* <p> Retrieve the initial known set of grammars. This method is
+     * called by a validator before the validation starts. The application
+     * can provide an initial set of grammars available to the current
+     * validation attempt. </p>
+     *
+     * @param grammarType The type of the grammar, from the
+     *  		  <code>org.apache.xerces.xni.grammars.XMLGrammarDescription</code>
+     *  		  interface.
+     * @return 		  The set of grammars the validator may put in its "bucket"
+     */
+    public Grammar [] retrieveInitialGrammarSet (String grammarType) {
+        // Return no grammars. Every grammar the validator needs is then
+        // retrieved through retrieveGrammar, which records its use.
+        return ZERO_LENGTH_GRAMMAR_ARRAY;
+    } // retrieveInitialGrammarSet (String): Grammar[]
+    
+    /* <p> Return the final set of grammars that the validator ended up
+     * with. This method is called after the validation finishes. The
+     * application may then choose to cache some of the returned grammars.</p>
+     * <p>In this implementation, we make our choice based on whether this object
+     * is "locked"--that is, whether the application has instructed
+     * us not to accept any new grammars.</p>
+     *
+     * @param grammarType The type of the grammars being returned;
+     * @param grammars 	  An array containing the set of grammars being
+     *  		  returned; order is not significant.
+     */
+    public void cacheGrammars(String grammarType, Grammar[] grammars) {
+        if (!fPoolIsLocked) {
+            for (int i = 0; i < grammars.length; ++i) {
+                putGrammar(grammars[i]);
+            }
+        }
+    } // cacheGrammars(String, Grammar[]);
+    
+    /* <p> This method requests that the application retrieve a grammar
+     * corresponding to the given GrammarIdentifier from its cache.
+     * If it cannot do so it must return null; the parser will then
+     * call the EntityResolver. </p>
+     * <strong>An application must not call its EntityResolver itself
+     * from this method; this may result in infinite recursions.</strong>
+     *
+     * @param desc The description of the Grammar being requested.
+     * @return     The Grammar corresponding to this description or null if
+     *  	   no such Grammar is known.
+     */
+    public Grammar retrieveGrammar(XMLGrammarDescription desc) {
+        return getGrammar(desc);
+    } // retrieveGrammar(XMLGrammarDescription):  Grammar
+    
+    //
+    // Public methods
+    //
+    
+    /**
+     * Puts the specified grammar into the grammar pool and associates it to
+     * its root element name or its target namespace, evicting the least
+     * recently used grammars if the pool is then over its capacity.
+     *
+     * @param grammar The Grammar.
+     */
+    public void putGrammar(Grammar grammar) {
+        if (!fPoolIsLocked) {
+            XMLGrammarDescription desc = grammar.getGrammarDescription();
+            int hash = hashCode(desc);
+            int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+            // validators give back the grammars they retrieved; 
+            // avoid estimating their size again
+            synchronized (fGrammars) {
+                for (Entry e = fGrammars[index]; e != null; e = e.next) {
+                    if (e.grammar == grammar) {
+                        return;
+                    }
+                }
+            }
+            final long size = getGrammarSize(grammar);
+            synchronized (fGrammars) {
+                loaded(desc, grammar);
+                Entry entry = null;
+                for (Entry e = fGrammars[index]; e != null; e = e.next) {
+                    if (e.hash == hash && equals(e.desc, desc)) {
+                        entry = e;
+                        break;
+                    }
+                }
+                if (entry != null) {
+                    if (entry.grammar == grammar) {
+                        return;
+                    }
+                    fSize += size - entry.size;
+                    entry.grammar = grammar;
+                    entry.size = size;
+                    unlink(entry);
+                }
+                else {
+                    // create a new entry
+                    entry = new Entry(hash, index, desc, grammar, size, fGrammars[index]);
+                    fGrammars[index] = entry;
+                    fGrammarCount++;
+                    fSize += size;
+                }
+                link(entry);
+                evict();
+            }
+        }
+    } // putGrammar(Grammar)
+    
+    /**
+     * Returns the grammar associated to the specified grammar description,
+     * and records its use.
+     *
+     * @param desc The Grammar Description.
+     */
+    public Grammar getGrammar(XMLGrammarDescription desc) {
+        synchronized (fGrammars) {
+            int hash = hashCode(desc);
+            int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+            for (Entry entry = fGrammars[index]; entry != null; entry = entry.next) {
+                if ((entry.hash == hash) && equals(entry.desc, desc)) {
+                    ++fHits;
+                    if (entry != fHead) {
+                        unlink(entry);
+                        link(entry);
+                    }
+                    return entry.grammar;
+                }
+            }
+            ++fMisses;
+            missed(desc);
+            return null;
+        }
+    } // getGrammar(XMLGrammarDescription):Grammar
+    
+    /**
+     * Removes the grammar associated to the specified grammar description from the
+     * grammar pool and returns the removed grammar.
+     *
+     * @param desc The Grammar Description.
+     * @return     The removed grammar.
+     */
+    public Grammar removeGrammar(XMLGrammarDescription desc) {
+        synchronized (fGrammars) {
+            int hash = hashCode(desc);
+            int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+            for (Entry entry = fGrammars[index]; entry != null; entry = entry.next) {
+                if ((entry.hash == hash) && equals(entry.desc, desc)) {
+                    return removeEntry(entry);
+                }
+            }
+            return null;
+        }
+    } // removeGrammar(XMLGrammarDescription):Grammar
+    
+    /**
+     * Returns true if the grammar pool contains a grammar associated
+     * to the specified grammar description. The use of the grammar
+     * is not recorded.
+     *
+     * @param desc The Grammar Description.
+     */
+    public boolean containsGrammar(XMLGrammarDescription desc) {
+        synchronized (fGrammars) {
+            int hash = hashCode(desc);
+            int index = (hash & 0x7FFFFFFF) % fGrammars.length;
+            for (Entry entry = fGrammars[index]; entry != null ; entry = entry.next) {
+                if ((entry.hash == hash) && equals(entry.desc, desc)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    } // containsGrammar(XMLGrammarDescription):boolean
+    
+    /* <p> Sets this grammar pool to a "locked" state--i.e.,
+     * no new grammars will be added until it is "unlocked".
+     */
+    public void lockPool() {
+        fPoolIsLocked = true;
+    } // lockPool()
+    
+    /* <p> Sets this grammar pool to an "unlocked" state--i.e.,
+     * new grammars will be added when putGrammar or cacheGrammars
+     * are called.
+     */
+    public void unlockPool() {
+        fPoolIsLocked = false;
+    } // unlockPool()
+    
+    /*
+     * <p>This method clears the pool-i.e., removes references
+     * to all the grammars in it.</p>
+     */
+    public void clear() {
+        synchronized (fGrammars) {
+            for (int i = 0; i < fGrammars.length; i++) {
+                fGrammars[i] = null;
+            }
+            for (Entry entry = fHead; entry != null; ) {
+                Entry next = entry.after;
+                entry.clear();
+                entry = next;
+            }
+            fHead = null;
+            fTail = null;
+            fGrammarCount = 0;
+            fSize = 0;
+            clearPending();
+        }
+    } // clear()
+    
+    /**
+     * This method checks whether two grammars are the same. Currently, we compare
+     * the root element names for DTD grammars and the target namespaces for Schema grammars.
+     * The application can override this behaviour and add its own logic.
+     *
+     * @param desc1 The grammar description
+     * @param desc2 The grammar description of the grammar to be compared to
+     * @return      True if the grammars are equal, otherwise false
+     */
+    public boolean equals(XMLGrammarDescription desc1, XMLGrammarDescription desc2) {
+        return desc1.equals(desc2);
+    }
+    
+    /**
+     * Returns the hash code value for the given grammar description.
+     *
+     * @param desc The grammar description
+     * @return     The hash code value
+     */
+    public int hashCode(XMLGrammarDescription desc) {
+        return desc.hashCode();
+    }
+    
+    /** Returns the maximum number of grammars, or zero if it is unbounded. */
+    public int getMaxGrammarCount() {
+        return fMaxGrammarCount;
+    } // getMaxGrammarCount():int
+    
+    /** Returns the maximum estimated size of the grammars, or zero if it is unbounded. */
+    public long getMaxSize() {
+        return fMaxSize;
+    } // getMaxSize():long
+    
+    /** Returns the number of grammars in the pool. */
+    public int getGrammarCount() {
+        synchronized (fGrammars) {
+            return fGrammarCount;
+        }
+    } // getGrammarCount():int
+    
+    /** Returns the estimated size in bytes of the grammars in the pool. */
+    public long getSize() {
+        synchronized (fGrammars) {
+            return fSize;
+        }
+    } // getSize():long
+    
+    /** Returns the number of retrievals which found a grammar. */
+    public long getHitCount() {
+        synchronized (fGrammars) {
+            return fHits;
+        }
+    } // getHitCount():long
+    
+    /** Returns the number of retrievals which did not find a grammar. */
+    public long getMissCount() {
+        synchronized (fGrammars) {
+            return fMisses;
+        }
+    } // getMissCount():long
+    
+    /** Returns the number of grammars evicted to stay within the capacity. */
+    public long getEvictionCount() {
+        synchronized (fGrammars) {
+            return fEvictions;
+        }
+    } // getEvictionCount():long
+    
+    /** Returns the number of grammars added after a miss. */
+    public long getLoadCount() {
+        synchronized (fGrammars) {
+            return fLoads;
+        }
+    } // getLoadCount():long
+    
+    /** 
+     * Returns the total time in milliseconds between misses and the 
+     * addition of the missing grammars. 
+     */
+    public long getLoadTime() {
+        synchronized (fGrammars) {
+            return fLoadTime;
+        }
+    } // getLoadTime():long
+    
+    /** Resets the hit, miss, eviction and load statistics to zero. */
+    public void resetStatistics() {
+        synchronized (fGrammars) {
+            fHits = 0;
+            fMisses = 0;
+            fEvictions = 0;
+            fLoads = 0;
+            fLoadTime = 0;
+            clearPending();
+        }
+    } // resetStatistics()
+    
+    //
+    // Protected methods
+    //
+    
+    /**
+     * Returns the estimated size in bytes of the given grammar. DTD 
+     * grammars are estimated from their element and attribute declarations,
+     * schema grammars from the components of their target namespace and the 
+     * particles of their content models. An application may override this
+     * method to estimate the size of grammars differently.
+     * 
+     * @param grammar The grammar.
+     * @return        The estimated size of the grammar.
+     */
+    protected long getGrammarSize(Grammar grammar) {
+        long size = GRAMMAR_SIZE;
+        if (grammar instanceof DTDGrammar) {
+            DTDGrammar dtd = (DTDGrammar) grammar;
+            XMLElementDecl elementDecl = new XMLElementDecl();
+            XMLAttributeDecl attributeDecl = new XMLAttributeDecl();
+            for (int i = dtd.getFirstElementDeclIndex(); i != -1; i = dtd.getNextElementDeclIndex(i)) {
+                if (!dtd.getElementDecl(i, elementDecl)) {
+                    break;
+                }
+                size += ELEMENT_DECL_SIZE;
+                for (int j = dtd.getFirstAttributeDeclIndex(i); j != -1; j = dtd.getNextAttributeDeclIndex(j)) {
+                    if (dtd.getAttributeDecl(j, attributeDecl)) {
+                        size += ATTRIBUTE_DECL_SIZE;
+                    }
+                }
+            }
+        }
+        else if (grammar instanceof XSGrammar) {
+            XMLGrammarDescription desc = grammar.getGrammarDescription();
+            String namespace = (desc instanceof XMLSchemaDescription) 
+                ? ((XMLSchemaDescription) desc).getTargetNamespace() : null;
+            // components of imported grammars are counted with their own grammar
+            XSModel model = ((XSGrammar) grammar).toXSModel();
+            size += GROUP_SIZE * (model.getComponentsByNamespace(XSConstants.ATTRIBUTE_GROUP, namespace).getLength() 
+                                  + model.getComponentsByNamespace(XSConstants.NOTATION_DECLARATION, namespace).getLength());
+            size += ATTRIBUTE_DECL_SIZE * model.getComponentsByNamespace(XSConstants.ATTRIBUTE_DECLARATION, namespace).getLength();
+            HashMap visited = new HashMap();
+            XSNamedMap components = model.getComponentsByNamespace(XSConstants.ELEMENT_DECLARATION, namespace);
+            for (int i = 0; i < components.getLength(); i++) {
+                size += getSize((XSElementDeclaration) components.item(i), visited);
+            }
+            components = model.getComponentsByNamespace(XSConstants.TYPE_DEFINITION, namespace);
+            for (int i = 0; i < components.getLength(); i++) {
+                size += getSize((XSTypeDefinition) components.item(i), visited);
+            }
+            components = model.getComponentsByNamespace(XSConstants.MODEL_GROUP_DEFINITION, namespace);
+            for (int i = 0; i < components.getLength(); i++) {
+                size += GROUP_SIZE + getSize(((XSModelGroupDefinition) components.item(i)).getModelGroup(), visited);
+            }
+        }
+        return size;
+    } // getGrammarSize(Grammar):long
+    
+    /**
+     * Called when a grammar is added to the pool after a retrieval of 
+     * the same grammar missed, while holding the lock of the pool.
+     * 
+     * @param grammar  The grammar which was loaded.
+     * @param loadTime The time in milliseconds between the miss and the
+     *                 addition of the grammar.
+     */
+    protected void grammarLoaded(Grammar grammar, long loadTime) {
+    } // grammarLoaded(Grammar,long)
+    
+    /**
+     * Called when a grammar is evicted from the pool to stay within its
+     * capacity, while holding the lock of the pool.
+     * 
+     * @param grammar The grammar which was evicted.
+     */
+    protected void grammarEvicted(Grammar grammar) {
+    } // grammarEvicted(Grammar)
+    
+    //
+    // Private methods
+    //
+    
+    /** Evicts least recently used entries until the pool is within its capacity. */
+    private void evict() {
+        while (fTail != fHead &&
+               ((fMaxGrammarCount > 0 && fGrammarCount > fMaxGrammarCount) ||
+                (fMaxSize > 0 && fSize > fMaxSize))) {
+            Grammar grammar = removeEntry(fTail);
+            ++fEvictions;
+            grammarEvicted(grammar);
+        }
+    } // evict()
+    
+    /**
+     * Removes the given entry from the pool
+     * 
+     * @param entry the entry to remove
+     * @return The grammar attached to this entry
+     */
+    private Grammar removeEntry(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        }
+        else {
+            fGrammars[entry.bucket] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        unlink(entry);
+        --fGrammarCount;
+        fSize -= entry.size;
+        Grammar grammar = entry.grammar;
+        entry.desc = null;
+        entry.grammar = null;
+        return grammar;
+    } // removeEntry(Entry):Grammar
+    
+    /** Makes the given entry the most recently used. */
+    private void link(Entry entry) {
+        entry.before = null;
+        entry.after = fHead;
+        if (fHead != null) {
+            fHead.before = entry;
+        }
+        else {
+            fTail = entry;
+        }
+        fHead = entry;
+    } // link(Entry)
+    
+    /** Removes the given entry from the list of uses. */
+    private void unlink(Entry entry) {
+        if (entry.before != null) {
+            entry.before.after = entry.after;
+        }
+        else {
+            fHead = entry.after;
+        }
+        if (entry.after != null) {
+            entry.after.before = entry.before;
+        }
+        else {
+            fTail = entry.before;
+        }
+        entry.before = null;
+        entry.after = null;
+    } // unlink(Entry)
+    
+    /** Remembers the time of a miss, forgetting the oldest one if needed. */
+    private void missed(XMLGrammarDescription desc) {
+        if (fPendingCount == PENDING_LOAD_COUNT) {
+            removePending(0);
+        }
+        fPendingDescs[fPendingCount] = desc;
+        fPendingTimes[fPendingCount++] = System.currentTimeMillis();
+    } // missed(XMLGrammarDescription)
+    
+    /** Records the load of a grammar if its retrieval missed. */
+    private void loaded(XMLGrammarDescription desc, Grammar grammar) {
+        int hash = hashCode(desc);
+        for (int i = fPendingCount - 1; i >= 0; --i) {
+            XMLGrammarDescription pending = fPendingDescs[i];
+            if (hashCode(pending) == hash && equals(pending, desc)) {
+                long loadTime = System.currentTimeMillis() - fPendingTimes[i];
+                removePending(i);
+                ++fLoads;
+                fLoadTime += loadTime;
+                grammarLoaded(grammar, loadTime);
+                return;
+            }
+        }
+    } // loaded(XMLGrammarDescription,Grammar)
+    
+    private void removePending(int index) {
+        --fPendingCount;
+        System.arraycopy(fPendingDescs, index + 1, fPendingDescs, index, fPendingCount - index);
+        System.arraycopy(fPendingTimes, index + 1, fPendingTimes, index, fPendingCount - index);
+        fPendingDescs[fPendingCount] = null;
+    } // removePending(int)
+    
+    private void clearPending() {
+        for (int i = 0; i < fPendingCount; ++i) {
+            fPendingDescs[i] = null;
+        }
+        fPendingCount = 0;
+    } // clearPending()
+    
+    private long getSize(XSElementDeclaration element, HashMap visited) {
+        long size = ELEMENT_DECL_SIZE;
+        XSTypeDefinition type = element.getTypeDefinition();
+        if (type != null && type.getAnonymous()) {
+            size += getSize(type, visited);
+        }
+        return size;
+    } // getSize(XSElementDeclaration,HashMap):long
+    
+    private long getSize(XSTypeDefinition type, HashMap visited) {
+        if (visited.put(type, type) != null) {
+            return 0;
+        }
+        long size = TYPE_DEFINITION_SIZE;
+        if (type.getTypeCategory() == XSTypeDefinition.COMPLEX_TYPE) {
+            XSComplexTypeDefinition complexType = (XSComplexTypeDefinition) type;
+            size += ATTRIBUTE_DECL_SIZE * complexType.getAttributeUses().getLength();
+            XSParticle particle = complexType.getParticle();
+            if (particle != null) {
+                size += PARTICLE_SIZE + getSize(particle.getTerm(), visited);
+            }
+        }
+        return size;
+    } // getSize(XSTypeDefinition,HashMap):long
+    
+    private long getSize(XSTerm term, HashMap visited) {
+        if (term instanceof XSElementDeclaration) {
+            XSElementDeclaration element = (XSElementDeclaration) term;
+            // global elements are counted on their own
+            return (element.getScope() == XSConstants.SCOPE_GLOBAL) ? 0 : getSize(element, visited);
+        }
+        if (term instanceof XSModelGroup && visited.put(term, term) == null) {
+            XSObjectList particles = ((XSModelGroup) term).getParticles();
+            long size = PARTICLE_SIZE * particles.getLength();
+            for (int i = 0; i < particles.getLength(); i++) {
+                size += getSize(((XSParticle) particles.item(i)).getTerm(), visited);
+            }
+            return size;
+        }
+        return 0;
+    } // getSize(XSTerm,HashMap):long
+    
+    /**
+     * This class is a grammar pool entry. Each entry acts as a node
+     * in a doubly linked list of its bucket, and in the list of entries
+     * ordered from the most to the least recently used.
+     */
+    protected static final class Entry {
+
+        public int hash;
+        public int bucket;
+        public Entry prev;
+        public Entry next;
+        public Entry before;
+        public Entry after;
+        public XMLGrammarDescription desc;
+        public Grammar grammar;
+        public long size;
+                
+        protected Entry(int hash, int bucket, XMLGrammarDescription desc, Grammar grammar, long size, Entry next) {
+            this.hash = hash;
+            this.bucket = bucket;
+            this.prev = null;
+            this.next = next;
+            if (next != null) {
+                next.prev = this;
+            }
+            this.desc = desc;
+            this.grammar = grammar;
+            this.size = size;
+        }
+        
+        // clear this entry; useful to promote garbage collection
+        // since reduces reference count of objects to be destroyed
+        protected void clear () {
+            desc = null;
+            grammar = null;
+            prev = null;
+            next = null;
+            before = null;
+            after = null;
+        } // clear()
+        
+    } // class Entry
+    
+} // class BoundedGrammarPool
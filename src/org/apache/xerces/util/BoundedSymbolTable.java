@@ -0,0 +1,541 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.util;
+
+/**
+ * A symbol table which holds at most a given number of symbols, other
+ * than those which have been pinned. When the limit is exceeded the 
+ * table evicts symbols in approximately least recently used order. A 
+ * new symbol which is not looked up again is evicted before symbols 
+ * which have been found in the table since they were added, so a stream 
+ * of names which occur only once cannot push the frequently used names 
+ * out of the table.
+ * <p>
+ * Pinned symbols are never evicted. The symbols of <code>XMLSymbols</code>
+ * are pinned when the table is constructed, and an application which has
+ * populated the table with the names of its grammars may pin all of the
+ * symbols it contains by calling <code>pinSymbols()</code>.
+ * <p>
+ * Evicting a symbol does not break the uniqueness of symbol references.
+ * As with every other symbol table the symbols are interned strings, so
+ * a symbol which is added again after it was evicted is the same
+ * reference as before, for as long as anything still refers to it.
+ * <p>
+ * This class is not thread-safe. A table shared by several parsers
+ * should be wrapped in a <code>SynchronizedSymbolTable</code>.
+ * 
+ * @see SymbolTable
+ * @see SoftReferenceSymbolTable
+ *
+ * @version $Id$
+ */
+public class BoundedSymbolTable extends SymbolTable {
+
+    //
+    // Constants
+    //
+
+    /** Default maximum number of unpinned symbols. */
+    public static final int DEFAULT_MAX_SIZE = 8192;
+
+    //
+    // Data
+    //
+
+    /*
+     * This variable masks the fBuckets variable used by SymbolTable.
+     */
+    protected BEntry[] fBuckets = null;
+
+    /** Maximum number of unpinned symbols. */
+    protected final int fMaxSize;
+
+    /** Number of unpinned symbols. */
+    protected int fUnpinnedCount;
+
+    /** 
+     * The clock hand: the next unpinned entry to consider for eviction, 
+     * or <code>null</code> if there are no unpinned entries.
+     */
+    private BEntry fHand;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a new, empty SymbolTable with the specified initial 
+     * capacity, load factor and maximum size.
+     *
+     * @param      initialCapacity   the initial capacity of the SymbolTable.
+     * @param      loadFactor        the load factor of the SymbolTable.
+     * @param      maxSize           the maximum number of unpinned symbols.
+     * @throws     IllegalArgumentException  if the initial capacity is less
+     *             than zero, if the load factor is nonpositive or if the
+     *             maximum size is less than one.
+     */
+    public BoundedSymbolTable(int initialCapacity, float loadFactor, int maxSize) {
+        /*
+         * The Entry buckets in the base class are not used by this class.
+         * We call super() with 1 as the initial capacity to minimize the
+         * memory used by the field in the base class.
+         */
+        super(1, loadFactor);
+        
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Illegal Maximum Size: " + maxSize);
+        }
+        
+        if (initialCapacity == 0) {
+            initialCapacity = 1;
+        }
+        
+        fTableSize = initialCapacity;
+        fBuckets = new BEntry[fTableSize];
+        fThreshold = (int)(fTableSize * loadFactor);
+        fCount = 0;
+        fMaxSize = maxSize;
+        
+        pinSymbol(XMLSymbols.EMPTY_STRING);
+        pinSymbol(XMLSymbols.PREFIX_XML);
+        pinSymbol(XMLSymbols.PREFIX_XMLNS);
+        pinSymbol(XMLSymbols.fANYSymbol);
+        pinSymbol(XMLSymbols.fCDATASymbol);
+        pinSymbol(XMLSymbols.fIDSymbol);
+        pinSymbol(XMLSymbols.fIDREFSymbol);
+        pinSymbol(XMLSymbols.fIDREFSSymbol);
+        pinSymbol(XMLSymbols.fENTITYSymbol);
+        pinSymbol(XMLSymbols.fENTITIESSymbol);
+        pinSymbol(XMLSymbols.fNMTOKENSymbol);
+        pinSymbol(XMLSymbols.fNMTOKENSSymbol);
+        pinSymbol(XMLSymbols.fNOTATIONSymbol);
+        pinSymbol(XMLSymbols.fENUMERATIONSymbol);
+        pinSymbol(XMLSymbols.fIMPLIEDSymbol);
+        pinSymbol(XMLSymbols.fREQUIREDSymbol);
+        pinSymbol(XMLSymbols.fFIXEDSymbol);
+    }
+
+    /**
+     * Constructs a new, empty SymbolTable with the specified maximum 
+     * size, a default initial capacity (101) and load factor, which 
+     * is <tt>0.75</tt>.
+     *
+     * @param     maxSize   the maximum number of unpinned symbols.
+     * @throws    IllegalArgumentException if the maximum size is less
+     *            than one.
+     */
+    public BoundedSymbolTable(int maxSize) {
+        this(TABLE_SIZE, 0.75f, maxSize);
+    }
+    
+    /**
+     * Constructs a new, empty SymbolTable with a default initial capacity 
+     * (101), load factor, which is <tt>0.75</tt>, and maximum size (8192).
+     */
+    public BoundedSymbolTable() {
+        this(TABLE_SIZE, 0.75f, DEFAULT_MAX_SIZE);
+    }
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param symbol The new symbol.
+     */
+    public String addSymbol(String symbol) {
+        
+        // search for identical symbol
+        int collisionCount = 0;
+        int bucket = hash(symbol) % fTableSize;
+        for (BEntry entry = fBuckets[bucket]; entry != null; entry = entry.next) {
+            if (entry.symbol.equals(symbol)) {
+                entry.referenced = true;
+                return entry.symbol;
+            }
+            ++collisionCount;
+        }
+        
+        // add new entry
+        BEntry entry = new BEntry(symbol.intern(), symbol.toCharArray());
+        addEntry(entry, bucket, collisionCount);
+        return entry.symbol;
+        
+    } // addSymbol(String):String
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     */
+    public String addSymbol(char[] buffer, int offset, int length) {
+        return addSymbol0(buffer, offset, length, hash(buffer, offset, length) % fTableSize);
+    } // addSymbol(char[],int,int):String
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     * @param hash   The hash code of the symbol.
+     */
+    public String addSymbol(char[] buffer, int offset, int length, int hash) {
+        final int bucket = (fHashMultipliers == null) 
+            ? (hash & 0x7FFFFFFF) % fTableSize
+            : hash(buffer, offset, length) % fTableSize;
+        return addSymbol0(buffer, offset, length, bucket);
+    } // addSymbol(char[],int,int,int):String
+
+    private String addSymbol0(char[] buffer, int offset, int length, int bucket) {
+        
+        // search for identical symbol
+        int collisionCount = 0;
+        OUTER: for (BEntry entry = fBuckets[bucket]; entry != null; entry = entry.next) {
+            if (length == entry.characters.length) {
+                for (int i = 0; i < length; i++) {
+                    if (buffer[offset + i] != entry.characters[i]) {
+                        ++collisionCount;
+                        continue OUTER;
+                    }
+                }
+                entry.referenced = true;
+                return entry.symbol;
+            }
+            ++collisionCount;
+        }
+        
+        // add new entry
+        char[] characters = new char[length];
+        System.arraycopy(buffer, offset, characters, 0, length);
+        BEntry entry = new BEntry(new String(characters).intern(), characters);
+        addEntry(entry, bucket, collisionCount);
+        return entry.symbol;
+        
+    } // addSymbol0(char[],int,int,int):String
+
+    /**
+     * Adds the specified symbol to the symbol table, if it is not 
+     * already there, and pins it so that it is never evicted. Returns
+     * a reference to the unique symbol.
+     *
+     * @param symbol The symbol to pin.
+     */
+    public String pinSymbol(String symbol) {
+        final String unique = addSymbol(symbol);
+        final BEntry entry = findEntry(unique);
+        if (!entry.pinned) {
+            unlinkClock(entry);
+            entry.pinned = true;
+        }
+        return unique;
+    } // pinSymbol(String):String
+
+    /**
+     * Pins all of the symbols which are currently in the table, so that
+     * none of them is ever evicted. An application may call this method
+     * once it has loaded the grammars it uses, to keep the names they
+     * declare in the table.
+     */
+    public void pinSymbols() {
+        for (int i = 0; i < fTableSize; i++) {
+            for (BEntry entry = fBuckets[i]; entry != null; entry = entry.next) {
+                entry.pinned = true;
+                entry.clockNext = null;
+                entry.clockPrev = null;
+            }
+        }
+        fHand = null;
+        fUnpinnedCount = 0;
+    } // pinSymbols()
+
+    /** Returns the maximum number of unpinned symbols held by the table. */
+    public int getMaxSize() {
+        return fMaxSize;
+    } // getMaxSize():int
+
+    /**
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param symbol The symbol to look for.
+     */
+    public boolean containsSymbol(String symbol) {
+
+        // search for identical symbol
+        int bucket = hash(symbol) % fTableSize;
+        int length = symbol.length();
+        OUTER: for (BEntry entry = fBuckets[bucket]; entry != null; entry = entry.next) {
+            if (length == entry.characters.length) {
+                for (int i = 0; i < length; i++) {
+                    if (symbol.charAt(i) != entry.characters[i]) {
+                        continue OUTER;
+                    }
+                }
+                return true;
+            }
+        }
+
+        return false;
+
+    } // containsSymbol(String):boolean
+
+    /**
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param buffer The buffer containing the symbol to look for.
+     * @param offset The offset into the buffer.
+     * @param length The length of the symbol in the buffer.
+     */
+    public boolean containsSymbol(char[] buffer, int offset, int length) {
+
+        // search for identical symbol
+        int bucket = hash(buffer, offset, length) % fTableSize;
+        OUTER: for (BEntry entry = fBuckets[bucket]; entry != null; entry = entry.next) {
+            if (length == entry.characters.length) {
+                for (int i = 0; i < length; i++) {
+                    if (buffer[offset + i] != entry.characters[i]) {
+                        continue OUTER;
+                    }
+                }
+                return true;
+            }
+        }
+
+        return false;
+
+    } // containsSymbol(char[],int,int):boolean
+
+    //
+    // Protected methods
+    //
+
+    /**
+     * Increases the capacity of and internally reorganizes this 
+     * SymbolTable, in order to accommodate and access its entries more 
+     * efficiently.  This method is called automatically when the 
+     * number of keys in the SymbolTable exceeds this hashtable's capacity 
+     * and load factor. 
+     */
+    protected void rehash() {
+        rehashCommon(fBuckets.length * 2 + 1);
+    }
+    
+    /**
+     * Randomly selects a new hash function and reorganizes this SymbolTable
+     * in order to more evenly distribute its entries across the table. This 
+     * method is called automatically when the number keys in one of the 
+     * SymbolTable's buckets exceeds the given collision threshold.
+     */
+    protected void rebalance() {
+        if (fHashMultipliers == null) {
+            fHashMultipliers = new int[MULTIPLIERS_SIZE];
+        }
+        PrimeNumberSequenceGenerator.generateSequence(fHashMultipliers);
+        rehashCommon(fBuckets.length);
+    }
+
+    //
+    // Private methods
+    //
+    
+    private void rehashCommon(final int newCapacity) {
+        
+        final int oldCapacity = fBuckets.length;
+        final BEntry[] oldTable = fBuckets;
+        final BEntry[] newTable = new BEntry[newCapacity];
+
+        fThreshold = (int)(newCapacity * fLoadFactor);
+        fBuckets = newTable;
+        fTableSize = fBuckets.length;
+
+        for (int i = oldCapacity ; i-- > 0 ;) {
+            for (BEntry old = oldTable[i] ; old != null ; ) {
+                BEntry e = old;
+                old = old.next;
+
+                int index = hash(e.symbol) % newCapacity;
+                e.next = newTable[index];
+                newTable[index] = e;
+            }
+        }
+    }
+
+    /** Links a new entry into the table, evicting symbols if it is full. */
+    private void addEntry(BEntry entry, int bucket, int collisionCount) {
+        
+        if (fCount >= fThreshold) {
+            // Rehash the table if the threshold is exceeded
+            rehash();
+            bucket = hash(entry.symbol) % fTableSize;
+        }
+        else if (collisionCount >= fCollisionThreshold) {
+            // Select a new hash function and rehash the table if
+            // the collision threshold is exceeded.
+            rebalance();
+            bucket = hash(entry.symbol) % fTableSize;
+        }
+        
+        // evict before linking so that the new entry is not a candidate
+        while (fUnpinnedCount >= fMaxSize) {
+            evict();
+        }
+        
+        entry.next = fBuckets[bucket];
+        fBuckets[bucket] = entry;
+        ++fCount;
+        
+        // the new entry is placed behind the clock hand, so it is the
+        // last entry considered for eviction
+        if (fHand == null) {
+            entry.clockNext = entry;
+            entry.clockPrev = entry;
+            fHand = entry;
+        }
+        else {
+            entry.clockNext = fHand;
+            entry.clockPrev = fHand.clockPrev;
+            fHand.clockPrev.clockNext = entry;
+            fHand.clockPrev = entry;
+        }
+        ++fUnpinnedCount;
+        
+    } // addEntry(BEntry,int,int)
+
+    /** 
+     * Removes one unpinned entry from the table, giving entries which 
+     * have been referenced since the hand last passed them a second chance.
+     */
+    private void evict() {
+        BEntry entry = fHand;
+        while (entry.referenced) {
+            entry.referenced = false;
+            entry = entry.clockNext;
+        }
+        fHand = entry.clockNext;
+        unlinkClock(entry);
+        
+        // remove the entry from its bucket
+        final int bucket = hash(entry.symbol) % fTableSize;
+        BEntry prev = null;
+        for (BEntry e = fBuckets[bucket]; e != null; e = e.next) {
+            if (e == entry) {
+                if (prev == null) {
+                    fBuckets[bucket] = e.next;
+                }
+                else {
+                    prev.next = e.next;
+                }
+                break;
+            }
+            prev = e;
+        }
+        entry.next = null;
+        --fCount;
+        
+    } // evict()
+
+    /** Removes an unpinned entry from the clock. */
+    private void unlinkClock(BEntry entry) {
+        if (entry.clockNext == entry) {
+            fHand = null;
+        }
+        else {
+            entry.clockPrev.clockNext = entry.clockNext;
+            entry.clockNext.clockPrev = entry.clockPrev;
+            if (fHand == entry) {
+                fHand = entry.clockNext;
+            }
+        }
+        entry.clockNext = null;
+        entry.clockPrev = null;
+        --fUnpinnedCount;
+    } // unlinkClock(BEntry)
+
+    /** Returns the entry of a symbol in the table. */
+    private BEntry findEntry(String symbol) {
+        final int bucket = hash(symbol) % fTableSize;
+        for (BEntry entry = fBuckets[bucket]; entry != null; entry = entry.next) {
+            if (entry.symbol == symbol) {
+                return entry;
+            }
+        }
+        return null;
+    } // findEntry(String):BEntry
+
+    //
+    // Classes
+    //
+
+    /**
+     * This class is a symbol table entry. Each entry is a node in the
+     * linked list of its bucket and, unless it is pinned, in the circular 
+     * list of entries which may be evicted.
+     * 
+     * The "B" stands for Bounded.
+     */
+    protected static final class BEntry {
+
+        /** Symbol. */
+        public final String symbol;
+
+        /**
+         * Symbol characters. This information is duplicated here for
+         * comparison performance.
+         */
+        public final char[] characters;
+
+        /** The next entry in the bucket. */
+        public BEntry next;
+
+        /** True if the symbol has been found since the clock hand passed it. */
+        boolean referenced;
+
+        /** True if the symbol may not be evicted. */
+        boolean pinned;
+
+        /** The next and previous entries in the clock. */
+        BEntry clockNext;
+        BEntry clockPrev;
+
+        /** Constructs a new entry. */
+        BEntry(String internedSymbol, char[] characters) {
+            this.symbol = internedSymbol;
+            this.characters = characters;
+        }
+
+    } // class BEntry
+
+} // class BoundedSymbolTable
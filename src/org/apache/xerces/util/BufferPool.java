@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+/**
+ * <p>A pool of byte and character buffers which may be shared by
+ * any number of parsers, on any number of threads. An instance of this
+ * class may be set as the value of the property
+ * (http://apache.org/xml/properties/input-buffer-pool), in which case
+ * the entity manager borrows the buffers for its readers and scanned
+ * entities from this pool and gives them back when it is done with them,
+ * instead of allocating new buffers for each parser.</p>
+ *
+ * <p>The pool is divided into a number of stripes, each guarded by its
+ * own lock. A thread always uses the same stripe so that parsers running
+ * on different threads rarely contend with each other. Each stripe holds
+ * at most a fixed number of byte buffers and of character buffers; buffers
+ * returned to a full stripe are dropped and left to the garbage collector.
+ * Buffers are only handed out for a request of exactly their length.</p>
+ *
+ * <p>The pool keeps count of the requests it satisfied with a pooled
+ * buffer (hits), the requests for which it had to allocate a new buffer
+ * (misses) and the buffers it dropped because the stripe was full
+ * (discards).</p>
+ *
+ * @version $Id$
+ */
+public final class BufferPool {
+
+    //
+    // Constants
+    //
+
+    /** Default number of stripes. */
+    public static final int DEFAULT_STRIPE_COUNT = 8;
+
+    /** Default number of buffers of each kind held by a stripe. */
+    public static final int DEFAULT_STRIPE_CAPACITY = 8;
+
+    /** The process-wide pool. */
+    private static final BufferPool fgSharedPool = new BufferPool();
+
+    //
+    // Data
+    //
+
+    /** Stripes. */
+    private final Stripe[] fStripes;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a pool with the default number and capacity of stripes. */
+    public BufferPool() {
+        this(DEFAULT_STRIPE_COUNT, DEFAULT_STRIPE_CAPACITY);
+    }
+
+    /**
+     * Constructs a pool.
+     *
+     * @param stripeCount    The number of independently locked stripes.
+     * @param stripeCapacity The maximum number of byte buffers and of
+     *                       character buffers held by each stripe.
+     */
+    public BufferPool(int stripeCount, int stripeCapacity) {
+        if (stripeCount < 1) {
+            stripeCount = 1;
+        }
+        if (stripeCapacity < 0) {
+            stripeCapacity = 0;
+        }
+        fStripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; ++i) {
+            fStripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    //
+    // Public static methods
+    //
+
+    /** Returns the process-wide buffer pool. */
+    public static BufferPool getSharedPool() {
+        return fgSharedPool;
+    }
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Retrieves a byte buffer of the given length from the pool,
+     * allocating a new one if there are none.
+     */
+    public byte[] getByteBuffer(int length) {
+        final Stripe stripe = getStripe();
+        synchronized (stripe) {
+            final byte[][] buffers = stripe.fByteBuffers;
+            for (int i = stripe.fByteCount - 1; i >= 0; --i) {
+                final byte[] buffer = buffers[i];
+                if (buffer.length == length) {
+                    buffers[i] = buffers[--stripe.fByteCount];
+                    buffers[stripe.fByteCount] = null;
+                    ++stripe.fHits;
+                    return buffer;
+                }
+            }
+            ++stripe.fMisses;
+        }
+        return new byte[length];
+    } // getByteBuffer(int):byte[]
+
+    /** Returns a byte buffer to the pool. */
+    public void returnByteBuffer(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        final Stripe stripe = getStripe();
+        synchronized (stripe) {
+            if (stripe.fByteCount < stripe.fByteBuffers.length) {
+                stripe.fByteBuffers[stripe.fByteCount++] = buffer;
+            }
+            else {
+                ++stripe.fDiscards;
+            }
+        }
+    } // returnByteBuffer(byte[])
+
+    /**
+     * Retrieves a character buffer of the given length from the pool,
+     * allocating a new one if there are none.
+     */
+    public char[] getCharBuffer(int length) {
+        final Stripe stripe = getStripe();
+        synchronized (stripe) {
+            final char[][] buffers = stripe.fCharBuffers;
+            for (int i = stripe.fCharCount - 1; i >= 0; --i) {
+                final char[] buffer = buffers[i];
+                if (buffer.length == length) {
+                    buffers[i] = buffers[--stripe.fCharCount];
+                    buffers[stripe.fCharCount] = null;
+                    ++stripe.fHits;
+                    return buffer;
+                }
+            }
+            ++stripe.fMisses;
+        }
+        return new char[length];
+    } // getCharBuffer(int):char[]
+
+    /** Returns a character buffer to the pool. */
+    public void returnCharBuffer(char[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        final Stripe stripe = getStripe();
+        synchronized (stripe) {
+            if (stripe.fCharCount < stripe.fCharBuffers.length) {
+                stripe.fCharBuffers[stripe.fCharCount++] = buffer;
+            }
+            else {
+                ++stripe.fDiscards;
+            }
+        }
+    } // returnCharBuffer(char[])
+
+    /** Removes all of the buffers from the pool. */
+    public void clear() {
+        for (int i = 0; i < fStripes.length; ++i) {
+            final Stripe stripe = fStripes[i];
+            synchronized (stripe) {
+                for (int j = 0; j < stripe.fByteCount; ++j) {
+                    stripe.fByteBuffers[j] = null;
+                }
+                for (int j = 0; j < stripe.fCharCount; ++j) {
+                    stripe.fCharBuffers[j] = null;
+                }
+                stripe.fByteCount = 0;
+                stripe.fCharCount = 0;
+            }
+        }
+    } // clear()
+
+    /** Returns the number of requests satisfied with a pooled buffer. */
+    public long getHitCount() {
+        long count = 0;
+        for (int i = 0; i < fStripes.length; ++i) {
+            final Stripe stripe = fStripes[i];
+            synchronized (stripe) {
+                count += stripe.fHits;
+            }
+        }
+        return count;
+    } // getHitCount():long
+
+    /** Returns the number of requests for which a new buffer was allocated. */
+    public long getMissCount() {
+        long count = 0;
+        for (int i = 0; i < fStripes.length; ++i) {
+            final Stripe stripe = fStripes[i];
+            synchronized (stripe) {
+                count += stripe.fMisses;
+            }
+        }
+        return count;
+    } // getMissCount():long
+
+    /** Returns the number of buffers dropped because the pool was full. */
+    public long getDiscardCount() {
+        long count = 0;
+        for (int i = 0; i < fStripes.length; ++i) {
+            final Stripe stripe = fStripes[i];
+            synchronized (stripe) {
+                count += stripe.fDiscards;
+            }
+        }
+        return count;
+    } // getDiscardCount():long
+
+    /** Resets the hit, miss and discard counts to zero. */
+    public void resetStatistics() {
+        for (int i = 0; i < fStripes.length; ++i) {
+            final Stripe stripe = fStripes[i];
+            synchronized (stripe) {
+                stripe.fHits = 0;
+                stripe.fMisses = 0;
+                stripe.fDiscards = 0;
+            }
+        }
+    } // resetStatistics()
+
+    //
+    // Private methods
+    //
+
+    /** Returns the stripe used by the current thread. */
+    private Stripe getStripe() {
+        final int hash = System.identityHashCode(Thread.currentThread());
+        return fStripes[(hash & 0x7FFFFFFF) % fStripes.length];
+    } // getStripe():Stripe
+
+    //
+    // Classes
+    //
+
+    /**
+     * A portion of the pool, guarded by its own monitor.
+     */
+    private static final class Stripe {
+
+        final byte[][] fByteBuffers;
+        final char[][] fCharBuffers;
+        int fByteCount;
+        int fCharCount;
+        long fHits;
+        long fMisses;
+        long fDiscards;
+
+        Stripe(int capacity) {
+            fByteBuffers = new byte[capacity][];
+            fCharBuffers = new char[capacity][];
+        }
+
+    } // class Stripe
+
+} // class BufferPool
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.util;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * This class represents an input source for an XML document
+ * held in memory as a range of a byte array. The parser reads
+ * the bytes in place rather than through a byte stream supplied
+ * by the application. The array is not copied, so its contents 
+ * must not be modified until parsing has finished.
+ * 
+ * <p>If a byte stream or a character stream is also set on this
+ * input source, that stream is read instead of the byte array.</p>
+ * 
+ * @version $Id$
+ */
+public final class ByteArrayInputSource extends XMLInputSource {
+
+    //
+    // Data
+    //
+    
+    /** The bytes of the document. **/
+    private byte[] fBytes;
+    
+    /** Offset of the first byte of the document. **/
+    private int fOffset;
+    
+    /** Number of bytes in the document. **/
+    private int fLength;
+    
+    //
+    // Constructors
+    //
+    
+    /** 
+     * Constructs an input source from a whole byte array.
+     *
+     * @param publicId     The public identifier, if known.
+     * @param systemId     The system identifier. This value should
+     *                     always be set, if possible, and can be
+     *                     relative or absolute. If the system identifier
+     *                     is relative, then the base system identifier
+     *                     should be set.
+     * @param baseSystemId The base system identifier. This value should
+     *                     always be set to the fully expanded URI of the
+     *                     base system identifier, if possible.
+     * @param bytes        The bytes of the document.
+     * @param encoding     The encoding of the bytes, if known.
+     */
+    public ByteArrayInputSource(String publicId, String systemId, 
+            String baseSystemId, byte[] bytes, String encoding) {
+        this(publicId, systemId, baseSystemId, bytes, 0, bytes.length, encoding);
+    } // <init>(String,String,String,byte[],String)
+    
+    /** 
+     * Constructs an input source from a range of a byte array.
+     *
+     * @param publicId     The public identifier, if known.
+     * @param systemId     The system identifier. This value should
+     *                     always be set, if possible, and can be
+     *                     relative or absolute. If the system identifier
+     *                     is relative, then the base system identifier
+     *                     should be set.
+     * @param baseSystemId The base system identifier. This value should
+     *                     always be set to the fully expanded URI of the
+     *                     base system identifier, if possible.
+     * @param bytes        The byte array holding the document.
+     * @param offset       The offset of the first byte of the document.
+     * @param length       The number of bytes in the document.
+     * @param encoding     The encoding of the bytes, if known.
+     */
+    public ByteArrayInputSource(String publicId, String systemId, 
+            String baseSystemId, byte[] bytes, int offset, int length, 
+            String encoding) {
+        super(publicId, systemId, baseSystemId);
+        setBytes(bytes, offset, length);
+        setEncoding(encoding);
+    } // <init>(String,String,String,byte[],int,int,String)
+    
+    //
+    // Public methods
+    //
+    
+    /**
+     * Sets the range of the byte array which holds the document.
+     * 
+     * @param bytes  The byte array holding the document.
+     * @param offset The offset of the first byte of the document.
+     * @param length The number of bytes in the document.
+     */
+    public void setBytes(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        fBytes = bytes;
+        fOffset = offset;
+        fLength = length;
+    } // setBytes(byte[],int,int)
+    
+    /** Returns the byte array which holds the document. */
+    public byte[] getBytes() {
+        return fBytes;
+    } // getBytes():byte[]
+    
+    /** Returns the offset of the first byte of the document. */
+    public int getOffset() {
+        return fOffset;
+    } // getOffset():int
+    
+    /** Returns the number of bytes in the document. */
+    public int getLength() {
+        return fLength;
+    } // getLength():int
+    
+} // class ByteArrayInputSource
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.util;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * This class represents an input source for an XML document
+ * held in memory as a string or as a range of a character array.
+ * The parser copies the characters straight into the buffer of the 
+ * entity once and scans them from there, instead of reading them in 
+ * chunks through a character stream. A character array is not 
+ * copied by this class, so its contents must not be modified until 
+ * parsing has finished.
+ * 
+ * <p>If a byte stream or a character stream is also set on this
+ * input source, that stream is read instead of the characters.</p>
+ * 
+ * @version $Id$
+ */
+public final class CharArrayInputSource extends XMLInputSource {
+
+    //
+    // Data
+    //
+    
+    /** The document, if it was given as a string. **/
+    private String fString;
+    
+    /** The characters of the document, if it was given as an array. **/
+    private char[] fChars;
+    
+    /** Offset of the first character of the document. **/
+    private int fOffset;
+    
+    /** Number of characters in the document. **/
+    private int fLength;
+    
+    //
+    // Constructors
+    //
+    
+    /** 
+     * Constructs an input source from a string.
+     *
+     * @param publicId     The public identifier, if known.
+     * @param systemId     The system identifier. This value should
+     *                     always be set, if possible, and can be
+     *                     relative or absolute. If the system identifier
+     *                     is relative, then the base system identifier
+     *                     should be set.
+     * @param baseSystemId The base system identifier. This value should
+     *                     always be set to the fully expanded URI of the
+     *                     base system identifier, if possible.
+     * @param string       The document.
+     */
+    public CharArrayInputSource(String publicId, String systemId, 
+            String baseSystemId, String string) {
+        super(publicId, systemId, baseSystemId);
+        setString(string);
+    } // <init>(String,String,String,String)
+    
+    /** 
+     * Constructs an input source from a range of a character array.
+     *
+     * @param publicId     The public identifier, if known.
+     * @param systemId     The system identifier. This value should
+     *                     always be set, if possible, and can be
+     *                     relative or absolute. If the system identifier
+     *                     is relative, then the base system identifier
+     *                     should be set.
+     * @param baseSystemId The base system identifier. This value should
+     *                     always be set to the fully expanded URI of the
+     *                     base system identifier, if possible.
+     * @param chars        The character array holding the document.
+     * @param offset       The offset of the first character of the document.
+     * @param length       The number of characters in the document.
+     */
+    public CharArrayInputSource(String publicId, String systemId, 
+            String baseSystemId, char[] chars, int offset, int length) {
+        super(publicId, systemId, baseSystemId);
+        setChars(chars, offset, length);
+    } // <init>(String,String,String,char[],int,int)
+    
+    //
+    // Public methods
+    //
+    
+    /**
+     * Sets the string which holds the document.
+     * 
+     * @param string The document.
+     */
+    public void setString(String string) {
+        fString = string;
+        fChars = null;
+        fOffset = 0;
+        fLength = string.length();
+    } // setString(String)
+    
+    /**
+     * Sets the range of the character array which holds the document.
+     * 
+     * @param chars  The character array holding the document.
+     * @param offset The offset of the first character of the document.
+     * @param length The number of characters in the document.
+     */
+    public void setChars(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > chars.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        fString = null;
+        fChars = chars;
+        fOffset = offset;
+        fLength = length;
+    } // setChars(char[],int,int)
+    
+    /** Returns the number of characters in the document. */
+    public int getLength() {
+        return fLength;
+    } // getLength():int
+    
+    /**
+     * Copies the characters of the document into an array.
+     * 
+     * @param dest   The destination array.
+     * @param offset The offset in the destination array at which to
+     *               store the first character.
+     */
+    public void getChars(char[] dest, int offset) {
+        if (fString != null) {
+            fString.getChars(0, fLength, dest, offset);
+        }
+        else {
+            System.arraycopy(fChars, fOffset, dest, offset, fLength);
+        }
+    } // getChars(char[],int)
+    
+} // class CharArrayInputSource
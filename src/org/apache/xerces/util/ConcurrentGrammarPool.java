@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+
+/**
+ * A grammar pool which may be shared by parsers running concurrently
+ * on different threads, and which does not take a lock to retrieve a 
+ * grammar.
+ * <p>
+ * Grammars are added and removed as in <code>XMLGrammarPoolImpl</code>,
+ * holding the monitor of the table of grammars. After each change an
+ * immutable copy of the table is published, and lookups are made in the 
+ * latest copy without locking. Since the grammars in a pool change rarely
+ * and lookups are made for every document, the cost of copying the table
+ * on each change is small compared to the contention it removes. As with
+ * <code>XMLGrammarPoolImpl</code>, the <code>equals</code> and 
+ * <code>hashCode</code> methods of the pool may be overridden to change 
+ * how grammar descriptions are matched.
+ *
+ * @version $Id$
+ */
+public class ConcurrentGrammarPool extends XMLGrammarPoolImpl {
+
+    //
+    // Data
+    //
+
+    /** Immutable copy of the table of grammars used for lookups. */
+    private volatile Snapshot fSnapshot;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a grammar pool with a default number of buckets. */
+    public ConcurrentGrammarPool() {
+        super();
+        fSnapshot = new Snapshot(fGrammars.length);
+    } // <init>()
+
+    /** Constructs a grammar pool with a specified number of buckets. */
+    public ConcurrentGrammarPool(int initialCapacity) {
+        super(initialCapacity);
+        fSnapshot = new Snapshot(fGrammars.length);
+    } // <init>(int)
+
+    //
+    // XMLGrammarPool methods
+    //
+
+    /* <p> Retrieve the initial known set of grammars. This method is
+     * called by a validator before the validation starts. </p>
+     *
+     * @param grammarType The type of the grammar, from the
+     *  		  <code>org.apache.xerces.xni.grammars.XMLGrammarDescription</code>
+     *  		  interface.
+     * @return 		  The set of grammars the validator may put in its "bucket"
+     */
+    public Grammar[] retrieveInitialGrammarSet(String grammarType) {
+        final Snapshot snapshot = fSnapshot;
+        final Grammar[] tempGrammars = new Grammar[snapshot.count];
+        int pos = 0;
+        for (int i = 0; i < snapshot.buckets.length; i++) {
+            for (SnapshotEntry e = snapshot.buckets[i]; e != null; e = e.next) {
+                if (e.desc.getGrammarType().equals(grammarType)) {
+                    tempGrammars[pos++] = e.grammar;
+                }
+            }
+        }
+        final Grammar[] toReturn = new Grammar[pos];
+        System.arraycopy(tempGrammars, 0, toReturn, 0, pos);
+        return toReturn;
+    } // retrieveInitialGrammarSet(String):Grammar[]
+
+    /* <p> Return the final set of grammars that the validator ended up
+     * with. The grammars become visible to readers together, in a 
+     * single snapshot. </p>
+     *
+     * @param grammarType The type of the grammars being returned;
+     * @param grammars 	  An array containing the set of grammars being
+     *  		  returned; order is not significant.
+     */
+    public void cacheGrammars(String grammarType, Grammar[] grammars) {
+        if (!fPoolIsLocked) {
+            synchronized (fGrammars) {
+                for (int i = 0; i < grammars.length; i++) {
+                    super.putGrammar(grammars[i]);
+                }
+                publish();
+            }
+        }
+    } // cacheGrammars(String,Grammar[])
+
+    //
+    // XMLGrammarPoolImpl methods
+    //
+
+    /**
+     * Puts the specified grammar into the grammar pool and associates it to
+     * its root element name or its target namespace.
+     *
+     * @param grammar The Grammar.
+     */
+    public void putGrammar(Grammar grammar) {
+        if (!fPoolIsLocked) {
+            synchronized (fGrammars) {
+                super.putGrammar(grammar);
+                publish();
+            }
+        }
+    } // putGrammar(Grammar)
+
+    /**
+     * Returns the grammar associated to the specified grammar description.
+     *
+     * @param desc The Grammar Description.
+     */
+    public Grammar getGrammar(XMLGrammarDescription desc) {
+        final SnapshotEntry entry = find(desc);
+        return (entry != null) ? entry.grammar : null;
+    } // getGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Removes the grammar associated to the specified grammar description from the
+     * grammar pool and returns the removed grammar.
+     *
+     * @param desc The Grammar Description.
+     * @return     The removed grammar.
+     */
+    public Grammar removeGrammar(XMLGrammarDescription desc) {
+        synchronized (fGrammars) {
+            final Grammar grammar = super.removeGrammar(desc);
+            if (grammar != null) {
+                publish();
+            }
+            return grammar;
+        }
+    } // removeGrammar(XMLGrammarDescription):Grammar
+
+    /**
+     * Returns true if the grammar pool contains a grammar associated
+     * to the specified grammar description.
+     *
+     * @param desc The Grammar Description.
+     */
+    public boolean containsGrammar(XMLGrammarDescription desc) {
+        return find(desc) != null;
+    } // containsGrammar(XMLGrammarDescription):boolean
+
+    /*
+     * <p>This method clears the pool-i.e., removes references
+     * to all the grammars in it.</p>
+     */
+    public void clear() {
+        synchronized (fGrammars) {
+            super.clear();
+            publish();
+        }
+    } // clear()
+
+    //
+    // Private methods
+    //
+
+    /** Finds the entry of the latest snapshot matching the given description. */
+    private SnapshotEntry find(XMLGrammarDescription desc) {
+        final SnapshotEntry[] buckets = fSnapshot.buckets;
+        final int hash = hashCode(desc);
+        final int index = (hash & 0x7FFFFFFF) % buckets.length;
+        for (SnapshotEntry entry = buckets[index]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && equals(entry.desc, desc)) {
+                return entry;
+            }
+        }
+        return null;
+    } // find(XMLGrammarDescription):SnapshotEntry
+
+    /** 
+     * Copies the table of grammars into a new snapshot. Must be 
+     * called holding the monitor of the table.
+     */
+    private void publish() {
+        final Snapshot snapshot = new Snapshot(fGrammars.length);
+        for (int i = 0; i < fGrammars.length; i++) {
+            // keep the order of each bucket
+            SnapshotEntry last = null;
+            for (Entry entry = fGrammars[i]; entry != null; entry = entry.next) {
+                final SnapshotEntry copy = new SnapshotEntry(entry.hash, entry.desc, entry.grammar);
+                if (last == null) {
+                    snapshot.buckets[i] = copy;
+                }
+                else {
+                    last.next = copy;
+                }
+                last = copy;
+                ++snapshot.count;
+            }
+        }
+        fSnapshot = snapshot;
+    } // publish()
+
+    //
+    // Classes
+    //
+
+    /**
+     * An immutable copy of the table of grammars. Its fields are only
+     * written before it is published.
+     */
+    private static final class Snapshot {
+
+        final SnapshotEntry[] buckets;
+        int count;
+
+        Snapshot(int length) {
+            buckets = new SnapshotEntry[length];
+        }
+
+    } // class Snapshot
+
+    /**
+     * An entry of a snapshot. Its fields are only written before the 
+     * snapshot is published.
+     */
+    private static final class SnapshotEntry {
+
+        final int hash;
+        final XMLGrammarDescription desc;
+        final Grammar grammar;
+        SnapshotEntry next;
+
+        SnapshotEntry(int hash, XMLGrammarDescription desc, Grammar grammar) {
+            this.hash = hash;
+            this.desc = desc;
+            this.grammar = grammar;
+        }
+
+    } // class SnapshotEntry
+
+} // class ConcurrentGrammarPool
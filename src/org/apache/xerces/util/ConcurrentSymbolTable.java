@@ -0,0 +1,401 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.xerces.util;
+
+/**
+ * A symbol table which may be shared by parsers running concurrently
+ * on different threads. Unlike <code>SynchronizedSymbolTable</code> it
+ * does not take a lock to look up a symbol which is already in the 
+ * table, by far the most common operation once the table has warmed up.
+ * <p>
+ * The table is divided into a number of stripes, each a hash table 
+ * guarded by its own lock. Entries are immutable and the buckets of 
+ * a stripe are replaced rather than modified when the stripe grows, 
+ * so a lookup may walk a bucket while another thread adds a symbol to 
+ * the stripe. A lookup which does not find the symbol is repeated while 
+ * holding the lock of the stripe before a new entry is added. As with 
+ * every other symbol table, the symbols returned are interned strings, 
+ * so equal symbols are always the same reference no matter which thread 
+ * added them.
+ *
+ * @see SynchronizedSymbolTable
+ *
+ * @version $Id$
+ */
+public final class ConcurrentSymbolTable
+    extends SymbolTable {
+
+    //
+    // Constants
+    //
+
+    /** Default number of stripes. */
+    public static final int DEFAULT_STRIPE_COUNT = 16;
+
+    //
+    // Data
+    //
+
+    /** Stripes. */
+    private final Stripe[] fStripes;
+
+    /** Mask selecting the stripe from a hash code. */
+    private final int fStripeMask;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a concurrent symbol table of the default size. */
+    public ConcurrentSymbolTable() {
+        this(TABLE_SIZE, DEFAULT_STRIPE_COUNT);
+    } // <init>()
+
+    /**
+     * Constructs a concurrent symbol table with the default number 
+     * of stripes.
+     *
+     * @param initialCapacity The initial capacity of the whole table.
+     */
+    public ConcurrentSymbolTable(int initialCapacity) {
+        this(initialCapacity, DEFAULT_STRIPE_COUNT);
+    } // <init>(int)
+
+    /**
+     * Constructs a concurrent symbol table.
+     *
+     * @param initialCapacity The initial capacity of the whole table.
+     * @param stripeCount     The number of independently locked stripes,
+     *                        rounded up to a power of two.
+     * @throws IllegalArgumentException if the initial capacity is less 
+     *                                  than zero.
+     */
+    public ConcurrentSymbolTable(int initialCapacity, int stripeCount) {
+        super(1);
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        int shift = 0;
+        while ((1 << shift) < stripeCount && shift < 16) {
+            ++shift;
+        }
+        fStripes = new Stripe[1 << shift];
+        fStripeMask = fStripes.length - 1;
+        final int stripeCapacity = (initialCapacity / fStripes.length) | 1;
+        for (int i = 0; i < fStripes.length; ++i) {
+            fStripes[i] = new Stripe(stripeCapacity, shift, fLoadFactor, fCollisionThreshold);
+        }
+    } // <init>(int,int)
+
+    //
+    // SymbolTable methods
+    //
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists, 
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     * 
+     * @param symbol The new symbol.
+     */
+    public String addSymbol(String symbol) {
+        final int code = symbol.hashCode() & 0x7FFFFFFF;
+        final Stripe stripe = fStripes[code & fStripeMask];
+        final Entry entry = stripe.find(symbol, code);
+        if (entry != null) {
+            return entry.symbol;
+        }
+        return stripe.add(symbol, code);
+    } // addSymbol(String):String
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists, 
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     * 
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     */
+    public String addSymbol(char[] buffer, int offset, int length) {
+        return addSymbol(buffer, offset, length, hash(buffer, offset, length));
+    } // addSymbol(char[],int,int):String
+
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists, 
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     * 
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     * @param hash   The hash code of the symbol.
+     */
+    public String addSymbol(char[] buffer, int offset, int length, int hash) {
+        final int code = hash & 0x7FFFFFFF;
+        final Stripe stripe = fStripes[code & fStripeMask];
+        final Entry entry = stripe.find(buffer, offset, length, code);
+        if (entry != null) {
+            return entry.symbol;
+        }
+        return stripe.add(buffer, offset, length, code);
+    } // addSymbol(char[],int,int,int):String
+
+    /** 
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param symbol The symbol to look for.
+     */
+    public boolean containsSymbol(String symbol) {
+        final int code = symbol.hashCode() & 0x7FFFFFFF;
+        final Stripe stripe = fStripes[code & fStripeMask];
+        if (stripe.find(symbol, code) != null) {
+            return true;
+        }
+        synchronized (stripe) {
+            return stripe.find(symbol, code) != null;
+        }
+    } // containsSymbol(String):boolean
+
+    /** 
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param buffer The buffer containing the symbol to look for.
+     * @param offset The offset into the buffer.
+     * @param length The length of the symbol in the buffer.
+     */
+    public boolean containsSymbol(char[] buffer, int offset, int length) {
+        final int code = hash(buffer, offset, length);
+        final Stripe stripe = fStripes[code & fStripeMask];
+        if (stripe.find(buffer, offset, length, code) != null) {
+            return true;
+        }
+        synchronized (stripe) {
+            return stripe.find(buffer, offset, length, code) != null;
+        }
+    } // containsSymbol(char[],int,int):boolean
+
+    //
+    // Classes
+    //
+
+    /**
+     * A symbol table entry. All of its fields are final so that a thread
+     * which reaches the entry without holding the lock of its stripe sees
+     * it fully constructed.
+     */
+    private static final class Entry {
+
+        /** Symbol. */
+        final String symbol;
+
+        /** Symbol characters. */
+        final char[] characters;
+
+        /** Default hash code of the symbol. */
+        final int code;
+
+        /** The next entry. */
+        final Entry next;
+
+        Entry(String symbol, char[] characters, int code, Entry next) {
+            this.symbol = symbol;
+            this.characters = characters;
+            this.code = code;
+            this.next = next;
+        }
+
+    } // class Entry
+
+    /**
+     * A portion of the table. Lookups read the buckets without locking;
+     * additions hold the monitor of the stripe.
+     */
+    private static final class Stripe {
+
+        /** Buckets. */
+        volatile Entry[] fBuckets;
+
+        /** 
+         * Hash function multipliers, or <code>null</code> if the default 
+         * hash code is used. 
+         */
+        volatile int[] fHashMultipliers;
+
+        /** Number of entries. */
+        int fCount;
+
+        /** The stripe grows when its number of entries exceeds this threshold. */
+        int fThreshold;
+
+        /** Number of bits of the default hash code used to select the stripe. */
+        final int fShift;
+
+        final float fLoadFactor;
+        final int fCollisionThreshold;
+
+        Stripe(int capacity, int shift, float loadFactor, int collisionThreshold) {
+            fBuckets = new Entry[capacity];
+            fShift = shift;
+            fLoadFactor = loadFactor;
+            fThreshold = (int) (capacity * loadFactor);
+            fCollisionThreshold = collisionThreshold;
+        }
+
+        //
+        // Lookups
+        //
+
+        Entry find(String symbol, int code) {
+            final int[] multipliers = fHashMultipliers;
+            final Entry[] buckets = fBuckets;
+            final int length = symbol.length();
+            int hash = code >>> fShift;
+            if (multipliers != null) {
+                hash = 0;
+                for (int i = 0; i < length; ++i) {
+                    hash = hash * multipliers[i & MULTIPLIERS_MASK] + symbol.charAt(i);
+                }
+                hash &= 0x7FFFFFFF;
+            }
+            OUTER: for (Entry entry = buckets[hash % buckets.length]; entry != null; entry = entry.next) {
+                final char[] characters = entry.characters;
+                if (code == entry.code && length == characters.length) {
+                    for (int i = 0; i < length; i++) {
+                        if (symbol.charAt(i) != characters[i]) {
+                            continue OUTER;
+                        }
+                    }
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        Entry find(char[] buffer, int offset, int length, int code) {
+            final int[] multipliers = fHashMultipliers;
+            final Entry[] buckets = fBuckets;
+            int hash = code >>> fShift;
+            if (multipliers != null) {
+                hash = 0;
+                for (int i = 0; i < length; ++i) {
+                    hash = hash * multipliers[i & MULTIPLIERS_MASK] + buffer[offset + i];
+                }
+                hash &= 0x7FFFFFFF;
+            }
+            OUTER: for (Entry entry = buckets[hash % buckets.length]; entry != null; entry = entry.next) {
+                final char[] characters = entry.characters;
+                if (code == entry.code && length == characters.length) {
+                    for (int i = 0; i < length; i++) {
+                        if (buffer[offset + i] != characters[i]) {
+                            continue OUTER;
+                        }
+                    }
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        //
+        // Additions
+        //
+
+        synchronized String add(String symbol, int code) {
+            final Entry entry = find(symbol, code);
+            if (entry != null) {
+                return entry.symbol;
+            }
+            final char[] characters = new char[symbol.length()];
+            symbol.getChars(0, characters.length, characters, 0);
+            return insert(symbol.intern(), characters, code);
+        }
+
+        synchronized String add(char[] buffer, int offset, int length, int code) {
+            final Entry entry = find(buffer, offset, length, code);
+            if (entry != null) {
+                return entry.symbol;
+            }
+            final char[] characters = new char[length];
+            System.arraycopy(buffer, offset, characters, 0, length);
+            return insert(new String(characters).intern(), characters, code);
+        }
+
+        /** Adds a new entry at the head of its bucket. */
+        private String insert(String symbol, char[] characters, int code) {
+            if (fCount >= fThreshold) {
+                rehash(fBuckets.length * 2 + 1, fHashMultipliers);
+            }
+            Entry[] buckets = fBuckets;
+            int bucket = hash(characters, code) % buckets.length;
+            int collisionCount = 0;
+            for (Entry e = buckets[bucket]; e != null; e = e.next) {
+                ++collisionCount;
+            }
+            if (collisionCount >= fCollisionThreshold) {
+                // Select a new hash function and rehash the stripe if
+                // the collision threshold is exceeded.
+                final int[] multipliers = new int[MULTIPLIERS_SIZE];
+                PrimeNumberSequenceGenerator.generateSequence(multipliers);
+                rehash(buckets.length, multipliers);
+                buckets = fBuckets;
+                bucket = hash(characters, code) % buckets.length;
+            }
+            buckets[bucket] = new Entry(symbol, characters, code, buckets[bucket]);
+            ++fCount;
+            return symbol;
+        }
+
+        /** 
+         * Copies the entries into new buckets, leaving the current 
+         * buckets untouched for concurrent lookups.
+         */
+        private void rehash(int capacity, int[] multipliers) {
+            final Entry[] oldBuckets = fBuckets;
+            final Entry[] newBuckets = new Entry[capacity];
+            fHashMultipliers = multipliers;
+            for (int i = oldBuckets.length; i-- > 0;) {
+                for (Entry e = oldBuckets[i]; e != null; e = e.next) {
+                    final int bucket = hash(e.characters, e.code) % capacity;
+                    newBuckets[bucket] = new Entry(e.symbol, e.characters, e.code, newBuckets[bucket]);
+                }
+            }
+            fThreshold = (int) (capacity * fLoadFactor);
+            fBuckets = newBuckets;
+        }
+
+        /** Returns the bucket hash of the given symbol characters. */
+        private int hash(char[] characters, int code) {
+            final int[] multipliers = fHashMultipliers;
+            if (multipliers == null) {
+                return code >>> fShift;
+            }
+            int hash = 0;
+            for (int i = 0; i < characters.length; ++i) {
+                hash = hash * multipliers[i & MULTIPLIERS_MASK] + characters[i];
+            }
+            return hash & 0x7FFFFFFF;
+        }
+
+    } // class Stripe
+
+} // class ConcurrentSymbolTable
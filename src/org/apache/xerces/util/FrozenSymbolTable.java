@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xerces.util;
+
+import java.util.HashMap;
+
+/**
+ * A read-only symbol table built once from a fixed set of symbols, 
+ * such as the names declared by the grammars in a grammar pool.
+ * <p>
+ * The symbols are placed with a perfect hash function: the default 
+ * hash code of a symbol selects a displacement, and the hash code 
+ * combined with that displacement selects the only slot where the 
+ * symbol may be found. A lookup therefore probes exactly one slot, 
+ * never allocates and, since the table is never modified after it 
+ * has been built, needs no locking when the table is shared by 
+ * parsers on different threads.
+ * <p>
+ * Symbols which are not in the table are returned interned but are
+ * not added to it. A parser which needs to remember its own symbols 
+ * should chain a <code>ShadowedSymbolTable</code> onto this table.
+ *
+ * @see ShadowedSymbolTable
+ *
+ * @version $Id$
+ */
+public final class FrozenSymbolTable
+    extends SymbolTable {
+
+    //
+    // Constants
+    //
+
+    /** Multiplier spreading the displaced hash code over the slots. */
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    /** Number of displacements tried for a bucket before giving up. */
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+
+    //
+    // Data
+    //
+
+    /** Symbols, indexed by slot. */
+    private final String[] fSymbols;
+
+    /** Symbol characters, indexed by slot. */
+    private final char[][] fCharacters;
+
+    /** Default hash codes of the symbols without their sign bit, indexed by slot. */
+    private final int[] fCodes;
+
+    /** Displacements, indexed by bucket. */
+    private final int[] fDisplacements;
+
+    /** Mask selecting the bucket from a hash code. */
+    private final int fBucketMask;
+
+    /** Shift selecting the slot from a displaced hash code. */
+    private final int fShift;
+
+    /** 
+     * Symbols which could not be placed with the perfect hash function,
+     * or <code>null</code> if there are none. 
+     */
+    private final Entry fOverflow;
+
+    /** Number of symbols. */
+    private final int fSymbolCount;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Constructs a symbol table holding the given symbols. Duplicate
+     * and <code>null</code> symbols are ignored.
+     *
+     * @param symbols The symbols of the table.
+     */
+    public FrozenSymbolTable(String[] symbols) {
+        super(1);
+
+        // remove duplicates
+        final HashMap unique = new HashMap();
+        String[] keys = new String[symbols.length];
+        int count = 0;
+        for (int i = 0; i < symbols.length; ++i) {
+            final String symbol = symbols[i];
+            if (symbol != null && !unique.containsKey(symbol)) {
+                unique.put(symbol, symbol);
+                keys[count++] = symbol.intern();
+            }
+        }
+        fSymbolCount = count;
+
+        // size the slots for a load factor of at most one half, 
+        // and the buckets for two symbols on average
+        int slotBits = 1;
+        while ((1 << slotBits) < count * 2) {
+            ++slotBits;
+        }
+        final int slotCount = 1 << slotBits;
+        final int bucketCount = slotCount >> 2 > 0 ? slotCount >> 2 : 1;
+        fShift = 32 - slotBits;
+        fBucketMask = bucketCount - 1;
+        fSymbols = new String[slotCount];
+        fCharacters = new char[slotCount][];
+        fCodes = new int[slotCount];
+        fDisplacements = new int[bucketCount];
+
+        // link the symbols of each bucket
+        final int[] codes = new int[count];
+        final int[] heads = new int[bucketCount];
+        final int[] sizes = new int[bucketCount];
+        final int[] next = new int[count];
+        for (int i = 0; i < bucketCount; ++i) {
+            heads[i] = -1;
+        }
+        int maxSize = 0;
+        for (int i = 0; i < count; ++i) {
+            codes[i] = keys[i].hashCode() & 0x7FFFFFFF;
+            final int bucket = codes[i] & fBucketMask;
+            next[i] = heads[bucket];
+            heads[bucket] = i;
+            if (++sizes[bucket] > maxSize) {
+                maxSize = sizes[bucket];
+            }
+        }
+
+        // place the largest buckets first, searching for a displacement
+        // which sends each symbol of the bucket to a distinct free slot
+        final int[] slots = new int[maxSize];
+        Entry overflow = null;
+        for (int size = maxSize; size > 0; --size) {
+            for (int bucket = 0; bucket < bucketCount; ++bucket) {
+                if (sizes[bucket] != size) {
+                    continue;
+                }
+                int displacement = 0;
+                SEARCH: for (; displacement < MAX_DISPLACEMENT; ++displacement) {
+                    int n = 0;
+                    for (int i = heads[bucket]; i != -1; i = next[i]) {
+                        final int slot = slot(codes[i], displacement);
+                        if (fSymbols[slot] != null) {
+                            continue SEARCH;
+                        }
+                        for (int j = 0; j < n; ++j) {
+                            if (slots[j] == slot) {
+                                continue SEARCH;
+                            }
+                        }
+                        slots[n++] = slot;
+                    }
+                    break;
+                }
+                if (displacement == MAX_DISPLACEMENT) {
+                    // symbols with equal hash codes can never be separated;
+                    // keep the first in its own slot and the rest aside
+                    displacement = 0;
+                    while (fSymbols[slot(codes[heads[bucket]], displacement)] != null) {
+                        ++displacement;
+                    }
+                    int n = 0;
+                    for (int i = heads[bucket]; i != -1; i = next[i]) {
+                        final int slot = slot(codes[i], displacement);
+                        boolean taken = fSymbols[slot] != null;
+                        for (int j = 0; j < n && !taken; ++j) {
+                            taken = slots[j] == slot;
+                        }
+                        if (taken) {
+                            overflow = new Entry(keys[i], overflow);
+                            slots[n++] = -1;
+                        }
+                        else {
+                            slots[n++] = slot;
+                        }
+                    }
+                }
+                fDisplacements[bucket] = displacement;
+                int n = 0;
+                for (int i = heads[bucket]; i != -1; i = next[i]) {
+                    final int slot = slots[n++];
+                    if (slot != -1) {
+                        fSymbols[slot] = keys[i];
+                        fCharacters[slot] = keys[i].toCharArray();
+                        fCodes[slot] = codes[i];
+                    }
+                }
+            }
+        }
+        fOverflow = overflow;
+    } // <init>(String[])
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of symbols in this table. */
+    public int getSymbolCount() {
+        return fSymbolCount;
+    } // getSymbolCount():int
+
+    /**
+     * Returns the symbol of this table equal to the given string, or
+     * <code>null</code> if there is none.
+     *
+     * @param symbol The symbol to look for.
+     */
+    public String getSymbol(String symbol) {
+        final int code = symbol.hashCode() & 0x7FFFFFFF;
+        final int slot = slot(code, fDisplacements[code & fBucketMask]);
+        if (fCodes[slot] == code && symbol.equals(fSymbols[slot])) {
+            return fSymbols[slot];
+        }
+        for (Entry entry = fOverflow; entry != null; entry = entry.next) {
+            if (symbol.equals(entry.symbol)) {
+                return entry.symbol;
+            }
+        }
+        return null;
+    } // getSymbol(String):String
+
+    /**
+     * Returns the symbol of this table made of the given characters, 
+     * or <code>null</code> if there is none.
+     *
+     * @param buffer The buffer containing the symbol to look for.
+     * @param offset The offset into the buffer.
+     * @param length The length of the symbol in the buffer.
+     * @param hash   The hash code of the symbol, as computed by
+     *               <code>String.hashCode()</code>, with or without
+     *               its sign bit.
+     */
+    public String getSymbol(char[] buffer, int offset, int length, int hash) {
+        hash &= 0x7FFFFFFF;
+        final int slot = slot(hash, fDisplacements[hash & fBucketMask]);
+        final char[] characters = fCharacters[slot];
+        if (fCodes[slot] == hash && characters != null && characters.length == length
+                && matches(characters, buffer, offset, length)) {
+            return fSymbols[slot];
+        }
+        for (Entry entry = fOverflow; entry != null; entry = entry.next) {
+            if (entry.characters.length == length 
+                    && matches(entry.characters, buffer, offset, length)) {
+                return entry.symbol;
+            }
+        }
+        return null;
+    } // getSymbol(char[],int,int,int):String
+
+    //
+    // SymbolTable methods
+    //
+
+    /**
+     * Returns the symbol of this table equal to the given string, or
+     * the interned string if there is none. The symbol is not added.
+     * 
+     * @param symbol The symbol.
+     */
+    public String addSymbol(String symbol) {
+        final String s = getSymbol(symbol);
+        return s != null ? s : symbol.intern();
+    } // addSymbol(String):String
+
+    /**
+     * Returns the symbol of this table made of the given characters, 
+     * or a new interned string if there is none. The symbol is not added.
+     * 
+     * @param buffer The buffer containing the symbol.
+     * @param offset The offset into the buffer of the symbol.
+     * @param length The length of the symbol in the buffer.
+     */
+    public String addSymbol(char[] buffer, int offset, int length) {
+        return addSymbol(buffer, offset, length, hash(buffer, offset, length));
+    } // addSymbol(char[],int,int):String
+
+    /**
+     * Returns the symbol of this table made of the given characters, 
+     * or a new interned string if there is none. The symbol is not added.
+     * 
+     * @param buffer The buffer containing the symbol.
+     * @param offset The offset into the buffer of the symbol.
+     * @param length The length of the symbol in the buffer.
+     * @param hash   The hash code of the symbol.
+     */
+    public String addSymbol(char[] buffer, int offset, int length, int hash) {
+        final String s = getSymbol(buffer, offset, length, hash);
+        return s != null ? s : new String(buffer, offset, length).intern();
+    } // addSymbol(char[],int,int,int):String
+
+    /** 
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param symbol The symbol to look for.
+     */
+    public boolean containsSymbol(String symbol) {
+        return getSymbol(symbol) != null;
+    } // containsSymbol(String):boolean
+
+    /** 
+     * Returns true if the symbol table already contains the specified
+     * symbol.
+     *
+     * @param buffer The buffer containing the symbol to look for.
+     * @param offset The offset into the buffer.
+     * @param length The length of the symbol in the buffer.
+     */
+    public boolean containsSymbol(char[] buffer, int offset, int length) {
+        return getSymbol(buffer, offset, length, hash(buffer, offset, length)) != null;
+    } // containsSymbol(char[],int,int):boolean
+
+    //
+    // Private methods
+    //
+
+    /** Returns the slot of a hash code for the given displacement. */
+    private int slot(int code, int displacement) {
+        return ((code ^ displacement) * GOLDEN_RATIO) >>> fShift;
+    } // slot(int,int):int
+
+    private static boolean matches(char[] characters, char[] buffer, int offset, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (buffer[offset + i] != characters[i]) {
+                return false;
+            }
+        }
+        return true;
+    } // matches(char[],char[],int,int):boolean
+
+} // class FrozenSymbolTable
@@ -40,6 +40,13 @@ extends SymbolTable {
     /** Main symbol table. */
     protected SymbolTable fSymbolTable;
 
+    /** 
+     * Main symbol table, if it is frozen. A frozen table is searched
+     * once rather than asked whether it contains a symbol and then
+     * asked for the symbol.
+     */
+    private final FrozenSymbolTable fFrozenSymbolTable;
+
     //
     // Constructors
     //
@@ -47,6 +54,8 @@ extends SymbolTable {
     /** Constructs a shadow of the specified symbol table. */
     public ShadowedSymbolTable(SymbolTable symbolTable) {
         fSymbolTable = symbolTable;
+        fFrozenSymbolTable = (symbolTable instanceof FrozenSymbolTable)
+                           ? (FrozenSymbolTable) symbolTable : null;
     } // <init>(SymbolTable)
 
     //
@@ -63,6 +72,10 @@ extends SymbolTable {
      */
     public String addSymbol(String symbol) {
 
+        if (fFrozenSymbolTable != null) {
+            final String s = fFrozenSymbolTable.getSymbol(symbol);
+            return (s != null) ? s : super.addSymbol(symbol);
+        }
         if (fSymbolTable.containsSymbol(symbol)) {
             return fSymbolTable.addSymbol(symbol);
         }
@@ -82,6 +95,10 @@ extends SymbolTable {
      */
     public String addSymbol(char[] buffer, int offset, int length) {
 
+        if (fFrozenSymbolTable != null) {
+            return addSymbol(buffer, offset, length, 
+                    fFrozenSymbolTable.hash(buffer, offset, length));
+        }
         if (fSymbolTable.containsSymbol(buffer, offset, length)) {
             return fSymbolTable.addSymbol(buffer, offset, length);
         }
@@ -89,6 +106,32 @@ extends SymbolTable {
 
     } // addSymbol(char[],int,int):String
 
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists, 
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     * 
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     * @param hash   The hash code of the symbol.
+     */
+    public String addSymbol(char[] buffer, int offset, int length, int hash) {
+
+        if (fFrozenSymbolTable != null) {
+            // the frozen table uses the default hash function
+            final String s = fFrozenSymbolTable.getSymbol(buffer, offset, length, hash);
+            return (s != null) ? s : super.addSymbol(buffer, offset, length);
+        }
+        if (fSymbolTable.containsSymbol(buffer, offset, length)) {
+            return fSymbolTable.addSymbol(buffer, offset, length, hash);
+        }
+        // this table hashes with the function of the main table
+        return super.addSymbol(buffer, offset, length);
+
+    } // addSymbol(char[],int,int,int):String
+
     /**
      * Returns a hashcode value for the specified symbol. The value
      * returned by this method must be identical to the value returned
@@ -218,6 +218,21 @@ public class SoftReferenceSymbolTable extends SymbolTable {
         return symbol;
     } // addSymbol0(char[],int,int,int,int):String
 
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     *
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     * @param hash   The hash code of the symbol.
+     */
+    public String addSymbol(char[] buffer, int offset, int length, int hash) {
+        return addSymbol(buffer, offset, length);
+    } // addSymbol(char[],int,int,int):String
+
     /**
      * Increases the capacity of and internally reorganizes this 
      * SymbolTable, in order to accommodate and access its entries more 
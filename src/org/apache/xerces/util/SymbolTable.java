@@ -238,10 +238,14 @@ public class SymbolTable {
      * @param length The length of the new symbol in the buffer.
      */
     public String addSymbol(char[] buffer, int offset, int length) {
+        return addSymbolToBucket(buffer, offset, length, hash(buffer, offset, length) % fTableSize);
+    } // addSymbol(char[],int,int):String
+    
+    /** Searches the given bucket for the symbol, adding it if it is not found. */
+    private String addSymbolToBucket(char[] buffer, int offset, int length, int bucket) {
         
         // search for identical symbol
         int collisionCount = 0;
-        int bucket = hash(buffer, offset, length) % fTableSize;
         OUTER: for (Entry entry = fBuckets[bucket]; entry != null; entry = entry.next) {
             if (length == entry.characters.length) {
                 for (int i = 0; i < length; i++) {
@@ -256,7 +260,7 @@ public class SymbolTable {
         }
         return addSymbol0(buffer, offset, length, bucket, collisionCount);
         
-    } // addSymbol(char[],int,int):String
+    } // addSymbolToBucket(char[],int,int,int):String
     
     private String addSymbol0(char[] buffer, int offset, int length, int bucket, int collisionCount) {
         
@@ -280,6 +284,37 @@ public class SymbolTable {
         
     } // addSymbol0(char[],int,int,int,int):String
 
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists,
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     * <p>
+     * This method is for callers which compute the hash code of the
+     * symbol while they read its characters, such as the scanners, so
+     * that the characters need not be read again to hash them. In
+     * subclasses which do not override this method, the hash code is
+     * ignored and <code>addSymbol(char[],int,int)</code> is called.
+     *
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     * @param hash   The hash code of the symbol, as computed by
+     *               <code>String.hashCode()</code> for the string 
+     *               made of the characters of the symbol.
+     */
+    public String addSymbol(char[] buffer, int offset, int length, int hash) {
+        
+        // the hash code is only useful with the default hash function
+        // and the bucket layout of this class; subclasses may store
+        // their symbols some other way
+        if (fHashMultipliers != null || getClass() != SymbolTable.class) {
+            return addSymbol(buffer, offset, length);
+        }
+        return addSymbolToBucket(buffer, offset, length, (hash & 0x7FFFFFFF) % fTableSize);
+        
+    } // addSymbol(char[],int,int,int):String
+
     /**
      * Returns a hashcode value for the specified symbol. The value
      * returned by this method must be identical to the value returned
@@ -94,6 +94,25 @@ public final class SynchronizedSymbolTable
 
     } // addSymbol(char[],int,int):String
 
+    /**
+     * Adds the specified symbol to the symbol table and returns a
+     * reference to the unique symbol. If the symbol already exists, 
+     * the previous symbol reference is returned instead, in order
+     * guarantee that symbol references remain unique.
+     * 
+     * @param buffer The buffer containing the new symbol.
+     * @param offset The offset into the buffer of the new symbol.
+     * @param length The length of the new symbol in the buffer.
+     * @param hash   The hash code of the symbol.
+     */
+    public String addSymbol(char[] buffer, int offset, int length, int hash) {
+
+        synchronized (fSymbolTable) {
+            return fSymbolTable.addSymbol(buffer, offset, length, hash);
+        }
+
+    } // addSymbol(char[],int,int,int):String
+
     /** 
      * Returns true if the symbol table already contains the specified
      * symbol.
@@ -17,9 +17,31 @@
 
 package org.apache.xerces.util;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLAttributeDecl;
+import org.apache.xerces.impl.dtd.XMLElementDecl;
+import org.apache.xerces.xni.QName;
 import org.apache.xerces.xni.grammars.Grammar;
 import org.apache.xerces.xni.grammars.XMLGrammarDescription;
 import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.grammars.XSGrammar;
+import org.apache.xerces.xs.StringList;
+import org.apache.xerces.xs.XSAttributeGroupDefinition;
+import org.apache.xerces.xs.XSAttributeUse;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSModelGroup;
+import org.apache.xerces.xs.XSModelGroupDefinition;
+import org.apache.xerces.xs.XSNamedMap;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSParticle;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
 
 /**
  * Stores grammars in a pool associated to a specific key. This grammar pool
@@ -59,6 +81,9 @@ public class XMLGrammarPoolImpl implements XMLGrammarPool {
     // the number of grammars in the pool
     protected int fGrammarCount = 0;
 
+    // the names declared by the grammars in the pool; built on demand
+    protected SymbolTable fSymbolTable = null;
+
     private static final boolean DEBUG = false ;
 
     //
@@ -122,13 +147,16 @@ public class XMLGrammarPoolImpl implements XMLGrammarPool {
      */
     public void cacheGrammars(String grammarType, Grammar[] grammars) {
         if(!fPoolIsLocked) {
-            for (int i = 0; i < grammars.length; i++) {
-                if(DEBUG) {
-                    System.out.println("CACHED GRAMMAR " + (i+1) ) ;
-                    Grammar temp = grammars[i] ;
-                    //print(temp.getGrammarDescription());
+            // put them all at once, as they may refer to each other
+            synchronized (fGrammars) {
+                for (int i = 0; i < grammars.length; i++) {
+                    if(DEBUG) {
+                        System.out.println("CACHED GRAMMAR " + (i+1) ) ;
+                        Grammar temp = grammars[i] ;
+                        //print(temp.getGrammarDescription());
+                    }
+                    putGrammar(grammars[i]);
                 }
-                putGrammar(grammars[i]);
             }
         }
     } // cacheGrammars(String, Grammar[]);
@@ -173,7 +201,10 @@ public class XMLGrammarPoolImpl implements XMLGrammarPool {
                 int index = (hash & 0x7FFFFFFF) % fGrammars.length;
                 for (Entry entry = fGrammars[index]; entry != null; entry = entry.next) {
                     if (entry.hash == hash && equals(entry.desc, desc)) {
-                        entry.grammar = grammar;
+                        if (entry.grammar != grammar) {
+                            entry.grammar = grammar;
+                            fSymbolTable = null;
+                        }
                         return;
                     }
                 }
@@ -181,6 +212,7 @@ public class XMLGrammarPoolImpl implements XMLGrammarPool {
                 Entry entry = new Entry(hash, desc, grammar, fGrammars[index]);
                 fGrammars[index] = entry;
                 fGrammarCount++;
+                fSymbolTable = null;
             }
         }
     } // putGrammar(Grammar)
@@ -229,6 +261,7 @@ public class XMLGrammarPoolImpl implements XMLGrammarPool {
                 Grammar tempGrammar = entry.grammar;
                 entry.grammar = null;
                 fGrammarCount--;
+                fSymbolTable = null;
                 return tempGrammar;
             }
         }
@@ -284,8 +317,97 @@ public class XMLGrammarPoolImpl implements XMLGrammarPool {
             }
         }
         fGrammarCount = 0;
+        fSymbolTable = null;
     } // clear()
 
+    /**
+     * Returns a read-only symbol table holding the names declared by
+     * the grammars in the pool: element and attribute names, and for
+     * schema grammars also type names and namespaces. The table is 
+     * built when it is first requested after the grammars in the pool 
+     * have changed, and may be shared by any number of parsers on any 
+     * number of threads. A parser uses it by setting a 
+     * <code>ShadowedSymbolTable</code> chained onto it as the value of
+     * the symbol table property, so that the symbols declared by the
+     * grammars are found without locking and without allocation while 
+     * the other symbols are added to the table local to the parser.
+     *
+     * @return A symbol table which cannot be modified.
+     * 
+     * @see FrozenSymbolTable
+     */
+    public SymbolTable getSymbolTable() {
+        synchronized (fGrammars) {
+            if (fSymbolTable == null) {
+                ArrayList symbols = new ArrayList();
+                for (int i = 0; i < fGrammars.length; i++) {
+                    for (Entry entry = fGrammars[i]; entry != null; entry = entry.next) {
+                        addSymbols(entry.grammar, symbols);
+                    }
+                }
+                fSymbolTable = new FrozenSymbolTable(
+                        (String[]) symbols.toArray(new String[symbols.size()]));
+            }
+            return fSymbolTable;
+        }
+    } // getSymbolTable():SymbolTable
+
+    /**
+     * Adds the names declared by the given grammar to the list of symbols
+     * of the table returned by <code>getSymbolTable</code>. DTD grammars 
+     * and schema grammars are supported; an application may override this
+     * method to support other kinds of grammars.
+     *
+     * @param grammar The grammar.
+     * @param symbols The list of symbols, which may contain duplicates.
+     */
+    protected void addSymbols(Grammar grammar, ArrayList symbols) {
+        if (grammar instanceof DTDGrammar) {
+            DTDGrammar dtd = (DTDGrammar) grammar;
+            XMLElementDecl elementDecl = new XMLElementDecl();
+            XMLAttributeDecl attributeDecl = new XMLAttributeDecl();
+            for (int i = dtd.getFirstElementDeclIndex(); i != -1; i = dtd.getNextElementDeclIndex(i)) {
+                if (!dtd.getElementDecl(i, elementDecl)) {
+                    break;
+                }
+                addSymbols(elementDecl.name, symbols);
+                for (int j = dtd.getFirstAttributeDeclIndex(i); j != -1; j = dtd.getNextAttributeDeclIndex(j)) {
+                    if (dtd.getAttributeDecl(j, attributeDecl)) {
+                        addSymbols(attributeDecl.name, symbols);
+                    }
+                }
+            }
+        }
+        else if (grammar instanceof XSGrammar) {
+            XSModel model = ((XSGrammar) grammar).toXSModel();
+            StringList namespaces = model.getNamespaces();
+            for (int i = 0; i < namespaces.getLength(); i++) {
+                symbols.add(namespaces.item(i));
+            }
+            HashMap visited = new HashMap();
+            XSNamedMap components = model.getComponents(XSConstants.ELEMENT_DECLARATION);
+            for (int i = 0; i < components.getLength(); i++) {
+                addSymbols((XSElementDeclaration) components.item(i), symbols, visited);
+            }
+            components = model.getComponents(XSConstants.ATTRIBUTE_DECLARATION);
+            for (int i = 0; i < components.getLength(); i++) {
+                symbols.add(components.item(i).getName());
+            }
+            components = model.getComponents(XSConstants.TYPE_DEFINITION);
+            for (int i = 0; i < components.getLength(); i++) {
+                addSymbols((XSTypeDefinition) components.item(i), symbols, visited);
+            }
+            components = model.getComponents(XSConstants.ATTRIBUTE_GROUP);
+            for (int i = 0; i < components.getLength(); i++) {
+                addSymbols(((XSAttributeGroupDefinition) components.item(i)).getAttributeUses(), symbols);
+            }
+            components = model.getComponents(XSConstants.MODEL_GROUP_DEFINITION);
+            for (int i = 0; i < components.getLength(); i++) {
+                addSymbols(((XSModelGroupDefinition) components.item(i)).getModelGroup(), symbols, visited);
+            }
+        }
+    } // addSymbols(Grammar,ArrayList)
+
     /**
      * This method checks whether two grammars are the same. Currently, we compare
      * the root element names for DTD grammars and the target namespaces for Schema grammars.
@@ -309,6 +431,57 @@ public class XMLGrammarPoolImpl implements XMLGrammarPool {
         return desc.hashCode();
     }
 
+    //
+    // Private methods
+    //
+
+    private void addSymbols(QName name, ArrayList symbols) {
+        symbols.add(name.rawname);
+        symbols.add(name.localpart);
+        symbols.add(name.prefix);
+    } // addSymbols(QName,ArrayList)
+
+    private void addSymbols(XSElementDeclaration element, ArrayList symbols, HashMap visited) {
+        symbols.add(element.getName());
+        XSTypeDefinition type = element.getTypeDefinition();
+        if (type != null && type.getAnonymous()) {
+            addSymbols(type, symbols, visited);
+        }
+    } // addSymbols(XSElementDeclaration,ArrayList,HashMap)
+
+    private void addSymbols(XSTypeDefinition type, ArrayList symbols, HashMap visited) {
+        if (visited.put(type, type) != null) {
+            return;
+        }
+        symbols.add(type.getName());
+        if (type.getTypeCategory() == XSTypeDefinition.COMPLEX_TYPE) {
+            XSComplexTypeDefinition complexType = (XSComplexTypeDefinition) type;
+            addSymbols(complexType.getAttributeUses(), symbols);
+            XSParticle particle = complexType.getParticle();
+            if (particle != null) {
+                addSymbols(particle.getTerm(), symbols, visited);
+            }
+        }
+    } // addSymbols(XSTypeDefinition,ArrayList,HashMap)
+
+    private void addSymbols(XSObjectList attributeUses, ArrayList symbols) {
+        for (int i = 0; i < attributeUses.getLength(); i++) {
+            symbols.add(((XSAttributeUse) attributeUses.item(i)).getAttrDeclaration().getName());
+        }
+    } // addSymbols(XSObjectList,ArrayList)
+
+    private void addSymbols(XSTerm term, ArrayList symbols, HashMap visited) {
+        if (term instanceof XSElementDeclaration) {
+            addSymbols((XSElementDeclaration) term, symbols, visited);
+        }
+        else if (term instanceof XSModelGroup && visited.put(term, term) == null) {
+            XSObjectList particles = ((XSModelGroup) term).getParticles();
+            for (int i = 0; i < particles.getLength(); i++) {
+                addSymbols(((XSParticle) particles.item(i)).getTerm(), symbols, visited);
+            }
+        }
+    } // addSymbols(XSTerm,ArrayList,HashMap)
+
     /**
      * This class is a grammar pool entry. Each entry acts as a node
      * in a linked list.
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This program tests the chunked characters mode of the scanner. Each
+ * document is read with a boundary between two reads of the character
+ * stream at every position, so the characters are scanned with the end
+ * of the buffer inside a CDATA section delimiter, a surrogate pair, a
+ * carriage return and line feed, and an entity reference. The text
+ * reported in chunks must be the same as the text reported whole, and
+ * brackets which could begin the end of an unterminated CDATA section
+ * must not be reported before the fatal error.
+ *
+ * @version $Id$
+ */
+public class Chunked {
+
+    //
+    // Constants
+    //
+
+    /** Chunked characters feature id. */
+    private static final String CHUNKED_CHARACTERS = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.CHUNKED_CHARACTERS_FEATURE;
+
+    /** The well-formed documents. */
+    private static final String[] DOCUMENTS = {
+        "<doc><![CDATA[ab]c]]d]]]]><![CDATA[]]><![CDATA[]]]></doc>",
+        "<doc><![CDATA[\uD800\uDC00x\uDBFF\uDFFF]]>\uD800\uDC00</doc>",
+        "<doc><![CDATA[a\r\nb\r\rc\n\r]]>d\r\ne</doc>",
+        "<!DOCTYPE doc [<!ENTITY e 'x&#13;&#10;y&#13;z]]'>]>" +
+        "<doc>a&amp;b&e;c&#x10000;&lt;<![CDATA[&amp;&e;]]>&e;</doc>",
+    };
+
+    /** 
+     * The documents with a fatal error, each followed by the longest text
+     * which may be reported before the error.
+     */
+    private static final String[] ERRORS = {
+        "<doc><![CDATA[abc]", "<doc>[abc",
+        "<doc><![CDATA[abc]]", "<doc>[abc",
+        "<doc><![CDATA[abc", "<doc>[abc",
+        "<doc><![CDATA[a\r\nbc]]]", "<doc>[a\nbc",
+        "<doc><![CDATA[ab\uD800c]]></doc>", "<doc>[ab",
+    };
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        System.err.println("#");
+        System.err.println("# Testing chunked characters");
+        System.err.println("#");
+
+        String[] versions = { "1.0", "1.1" };
+        for (int v = 0; v < versions.length; v++) {
+            String decl = "<?xml version='"+versions[v]+"'?>";
+            try {
+                System.err.println("# Testing well-formed documents, XML "+versions[v]);
+                for (int i = 0; i < DOCUMENTS.length; i++) {
+                    check(versions[v], DOCUMENTS[i]);
+                }
+                System.err.println("PASS");
+            }
+            catch (Exception e) {
+                System.err.println("FAIL: "+e);
+            }
+            try {
+                System.err.println("# Testing unterminated sections, XML "+versions[v]);
+                for (int i = 0; i < ERRORS.length; i += 2) {
+                    checkError(versions[v], ERRORS[i], ERRORS[i + 1]);
+                }
+                // the brackets could have begun the delimiter
+                String document = decl + ERRORS[0];
+                int[] splits = { document.length() - 1, document.length() };
+                for (int i = 0; i < splits.length; i++) {
+                    String text = parse(document, splits[i], true);
+                    if (!text.endsWith("[abc!")) {
+                        throw new Exception(document+" split at "+splits[i]+
+                                ": reported "+text);
+                    }
+                }
+                System.err.println("PASS");
+            }
+            catch (Exception e) {
+                System.err.println("FAIL: "+e);
+            }
+        }
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** 
+     * Checks that a document gives the same events in chunks as whole,
+     * for each position of a boundary between two reads. The events are
+     * compared with those the XML 1.0 scanner reports without chunks, 
+     * which are the same for these documents.
+     */
+    private static void check(String version, String body) throws Exception {
+        String document = "<?xml version='"+version+"'?>" + body;
+        String reference = "<?xml version='1.0'?>" + body;
+        String expected = parse(reference, reference.length(), false);
+        if (expected.endsWith("!")) {
+            throw new Exception(document+": reported "+expected);
+        }
+        for (int split = 0; split < document.length(); split++) {
+            String actual = parse(document, split, true);
+            if (!expected.equals(actual)) {
+                throw new Exception(document+" split at "+split+": reported "+
+                        actual+" instead of "+expected);
+            }
+        }
+    } // check(String,String)
+
+    /** 
+     * Checks that the events reported in chunks before the fatal error 
+     * of a document are a part of the given text, for each position of
+     * a boundary between two reads.
+     */
+    private static void checkError(String version, String body, String text) 
+        throws Exception {
+        String document = "<?xml version='"+version+"'?>" + body;
+        for (int split = 0; split <= document.length(); split++) {
+            String actual = parse(document, split, true);
+            if (!actual.endsWith("!") || 
+                !text.startsWith(actual.substring(0, actual.length() - 1))) {
+                throw new Exception(document+" split at "+split+": reported "+actual);
+            }
+        }
+    } // checkError(String,String,String)
+
+    /** 
+     * Parses a document, returning the characters and the boundaries of
+     * the elements and CDATA sections reported, with a '!' at the end if
+     * there is a fatal error.
+     */
+    private static String parse(String document, int split, boolean chunked) 
+        throws Exception {
+        final StringBuffer events = new StringBuffer();
+        DefaultHandler handler = new Handler(events);
+        SAXParser parser = new SAXParser();
+        parser.setFeature(CHUNKED_CHARACTERS, chunked);
+        parser.setContentHandler(handler);
+        parser.setErrorHandler(handler);
+        parser.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
+        try {
+            parser.parse(new XMLInputSource(null, "doc.xml", null, 
+                    new SplitReader(document, split), null));
+        }
+        catch (Exception e) {
+            events.append('!');
+        }
+        return events.toString();
+    } // parse(String,int,boolean):String
+
+    //
+    // Classes
+    //
+
+    /** Records the events of a document. */
+    static class Handler
+        extends DefaultHandler
+        implements LexicalHandler {
+
+        private final StringBuffer fEvents;
+
+        public Handler(StringBuffer events) {
+            fEvents = events;
+        }
+
+        public void startElement(String uri, String localName, String qName, 
+                Attributes attributes) {
+            fEvents.append('<').append(qName).append('>');
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            fEvents.append("</").append(qName).append('>');
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            fEvents.append(ch, start, length);
+        }
+
+        public void startCDATA() {
+            fEvents.append("[");
+        }
+
+        public void endCDATA() {
+            fEvents.append("]");
+        }
+
+        public void fatalError(SAXParseException e) throws SAXException {
+            throw e;
+        }
+
+        public void startDTD(String name, String publicId, String systemId) {}
+        public void endDTD() {}
+        public void startEntity(String name) {}
+        public void endEntity(String name) {}
+        public void comment(char[] ch, int start, int length) {}
+
+    } // class Handler
+
+    /** 
+     * A reader returning the characters of a string up to a given position
+     * in its first read and the rest in its later reads. With no position,
+     * each read returns a single character.
+     */
+    static class SplitReader
+        extends Reader {
+
+        private final String fText;
+        private final int fSplit;
+        private int fPosition;
+
+        public SplitReader(String text, int split) {
+            fText = text;
+            fSplit = split;
+        }
+
+        public int read(char[] ch, int offset, int length) throws IOException {
+            if (fPosition == fText.length()) {
+                return -1;
+            }
+            int end = fText.length();
+            if (fSplit == 0) {
+                end = fPosition + 1;
+            }
+            else if (fPosition < fSplit) {
+                end = fSplit;
+            }
+            if (end > fPosition + length) {
+                end = fPosition + length;
+            }
+            fText.getChars(fPosition, end, ch, offset);
+            int count = end - fPosition;
+            fPosition = end;
+            return count;
+        }
+
+        public void close() {
+        }
+
+    } // class SplitReader
+
+} // class Chunked
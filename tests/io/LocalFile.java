@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.xerces.impl.XMLEntityManager;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This program tests the reading of local files by the entity manager.
+ * It checks that plain file URLs and paths, including escaped ones, are
+ * read through a <code>FileInputStream</code>, that URLs with a query or
+ * a fragment are still read through the URL connection, that a missing
+ * file is reported as before, and that a document and its external
+ * entity are parsed from a directory whose name needs escaping.
+ *
+ * @version $Id$
+ */
+public class LocalFile {
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        System.err.println("#");
+        System.err.println("# Testing local file entities");
+        System.err.println("#");
+
+        File dir = createTempDir();
+        try {
+            File file = new File(dir, "doc.xml");
+            write(file, "<!DOCTYPE doc [<!ENTITY ext SYSTEM 'ext.xml'>]><doc>&ext;</doc>");
+            write(new File(dir, "ext.xml"), "<ext>text</ext>");
+
+            // test a path and a file URL
+            try {
+                System.err.println("# Testing file path and URL");
+                check(file.getPath(), true, "<!DOCTYPE");
+                check(file.toURL().toString(), true, "<!DOCTYPE");
+                System.err.println("PASS");
+            }
+            catch (Exception e) {
+                System.err.println("FAIL: "+e);
+            }
+
+            // test URLs which are left to the URL connection
+            try {
+                System.err.println("# Testing query and fragment");
+                check(file.toURL()+"?query", false, "<!DOCTYPE");
+                check(file.toURL()+"#fragment", false, "<!DOCTYPE");
+                System.err.println("PASS");
+            }
+            catch (Exception e) {
+                System.err.println("FAIL: "+e);
+            }
+
+            // test a missing file
+            try {
+                System.err.println("# Testing missing file");
+                try {
+                    check(new File(dir, "missing.xml").getPath(), true, "");
+                    throw new IOException("expected FileNotFoundException");
+                }
+                catch (FileNotFoundException e) {
+                }
+                System.err.println("PASS");
+            }
+            catch (Exception e) {
+                System.err.println("FAIL: "+e);
+            }
+
+            // test parsing a document and its external entity
+            try {
+                System.err.println("# Testing parse");
+                final StringBuffer text = new StringBuffer();
+                SAXParser parser = new SAXParser();
+                parser.setContentHandler(new DefaultHandler() {
+                    public void startElement(String uri, String localName, String qName, 
+                            org.xml.sax.Attributes attributes) {
+                        text.append('<').append(qName).append('>');
+                    }
+                    public void characters(char[] ch, int start, int length) {
+                        text.append(ch, start, length);
+                    }
+                });
+                parser.parse(new InputSource(file.toURL().toString()));
+                if (!text.toString().equals("<doc><ext>text")) {
+                    throw new IOException("parsed "+text);
+                }
+                System.err.println("PASS");
+            }
+            catch (Exception e) {
+                System.err.println("FAIL: "+e);
+            }
+        }
+        finally {
+            delete(dir);
+        }
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** 
+     * Opens the given system identifier as the entity manager does,
+     * checking the kind of stream and its first bytes.
+     */
+    private static void check(String systemId, boolean fileStream, String start) 
+        throws IOException {
+        String expandedSystemId = XMLEntityManager.expandSystemId(systemId, null, false);
+        InputStream in = XMLEntityManager.openInputStream(
+                new XMLInputSource(null, systemId, null), expandedSystemId);
+        try {
+            if ((in instanceof FileInputStream) != fileStream) {
+                throw new IOException(systemId+" opened as "+in.getClass().getName());
+            }
+            for (int i = 0; i < start.length(); i++) {
+                if (in.read() != start.charAt(i)) {
+                    throw new IOException(systemId+": wrong byte at "+i);
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+    } // check(String,boolean,String)
+
+    /** Creates a temporary directory with a space in its name. */
+    private static File createTempDir() throws IOException {
+        File file = File.createTempFile("local file", "");
+        file.delete();
+        if (!file.mkdir()) {
+            throw new IOException("cannot create "+file);
+        }
+        return file;
+    } // createTempDir():File
+
+    /** Writes a file. */
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    } // write(File,String)
+
+    /** Deletes a directory and its files. */
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        dir.delete();
+    } // delete(File)
+
+} // class LocalFile
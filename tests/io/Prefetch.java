@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.xerces.impl.io.PrefetchInputStream;
+
+/**
+ * This program tests the stream which reads external entities ahead
+ * of the parser on a background thread. It checks that the bytes are
+ * read unchanged, that closing the stream early does not close the
+ * underlying stream while the prefetch thread is reading it, and that
+ * the exceptions thrown by the underlying stream reach the reader.
+ *
+ * @version $Id$
+ */
+public class Prefetch {
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        System.err.println("#");
+        System.err.println("# Testing prefetching input stream");
+        System.err.println("#");
+
+        // test reading the whole stream
+        try {
+            System.err.println("# Testing read to end of stream");
+            TestStream stream = new TestStream(100000, -1, null);
+            InputStream in = new PrefetchInputStream(stream, 1024, 4);
+            check(in, 100000);
+            if (in.read() != -1) {
+                throw new IOException("expected EOF");
+            }
+            in.close();
+            stream.waitForClose();
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+
+        // test closing the stream while the prefetch thread is reading
+        try {
+            System.err.println("# Testing early close");
+            TestStream stream = new TestStream(100000, 2000, null);
+            InputStream in = new PrefetchInputStream(stream, 1024, 2);
+            check(in, 1000);
+            stream.waitForBlockedRead();
+            in.close();
+            Thread.sleep(100);
+            if (stream.fClosed) {
+                throw new IOException("closed during a read");
+            }
+            stream.unblock();
+            stream.waitForClose();
+            if (stream.fClosedDuringRead) {
+                throw new IOException("closed during a read");
+            }
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+
+        // test an I/O error from the underlying stream
+        try {
+            System.err.println("# Testing I/O error");
+            TestStream stream = new TestStream(100000, -1, new IOException("broken"));
+            InputStream in = new PrefetchInputStream(stream, 1024, 4);
+            check(in, 100000);
+            try {
+                in.read();
+                throw new IOException("expected IOException");
+            }
+            catch (IOException e) {
+                if (!"broken".equals(e.getMessage())) {
+                    throw e;
+                }
+            }
+            stream.waitForClose();
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+
+        // test a runtime exception from the underlying stream
+        try {
+            System.err.println("# Testing runtime exception");
+            TestStream stream = new TestStream(100000, -1, new IllegalStateException("broken"));
+            InputStream in = new PrefetchInputStream(stream, 1024, 4);
+            check(in, 100000);
+            try {
+                in.read();
+                throw new IOException("expected IllegalStateException");
+            }
+            catch (IllegalStateException e) {
+                if (!"broken".equals(e.getMessage())) {
+                    throw e;
+                }
+            }
+            stream.waitForClose();
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Reads the given number of bytes, checking their values. */
+    private static void check(InputStream in, int count) throws IOException {
+        byte[] b = new byte[777];
+        int position = 0;
+        while (position < count) {
+            int length = in.read(b, 0, Math.min(b.length, count - position));
+            if (length == -1) {
+                throw new IOException("unexpected EOF at "+position);
+            }
+            for (int i = 0; i < length; i++) {
+                if (b[i] != (byte)(position + i)) {
+                    throw new IOException("wrong byte at "+(position + i));
+                }
+            }
+            position += length;
+        }
+    } // check(InputStream,int)
+
+    //
+    // Classes
+    //
+
+    /**
+     * A stream of the given number of bytes, which may block at a
+     * position until unblocked and may end with an exception. It
+     * records whether it was closed while a read was in progress.
+     */
+    static class TestStream
+        extends InputStream {
+
+        private final int fLength;
+        private final int fBlockAt;
+        private final Exception fException;
+        private int fPosition;
+        private boolean fReading;
+        private boolean fBlocked;
+        private boolean fUnblocked;
+        volatile boolean fClosed;
+        volatile boolean fClosedDuringRead;
+
+        public TestStream(int length, int blockAt, Exception exception) {
+            fLength = length;
+            fBlockAt = blockAt;
+            fException = exception;
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            synchronized (this) {
+                fReading = true;
+            }
+            try {
+                if (fPosition == fBlockAt) {
+                    synchronized (this) {
+                        fBlocked = true;
+                        notifyAll();
+                        while (!fUnblocked) {
+                            wait();
+                        }
+                    }
+                }
+                if (fPosition == fLength) {
+                    if (fException instanceof IOException) {
+                        throw (IOException) fException;
+                    }
+                    if (fException != null) {
+                        throw (RuntimeException) fException;
+                    }
+                    return -1;
+                }
+                len = Math.min(len, fLength - fPosition);
+                if (fBlockAt > fPosition) {
+                    len = Math.min(len, fBlockAt - fPosition);
+                }
+                for (int i = 0; i < len; i++) {
+                    b[off + i] = (byte)(fPosition++);
+                }
+                return len;
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e.toString());
+            }
+            finally {
+                synchronized (this) {
+                    fReading = false;
+                }
+            }
+        }
+
+        public synchronized void close() {
+            fClosedDuringRead |= fReading;
+            fClosed = true;
+            notifyAll();
+        }
+
+        public synchronized void waitForBlockedRead() throws Exception {
+            long end = System.currentTimeMillis() + 5000;
+            while (!fBlocked) {
+                long left = end - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new IOException("read not blocked");
+                }
+                wait(left);
+            }
+        }
+
+        public synchronized void unblock() {
+            fUnblocked = true;
+            notifyAll();
+        }
+
+        public synchronized void waitForClose() throws Exception {
+            long end = System.currentTimeMillis() + 5000;
+            while (!fClosed) {
+                long left = end - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new IOException("underlying stream not closed");
+                }
+                wait(left);
+            }
+        }
+
+    } // class TestStream
+
+} // class Prefetch
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.XMLEntityManager;
+import org.apache.xerces.impl.XMLErrorReporter;
+import org.apache.xerces.impl.io.Latin1Reader;
+import org.apache.xerces.impl.io.ReaderFactory;
+import org.apache.xerces.impl.io.ReaderFactoryMap;
+import org.apache.xerces.impl.io.SingleByteReader;
+import org.apache.xerces.impl.io.UTF8Reader;
+import org.apache.xerces.util.EncodingMap;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+/**
+ * This program tests the table driven readers for single byte encodings.
+ * It decodes all 256 byte values in each supported encoding and compares
+ * the characters with those of the Java decoder, then checks the reader
+ * chosen by the entity manager for aliases of the encoding names, names
+ * in other cases, Java encoding names, encodings without a table, unknown
+ * encodings and encodings with a registered reader factory.
+ *
+ * @version $Id$
+ */
+public class SingleByte {
+
+    //
+    // Constants
+    //
+
+    /** The IANA names of the encodings read with a table. */
+    private static final String[] ENCODINGS = {
+        "windows-1250", "windows-1251", "windows-1252", "windows-1253",
+        "windows-1254", "windows-1255", "windows-1256", "windows-1257",
+        "windows-1258", "ISO-8859-2", "ISO-8859-3", "ISO-8859-4",
+        "ISO-8859-5", "ISO-8859-6", "ISO-8859-7", "ISO-8859-8",
+        "ISO-8859-9", "ISO-8859-13", "ISO-8859-15", "KOI8-R",
+    };
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        System.err.println("#");
+        System.err.println("# Testing single byte readers");
+        System.err.println("#");
+
+        final byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        // test decoding each byte
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            try {
+                System.err.println("# Testing "+ENCODINGS[i]);
+                String expected = new String(bytes, ENCODINGS[i]);
+                String javaEncoding = EncodingMap.getIANA2JavaMapping(ENCODINGS[i].toUpperCase());
+                char[] table = SingleByteReader.getDecodingTable(javaEncoding);
+                if (table == null) {
+                    throw new IOException("no table for "+javaEncoding);
+                }
+                if (SingleByteReader.getDecodingTable(javaEncoding) != table) {
+                    throw new IOException("table built twice");
+                }
+                // a whole array, an array in small pieces, and each character
+                compare(expected, readAll(new SingleByteReader(
+                        new ByteArrayInputStream(bytes), table), 1024));
+                compare(expected, readAll(new SingleByteReader(
+                        new ByteArrayInputStream(bytes), new byte[7], table), 5));
+                Reader reader = new SingleByteReader(new ByteArrayInputStream(bytes), table);
+                StringBuffer buffer = new StringBuffer();
+                for (int c = reader.read(); c != -1; c = reader.read()) {
+                    buffer.append((char) c);
+                }
+                compare(expected, buffer.toString());
+                System.err.println("PASS");
+            }
+            catch (Exception e) {
+                System.err.println("FAIL: "+e);
+            }
+        }
+
+        // test the tables for encodings read without one
+        try {
+            System.err.println("# Testing encodings without a table");
+            String[] others = { "UTF8", "ISO8859_1", "Cp037", "cp1252", "X-UNKNOWN" };
+            for (int i = 0; i < others.length; i++) {
+                if (SingleByteReader.getDecodingTable(others[i]) != null) {
+                    throw new IOException("table for "+others[i]);
+                }
+            }
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+
+        // test the readers chosen by the entity manager
+        TestEntityManager manager = new TestEntityManager();
+        try {
+            System.err.println("# Testing encoding names");
+            manager.check("WINDOWS-1252", SingleByteReader.class);
+            manager.check("Windows-1252", SingleByteReader.class);
+            manager.check("latin2", SingleByteReader.class);
+            manager.check("ISO_8859-2", SingleByteReader.class);
+            manager.check("csKOI8R", SingleByteReader.class);
+            manager.check("ISO-8859-1", Latin1Reader.class);
+            manager.check("IBM037", InputStreamReader.class);
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+        try {
+            System.err.println("# Testing Java encoding names");
+            manager.check("Cp1252", Latin1Reader.class);
+            if (!"EncodingDeclInvalid".equals(manager.fLastError)) {
+                throw new IOException("no error for Cp1252");
+            }
+            manager.setFeature(Constants.XERCES_FEATURE_PREFIX + 
+                    Constants.ALLOW_JAVA_ENCODINGS_FEATURE, true);
+            try {
+                manager.check("Cp1252", SingleByteReader.class);
+                manager.check("KOI8_R", SingleByteReader.class);
+                manager.check("Cp037", InputStreamReader.class);
+                if (manager.fLastError != null) {
+                    throw new IOException("error for "+manager.fLastError);
+                }
+            }
+            finally {
+                manager.setFeature(Constants.XERCES_FEATURE_PREFIX + 
+                        Constants.ALLOW_JAVA_ENCODINGS_FEATURE, false);
+            }
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+        try {
+            System.err.println("# Testing unknown encoding");
+            manager.check("X-UNKNOWN", Latin1Reader.class);
+            if (!"EncodingDeclInvalid".equals(manager.fLastError)) {
+                throw new IOException("no error for X-UNKNOWN");
+            }
+            manager.check("Cp1252 ", Latin1Reader.class);
+            if (!"EncodingDeclInvalid".equals(manager.fLastError)) {
+                throw new IOException("no error for an invalid name");
+            }
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+        try {
+            System.err.println("# Testing reader factories");
+            ReaderFactory factory = new ReaderFactory() {
+                public Reader createReader(InputStream inputStream, String encoding) {
+                    return new StringReader(encoding);
+                }
+            };
+            ReaderFactoryMap.putReaderFactory("x-Test", factory);
+            ReaderFactoryMap.putReaderFactory("windows-1252", factory);
+            ReaderFactoryMap.putReaderFactory("UTF-8", factory);
+            try {
+                manager.check("X-TEST", StringReader.class);
+                manager.check("x-test", StringReader.class);
+                manager.check("Windows-1252", StringReader.class);
+                // never consulted for the encodings the parser decodes itself
+                manager.check("UTF-8", UTF8Reader.class);
+            }
+            finally {
+                ReaderFactoryMap.removeReaderFactory("X-TEST");
+                ReaderFactoryMap.removeReaderFactory("WINDOWS-1252");
+                ReaderFactoryMap.removeReaderFactory("utf-8");
+            }
+            if (ReaderFactoryMap.getReaderFactory("WINDOWS-1252") != null) {
+                throw new IOException("factory not removed");
+            }
+            manager.check("Windows-1252", SingleByteReader.class);
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Reads all the characters of a reader, with reads of the given length. */
+    private static String readAll(Reader reader, int length) throws IOException {
+        StringBuffer buffer = new StringBuffer();
+        char[] ch = new char[length];
+        int count;
+        while ((count = reader.read(ch, 0, length)) != -1) {
+            buffer.append(ch, 0, count);
+        }
+        return buffer.toString();
+    } // readAll(Reader,int):String
+
+    /** Compares the characters decoded with the expected ones. */
+    private static void compare(String expected, String actual) throws IOException {
+        if (expected.length() != actual.length()) {
+            throw new IOException("decoded "+actual.length()+" characters");
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (expected.charAt(i) != actual.charAt(i)) {
+                throw new IOException("byte 0x"+Integer.toHexString(i)+" decoded as U+"+
+                        Integer.toHexString(actual.charAt(i))+" instead of U+"+
+                        Integer.toHexString(expected.charAt(i)));
+            }
+        }
+    } // compare(String,String)
+
+    //
+    // Classes
+    //
+
+    /** 
+     * An entity manager which creates readers for the tests, recording
+     * the errors reported.
+     */
+    static class TestEntityManager
+        extends XMLEntityManager {
+
+        String fLastError;
+
+        public TestEntityManager() {
+            XMLErrorReporter errorReporter = new XMLErrorReporter();
+            errorReporter.setFeature(Constants.XERCES_FEATURE_PREFIX + 
+                    Constants.CONTINUE_AFTER_FATAL_ERROR_FEATURE, true);
+            errorReporter.setProperty(Constants.XERCES_PROPERTY_PREFIX + 
+                    Constants.ERROR_HANDLER_PROPERTY, new XMLErrorHandler() {
+                public void warning(String domain, String key, XMLParseException e) {
+                }
+                public void error(String domain, String key, XMLParseException e) {
+                    fLastError = key;
+                }
+                public void fatalError(String domain, String key, XMLParseException e) {
+                    fLastError = key;
+                }
+            });
+            setProperty(Constants.XERCES_PROPERTY_PREFIX + 
+                    Constants.ERROR_REPORTER_PROPERTY, errorReporter);
+        }
+
+        /** Checks the class of the reader created for an encoding. */
+        void check(String encoding, Class readerClass) throws IOException, XNIException {
+            fLastError = null;
+            Reader reader = createReader(new ByteArrayInputStream(new byte[0]), encoding, null);
+            if (reader.getClass() != readerClass) {
+                throw new IOException(encoding+": "+reader.getClass().getName());
+            }
+        } // check(String,Class)
+
+    } // class TestEntityManager
+
+} // class SingleByte
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.xerces.impl.io.ByteArrayStream;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.ByteArrayInputSource;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.ext.Locator2;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This program tests the detection of the encoding of entities read
+ * in place from streams which support mark and reset. It checks the
+ * mark and reset of <code>ByteArrayStream</code>, and that documents
+ * in several encodings, with and without a byte order mark or an
+ * encoding declaration, give the same text and encoding whether they
+ * are read from a byte array, from a stream supporting mark and reset,
+ * or from a stream which the entity manager must wrap.
+ *
+ * @version $Id$
+ */
+public class Sniff {
+
+    //
+    // Constants
+    //
+
+    /** Text of the documents, with characters outside of US-ASCII. */
+    private static final String TEXT = "caf\u00e9 \u00c0 \u00ff";
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        System.err.println("#");
+        System.err.println("# Testing encoding detection in place");
+        System.err.println("#");
+
+        // test mark and reset of a byte array stream
+        try {
+            System.err.println("# Testing ByteArrayStream mark and reset");
+            byte[] bytes = "0123456789abcdef".getBytes("US-ASCII");
+            ByteArrayStream stream = new ByteArrayStream(bytes, 3, 10);
+            // reset without a mark goes back to the start of the range
+            expect(stream.read(), '3');
+            stream.reset();
+            expect(stream.read(), '3');
+            expect(stream.read(), '4');
+            stream.mark(4);
+            byte[] b = new byte[4];
+            if (stream.read(b, 0, 4) != 4 || b[0] != '5' || b[3] != '8') {
+                throw new IOException("wrong bytes read");
+            }
+            stream.reset();
+            expect(stream.available(), 8);
+            expect(stream.read(), '5');
+            expect((int) stream.skip(100), 7);
+            expect(stream.read(), -1);
+            expect(stream.read(b, 0, 4), -1);
+            expect(stream.read(b, 0, 0), 0);
+            stream.reset();
+            expect(stream.read(), '5');
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+
+        // test the encodings
+        check("UTF-8", "UTF-8", null, false);
+        check("UTF-8 with BOM", "UTF-8", null, true);
+        check("UTF-8 declared", "UTF-8", "UTF-8", false);
+        check("UTF-16BE with BOM", "UTF-16BE", null, true);
+        check("UTF-16LE with BOM", "UTF-16LE", null, true);
+        check("UTF-16BE declared", "UTF-16BE", "UTF-16", false);
+        check("UTF-16LE declared", "UTF-16LE", "UTF-16", false);
+        check("ISO-8859-1", "ISO-8859-1", "ISO-8859-1", false);
+        check("windows-1252", "windows-1252", "windows-1252", false);
+        check("EBCDIC", "Cp037", "IBM037", false);
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Checks a document in the given encoding, read in the three ways. */
+    private static void check(String name, String charset, String declared, boolean bom) {
+        try {
+            System.err.println("# Testing "+name);
+            StringBuffer content = new StringBuffer();
+            if (declared != null) {
+                content.append("<?xml version='1.0' encoding='"+declared+"'?>");
+            }
+            content.append("<doc>");
+            // long enough to need several reads of the buffers
+            for (int i = 0; i < 500; i++) {
+                content.append("<p>"+i+' '+TEXT+"</p>");
+            }
+            content.append("</doc>");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (bom) {
+                out.write(new String("\uFEFF").getBytes(charset));
+            }
+            out.write(content.toString().getBytes(charset));
+            byte[] bytes = out.toByteArray();
+            
+            // place the document in the middle of a larger array
+            byte[] array = new byte[bytes.length + 20];
+            System.arraycopy(bytes, 0, array, 7, bytes.length);
+            String fromArray = parse(new ByteArrayInputSource(null, "array.xml", null,
+                    array, 7, bytes.length, null));
+            String fromMarkable = parse(new XMLInputSource(null, "markable.xml", null, 
+                    new ByteArrayInputStream(bytes), null));
+            String fromStream = parse(new XMLInputSource(null, "stream.xml", null, 
+                    new FilterInputStream(new ByteArrayInputStream(bytes)) {
+                        public boolean markSupported() {
+                            return false;
+                        }
+                    }, null));
+            if (!fromStream.startsWith("0 "+TEXT+"1 "+TEXT)) {
+                throw new IOException("wrong text: "+fromStream.substring(0, 40));
+            }
+            if (!fromArray.equals(fromStream)) {
+                throw new IOException("byte array: "+fromArray.substring(0, 40));
+            }
+            if (!fromMarkable.equals(fromStream)) {
+                throw new IOException("markable stream: "+fromMarkable.substring(0, 40));
+            }
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e);
+        }
+    } // check(String,String,String,boolean)
+
+    /** Parses a document, returning its encoding and text. */
+    private static String parse(XMLInputSource source) throws Exception {
+        final StringBuffer text = new StringBuffer();
+        final Locator[] locator = new Locator[1];
+        SAXParser parser = new SAXParser();
+        parser.setContentHandler(new DefaultHandler() {
+            public void setDocumentLocator(Locator l) {
+                locator[0] = l;
+            }
+            public void startElement(String uri, String localName, String qName, 
+                    Attributes attributes) {
+                if (qName.equals("doc")) {
+                    text.append("["+((Locator2) locator[0]).getEncoding()+"]");
+                }
+            }
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+        });
+        parser.parse(source);
+        String result = text.toString();
+        // the encoding goes to the end, so that the text can be compared first
+        int end = result.indexOf(']');
+        return result.substring(end + 1) + result.substring(0, end + 1);
+    } // parse(XMLInputSource):String
+
+    /** Checks a value. */
+    private static void expect(int value, int expected) throws IOException {
+        if (value != expected) {
+            throw new IOException("expected "+expected+" but was "+value);
+        }
+    } // expect(int,int)
+
+} // class Sniff
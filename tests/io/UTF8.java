@@ -17,6 +17,7 @@
 
 package io;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -111,6 +112,44 @@ public class UTF8 {
             System.err.println("FAIL: "+e.getMessage());
         }
         
+        // test character array of size 1, which splits every
+        // surrogate pair across two reads
+        try {
+            InputStream stream = new UTF8Producer();
+            Reader reader = new UTF8Reader(stream);
+            long time = testCharArray(reader, 1);
+            System.err.println("PASS ("+time+" ms)");
+            reader.close();
+        } 
+        catch (IOException e) {
+            System.err.println("FAIL: "+e.getMessage());
+        }
+        
+        // test a surrogate pair split at the end of the stream
+        try {
+            System.err.println("# Testing surrogate pair at end of stream");
+            byte[] bytes = { (byte)0xF0, (byte)0x90, (byte)0x80, (byte)0x80 };
+            InputStream stream = new ByteArrayInputStream(bytes);
+            Reader reader = new UTF8Reader(stream);
+            char[] ch = new char[1];
+            int c = load(reader, ch) == 1 ? ch[0] : -1;
+            if (c != 0xD800) {
+                expectedChar("high surrogate", 0xD800, c);
+            }
+            c = load(reader, ch) == 1 ? ch[0] : -1;
+            if (c != 0xDC00) {
+                expectedChar("low surrogate", 0xDC00, c);
+            }
+            if (load(reader, ch) != -1) {
+                extraChar(ch[0]);
+            }
+            System.err.println("PASS");
+            reader.close();
+        } 
+        catch (IOException e) {
+            System.err.println("FAIL: "+e.getMessage());
+        }
+        
     } // main(String[])
 
     //
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.apache.xerces.impl.io.UTF8Reader;
+
+/**
+ * This program measures the throughput of the customized UTF-8 reader
+ * for the parser on documents with different mixes of characters,
+ * comparing it with the Java UTF-8 reader. The corpora are markup
+ * with mostly US-ASCII content, markup with a mix of Latin, Greek
+ * and CJK content, and markup with mostly CJK content.
+ * <p>
+ * Usage: java io.UTF8Perf [iterations]
+ *
+ * @version $Id$
+ */
+public class UTF8Perf {
+
+    //
+    // Constants
+    //
+
+    /** Approximate size of each corpus, in characters. */
+    public static final int CORPUS_SIZE = 1 << 20;
+
+    /** Block read size. */
+    public static final int BLOCK_READ_SIZE = 2048;
+
+    /** Default number of timed iterations. */
+    public static final int DEFAULT_ITERATIONS = 20;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        int iterations = DEFAULT_ITERATIONS;
+        if (argv.length > 0) {
+            iterations = Integer.parseInt(argv[0]);
+        }
+
+        String[] names = { "ascii", "mixed", "cjk" };
+        String[] texts = {
+            "The quick brown fox jumps over the lazy dog. ",
+            "caf\u00e9 na\u00efve \u03b1\u03b2\u03b3 \u65e5\u672c abc ",
+            "\u65e5\u672c\u8a9e\u306e\u6587\u66f8\u3067\u3059\u3002",
+        };
+
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = createCorpus(texts[i]);
+            // warm up both decoders before timing them
+            for (int j = 0; j < 5; j++) {
+                decode(bytes, true);
+                decode(bytes, false);
+            }
+            long xerces = 0;
+            long java = 0;
+            for (int j = 0; j < iterations; j++) {
+                xerces += decode(bytes, true);
+                java += decode(bytes, false);
+            }
+            System.out.println(names[i]+": "+bytes.length+" bytes, "+
+                               "xerces "+(xerces/iterations)+" ms, "+
+                               "java "+(java/iterations)+" ms");
+        }
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Creates a UTF-8 encoded document repeating the given text. */
+    private static byte[] createCorpus(String text) throws IOException {
+        StringBuffer str = new StringBuffer(CORPUS_SIZE + 128);
+        str.append("<?xml version='1.0' encoding='UTF-8'?>\n<root>\n");
+        while (str.length() < CORPUS_SIZE) {
+            str.append("  <item id='");
+            str.append(str.length());
+            str.append("'>");
+            str.append(text);
+            str.append(text);
+            str.append("</item>\n");
+        }
+        str.append("</root>\n");
+        return str.toString().getBytes("UTF8");
+    } // createCorpus(String):byte[]
+
+    /** Decodes the bytes, returning the time taken in milliseconds. */
+    private static long decode(byte[] bytes, boolean xerces)
+        throws IOException {
+        InputStream stream = new ByteArrayInputStream(bytes);
+        Reader reader = xerces ? (Reader)new UTF8Reader(stream)
+                               : new InputStreamReader(stream, "UTF8");
+        char[] ch = new char[BLOCK_READ_SIZE];
+        long before = System.currentTimeMillis();
+        while (reader.read(ch, 0, ch.length) != -1) {
+            // just decode
+        }
+        long after = System.currentTimeMillis();
+        reader.close();
+        return after - before;
+    } // decode(byte[],boolean):long
+
+} // class UTF8Perf
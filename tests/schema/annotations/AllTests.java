@@ -33,6 +33,14 @@ public class AllTests {
     }
     public static Test suite() {
         TestSuite suite = new TestSuite("Test for Schema Annotations");
+        suite.addTest(componentTests());
+        suite.addTest(DeferredAnnotationsTest.suite());
+        return suite;
+    }
+    
+    /** Returns the tests of the annotations of each kind of component. */
+    static TestSuite componentTests() {
+        TestSuite suite = new TestSuite("Test for Schema Component Annotations");
         //$JUnit-BEGIN$
         suite.addTestSuite(XSAttributeGroupAnnotationsTest.class);
         suite.addTestSuite(XSNotationAnnotationsTest.class);
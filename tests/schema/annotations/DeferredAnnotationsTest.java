@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.annotations;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+
+/**
+ * Runs the annotation tests with the defer-annotations feature on, so
+ * that the text of each annotation is read again from its schema
+ * document when it is asked for.
+ * 
+ * @version $Id$
+ */
+public class DeferredAnnotationsTest {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(DeferredAnnotationsTest.suite());
+    }
+    
+    public static Test suite() {
+        return new TestSetup(AllTests.componentTests()) {
+            protected void setUp() {
+                TestCase.setDeferAnnotations(true);
+            }
+            protected void tearDown() {
+                TestCase.setDeferAnnotations(false);
+            }
+        };
+    }
+
+}
@@ -20,12 +20,21 @@ package schema.annotations;
 import java.io.File;
 import java.net.URL;
 
+import org.w3c.dom.DOMConfiguration;
+
 /**
  * @author Neil Delima, IBM
  * @version $Id$
  */
 public class TestCase extends junit.framework.TestCase {
 
+    /** Feature identifier: defer annotations. */
+    private static final String DEFER_ANNOTATIONS = 
+        "http://apache.org/xml/features/defer-annotations";
+
+    /** Whether the schema loaders of the tests defer annotations. */
+    private static boolean fDeferAnnotations = false;
+
     public TestCase() {
     }
 
@@ -33,6 +42,20 @@ public class TestCase extends junit.framework.TestCase {
         super(test);
     }
 
+    /**
+     * Sets whether the schema loaders of the tests defer annotations.
+     */
+    static void setDeferAnnotations(boolean deferAnnotations) {
+        fDeferAnnotations = deferAnnotations;
+    }
+
+    /**
+     * Configures the schema loader of a test.
+     */
+    protected void configure(DOMConfiguration config) {
+        config.setParameter(DEFER_ANNOTATIONS, fDeferAnnotations ? Boolean.TRUE : Boolean.FALSE);
+    }
+
     /**
      * 
      */
@@ -65,6 +65,8 @@ public class XSAttributeAnnotationsTest extends TestCase {
 
             fConfig = fSchemaLoader.getConfig();
 
+            configure(fConfig);
+
             // set validation feature
             fConfig.setParameter("validate", Boolean.TRUE);
 
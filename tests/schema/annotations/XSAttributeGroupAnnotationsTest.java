@@ -64,6 +64,8 @@ public class XSAttributeGroupAnnotationsTest extends TestCase {
 
             fConfig = fSchemaLoader.getConfig();
 
+            configure(fConfig);
+
             // set validation feature
             fConfig.setParameter("validate", Boolean.TRUE);
 
@@ -69,6 +69,8 @@ public class XSFacetAnnotationsTest extends TestCase {
 
             fConfig = fSchemaLoader.getConfig();
 
+            configure(fConfig);
+
             // set validation feature
             fConfig.setParameter("validate", Boolean.TRUE);
 
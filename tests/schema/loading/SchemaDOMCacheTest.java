@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.loading;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.opti.SchemaDOMCache;
+import org.apache.xerces.util.SecurityManager;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSModelGroup;
+import org.apache.xerces.xs.XSParticle;
+import org.w3c.dom.Document;
+
+/**
+ * Tests that schemas loaded through a shared <code>SchemaDOMCache</code>
+ * are the same each time, including schemas whose documents are
+ * included and redefined, that the cache is consulted when documents
+ * are also parsed on other threads, and that documents are only taken
+ * from it by loaders with the same parser settings.
+ * 
+ * @version $Id$
+ */
+public class SchemaDOMCacheTest extends TestCase {
+    
+    private static final String SCHEMA_DOM_CACHE = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_DOM_CACHE_PROPERTY;
+    private static final String PARSE_THREADS = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_PARSE_THREADS_PROPERTY;
+    private static final String ALLOW_JAVA_ENCODINGS = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.ALLOW_JAVA_ENCODINGS_FEATURE;
+    private static final String DISALLOW_DOCTYPE = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.DISALLOW_DOCTYPE_DECL_FEATURE;
+    private static final String SECURITY_MANAGER = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SECURITY_MANAGER_PROPERTY;
+    
+    private static final String XS = "http://www.w3.org/2001/XMLSchema";
+    
+    private File fDirectory;
+    private CountingCache fCache;
+    
+    public SchemaDOMCacheTest(String name) {
+        super(name);
+    }
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        fDirectory = File.createTempFile("cache", "");
+        fDirectory.delete();
+        fDirectory.mkdir();
+        fCache = new CountingCache();
+        write("root.xsd", 
+                "<xs:include schemaLocation='included.xsd'/>" +
+                "<xs:redefine schemaLocation='redefined.xsd'>" +
+                "<xs:complexType name='base'><xs:complexContent><xs:extension base='r:base'>" +
+                "<xs:sequence><xs:element name='added'/></xs:sequence>" +
+                "</xs:extension></xs:complexContent></xs:complexType>" +
+                "</xs:redefine>" +
+                "<xs:element name='root' type='r:base'/>");
+        write("included.xsd", 
+                "<xs:element name='included' type='r:base'/>");
+        write("redefined.xsd", 
+                "<xs:complexType name='base'><xs:sequence>" +
+                "<xs:element name='first'/>" +
+                "</xs:sequence></xs:complexType>");
+    }
+    
+    protected void tearDown() throws Exception {
+        File[] files = fDirectory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        fDirectory.delete();
+        super.tearDown();
+    }
+    
+    /** The included and redefined documents are taken from the cache. */
+    public void testLoadTwice() throws Exception {
+        checkModel(load(0));
+        assertEquals(2, fCache.getSize());
+        assertEquals(0, fCache.fHits);
+        checkModel(load(0));
+        assertEquals(2, fCache.fHits);
+    }
+    
+    /** The cache is used for the documents not taken from other threads. */
+    public void testLoadTwiceWithThreads() throws Exception {
+        checkModel(load(2));
+        checkModel(load(2));
+        checkModel(load(0));
+        assertEquals(2, fCache.getSize());
+    }
+    
+    /** 
+     * A document parsed with other settings is not taken from the cache, 
+     * as they may change the errors reported.
+     */
+    public void testSettingsInKey() throws Exception {
+        checkModel(load(0));
+        checkModel(load(0));
+        assertEquals(2, fCache.fHits);
+        
+        XMLSchemaLoader loader = newLoader(0);
+        loader.setProperty(SECURITY_MANAGER, new SecurityManager());
+        checkSettingsInKey(loader);
+        loader.setProperty(SECURITY_MANAGER, null);
+        loader.setFeature(DISALLOW_DOCTYPE, true);
+        checkSettingsInKey(loader);
+        loader.setFeature(DISALLOW_DOCTYPE, false);
+        loader.setFeature(ALLOW_JAVA_ENCODINGS, true);
+        checkSettingsInKey(loader);
+        
+        // a security manager with other limits
+        SecurityManager securityManager = new SecurityManager();
+        securityManager.setEntityExpansionLimit(10);
+        loader = newLoader(0);
+        loader.setProperty(SECURITY_MANAGER, securityManager);
+        checkSettingsInKey(loader);
+    }
+    
+    /** 
+     * A document with a Java encoding name cached by a loader allowing
+     * such names is not taken from the cache by a loader which does not.
+     */
+    public void testJavaEncoding() throws Exception {
+        OutputStream out = new FileOutputStream(new File(fDirectory, "java.xsd"));
+        try {
+            out.write(("<?xml version='1.0' encoding='Cp1252'?><xs:schema xmlns:xs='" + XS + 
+                    "'><xs:element name='caf\u00e9'/></xs:schema>").getBytes("Cp1252"));
+        }
+        finally {
+            out.close();
+        }
+        // the document loaded first is not cached, so include it
+        out = new FileOutputStream(new File(fDirectory, "include.xsd"));
+        try {
+            out.write(("<xs:schema xmlns:xs='" + XS + "'><xs:include schemaLocation='java.xsd'/>" +
+                    "</xs:schema>").getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        XMLSchemaLoader loader = newLoader(0);
+        loader.setFeature(ALLOW_JAVA_ENCODINGS, true);
+        XMLInputSource source = new XMLInputSource(null, 
+                new File(fDirectory, "include.xsd").toURI().toString(), null);
+        SchemaGrammar grammar = (SchemaGrammar) loader.loadGrammar(source);
+        assertNotNull(grammar.getGlobalElementDecl("caf\u00e9"));
+        assertEquals(1, fCache.getSize());
+        
+        loader = newLoader(0);
+        final Vector errors = new Vector();
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) throws XNIException {
+            }
+            public void error(String domain, String key, XMLParseException e) throws XNIException {
+            }
+            public void fatalError(String domain, String key, XMLParseException e) throws XNIException {
+                errors.addElement(key);
+            }
+        });
+        try {
+            loader.loadGrammar(source);
+            fail("expected a fatal error");
+        }
+        catch (XNIException e) {
+        }
+        assertEquals(0, fCache.fHits);
+        assertEquals("EncodingDeclInvalid", errors.elementAt(0));
+    }
+    
+    /** 
+     * Checks that the loader, with settings other than the default, does
+     * not take the documents cached with the default settings, and takes
+     * those it caches itself.
+     */
+    private void checkSettingsInKey(XMLSchemaLoader loader) throws Exception {
+        int hits = fCache.fHits;
+        checkModel(load(loader));
+        assertEquals(hits, fCache.fHits);
+        checkModel(load(loader));
+        assertEquals(hits + 2, fCache.fHits);
+    }
+    
+    /** Loads the schema with a new loader sharing the cache. */
+    private XSModel load(int threads) throws Exception {
+        return load(newLoader(threads));
+    }
+    
+    /** Returns a new loader sharing the cache. */
+    private XMLSchemaLoader newLoader(int threads) {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(SCHEMA_DOM_CACHE, fCache);
+        loader.setProperty(PARSE_THREADS, new Integer(threads));
+        return loader;
+    }
+    
+    /** Loads the schema with the given loader. */
+    private XSModel load(XMLSchemaLoader loader) throws Exception {
+        final int[] errors = new int[1];
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) throws XNIException {
+                errors[0]++;
+            }
+            public void error(String domain, String key, XMLParseException e) throws XNIException {
+                errors[0]++;
+            }
+            public void fatalError(String domain, String key, XMLParseException e) throws XNIException {
+                errors[0]++;
+            }
+        });
+        SchemaGrammar grammar = (SchemaGrammar) loader.loadGrammar(new XMLInputSource(null, 
+                new File(fDirectory, "root.xsd").toURI().toString(), null));
+        assertEquals(0, errors[0]);
+        assertNotNull(grammar);
+        return grammar.toXSModel();
+    }
+    
+    /** Checks that the redefined type has the element added by the redefinition. */
+    private static void checkModel(XSModel model) {
+        assertNotNull(model.getElementDeclaration("root", "urn:r"));
+        assertNotNull(model.getElementDeclaration("included", "urn:r"));
+        XSComplexTypeDefinition type = 
+            (XSComplexTypeDefinition) model.getTypeDefinition("base", "urn:r");
+        assertNotNull(type);
+        XSModelGroup group = (XSModelGroup) type.getParticle().getTerm();
+        assertEquals(2, group.getParticles().getLength());
+        XSParticle added = (XSParticle) group.getParticles().item(1);
+        assertEquals(XSConstants.MODEL_GROUP, added.getTerm().getType());
+        XSModelGroup addedGroup = (XSModelGroup) added.getTerm();
+        assertEquals("added", ((XSParticle) addedGroup.getParticles().item(0)).getTerm().getName());
+    }
+    
+    /** Writes a schema document with the target namespace urn:r. */
+    private void write(String name, String content) throws IOException {
+        OutputStream out = new FileOutputStream(new File(fDirectory, name));
+        try {
+            out.write(("<xs:schema xmlns:xs='" + XS + "' xmlns:r='urn:r' targetNamespace='urn:r'>" + 
+                    content + "</xs:schema>").getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    /** A cache which counts the documents found in it. */
+    private static class CountingCache extends SchemaDOMCache {
+        int fHits;
+        public Document getDocument(String systemId, byte[] digest, String settings) {
+            Document document = super.getDocument(systemId, digest, settings);
+            if (document != null) {
+                fHits++;
+            }
+            return document;
+        }
+    }
+    
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.loading;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLEntityResolver;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.XSModel;
+
+import schema.loading.probe.Handler;
+
+/**
+ * Tests that the schema documents parsed on other threads are the
+ * documents the schema handler resolves, so that a location replaced
+ * by the schema location properties or by an entity resolver is never
+ * read, and that the worker threads are stopped however a load ends.
+ * 
+ * @version $Id$
+ */
+public class SchemaDocumentPrefetcherTest extends TestCase {
+    
+    private static final String PARSE_THREADS = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_PARSE_THREADS_PROPERTY;
+    private static final String EXTERNAL_SCHEMA_LOCATION = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.SCHEMA_LOCATION;
+    private static final String ENTITY_RESOLVER = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ENTITY_RESOLVER_PROPERTY;
+    
+    private static final String XS = "http://www.w3.org/2001/XMLSchema";
+    
+    public SchemaDocumentPrefetcherTest(String name) {
+        super(name);
+    }
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        Handler.register();
+        Handler.reset();
+    }
+    
+    protected void tearDown() throws Exception {
+        Handler.reset();
+        super.tearDown();
+    }
+    
+    /**
+     * An import whose namespace is mapped by the external schema
+     * location property is read from the mapped location only.
+     */
+    public void testLocationPairs() throws Exception {
+        Handler.putDocument("/root.xsd", schema("urn:root",
+                "<xs:import namespace='urn:b' schemaLocation='unresolved.xsd'/>" +
+                "<xs:include schemaLocation='included.xsd'/>" +
+                "<xs:element name='root'/>"));
+        Handler.putDocument("/unresolved.xsd", schema("urn:b",
+                "<xs:element name='unresolved'/>"));
+        Handler.putDocument("/mapped/b.xsd", schema("urn:b",
+                "<xs:element name='mapped'/>"));
+        Handler.putDocument("/included.xsd", schema("urn:root",
+                "<xs:element name='included'/>"));
+        
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(PARSE_THREADS, new Integer(2));
+        loader.setProperty(EXTERNAL_SCHEMA_LOCATION, "urn:b probe:/mapped/b.xsd");
+        SchemaGrammar grammar = (SchemaGrammar) loader.loadGrammar(
+                new XMLInputSource(null, "probe:/root.xsd", null));
+        waitForWorkers(loader);
+        
+        assertNotNull(grammar.getGlobalElementDecl("included"));
+        XSModel model = grammar.toXSModel();
+        assertNotNull(model.getElementDeclaration("mapped", "urn:b"));
+        assertNull(model.getElementDeclaration("unresolved", "urn:b"));
+        assertEquals(0, Handler.getOpenCount("/unresolved.xsd"));
+        assertEquals(1, Handler.getOpenCount("/mapped/b.xsd"));
+        assertEquals(1, Handler.getOpenCount("/included.xsd"));
+    }
+    
+    /**
+     * Nothing is read on other threads while an entity resolver is set,
+     * so a location the resolver replaces is never read.
+     */
+    public void testEntityResolver() throws Exception {
+        Handler.putDocument("/root.xsd", schema("urn:root",
+                "<xs:include schemaLocation='redirected.xsd'/>" +
+                "<xs:element name='root'/>"));
+        Handler.putDocument("/redirected.xsd", schema("urn:root",
+                "<xs:element name='unresolved'/>"));
+        
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(PARSE_THREADS, new Integer(2));
+        loader.setProperty(ENTITY_RESOLVER, new XMLEntityResolver() {
+            public XMLInputSource resolveEntity(XMLResourceIdentifier id) {
+                if (id.getExpandedSystemId() != null && 
+                        id.getExpandedSystemId().endsWith("/redirected.xsd")) {
+                    return new XMLInputSource(null, id.getExpandedSystemId(), null,
+                            new StringReader(schema("urn:root", "<xs:element name='resolved'/>")),
+                            null);
+                }
+                return null;
+            }
+        });
+        SchemaGrammar grammar = (SchemaGrammar) loader.loadGrammar(
+                new XMLInputSource(null, "probe:/root.xsd", null));
+        waitForWorkers(loader);
+        
+        assertNotNull(grammar.getGlobalElementDecl("resolved"));
+        assertNull(grammar.getGlobalElementDecl("unresolved"));
+        assertEquals(0, Handler.getOpenCount("/redirected.xsd"));
+    }
+    
+    /**
+     * The prefetcher is stopped when the root document cannot be parsed.
+     */
+    public void testRootParseError() throws Exception {
+        Handler.putDocument("/root.xsd", "<xs:schema xmlns:xs='" + XS + "'><xs:element");
+        
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(PARSE_THREADS, new Integer(2));
+        try {
+            loader.loadGrammar(new XMLInputSource(null, "probe:/root.xsd", null));
+            fail("expected a fatal error");
+        }
+        catch (XNIException e) {
+        }
+        assertFalse(isPrefetching(loader));
+        waitForWorkers(loader);
+    }
+    
+    /**
+     * The prefetcher is stopped, and its workers finish, when a document
+     * parsed after the root cannot be parsed.
+     */
+    public void testIncludeParseError() throws Exception {
+        Handler.putDocument("/root.xsd", schema("urn:root",
+                "<xs:include schemaLocation='a.xsd'/>" +
+                "<xs:include schemaLocation='broken.xsd'/>" +
+                "<xs:include schemaLocation='b.xsd'/>"));
+        Handler.putDocument("/a.xsd", schema("urn:root", "<xs:element name='a'/>"));
+        Handler.putDocument("/broken.xsd", "<xs:schema xmlns:xs='" + XS + "'><xs:element");
+        Handler.putDocument("/b.xsd", schema("urn:root", "<xs:element name='b'/>"));
+        
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(PARSE_THREADS, new Integer(2));
+        try {
+            loader.loadGrammar(new XMLInputSource(null, "probe:/root.xsd", null));
+            fail("expected a fatal error");
+        }
+        catch (XNIException e) {
+        }
+        assertFalse(isPrefetching(loader));
+        waitForWorkers(loader);
+    }
+    
+    /** Returns a schema document with the given target namespace and content. */
+    private static String schema(String targetNamespace, String content) {
+        return "<xs:schema xmlns:xs='" + XS + "' targetNamespace='" + targetNamespace + 
+            "'>" + content + "</xs:schema>";
+    }
+    
+    /** Returns true if the schema handler of the loader is prefetching documents. */
+    private static boolean isPrefetching(XMLSchemaLoader loader) throws Exception {
+        Object prefetcher = getPrefetcher(loader);
+        if (prefetcher == null) {
+            return false;
+        }
+        Method method = prefetcher.getClass().getDeclaredMethod("isActive", new Class[0]);
+        method.setAccessible(true);
+        return ((Boolean) method.invoke(prefetcher, new Object[0])).booleanValue();
+    }
+    
+    /** Waits for the worker threads left from a load to finish. */
+    private static void waitForWorkers(XMLSchemaLoader loader) throws Exception {
+        Object prefetcher = getPrefetcher(loader);
+        if (prefetcher == null) {
+            return;
+        }
+        Method method = prefetcher.getClass().getDeclaredMethod("waitForWorkers", 
+                new Class[] {Long.TYPE});
+        method.setAccessible(true);
+        Boolean finished = (Boolean) method.invoke(prefetcher, new Object[] {new Long(10000)});
+        assertTrue("worker threads still running", finished.booleanValue());
+    }
+    
+    /** Returns the prefetcher of the schema handler of the loader. */
+    private static Object getPrefetcher(XMLSchemaLoader loader) throws Exception {
+        Object handler = getField(loader, "fSchemaHandler");
+        return (handler != null) ? getField(handler, "fPrefetcher") : null;
+    }
+    
+    private static Object getField(Object object, String name) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+    
+}
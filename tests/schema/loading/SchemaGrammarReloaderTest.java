@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.loading;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.SchemaGrammarReloader;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.XSModel;
+
+/**
+ * Tests that <code>SchemaGrammarReloader</code> rebuilds the grammars
+ * whose documents have changed, and keeps detecting changes to the
+ * grammars it has rebuilt.
+ * 
+ * @version $Id$
+ */
+public class SchemaGrammarReloaderTest extends TestCase {
+    
+    private static final String XS = "http://www.w3.org/2001/XMLSchema";
+    
+    private File fDirectory;
+    private long fTime;
+    private XMLGrammarPoolImpl fPool;
+    private SchemaGrammarReloader fReloader;
+    
+    public SchemaGrammarReloaderTest(String name) {
+        super(name);
+    }
+    
+    protected void setUp() throws Exception {
+        super.setUp();
+        fDirectory = File.createTempFile("reload", "");
+        fDirectory.delete();
+        fDirectory.mkdir();
+        fTime = System.currentTimeMillis() - 100000;
+        fPool = new XMLGrammarPoolImpl();
+        fReloader = new SchemaGrammarReloader(new XMLSchemaLoader(), fPool);
+    }
+    
+    protected void tearDown() throws Exception {
+        File[] files = fDirectory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        fDirectory.delete();
+        super.tearDown();
+    }
+    
+    public void testUnchanged() throws Exception {
+        writeChain();
+        assertNotNull(fReloader.loadGrammar(source("a.xsd")));
+        assertEquals(0, fReloader.reload().length);
+    }
+    
+    /**
+     * In the import chain a, b, c, a change to c rebuilds all three
+     * grammars, and a later change to b is still detected and rebuilds
+     * a and b.
+     */
+    public void testImportChain() throws Exception {
+        writeChain();
+        assertNotNull(fReloader.loadGrammar(source("a.xsd")));
+        
+        write("c.xsd", schema("urn:c", "", "<xs:element name='c2'/>"));
+        SchemaGrammar[] rebuilt = fReloader.reload();
+        assertNotNull(rebuilt);
+        assertEquals(3, rebuilt.length);
+        assertNotNull(getModel().getElementDeclaration("c2", "urn:c"));
+        assertEquals(0, fReloader.reload().length);
+        
+        write("b.xsd", schema("urn:b", 
+                "<xs:import namespace='urn:c' schemaLocation='c.xsd'/>", 
+                "<xs:element name='b2'/>"));
+        rebuilt = fReloader.reload();
+        assertNotNull(rebuilt);
+        assertEquals(2, rebuilt.length);
+        assertNotNull(getModel().getElementDeclaration("b2", "urn:b"));
+        assertNotNull(getModel().getElementDeclaration("c2", "urn:c"));
+        assertEquals(0, fReloader.reload().length);
+        
+        write("a.xsd", schema("urn:a", 
+                "<xs:import namespace='urn:b' schemaLocation='b.xsd'/>", 
+                "<xs:element name='a2'/>"));
+        rebuilt = fReloader.reload();
+        assertNotNull(rebuilt);
+        assertEquals(1, rebuilt.length);
+        assertNotNull(getModel().getElementDeclaration("a2", "urn:a"));
+    }
+    
+    /** Writes the schema documents of the import chain a, b, c. */
+    private void writeChain() throws IOException {
+        write("a.xsd", schema("urn:a", 
+                "<xs:import namespace='urn:b' schemaLocation='b.xsd'/>", 
+                "<xs:element name='a'/>"));
+        write("b.xsd", schema("urn:b", 
+                "<xs:import namespace='urn:c' schemaLocation='c.xsd'/>", 
+                "<xs:element name='b'/>"));
+        write("c.xsd", schema("urn:c", "", "<xs:element name='c'/>"));
+    }
+    
+    /** Returns a model of the grammars in the pool. */
+    private XSModel getModel() {
+        XSDDescription desc = new XSDDescription();
+        desc.setTargetNamespace("urn:a");
+        SchemaGrammar grammar = (SchemaGrammar) fPool.retrieveGrammar(desc);
+        assertNotNull(grammar);
+        return grammar.toXSModel();
+    }
+    
+    private XMLInputSource source(String name) {
+        return new XMLInputSource(null, new File(fDirectory, name).toURI().toString(), null);
+    }
+    
+    /** Writes a document with a new modification time. */
+    private void write(String name, String content) throws IOException {
+        File file = new File(fDirectory, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        fTime += 10000;
+        file.setLastModified(fTime);
+    }
+    
+    private static String schema(String targetNamespace, String imports, String content) {
+        return "<xs:schema xmlns:xs='" + XS + "' targetNamespace='" + targetNamespace + 
+            "'>" + imports + content + "</xs:schema>";
+    }
+    
+}
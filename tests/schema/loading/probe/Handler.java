@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.loading.probe;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * A handler for "probe:" URLs, which serves documents held in memory
+ * and records every URL opened, so that tests can check which
+ * documents a parser has read.
+ * <p>
+ * It is found through the <code>java.protocol.handler.pkgs</code>
+ * system property, which must include "schema.loading" before the
+ * first probe URL is created; see {@link #register()}.
+ *
+ * @version $Id$
+ */
+public class Handler extends URLStreamHandler {
+
+    /** Map from URL path to document content. */
+    private static final Hashtable fDocuments = new Hashtable();
+
+    /** URLs opened, in order. */
+    private static final Vector fOpened = new Vector();
+
+    /** Adds this package to the URL stream handler packages. */
+    public static synchronized void register() {
+        final String pkgs = System.getProperty("java.protocol.handler.pkgs");
+        if (pkgs == null || pkgs.length() == 0) {
+            System.setProperty("java.protocol.handler.pkgs", "schema.loading");
+        }
+        else if (pkgs.indexOf("schema.loading") == -1) {
+            System.setProperty("java.protocol.handler.pkgs", pkgs + "|schema.loading");
+        }
+    }
+
+    /** Removes all documents and forgets the URLs opened. */
+    public static void reset() {
+        fDocuments.clear();
+        fOpened.removeAllElements();
+    }
+
+    /** Adds a document served at the given path. */
+    public static void putDocument(String path, String content) {
+        fDocuments.put(path, content);
+    }
+
+    /** Returns the number of times the URL with the given path was opened. */
+    public static int getOpenCount(String path) {
+        int count = 0;
+        synchronized (fOpened) {
+            for (int i = 0; i < fOpened.size(); i++) {
+                if (path.equals(fOpened.elementAt(i))) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    protected URLConnection openConnection(URL url) throws IOException {
+        return new Connection(url);
+    }
+
+    /** A connection to a document held in memory. */
+    static class Connection extends URLConnection {
+
+        Connection(URL url) {
+            super(url);
+        }
+
+        public void connect() {
+            connected = true;
+        }
+
+        public InputStream getInputStream() throws IOException {
+            final String path = getURL().getPath();
+            fOpened.addElement(path);
+            final String content = (String) fDocuments.get(path);
+            if (content == null) {
+                throw new FileNotFoundException(getURL().toString());
+            }
+            try {
+                return new ByteArrayInputStream(content.getBytes("UTF-8"));
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new IOException(e.toString());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,426 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.models;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.XMLErrorReporter;
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLDTDDescription;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSElementDeclHelper;
+import org.apache.xerces.impl.xs.XSMessageFormatter;
+import org.apache.xerces.impl.xs.models.XSCMValidator;
+import org.apache.xerces.impl.xs.util.XSGrammarPool;
+import org.apache.xerces.util.SecurityManager;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSModelGroup;
+import org.apache.xerces.xs.XSNamedMap;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSParticle;
+import org.apache.xerces.xs.XSTerm;
+import org.apache.xerces.xs.XSTypeDefinition;
+
+/**
+ * Tests building the content models of the grammars of a pool ahead of
+ * time with <code>XSGrammarPool.compileContentModels</code>: the models
+ * built on several threads must accept the same elements as those built
+ * on the calling thread, the size of the models must still be limited
+ * by the security manager, and what is thrown on a thread building them
+ * must be thrown to the caller.
+ * 
+ * @version $Id$
+ */
+public class CMCompilerTest extends TestCase {
+    
+    private static final String[] NAMESPACES = { "urn:a", "urn:b", "urn:c" };
+    
+    /** The local names of the elements of each schema. */
+    private static final String[] NAMES = { "e0", "e1", "e2", "e3", "head", "member", "unknown" };
+    
+    private static final String CONTINUE_AFTER_FATAL_ERROR = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.CONTINUE_AFTER_FATAL_ERROR_FEATURE;
+    private static final String ERROR_HANDLER = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.ERROR_HANDLER_PROPERTY;
+    private static final String XMLGRAMMAR_POOL = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
+    
+    public CMCompilerTest(String name) {
+        super(name);
+    }
+    
+    /** 
+     * The content models built on several threads accept the same 
+     * elements as those built on the calling thread.
+     */
+    public void testParallelMatchesSerial() throws Exception {
+        XSGrammarPool serial = load(schemas(""));
+        XSGrammarPool parallel = load(schemas(""));
+        int count = serial.compileContentModels(1);
+        assertTrue(count > 20);
+        assertEquals(count, parallel.compileContentModels(4));
+        
+        for (int i = 0; i < NAMESPACES.length; i++) {
+            SchemaGrammar serialGrammar = getGrammar(serial, NAMESPACES[i]);
+            SchemaGrammar parallelGrammar = getGrammar(parallel, NAMESPACES[i]);
+            Vector serialTypes = getTypes(serialGrammar);
+            Vector parallelTypes = getTypes(parallelGrammar);
+            assertEquals(serialTypes.size(), parallelTypes.size());
+            SubstitutionGroupHandler serialHandler = newSubGroupHandler(serialGrammar);
+            SubstitutionGroupHandler parallelHandler = newSubGroupHandler(parallelGrammar);
+            for (int j = 0; j < serialTypes.size(); j++) {
+                XSCMValidator serialCM = getContentModel((XSComplexTypeDecl) serialTypes.elementAt(j));
+                XSCMValidator parallelCM = getContentModel((XSComplexTypeDecl) parallelTypes.elementAt(j));
+                assertNotNull(serialCM);
+                assertNotNull(parallelCM);
+                assertEquals(serialCM.getClass(), parallelCM.getClass());
+                checkSameLanguage(NAMESPACES[i], serialCM, serialHandler, parallelCM, parallelHandler);
+            }
+            // the models are not all empty
+            XSCMValidator cm = getContentModel((XSComplexTypeDecl) parallelGrammar.getGlobalTypeDecl("sequence"));
+            String ns = NAMESPACES[i].intern();
+            QName[] word = { new QName(null, "e0", "e0", ns), new QName(null, "member", "member", ns) };
+            assertTrue(accepts(cm, word, parallelHandler));
+            assertFalse(accepts(cm, new QName[] { word[1] }, parallelHandler));
+        }
+    }
+    
+    /** A pool without schema grammars has no content models to build. */
+    public void testNoSchemaGrammars() throws Exception {
+        XSGrammarPool pool = new XSGrammarPool();
+        assertEquals(0, pool.compileContentModels(4));
+        pool.putGrammar(new DTDGrammar(new SymbolTable(), 
+                new XMLDTDDescription(null, "doc.dtd", null, "file:///doc.dtd", "doc")));
+        assertEquals(1, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD).length);
+        assertEquals(0, pool.compileContentModels(1));
+        assertEquals(0, pool.compileContentModels(4));
+    }
+    
+    /** 
+     * The number of nodes of the content models built on other threads
+     * is limited by the security manager, and each model over the limit
+     * is reported.
+     */
+    public void testSecurityManagerLimit() throws Exception {
+        XSGrammarPool pool = load(schemas(largeTypes(8)));
+        final Vector errors = new Vector();
+        final Vector threads = new Vector();
+        XMLErrorReporter errorReporter = newErrorReporter();
+        errorReporter.setFeature(CONTINUE_AFTER_FATAL_ERROR, true);
+        errorReporter.setProperty(ERROR_HANDLER, new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) {
+            }
+            public void error(String domain, String key, XMLParseException e) {
+            }
+            public void fatalError(String domain, String key, XMLParseException e) {
+                errors.addElement(key);
+                threads.addElement(Thread.currentThread());
+            }
+        });
+        pool.compileContentModels(4, errorReporter, newSecurityManager());
+        // each large type of each grammar is over the limit
+        assertTrue(errors.size() >= 8 * NAMESPACES.length);
+        for (int i = 0; i < errors.size(); i++) {
+            assertEquals("maxOccurLimit", errors.elementAt(i));
+            assertNotSame(Thread.currentThread(), threads.elementAt(i));
+        }
+        
+        // without a security manager there is no limit
+        errors.clear();
+        load(schemas(largeTypes(8))).compileContentModels(4, errorReporter, null);
+        assertEquals(0, errors.size());
+    }
+    
+    /** A content model over the limit is a fatal error thrown to the caller. */
+    public void testSecurityManagerLimitThrown() throws Exception {
+        XSGrammarPool pool = load(schemas(largeTypes(8)));
+        try {
+            pool.compileContentModels(4, newErrorReporter(), newSecurityManager());
+            fail("expected a fatal error");
+        }
+        catch (XNIException e) {
+        }
+        // and with the default error reporter
+        try {
+            pool.compileContentModels(4, null, newSecurityManager());
+            fail("expected a fatal error");
+        }
+        catch (XNIException e) {
+        }
+    }
+    
+    /** What a thread building content models throws is thrown to the caller. */
+    public void testWorkerErrorRethrown() throws Exception {
+        XSGrammarPool pool = load(schemas(largeTypes(8)));
+        ThrowingErrorReporter errorReporter = new ThrowingErrorReporter(new IllegalStateException());
+        try {
+            pool.compileContentModels(4, errorReporter, newSecurityManager());
+            fail("expected an exception");
+        }
+        catch (IllegalStateException e) {
+            assertSame(errorReporter.fThrowable, e);
+        }
+        assertNotNull(errorReporter.fThread);
+        assertNotSame(Thread.currentThread(), errorReporter.fThread);
+        
+        errorReporter = new ThrowingErrorReporter(new AssertionError());
+        try {
+            pool.compileContentModels(4, errorReporter, newSecurityManager());
+            fail("expected an error");
+        }
+        catch (AssertionError e) {
+            assertSame(errorReporter.fThrowable, e);
+        }
+        assertNotSame(Thread.currentThread(), errorReporter.fThread);
+    }
+    
+    //
+    // Helpers
+    //
+    
+    /** Returns a schema for each namespace, with the given extra declarations. */
+    private static String[] schemas(String declarations) {
+        String[] schemas = new String[NAMESPACES.length];
+        for (int i = 0; i < NAMESPACES.length; i++) {
+            schemas[i] = 
+                "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:m='" + NAMESPACES[i] + 
+                "' targetNamespace='" + NAMESPACES[i] + "' elementFormDefault='qualified'>" +
+                "<xs:element name='head' type='xs:anyType'/>" +
+                "<xs:element name='member' substitutionGroup='m:head'/>" +
+                "<xs:complexType name='sequence'><xs:sequence>" +
+                "<xs:element name='e0'/><xs:element name='e1' minOccurs='0' maxOccurs='3'/>" +
+                "<xs:element ref='m:head'/></xs:sequence></xs:complexType>" +
+                "<xs:complexType name='choice'><xs:choice maxOccurs='unbounded'>" +
+                "<xs:element name='e0'/><xs:element name='e2' type='m:sequence'/>" +
+                "<xs:any namespace='##other' processContents='skip'/></xs:choice></xs:complexType>" +
+                "<xs:complexType name='all'><xs:all>" +
+                "<xs:element name='e0'/><xs:element name='e1' minOccurs='0'/>" +
+                "<xs:element name='e2'/></xs:all></xs:complexType>" +
+                "<xs:complexType name='extension'><xs:complexContent>" +
+                "<xs:extension base='m:sequence'><xs:sequence>" +
+                "<xs:element name='e3' minOccurs='2' maxOccurs='" + (i + 2) + "'/>" +
+                "</xs:sequence></xs:extension></xs:complexContent></xs:complexType>" +
+                "<xs:complexType name='mixed' mixed='true'><xs:sequence maxOccurs='2'>" +
+                "<xs:element name='e0' minOccurs='0'><xs:complexType><xs:sequence>" +
+                "<xs:element name='e1'><xs:complexType><xs:choice>" +
+                "<xs:element name='e2'/><xs:element name='e3'/>" +
+                "</xs:choice></xs:complexType></xs:element>" +
+                "</xs:sequence></xs:complexType></xs:element>" +
+                "<xs:any namespace='##targetNamespace' minOccurs='0'/>" +
+                "</xs:sequence></xs:complexType>" +
+                "<xs:element name='root'><xs:complexType><xs:sequence>" +
+                "<xs:element name='e0' type='m:choice'/><xs:element name='e1' type='m:all'/>" +
+                "<xs:element name='e2' type='m:extension'/><xs:element name='e3' type='m:mixed'/>" +
+                "</xs:sequence></xs:complexType></xs:element>" +
+                declarations +
+                "</xs:schema>";
+        }
+        return schemas;
+    }
+    
+    /** Returns the declarations of types with models over the limit of the security manager. */
+    private static String largeTypes(int count) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < count; i++) {
+            buffer.append("<xs:complexType name='large" + i + "'><xs:sequence>");
+            for (int j = 0; j < 20; j++) {
+                buffer.append("<xs:element name='l" + j + "'/>");
+            }
+            buffer.append("</xs:sequence></xs:complexType>");
+        }
+        return buffer.toString();
+    }
+    
+    /** Returns a security manager limiting content models to a few nodes. */
+    private static SecurityManager newSecurityManager() {
+        SecurityManager securityManager = new SecurityManager();
+        securityManager.setMaxOccurNodeLimit(10);
+        return securityManager;
+    }
+    
+    private static XMLErrorReporter newErrorReporter() {
+        XMLErrorReporter errorReporter = new XMLErrorReporter();
+        errorReporter.putMessageFormatter(XSMessageFormatter.SCHEMA_DOMAIN, new XSMessageFormatter());
+        return errorReporter;
+    }
+    
+    /** Loads the schemas into a new pool. */
+    private static XSGrammarPool load(String[] schemas) throws Exception {
+        XSGrammarPool pool = new XSGrammarPool();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(XMLGRAMMAR_POOL, pool);
+        for (int i = 0; i < schemas.length; i++) {
+            loader.loadGrammar(new XMLInputSource(null, "schema" + i + ".xsd", null, 
+                    new StringReader(schemas[i]), null));
+        }
+        assertEquals(schemas.length, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA).length);
+        return pool;
+    }
+    
+    private static SchemaGrammar getGrammar(XSGrammarPool pool, String namespace) {
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        for (int i = 0; i < grammars.length; i++) {
+            if (namespace.equals(((SchemaGrammar) grammars[i]).getTargetNamespace())) {
+                return (SchemaGrammar) grammars[i];
+            }
+        }
+        fail("no grammar for " + namespace);
+        return null;
+    }
+    
+    /** Returns the complex types of a grammar, including anonymous types, in a fixed order. */
+    private static Vector getTypes(SchemaGrammar grammar) {
+        Vector types = new Vector();
+        HashMap visited = new HashMap();
+        XSNamedMap map = grammar.getComponents(XSConstants.TYPE_DEFINITION);
+        for (int i = 0; i < map.getLength(); i++) {
+            addType((XSTypeDefinition) map.item(i), types, visited);
+        }
+        map = grammar.getComponents(XSConstants.ELEMENT_DECLARATION);
+        for (int i = 0; i < map.getLength(); i++) {
+            addType(((XSElementDeclaration) map.item(i)).getTypeDefinition(), types, visited);
+        }
+        return types;
+    }
+    
+    private static void addType(XSTypeDefinition type, Vector types, HashMap visited) {
+        if (!(type instanceof XSComplexTypeDecl) || visited.containsKey(type) ||
+            type.getNamespace() == null) {
+            return;
+        }
+        visited.put(type, type);
+        types.addElement(type);
+        XSParticle particle = ((XSComplexTypeDefinition) type).getParticle();
+        if (particle != null) {
+            addTypes(particle.getTerm(), types, visited);
+        }
+    }
+    
+    private static void addTypes(XSTerm term, Vector types, HashMap visited) {
+        if (term instanceof XSElementDeclaration) {
+            addType(((XSElementDeclaration) term).getTypeDefinition(), types, visited);
+        }
+        else if (term instanceof XSModelGroup) {
+            XSObjectList particles = ((XSModelGroup) term).getParticles();
+            for (int i = 0; i < particles.getLength(); i++) {
+                addTypes(((XSParticle) particles.item(i)).getTerm(), types, visited);
+            }
+        }
+    }
+    
+    /** Returns the content model already built for a type, without building it. */
+    private static XSCMValidator getContentModel(XSComplexTypeDecl type) throws Exception {
+        Field field = XSComplexTypeDecl.class.getDeclaredField("fCMValidator");
+        field.setAccessible(true);
+        return (XSCMValidator) field.get(type);
+    }
+    
+    private static SubstitutionGroupHandler newSubGroupHandler(final SchemaGrammar grammar) {
+        final String namespace = grammar.getTargetNamespace();
+        return new SubstitutionGroupHandler(new XSElementDeclHelper() {
+            public XSElementDecl getGlobalElementDecl(QName element) {
+                return (element.uri == namespace) ? grammar.getGlobalElementDecl(element.localpart) : null;
+            }
+        });
+    }
+    
+    /** 
+     * Checks that two content models accept the same sequences of the
+     * elements of a schema, up to three elements long.
+     */
+    private static void checkSameLanguage(String namespace, 
+            XSCMValidator cm1, SubstitutionGroupHandler handler1,
+            XSCMValidator cm2, SubstitutionGroupHandler handler2) {
+        QName[] names = new QName[NAMES.length + 1];
+        for (int i = 0; i < NAMES.length; i++) {
+            names[i] = new QName(null, NAMES[i], NAMES[i], namespace.intern());
+        }
+        names[NAMES.length] = new QName(null, "e0", "e0", "urn:other");
+        int n = names.length;
+        for (int length = 0; length <= 3; length++) {
+            int words = 1;
+            for (int i = 0; i < length; i++) {
+                words *= n;
+            }
+            for (int w = 0; w < words; w++) {
+                QName[] word = new QName[length];
+                for (int i = 0, rest = w; i < length; i++, rest /= n) {
+                    word[i] = names[rest % n];
+                }
+                assertEquals(accepts(cm1, word, handler1), accepts(cm2, word, handler2));
+            }
+        }
+    }
+    
+    /** Returns true if the content model accepts the given sequence of elements. */
+    private static boolean accepts(XSCMValidator cm, QName[] word, SubstitutionGroupHandler handler) {
+        int[] state = cm.startContentModel();
+        for (int i = 0; i < word.length; i++) {
+            cm.oneTransition(word[i], state, handler);
+            if (state[0] < 0) {
+                return false;
+            }
+        }
+        return cm.endContentModel(state);
+    }
+    
+    /** An error reporter throwing from a fatal error, recording the thread. */
+    private static class ThrowingErrorReporter extends XMLErrorReporter {
+        
+        final Throwable fThrowable;
+        Thread fThread;
+        
+        ThrowingErrorReporter(Throwable throwable) {
+            fThrowable = throwable;
+        }
+        
+        public String reportError(String domain, String key, Object[] arguments, 
+                short severity) throws XNIException {
+            synchronized (this) {
+                if (fThread == null) {
+                    fThread = Thread.currentThread();
+                }
+            }
+            if (fThrowable instanceof Error) {
+                throw (Error) fThrowable;
+            }
+            throw (RuntimeException) fThrowable;
+        }
+    }
+    
+}
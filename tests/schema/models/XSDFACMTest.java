@@ -0,0 +1,417 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.models;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.SubstitutionGroupHandler;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.impl.xs.XSComplexTypeDecl;
+import org.apache.xerces.impl.xs.XSElementDecl;
+import org.apache.xerces.impl.xs.XSElementDeclHelper;
+import org.apache.xerces.impl.xs.XSWildcardDecl;
+import org.apache.xerces.impl.xs.models.CMBuilder;
+import org.apache.xerces.impl.xs.models.CMNodeFactory;
+import org.apache.xerces.impl.xs.models.XSCMValidator;
+import org.apache.xerces.impl.xs.models.XSDFACM;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLErrorHandler;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xni.parser.XMLParseException;
+
+/**
+ * Tests the transitions of <code>XSDFACM</code>: the choice between
+ * the full and the compressed transition table, the lookup of the
+ * declaration matching an element, which must pick the lowest index
+ * in the element map as a scan of the whole map would, and the merging
+ * of equivalent states, which must not change what the model accepts.
+ * 
+ * @version $Id$
+ */
+public class XSDFACMTest extends TestCase {
+    
+    private static final String NS = "urn:m";
+    
+    private static final String SCHEMA_FULL_CHECKING = 
+        Constants.XERCES_FEATURE_PREFIX + Constants.SCHEMA_FULL_CHECKING;
+    private static final String XMLGRAMMAR_POOL = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY;
+    
+    /** The keys of the errors reported while loading the last schema. */
+    private Vector fErrors;
+    
+    /** The grammar loaded last. */
+    private SchemaGrammar fGrammar;
+    
+    /** Matches elements against the global declarations of the grammar. */
+    private SubstitutionGroupHandler fSubGroupHandler;
+    
+    public XSDFACMTest(String name) {
+        super(name);
+    }
+    
+    /**
+     * A long sequence of required elements has one transition per state,
+     * so its compressed table is chosen.
+     */
+    public void testLargeRequiredSequence() throws Exception {
+        StringBuffer content = new StringBuffer();
+        for (int i = 0; i < 60; i++) {
+            content.append("<xs:element name='e" + i + "'/>");
+        }
+        XSDFACM cm = load("<xs:sequence>" + content + "</xs:sequence>");
+        assertTrue(isCompressed(cm));
+        
+        String[] names = names("e", 60);
+        assertTrue(accepts(cm, names));
+        String[] missing = new String[59];
+        System.arraycopy(names, 0, missing, 0, 30);
+        System.arraycopy(names, 31, missing, 30, 29);
+        assertFalse(accepts(cm, missing));
+        String[] swapped = (String[]) names.clone();
+        swapped[10] = names[11];
+        swapped[11] = names[10];
+        assertFalse(accepts(cm, swapped));
+        String[] extra = new String[61];
+        System.arraycopy(names, 0, extra, 0, 60);
+        extra[60] = "e0";
+        assertFalse(accepts(cm, extra));
+    }
+    
+    /**
+     * A repeated choice of many elements has a transition on each element
+     * from each state, so the full table is kept.
+     */
+    public void testLargeRepeatedChoice() throws Exception {
+        StringBuffer content = new StringBuffer();
+        for (int i = 0; i < 60; i++) {
+            content.append("<xs:element name='e" + i + "'/>");
+        }
+        XSDFACM cm = load("<xs:choice maxOccurs='unbounded'>" + content + "</xs:choice>");
+        assertFalse(isCompressed(cm));
+        
+        assertTrue(accepts(cm, new String[] {"e59", "e0", "e30", "e30", "e1"}));
+        assertTrue(accepts(cm, names("e", 60)));
+        assertFalse(accepts(cm, new String[0]));
+        assertFalse(accepts(cm, new String[] {"e0", "unknown"}));
+    }
+    
+    /**
+     * An element is matched through the head of its substitution group
+     * two levels up, unless the head blocks substitution.
+     */
+    public void testSubstitutionGroupChain() throws Exception {
+        XSDFACM cm = load(
+                "<xs:sequence>" +
+                "<xs:element ref='m:head'/>" +
+                "<xs:element ref='m:blocked' minOccurs='0'/>" +
+                "</xs:sequence>",
+                "<xs:element name='head'/>" +
+                "<xs:element name='middle' substitutionGroup='m:head'/>" +
+                "<xs:element name='leaf' substitutionGroup='m:middle'/>" +
+                "<xs:element name='blocked' block='substitution'/>" +
+                "<xs:element name='member' substitutionGroup='m:blocked'/>");
+        
+        int[] state = cm.startContentModel();
+        Object decl = cm.oneTransition(qname("leaf"), state, fSubGroupHandler);
+        assertSame(fGrammar.getGlobalElementDecl("leaf"), decl);
+        assertTrue(state[0] >= 0);
+        assertTrue(accepts(cm, new String[] {"middle", "blocked"}));
+        assertTrue(accepts(cm, new String[] {"leaf"}));
+        assertFalse(accepts(cm, new String[] {"head", "member"}));
+        assertFalse(accepts(cm, new String[] {"member"}));
+    }
+    
+    /**
+     * When a wildcard comes before an element declaration which also
+     * allows the element, the wildcard is picked, in a small model and
+     * in one large enough to have its table compressed.
+     */
+    public void testWildcardBeforeElement() throws Exception {
+        String choice = 
+            "<xs:choice>" +
+            "<xs:any namespace='##any' processContents='lax'/>" +
+            "<xs:element name='b'/>" +
+            "</xs:choice>";
+        XSDFACM cm = load(choice);
+        assertTrue(fErrors.toString(), fErrors.contains("cos-nonambig"));
+        checkWildcardPicked(cm, new String[0]);
+        
+        StringBuffer content = new StringBuffer();
+        for (int i = 0; i < 60; i++) {
+            content.append("<xs:element name='e" + i + "'/>");
+        }
+        cm = load("<xs:sequence>" + content + choice + "</xs:sequence>");
+        assertTrue(fErrors.toString(), fErrors.contains("cos-nonambig"));
+        assertTrue(isCompressed(cm));
+        checkWildcardPicked(cm, names("e", 60));
+    }
+    
+    /**
+     * The expansion of (a|b{1,2}){0,5} leaves equivalent states, which
+     * are merged: the subset construction gives 15 states, 11 of which
+     * are distinct.
+     */
+    public void testMinimizedRange() throws Exception {
+        XSDFACM cm = load(
+                "<xs:choice minOccurs='0' maxOccurs='5'>" +
+                "<xs:element name='a'/>" +
+                "<xs:element name='b' minOccurs='1' maxOccurs='2'/>" +
+                "</xs:choice>");
+        assertTrue(fErrors.toString(), fErrors.isEmpty());
+        assertEquals(11, getStateCount(cm));
+        checkLanguage(cm, 12, new Language() {
+            public boolean contains(String[] word) {
+                // a run of b's takes one particle per two elements
+                int particles = 0;
+                int run = 0;
+                for (int i = 0; i <= word.length; i++) {
+                    if (i < word.length && word[i] == "b") {
+                        run++;
+                        continue;
+                    }
+                    particles += (run + 1) / 2 + ((i < word.length) ? 1 : 0);
+                    run = 0;
+                }
+                return particles <= 5;
+            }
+        });
+    }
+    
+    /**
+     * The expansion of (a,b?){0,5} is already minimal, and is left with
+     * the same states and language.
+     */
+    public void testMinimalRange() throws Exception {
+        XSDFACM cm = load(
+                "<xs:sequence minOccurs='0' maxOccurs='5'>" +
+                "<xs:element name='a'/>" +
+                "<xs:element name='b' minOccurs='0'/>" +
+                "</xs:sequence>");
+        assertTrue(fErrors.toString(), fErrors.isEmpty());
+        assertEquals(11, getStateCount(cm));
+        checkLanguage(cm, 12, new Language() {
+            public boolean contains(String[] word) {
+                int count = 0;
+                for (int i = 0; i < word.length; i++) {
+                    if (word[i] == "a") {
+                        count++;
+                    }
+                    else if (i == 0 || word[i - 1] == "b") {
+                        return false;
+                    }
+                }
+                return count <= 5;
+            }
+        });
+    }
+    
+    /**
+     * A model with counting states is not minimized, and still counts
+     * the occurrences of its repeated element.
+     */
+    public void testCountingStates() throws Exception {
+        XSDFACM cm = load(
+                "<xs:sequence>" +
+                "<xs:element name='a' minOccurs='2' maxOccurs='5'/>" +
+                "<xs:element name='b' minOccurs='0'/>" +
+                "</xs:sequence>");
+        assertTrue(fErrors.toString(), fErrors.isEmpty());
+        assertNotNull(getField(cm, "fCountingStates"));
+        assertEquals(3, getStateCount(cm));
+        checkLanguage(cm, 8, new Language() {
+            public boolean contains(String[] word) {
+                int length = word.length;
+                if (length > 0 && word[length - 1] == "b") {
+                    length--;
+                }
+                for (int i = 0; i < length; i++) {
+                    if (word[i] != "a") {
+                        return false;
+                    }
+                }
+                return length >= 2 && length <= 5;
+            }
+        });
+    }
+    
+    /**
+     * Ambiguous models are still reported, whether or not their states
+     * are merged.
+     */
+    public void testAmbiguousModels() throws Exception {
+        XSDFACM cm = load(
+                "<xs:choice minOccurs='0' maxOccurs='5'>" +
+                "<xs:element ref='m:a'/>" +
+                "<xs:element ref='m:b' minOccurs='1' maxOccurs='2'/>" +
+                "<xs:sequence><xs:element ref='m:a'/><xs:element ref='m:c'/></xs:sequence>" +
+                "</xs:choice>",
+                "<xs:element name='a'/><xs:element name='b'/><xs:element name='c'/>");
+        assertTrue(fErrors.toString(), fErrors.contains("cos-nonambig"));
+        assertTrue(accepts(cm, new String[] {"b", "b", "a", "b"}));
+        assertFalse(accepts(cm, new String[] {"c"}));
+        
+        cm = load(
+                "<xs:sequence>" +
+                "<xs:element name='a' minOccurs='2' maxOccurs='5'/>" +
+                "<xs:element name='a' minOccurs='0'/>" +
+                "</xs:sequence>");
+        assertTrue(fErrors.toString(), fErrors.contains("cos-nonambig"));
+        assertNotNull(getField(cm, "fCountingStates"));
+    }
+    
+    /** Checks that the wildcard is picked for b after the given elements. */
+    private void checkWildcardPicked(XSDFACM cm, String[] before) {
+        int[] state = cm.startContentModel();
+        for (int i = 0; i < before.length; i++) {
+            assertNotNull(cm.oneTransition(qname(before[i]), state, fSubGroupHandler));
+        }
+        Object decl = cm.oneTransition(qname("b"), state, fSubGroupHandler);
+        assertTrue(decl instanceof XSWildcardDecl);
+        assertTrue(state[0] >= 0);
+        assertTrue(cm.endContentModel(state));
+    }
+    
+    //
+    // Helpers
+    //
+    
+    /** Loads a schema with a complex type of the given content, and returns its content model. */
+    private XSDFACM load(String content) throws Exception {
+        return load(content, "");
+    }
+    
+    /** 
+     * Loads a schema with a complex type of the given content and the given
+     * global declarations, and returns the content model of the type.
+     */
+    private XSDFACM load(String content, String declarations) throws Exception {
+        fErrors = new Vector();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        // the loader only checks UPA when it has a grammar pool
+        loader.setFeature(SCHEMA_FULL_CHECKING, true);
+        loader.setProperty(XMLGRAMMAR_POOL, new XMLGrammarPoolImpl());
+        loader.setErrorHandler(new XMLErrorHandler() {
+            public void warning(String domain, String key, XMLParseException e) throws XNIException {
+            }
+            public void error(String domain, String key, XMLParseException e) throws XNIException {
+                fErrors.addElement(key);
+            }
+            public void fatalError(String domain, String key, XMLParseException e) throws XNIException {
+                throw e;
+            }
+        });
+        String schema = 
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:m='" + NS + 
+            "' targetNamespace='" + NS + "' elementFormDefault='qualified'>" +
+            "<xs:complexType name='type'>" + content + "</xs:complexType>" +
+            declarations + 
+            "</xs:schema>";
+        fGrammar = (SchemaGrammar) loader.loadGrammar(
+                new XMLInputSource(null, "test.xsd", null, new StringReader(schema), null));
+        final SchemaGrammar grammar = fGrammar;
+        fSubGroupHandler = new SubstitutionGroupHandler(new XSElementDeclHelper() {
+            public XSElementDecl getGlobalElementDecl(QName element) {
+                return (element.uri == NS) ? grammar.getGlobalElementDecl(element.localpart) : null;
+            }
+        });
+        XSComplexTypeDecl type = (XSComplexTypeDecl) fGrammar.getGlobalTypeDecl("type");
+        XSCMValidator cm = type.getContentModel(new CMBuilder(new CMNodeFactory()));
+        assertTrue(cm instanceof XSDFACM);
+        return (XSDFACM) cm;
+    }
+    
+    /** Returns true if the content model accepts the given sequence of elements. */
+    private boolean accepts(XSDFACM cm, String[] names) {
+        int[] state = cm.startContentModel();
+        for (int i = 0; i < names.length; i++) {
+            cm.oneTransition(qname(names[i]), state, fSubGroupHandler);
+            if (state[0] < 0) {
+                return false;
+            }
+        }
+        return cm.endContentModel(state);
+    }
+    
+    /** The sequences of elements a content model should accept. */
+    private interface Language {
+        public boolean contains(String[] word);
+    }
+    
+    /** 
+     * Checks that the content model accepts exactly the words of the
+     * language, for all the words of a and b up to the given length.
+     */
+    private void checkLanguage(XSDFACM cm, int maxLength, Language language) {
+        for (int length = 0; length <= maxLength; length++) {
+            for (int bits = 0; bits < (1 << length); bits++) {
+                String[] word = new String[length];
+                for (int i = 0; i < length; i++) {
+                    word[i] = ((bits & (1 << i)) != 0) ? "b" : "a";
+                }
+                assertEquals(toString(word), language.contains(word), accepts(cm, word));
+            }
+        }
+    }
+    
+    private static String toString(String[] word) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < word.length; i++) {
+            buffer.append(word[i]);
+        }
+        return buffer.toString();
+    }
+    
+    private static QName qname(String localpart) {
+        localpart = localpart.intern();
+        return new QName(null, localpart, localpart, NS);
+    }
+    
+    private static String[] names(String prefix, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = prefix + i;
+        }
+        return names;
+    }
+    
+    /** Returns true if the content model uses the compressed transition table. */
+    static boolean isCompressed(XSDFACM cm) throws Exception {
+        return getField(cm, "fTransTable") == null;
+    }
+    
+    /** Returns the number of states of the content model. */
+    static int getStateCount(XSDFACM cm) throws Exception {
+        return ((Integer) getField(cm, "fTransTableSize")).intValue();
+    }
+    
+    private static Object getField(XSDFACM cm, String name) throws Exception {
+        Field field = XSDFACM.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(cm);
+    }
+    
+}
@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package schema.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.Vector;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.impl.xs.SchemaGrammar;
+import org.apache.xerces.impl.xs.SchemaGrammarSerializer;
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.jaxp.validation.XMLSchemaFactory;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.apache.xerces.xs.XSAttributeUse;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSConstants;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSIDCDefinition;
+import org.apache.xerces.xs.XSModel;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSWildcard;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Tests that grammars written and read back by 
+ * <code>SchemaGrammarSerializer</code> validate documents as the
+ * grammars built from the schema documents do, and that corrupt
+ * streams are rejected.
+ * 
+ * @version $Id$
+ */
+public class SchemaGrammarSerializerTest extends TestCase {
+    
+    private static final String MAIN_NS = "urn:main";
+    private static final String OTHER_NS = "urn:other";
+    
+    private static final String START = 
+        "<m:root xmlns:m='urn:main' xmlns:o='urn:other' " +
+        "xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>";
+    private static final String END = "</m:root>";
+    
+    /** A document using every part of the schemas. */
+    private static final String VALID = START +
+        "<m:item id='a'/><m:item xsi:type='m:namedItem' id='b' name='named'/>" +
+        "<o:member>ABC</o:member><o:blocked>text</o:blocked>" +
+        "<m:value>99.5</m:value><m:name>o:second</m:name>" +
+        "<m:sizes>small 3 large</m:sizes><x:any xmlns:x='urn:x'><m:item/></x:any>" +
+        "<m:ref to='a'/><m:ref to='b'/>" + END;
+    
+    /** Documents which are not valid for various reasons. */
+    private static final String[] INVALID = {
+        // facets
+        START + "<m:item id='a'/><m:value>100.5</m:value>" + END,
+        START + "<m:item id='a'/><m:value>1.125</m:value>" + END,
+        START + "<m:item id='a'/><o:member>abc</o:member>" + END,
+        START + "<m:item id='a'/><m:sizes>small 0</m:sizes>" + END,
+        // QName enumerations compare namespaces, not prefixes
+        START + "<m:item id='a'/><m:name xmlns:o='urn:main'>o:second</m:name>" + END,
+        START + "<m:item id='a'/><m:name>m:second</m:name>" + END,
+        // identity constraints
+        START + "<m:item id='a'/><m:item id='a'/>" + END,
+        START + "<m:item id='a'/><m:ref to='b'/>" + END,
+        // substitution groups
+        START + "<m:item id='a'/><o:other>ABC</o:other>" + END,
+        START + "<m:item id='a'/><o:substitute>text</o:substitute>" + END,
+        // wildcards
+        START + "<m:item id='a'/><m:other/>" + END,
+        START + "<m:item id='a'/><x:any xmlns:x='urn:y'/>" + END,
+        "<m:root xmlns:m='urn:main' xmlns:x='urn:x' x:a='1'><m:item id='a'/>" + END,
+        // types, defaults and fixed values
+        START + "<m:item/>" + END,
+        START + "<m:item xsi:type='m:namedItem' id='a' name='other'/>" + END,
+        "<m:root xmlns:m='urn:main' version='x'><m:item id='a'/>" + END,
+    };
+    
+    private SchemaGrammar[] fGrammars;
+    
+    public SchemaGrammarSerializerTest(String name) {
+        super(name);
+    }
+    
+    protected void setUp() throws Exception {
+        XMLGrammarPoolImpl pool = new XMLGrammarPoolImpl();
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        loader.setProperty(Constants.XERCES_PROPERTY_PREFIX + Constants.XMLGRAMMAR_POOL_PROPERTY, pool);
+        loader.loadGrammar(new XMLInputSource(null, getResourceURL("main.xsd"), null));
+        Grammar[] grammars = pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA);
+        assertEquals(2, grammars.length);
+        fGrammars = new SchemaGrammar[grammars.length];
+        System.arraycopy(grammars, 0, fGrammars, 0, grammars.length);
+    }
+    
+    public void testValidation() throws Exception {
+        SchemaGrammar[] grammars = read(write(fGrammars));
+        assertEquals(fGrammars.length, grammars.length);
+        Schema original = newSchema(fGrammars);
+        Schema restored = newSchema(grammars);
+        
+        assertEquals(new Vector(), validate(original, VALID));
+        assertEquals(new Vector(), validate(restored, VALID));
+        for (int i = 0; i < INVALID.length; i++) {
+            Vector errors = validate(original, INVALID[i]);
+            assertFalse("document " + i + " is valid", errors.isEmpty());
+            assertEquals("document " + i, errors, validate(restored, INVALID[i]));
+        }
+    }
+    
+    public void testComponents() throws Exception {
+        SchemaGrammar[] grammars = read(write(fGrammars));
+        XSModel original = getGrammar(fGrammars, MAIN_NS).toXSModel(fGrammars);
+        XSModel model = getGrammar(grammars, MAIN_NS).toXSModel(grammars);
+        
+        final short[] facets = {
+            XSSimpleTypeDefinition.FACET_MININCLUSIVE,
+            XSSimpleTypeDefinition.FACET_MAXINCLUSIVE,
+            XSSimpleTypeDefinition.FACET_FRACTIONDIGITS,
+        };
+        XSSimpleTypeDefinition percent = (XSSimpleTypeDefinition) model.getTypeDefinition("percent", MAIN_NS);
+        XSSimpleTypeDefinition originalPercent = (XSSimpleTypeDefinition) original.getTypeDefinition("percent", MAIN_NS);
+        for (int i = 0; i < facets.length; i++) {
+            assertNotNull(percent.getLexicalFacetValue(facets[i]));
+            assertEquals(originalPercent.getLexicalFacetValue(facets[i]), percent.getLexicalFacetValue(facets[i]));
+        }
+        assertEquals(originalPercent.getDefinedFacets(), percent.getDefinedFacets());
+        XSSimpleTypeDefinition names = (XSSimpleTypeDefinition) model.getTypeDefinition("names", MAIN_NS);
+        assertEquals(2, names.getLexicalEnumeration().getLength());
+        assertEquals("m:first", names.getLexicalEnumeration().item(0));
+        XSSimpleTypeDefinition size = (XSSimpleTypeDefinition) model.getTypeDefinition("size", MAIN_NS);
+        assertEquals(XSSimpleTypeDefinition.VARIETY_UNION, size.getVariety());
+        assertEquals(2, size.getMemberTypes().getLength());
+        assertSame(size, ((XSSimpleTypeDefinition) model.getTypeDefinition("sizes", MAIN_NS)).getItemType());
+        
+        XSElementDeclaration root = model.getElementDeclaration("root", MAIN_NS);
+        assertEquals(2, root.getIdentityConstraints().getLength());
+        XSIDCDefinition keyref = (XSIDCDefinition) root.getIdentityConstraints().item(1);
+        assertEquals(XSIDCDefinition.IC_KEYREF, keyref.getCategory());
+        assertSame(root.getIdentityConstraints().item(0), keyref.getRefKey());
+        XSComplexTypeDefinition rootType = (XSComplexTypeDefinition) root.getTypeDefinition();
+        XSAttributeUse version = (XSAttributeUse) rootType.getAttributeUses().item(0);
+        assertEquals("version", version.getAttrDeclaration().getName());
+        assertEquals(XSConstants.VC_DEFAULT, version.getConstraintType());
+        assertEquals("1.0", version.getConstraintValue());
+        XSWildcard wildcard = rootType.getAttributeWildcard();
+        assertEquals(XSWildcard.NSCONSTRAINT_LIST, wildcard.getConstraintType());
+        assertEquals(OTHER_NS, wildcard.getNsConstraintList().item(0));
+        assertEquals(XSWildcard.PC_SKIP, wildcard.getProcessContents());
+        
+        // components of the other grammar keep their identity
+        XSElementDeclaration member = model.getElementDeclaration("member", OTHER_NS);
+        assertSame(model.getElementDeclaration("head", OTHER_NS), member.getSubstitutionGroupAffiliation());
+        assertSame(model.getTypeDefinition("code", OTHER_NS), member.getTypeDefinition());
+        assertSame(getGrammar(grammars, OTHER_NS), 
+                getGrammar(grammars, MAIN_NS).getImportedGrammars().elementAt(0));
+        assertEquals(XSConstants.DERIVATION_SUBSTITUTION, 
+                model.getElementDeclaration("blocked", OTHER_NS).getDisallowedSubstitutions());
+        
+        // every global component is found again
+        final short[] kinds = {
+            XSConstants.ELEMENT_DECLARATION, XSConstants.ATTRIBUTE_DECLARATION,
+            XSConstants.TYPE_DEFINITION, XSConstants.MODEL_GROUP_DEFINITION,
+            XSConstants.ATTRIBUTE_GROUP, XSConstants.NOTATION_DECLARATION,
+        };
+        for (int i = 0; i < kinds.length; i++) {
+            assertEquals(original.getComponents(kinds[i]).getLength(), model.getComponents(kinds[i]).getLength());
+        }
+    }
+    
+    public void testSecondWriteIsIdentical() throws Exception {
+        byte[] bytes = write(fGrammars);
+        byte[] again = write(read(bytes));
+        assertEquals(bytes.length, again.length);
+        for (int i = 0; i < bytes.length; i++) {
+            assertEquals("byte " + i, bytes[i], again[i]);
+        }
+    }
+    
+    public void testReadingFromPool() throws Exception {
+        // write the main grammar alone and find the other in the pool
+        SchemaGrammar main = getGrammar(fGrammars, MAIN_NS);
+        byte[] bytes = write(new SchemaGrammar[] { main });
+        try {
+            read(bytes);
+            fail("read grammar without its imported grammar");
+        }
+        catch (IOException e) {
+        }
+        XMLGrammarPoolImpl pool = new XMLGrammarPoolImpl();
+        pool.putGrammar(getGrammar(fGrammars, OTHER_NS));
+        SchemaGrammar[] grammars = new SchemaGrammarSerializer().readGrammars(new ByteArrayInputStream(bytes), pool);
+        assertEquals(1, grammars.length);
+        grammars = new SchemaGrammar[] { grammars[0], getGrammar(fGrammars, OTHER_NS) };
+        Schema restored = newSchema(grammars);
+        assertEquals(new Vector(), validate(restored, VALID));
+        for (int i = 0; i < INVALID.length; i++) {
+            assertEquals("document " + i, validate(newSchema(fGrammars), INVALID[i]), validate(restored, INVALID[i]));
+        }
+    }
+    
+    public void testBadMagic() throws Exception {
+        byte[] bytes = write(fGrammars);
+        bytes[0] ^= 1;
+        assertRejected(bytes);
+    }
+    
+    public void testBadVersion() throws Exception {
+        byte[] bytes = write(fGrammars);
+        // the version follows the magic number, as a single byte
+        bytes[4] += 2;
+        assertRejected(bytes);
+    }
+    
+    public void testTruncatedStream() throws Exception {
+        byte[] bytes = write(fGrammars);
+        for (int length = 0; length < bytes.length; length += 1 + length / 8) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(bytes, 0, truncated, 0, length);
+            assertRejected(truncated);
+        }
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertRejected(truncated);
+    }
+    
+    public void testBadCounts() throws Exception {
+        // more grammars than objects
+        assertRejected(header(new int[] { 2, 1 }));
+        // negative counts
+        assertRejected(header(new int[] { -1, 1 }));
+        assertRejected(header(new int[] { 0, -5 }));
+        // counts far larger than the stream must not be allocated
+        assertRejected(header(new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE }));
+        assertRejected(header(new int[] { 1, Integer.MAX_VALUE }));
+    }
+    
+    /** 
+     * Changing any byte of the stream gives either grammars or an
+     * IOException, never a runtime exception. Some of the changes make
+     * a reference point to an object of the wrong kind, which must be
+     * named in the exception.
+     */
+    public void testCorruptBytes() throws Exception {
+        byte[] bytes = write(fGrammars);
+        boolean wrongKind = false;
+        for (int i = 0; i < bytes.length; i++) {
+            for (int delta = -1; delta <= 1; delta += 2) {
+                byte[] corrupt = (byte[]) bytes.clone();
+                corrupt[i] += delta;
+                try {
+                    read(corrupt);
+                }
+                catch (IOException e) {
+                    String message = e.getMessage();
+                    if (message != null && message.startsWith("Reference ") && 
+                        message.endsWith(" was expected.")) {
+                        wrongKind = true;
+                    }
+                }
+            }
+        }
+        assertTrue(wrongKind);
+    }
+    
+    //
+    // Private methods
+    //
+    
+    private void assertRejected(byte[] bytes) {
+        try {
+            read(bytes);
+            fail("read " + bytes.length + " bytes without error");
+        }
+        catch (IOException e) {
+        }
+    }
+    
+    private static byte[] write(SchemaGrammar[] grammars) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SchemaGrammarSerializer().writeGrammars(grammars, out);
+        return out.toByteArray();
+    }
+    
+    private static SchemaGrammar[] read(byte[] bytes) throws IOException {
+        return new SchemaGrammarSerializer().readGrammars(new ByteArrayInputStream(bytes), null);
+    }
+    
+    /** Returns the start of a stream, made of the magic number, the version and the given integers. */
+    private static byte[] header(int[] values) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = write(new SchemaGrammar[0]);
+        out.write(bytes, 0, 5);
+        for (int i = 0; i < values.length; i++) {
+            int zigzag = (values[i] << 1) ^ (values[i] >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                out.write((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            out.write(zigzag);
+        }
+        return out.toByteArray();
+    }
+    
+    private static SchemaGrammar getGrammar(SchemaGrammar[] grammars, String namespace) {
+        for (int i = 0; i < grammars.length; i++) {
+            if (namespace.equals(grammars[i].getTargetNamespace())) {
+                return grammars[i];
+            }
+        }
+        fail("no grammar for " + namespace);
+        return null;
+    }
+    
+    private static Schema newSchema(SchemaGrammar[] grammars) throws Exception {
+        XMLGrammarPool pool = new XMLGrammarPoolImpl();
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, grammars);
+        pool.lockPool();
+        return new XMLSchemaFactory().newSchema(pool);
+    }
+    
+    /** Validates the document, returning the messages of the errors reported. */
+    private static Vector validate(Schema schema, String document) throws Exception {
+        final Vector errors = new Vector();
+        Validator validator = schema.newValidator();
+        validator.setErrorHandler(new ErrorHandler() {
+            public void warning(SAXParseException e) {
+            }
+            public void error(SAXParseException e) {
+                errors.addElement(e.getMessage());
+            }
+            public void fatalError(SAXParseException e) {
+                errors.addElement(e.getMessage());
+            }
+        });
+        validator.validate(new StreamSource(new StringReader(document)));
+        return errors;
+    }
+    
+    private String getResourceURL(String path) {
+        String packageDir = getClass().getPackage().getName().replace('.', File.separatorChar);
+        URL url = ClassLoader.getSystemResource(packageDir + "/" + path);
+        if (url == null) {
+            fail("Couldn't find schema for test: " + path);
+        }
+        return url.toExternalForm();
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package thread;
+
+import org.apache.xerces.util.ConcurrentSymbolTable;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.SynchronizedSymbolTable;
+
+/**
+ * This program measures the throughput of symbol tables shared by a
+ * number of threads, comparing the concurrent symbol table with the
+ * synchronized symbol table. Each thread repeatedly adds the names
+ * of a vocabulary to the shared table, as parsers sharing a symbol
+ * table do, and checks that it gets back the same reference for
+ * equal names as every other thread.
+ * <p>
+ * Usage: java thread.SymbolTablePerf [threads [iterations]]
+ *
+ * @version $Id$
+ */
+public class SymbolTablePerf {
+
+    //
+    // Constants
+    //
+
+    /** Number of distinct names in the vocabulary. */
+    public static final int VOCABULARY_SIZE = 2000;
+
+    /** Number of times each thread adds the whole vocabulary. */
+    public static final int ROUNDS = 500;
+
+    /** Default number of threads. */
+    public static final int DEFAULT_THREADS = 8;
+
+    /** Default number of timed iterations. */
+    public static final int DEFAULT_ITERATIONS = 5;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        int threads = DEFAULT_THREADS;
+        int iterations = DEFAULT_ITERATIONS;
+        if (argv.length > 0) {
+            threads = Integer.parseInt(argv[0]);
+        }
+        if (argv.length > 1) {
+            iterations = Integer.parseInt(argv[1]);
+        }
+
+        char[][] vocabulary = createVocabulary();
+
+        // warm up both tables before timing them
+        run(new SynchronizedSymbolTable(), vocabulary, threads);
+        run(new ConcurrentSymbolTable(), vocabulary, threads);
+
+        long synchronizedTime = 0;
+        long concurrentTime = 0;
+        for (int i = 0; i < iterations; i++) {
+            synchronizedTime += run(new SynchronizedSymbolTable(), vocabulary, threads);
+            concurrentTime += run(new ConcurrentSymbolTable(), vocabulary, threads);
+        }
+        System.out.println(threads+" threads, "+VOCABULARY_SIZE+" names, "+
+                           "synchronized "+(synchronizedTime/iterations)+" ms, "+
+                           "concurrent "+(concurrentTime/iterations)+" ms");
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Creates a vocabulary of names resembling element and attribute names. */
+    private static char[][] createVocabulary() {
+        String[] prefixes = { "", "xs:", "soap:", "ns1:" };
+        String[] stems = { "item", "order", "customer", "address", "price", "id" };
+        char[][] vocabulary = new char[VOCABULARY_SIZE][];
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            String name = prefixes[i % prefixes.length] + 
+                          stems[(i / prefixes.length) % stems.length] + i;
+            vocabulary[i] = name.toCharArray();
+        }
+        return vocabulary;
+    } // createVocabulary():char[][]
+
+    /** 
+     * Adds the vocabulary to the table on the given number of threads, 
+     * returning the time taken in milliseconds.
+     */
+    private static long run(final SymbolTable table, final char[][] vocabulary, 
+            int threadCount) throws InterruptedException {
+        final String[] expected = new String[vocabulary.length];
+        for (int i = 0; i < vocabulary.length; i++) {
+            expected[i] = new String(vocabulary[i]).intern();
+        }
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int start = i * 7919;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        for (int j = 0; j < vocabulary.length; j++) {
+                            int k = (start + j) % vocabulary.length;
+                            char[] name = vocabulary[k];
+                            if (table.addSymbol(name, 0, name.length) != expected[k]) {
+                                failed[0] = true;
+                            }
+                        }
+                    }
+                }
+            };
+        }
+        long before = System.currentTimeMillis();
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+        }
+        long after = System.currentTimeMillis();
+        if (failed[0]) {
+            throw new IllegalStateException("symbol references are not unique");
+        }
+        return after - before;
+    } // run(SymbolTable,char[][],int):long
+
+} // class SymbolTablePerf
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package thread;
+
+import org.apache.xerces.util.ConcurrentSymbolTable;
+import org.apache.xerces.util.SymbolTable;
+
+/**
+ * This program tests a concurrent symbol table shared by a number of
+ * threads. The threads add the same names to a table which starts out
+ * small, so that its stripes are rehashed while other threads are
+ * looking names up. Some of the names have the same hash code, so that
+ * stripes also switch to a new hash function. Every thread must get
+ * back the same reference for equal names.
+ * <p>
+ * Usage: java thread.SymbolTableTest [threads [rounds]]
+ *
+ * @version $Id$
+ */
+public class SymbolTableTest {
+
+    //
+    // Constants
+    //
+
+    /** Number of distinct names with ordinary hash codes. */
+    public static final int NAME_COUNT = 5000;
+
+    /** Number of blocks in the names which have the same hash code. */
+    public static final int COLLIDING_BLOCKS = 8;
+
+    /** Default number of threads. */
+    public static final int DEFAULT_THREADS = 8;
+
+    /** Default number of times the test is repeated with a new table. */
+    public static final int DEFAULT_ROUNDS = 20;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry. */
+    public static void main(String[] argv) throws Exception {
+
+        int threadCount = DEFAULT_THREADS;
+        int rounds = DEFAULT_ROUNDS;
+        if (argv.length > 0) {
+            threadCount = Integer.parseInt(argv[0]);
+        }
+        if (argv.length > 1) {
+            rounds = Integer.parseInt(argv[1]);
+        }
+
+        final String[] names = createNames();
+        System.err.println("# Testing concurrent symbol table: "+threadCount+
+                           " threads, "+names.length+" names, "+rounds+" rounds");
+        try {
+            for (int round = 0; round < rounds; round++) {
+                run(new ConcurrentSymbolTable(16, 4), names, threadCount);
+            }
+            System.err.println("PASS");
+        }
+        catch (Exception e) {
+            System.err.println("FAIL: "+e.getMessage());
+            // let the build fail
+            System.exit(1);
+        }
+
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /**
+     * Creates the names: ordinary names, and names made of the blocks
+     * "Aa" and "BB", which all have the same hash code.
+     */
+    private static String[] createNames() {
+        final int colliding = 1 << COLLIDING_BLOCKS;
+        String[] names = new String[NAME_COUNT + colliding];
+        for (int i = 0; i < NAME_COUNT; i++) {
+            names[i] = "name" + i;
+        }
+        for (int i = 0; i < colliding; i++) {
+            StringBuffer name = new StringBuffer();
+            for (int j = 0; j < COLLIDING_BLOCKS; j++) {
+                name.append(((i >> j) & 1) == 0 ? "Aa" : "BB");
+            }
+            names[NAME_COUNT + i] = name.toString();
+        }
+        return names;
+    } // createNames():String[]
+
+    /**
+     * Adds the names to the table on the given number of threads, each
+     * starting at a different name, and checks the references returned.
+     */
+    private static void run(final SymbolTable table, final String[] names,
+            int threadCount) throws Exception {
+        final String[][] results = new String[threadCount][names.length];
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        final String[] result = results[thread];
+                        final int start = thread * (names.length / results.length);
+                        for (int j = 0; j < names.length; j++) {
+                            final int index = (start + j) % names.length;
+                            // copy the characters so that the table cannot
+                            // match them by reference
+                            char[] buffer = new char[names[index].length() + 2];
+                            names[index].getChars(0, names[index].length(), buffer, 1);
+                            result[index] = ((thread + j) % 2 == 0) ?
+                                table.addSymbol(buffer, 1, names[index].length()) :
+                                table.addSymbol(new String(buffer, 1, names[index].length()));
+                        }
+                    }
+                    catch (Throwable t) {
+                        synchronized (failure) {
+                            failure[0] = t;
+                        }
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threadCount; i++) {
+            threads[i].join();
+        }
+        if (failure[0] != null) {
+            throw new Exception("thread failed: "+failure[0]);
+        }
+        for (int j = 0; j < names.length; j++) {
+            final String symbol = results[0][j];
+            if (!names[j].equals(symbol)) {
+                throw new Exception("expected "+names[j]+" but found "+symbol);
+            }
+            for (int i = 1; i < threadCount; i++) {
+                if (results[i][j] != symbol) {
+                    throw new Exception("threads 0 and "+i+" got different references for "+names[j]);
+                }
+            }
+            if (table.addSymbol(names[j].toCharArray(), 0, names[j].length()) != symbol ||
+                !table.containsSymbol(names[j])) {
+                throw new Exception("table lost "+names[j]);
+            }
+        }
+    } // run(SymbolTable,String[],int)
+
+} // class SymbolTableTest
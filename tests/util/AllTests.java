@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import junit.framework.Test;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+/**
+ * All tests of the symbol tables and grammar pools.
+ * 
+ * @version $Id$
+ */
+public class AllTests {
+
+    public static void main(String[] args) {
+        TestResult result = junit.textui.TestRunner.run(AllTests.suite());
+        if (!result.wasSuccessful()) {
+            System.exit(1);
+        }
+    }
+    
+    public static Test suite() {
+        TestSuite suite = new TestSuite("Test for symbol tables and grammar pools");
+        //$JUnit-BEGIN$
+        suite.addTestSuite(SymbolTableTest.class);
+        suite.addTestSuite(BoundedSymbolTableTest.class);
+        suite.addTestSuite(FrozenSymbolTableTest.class);
+        suite.addTestSuite(ConcurrentGrammarPoolTest.class);
+        suite.addTestSuite(BoundedGrammarPoolTest.class);
+        suite.addTestSuite(BufferPoolTest.class);
+        suite.addTestSuite(ByteArrayInputSourceTest.class);
+        suite.addTestSuite(CharArrayInputSourceTest.class);
+        //$JUnit-END$
+        return suite;
+    }
+
+}
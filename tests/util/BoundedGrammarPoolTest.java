@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.util.BoundedGrammarPool;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+
+/**
+ * Tests the eviction of grammars, the hooks and the statistics of
+ * <code>BoundedGrammarPool</code>.
+ * 
+ * @version $Id$
+ */
+public class BoundedGrammarPoolTest extends TestCase {
+    
+    public BoundedGrammarPoolTest(String name) {
+        super(name);
+    }
+    
+    public void testEvictionByCount() {
+        TestPool pool = new TestPool(3, 0);
+        Grammar[] grammars = createGrammars(5, 100);
+        pool.putGrammar(grammars[0]);
+        pool.putGrammar(grammars[1]);
+        pool.putGrammar(grammars[2]);
+        // the use of the first grammar makes the second the oldest
+        assertSame(grammars[0], pool.retrieveGrammar(grammars[0].getGrammarDescription()));
+        pool.putGrammar(grammars[3]);
+        assertEvicted(pool, new Grammar[] { grammars[1] });
+        pool.putGrammar(grammars[4]);
+        assertEvicted(pool, new Grammar[] { grammars[1], grammars[2] });
+        assertEquals(3, pool.getGrammarCount());
+        assertEquals(300, pool.getSize());
+        assertEquals(2, pool.getEvictionCount());
+        assertContains(pool, new Grammar[] { grammars[0], grammars[3], grammars[4] });
+    }
+    
+    public void testEvictionBySize() {
+        TestPool pool = new TestPool(0, 1000);
+        Grammar[] grammars = createGrammars(4, 300);
+        pool.putGrammar(grammars[0]);
+        pool.putGrammar(grammars[1]);
+        pool.putGrammar(grammars[2]);
+        assertEquals(900, pool.getSize());
+        assertSame(grammars[0], pool.getGrammar(grammars[0].getGrammarDescription()));
+        pool.putGrammar(grammars[3]);
+        assertEvicted(pool, new Grammar[] { grammars[1] });
+        assertEquals(900, pool.getSize());
+        
+        // a large grammar may evict several
+        Grammar large = new TestGrammar("urn:large", 700);
+        pool.putGrammar(large);
+        assertEvicted(pool, new Grammar[] { grammars[1], grammars[2], grammars[0] });
+        assertContains(pool, new Grammar[] { grammars[3], large });
+        assertEquals(1000, pool.getSize());
+    }
+    
+    public void testAddedGrammarIsNotEvicted() {
+        TestPool pool = new TestPool(0, 1000);
+        Grammar small = new TestGrammar("urn:small", 100);
+        Grammar huge = new TestGrammar("urn:huge", 5000);
+        pool.putGrammar(small);
+        pool.putGrammar(huge);
+        assertEvicted(pool, new Grammar[] { small });
+        assertContains(pool, new Grammar[] { huge });
+        assertEquals(5000, pool.getSize());
+        pool.putGrammar(small);
+        assertEquals(2, pool.fEvicted.size());
+        assertSame(huge, pool.fEvicted.get(1));
+        assertContains(pool, new Grammar[] { small });
+        
+        pool = new TestPool(1, 0);
+        pool.putGrammar(huge);
+        pool.putGrammar(small);
+        assertContains(pool, new Grammar[] { small });
+        assertFalse(pool.containsGrammar(huge.getGrammarDescription()));
+    }
+    
+    public void testRecachedGrammarIsCountedOnce() {
+        TestPool pool = new TestPool(0, 0);
+        Grammar grammar = new TestGrammar("urn:test", 100);
+        pool.putGrammar(grammar);
+        pool.putGrammar(grammar);
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, new Grammar[] { grammar });
+        assertEquals(1, pool.getGrammarCount());
+        assertEquals(100, pool.getSize());
+        assertEquals(1, pool.fSizeCount);
+        
+        // another grammar with the same description replaces it
+        Grammar replacement = new TestGrammar("urn:test", 250);
+        pool.putGrammar(replacement);
+        assertEquals(1, pool.getGrammarCount());
+        assertEquals(250, pool.getSize());
+        assertSame(replacement, pool.getGrammar(grammar.getGrammarDescription()));
+        
+        assertSame(replacement, pool.removeGrammar(grammar.getGrammarDescription()));
+        assertEquals(0, pool.getGrammarCount());
+        assertEquals(0, pool.getSize());
+    }
+    
+    public void testHooksAndStatistics() {
+        TestPool pool = new TestPool(1, 0);
+        Grammar[] grammars = createGrammars(2, 100);
+        final XMLGrammarDescription desc = grammars[0].getGrammarDescription();
+        
+        assertNull(pool.retrieveGrammar(desc));
+        assertEquals(1, pool.getMissCount());
+        assertEquals(0, pool.getLoadCount());
+        pool.putGrammar(grammars[0]);
+        assertEquals(1, pool.getLoadCount());
+        assertEquals(1, pool.fLoaded.size());
+        assertSame(grammars[0], pool.fLoaded.get(0));
+        assertTrue(pool.getLoadTime() >= 0);
+        
+        assertSame(grammars[0], pool.retrieveGrammar(desc));
+        assertSame(grammars[0], pool.retrieveGrammar(desc));
+        assertEquals(2, pool.getHitCount());
+        // containsGrammar does not count as a use
+        assertTrue(pool.containsGrammar(desc));
+        assertEquals(2, pool.getHitCount());
+        
+        // a grammar added without a miss is not a load
+        pool.putGrammar(grammars[1]);
+        assertEquals(1, pool.getLoadCount());
+        assertEquals(1, pool.fLoaded.size());
+        assertEvicted(pool, new Grammar[] { grammars[0] });
+        assertEquals(1, pool.getEvictionCount());
+        
+        assertEquals(0, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA).length);
+        pool.resetStatistics();
+        assertEquals(0, pool.getHitCount());
+        assertEquals(0, pool.getMissCount());
+        assertEquals(0, pool.getLoadCount());
+        assertEquals(0, pool.getLoadTime());
+        assertEquals(0, pool.getEvictionCount());
+        
+        pool.clear();
+        assertEquals(0, pool.getGrammarCount());
+        assertEquals(0, pool.getSize());
+    }
+    
+    private static Grammar[] createGrammars(int count, long size) {
+        Grammar[] grammars = new Grammar[count];
+        for (int i = 0; i < count; i++) {
+            grammars[i] = new TestGrammar("urn:test" + i, size);
+        }
+        return grammars;
+    }
+    
+    private static void assertEvicted(TestPool pool, Grammar[] grammars) {
+        assertEquals(grammars.length, pool.fEvicted.size());
+        for (int i = 0; i < grammars.length; i++) {
+            assertSame(grammars[i], pool.fEvicted.get(i));
+            assertFalse(pool.containsGrammar(grammars[i].getGrammarDescription()));
+        }
+    }
+    
+    private static void assertContains(TestPool pool, Grammar[] grammars) {
+        assertEquals(grammars.length, pool.getGrammarCount());
+        for (int i = 0; i < grammars.length; i++) {
+            assertTrue(pool.containsGrammar(grammars[i].getGrammarDescription()));
+        }
+    }
+    
+    /** A pool recording loads and evictions, using the sizes of test grammars. */
+    static class TestPool extends BoundedGrammarPool {
+        
+        final ArrayList fLoaded = new ArrayList();
+        final ArrayList fEvicted = new ArrayList();
+        int fSizeCount;
+        
+        public TestPool(int maxGrammarCount, long maxSize) {
+            super(maxGrammarCount, maxSize);
+        }
+        
+        protected long getGrammarSize(Grammar grammar) {
+            ++fSizeCount;
+            return ((TestGrammar) grammar).fSize;
+        }
+        
+        protected void grammarLoaded(Grammar grammar, long loadTime) {
+            fLoaded.add(grammar);
+        }
+        
+        protected void grammarEvicted(Grammar grammar) {
+            fEvicted.add(grammar);
+        }
+    }
+    
+    /** A grammar which only has a description and a size. */
+    static class TestGrammar implements Grammar {
+        
+        private final XSDDescription fDescription;
+        final long fSize;
+        
+        public TestGrammar(String namespace, long size) {
+            fDescription = new XSDDescription();
+            fDescription.setTargetNamespace(namespace);
+            fSize = size;
+        }
+        
+        public XMLGrammarDescription getGrammarDescription() {
+            return fDescription;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.util.BoundedSymbolTable;
+import org.apache.xerces.util.XMLSymbols;
+
+/**
+ * Tests the eviction and pinning of symbols by 
+ * <code>BoundedSymbolTable</code>.
+ * 
+ * @version $Id$
+ */
+public class BoundedSymbolTableTest extends TestCase {
+    
+    private static final int MAX_SIZE = 100;
+    
+    private BoundedSymbolTable fTable;
+    
+    public BoundedSymbolTableTest(String name) {
+        super(name);
+    }
+    
+    protected void setUp() throws Exception {
+        fTable = new BoundedSymbolTable(MAX_SIZE);
+    }
+    
+    public void testBoundIsRespected() {
+        for (int i = 0; i < MAX_SIZE * 10; i++) {
+            add("name" + i);
+        }
+        int count = 0;
+        for (int i = 0; i < MAX_SIZE * 10; i++) {
+            if (fTable.containsSymbol("name" + i)) {
+                ++count;
+            }
+        }
+        assertTrue("too many symbols: " + count, count <= MAX_SIZE);
+        // the most recent symbol is always kept
+        assertTrue(fTable.containsSymbol("name" + (MAX_SIZE * 10 - 1)));
+    }
+    
+    public void testPinnedSymbolsAreNotEvicted() {
+        final String pinned = fTable.pinSymbol("pinned");
+        add("before");
+        fTable.pinSymbols();
+        for (int i = 0; i < MAX_SIZE * 10; i++) {
+            add("name" + i);
+        }
+        assertTrue(fTable.containsSymbol("pinned"));
+        assertTrue(fTable.containsSymbol("before"));
+        assertSame(pinned, add("pinned"));
+        final String[] symbols = { 
+            XMLSymbols.EMPTY_STRING, XMLSymbols.PREFIX_XML, XMLSymbols.PREFIX_XMLNS,
+            XMLSymbols.fCDATASymbol, XMLSymbols.fIDSymbol, XMLSymbols.fIDREFSymbol,
+            XMLSymbols.fNMTOKENSymbol, XMLSymbols.fREQUIREDSymbol, XMLSymbols.fFIXEDSymbol,
+        };
+        for (int i = 0; i < symbols.length; i++) {
+            assertTrue(symbols[i], fTable.containsSymbol(symbols[i]));
+            assertSame(symbols[i], add(symbols[i]));
+        }
+    }
+    
+    public void testReferencedSymbolsAreKept() {
+        final String hot = add("hot");
+        for (int i = 0; i < MAX_SIZE * 10; i++) {
+            add("name" + i);
+            assertSame(hot, add("hot"));
+        }
+        assertTrue(fTable.containsSymbol("hot"));
+    }
+    
+    public void testEvictedSymbolIsReaddedInterned() {
+        final String symbol = add("evicted");
+        for (int i = 0; i < MAX_SIZE * 10; i++) {
+            add("name" + i);
+        }
+        assertFalse(fTable.containsSymbol("evicted"));
+        assertSame(symbol, add("evicted"));
+        assertSame(symbol, fTable.addSymbol("evicted"));
+        assertSame(symbol, "evicted".intern());
+    }
+    
+    /** Adds a symbol from a copy of its characters. */
+    private String add(String symbol) {
+        final char[] buffer = new char[symbol.length() + 2];
+        symbol.getChars(0, symbol.length(), buffer, 1);
+        return fTable.addSymbol(buffer, 1, symbol.length());
+    }
+    
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.BufferPool;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests the reuse of buffers, the capacity of stripes and the statistics
+ * of <code>BufferPool</code>, and its use by parsers sharing a pool.
+ * 
+ * @version $Id$
+ */
+public class BufferPoolTest extends TestCase {
+    
+    private static final String BUFFER_POOL = 
+        Constants.XERCES_PROPERTY_PREFIX + Constants.BUFFER_POOL_PROPERTY;
+    
+    public BufferPoolTest(String name) {
+        super(name);
+    }
+    
+    public void testByteBufferReuse() {
+        BufferPool pool = new BufferPool(1, 4);
+        byte[] buffer = pool.getByteBuffer(64);
+        assertEquals(64, buffer.length);
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        pool.returnByteBuffer(buffer);
+        // only a request of the same length gets the buffer back
+        assertNotSame(buffer, pool.getByteBuffer(32));
+        assertSame(buffer, pool.getByteBuffer(64));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        // a buffer is handed out once
+        assertNotSame(buffer, pool.getByteBuffer(64));
+    }
+    
+    public void testCharBufferReuse() {
+        BufferPool pool = new BufferPool(1, 4);
+        char[] buffer = pool.getCharBuffer(64);
+        pool.returnCharBuffer(buffer);
+        // byte and character buffers are held apart
+        assertEquals(64, pool.getByteBuffer(64).length);
+        assertSame(buffer, pool.getCharBuffer(64));
+        assertNotSame(buffer, pool.getCharBuffer(64));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(3, pool.getMissCount());
+    }
+    
+    public void testCapacity() {
+        BufferPool pool = new BufferPool(1, 2);
+        byte[][] buffers = new byte[3][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.getByteBuffer(16);
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            pool.returnByteBuffer(buffers[i]);
+        }
+        assertEquals(1, pool.getDiscardCount());
+        // the buffers kept are the first two returned
+        byte[] first = pool.getByteBuffer(16);
+        byte[] second = pool.getByteBuffer(16);
+        assertTrue(first == buffers[0] || first == buffers[1]);
+        assertTrue(second == buffers[0] || second == buffers[1]);
+        assertNotSame(first, second);
+        pool.getByteBuffer(16);
+        assertEquals(2, pool.getHitCount());
+        assertEquals(4, pool.getMissCount());
+        
+        // character buffers have a capacity of their own
+        for (int i = 0; i < 3; i++) {
+            pool.returnCharBuffer(new char[16]);
+        }
+        assertEquals(2, pool.getDiscardCount());
+    }
+    
+    public void testZeroCapacity() {
+        BufferPool pool = new BufferPool(1, 0);
+        byte[] buffer = pool.getByteBuffer(16);
+        pool.returnByteBuffer(buffer);
+        pool.returnCharBuffer(new char[16]);
+        assertNotSame(buffer, pool.getByteBuffer(16));
+        assertEquals(0, pool.getHitCount());
+        assertEquals(2, pool.getDiscardCount());
+    }
+    
+    public void testClearAndStatistics() {
+        BufferPool pool = new BufferPool(2, 4);
+        byte[] buffer = pool.getByteBuffer(16);
+        pool.returnByteBuffer(buffer);
+        pool.returnByteBuffer(null);
+        pool.returnCharBuffer(null);
+        pool.clear();
+        assertNotSame(buffer, pool.getByteBuffer(16));
+        assertEquals(0, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(0, pool.getDiscardCount());
+        pool.resetStatistics();
+        assertEquals(0, pool.getMissCount());
+    }
+    
+    /**
+     * Parsers sharing a pool reuse each other's buffers once a parse is
+     * done, and never use a buffer which is still in use, even when one
+     * parse runs inside another on the same thread.
+     */
+    public void testSharedByParsers() throws Exception {
+        final BufferPool pool = new BufferPool(1, 8);
+        final StringBuffer inner = new StringBuffer();
+        final SAXParser innerParser = createParser(pool, inner);
+        StringBuffer outer = new StringBuffer();
+        SAXParser outerParser = createParser(pool, outer);
+        outerParser.setContentHandler(new Recorder(outer) {
+            public void startElement(String uri, String localName, String qName, 
+                    Attributes attributes) throws SAXException {
+                super.startElement(uri, localName, qName, attributes);
+                if (qName.equals("nested")) {
+                    try {
+                        innerParser.parse(new InputSource(new StringReader(document("inner", 2000))));
+                    }
+                    catch (java.io.IOException e) {
+                        throw new SAXException(e);
+                    }
+                }
+            }
+        });
+        
+        String document = document("outer", 2000);
+        outerParser.parse(new InputSource(new StringReader(document)));
+        assertEquals(expected("outer", 2000), outer.toString());
+        assertEquals(expected("inner", 2000), inner.toString());
+        
+        // the buffers of both parses are back in the pool
+        pool.resetStatistics();
+        inner.setLength(0);
+        innerParser.parse(new InputSource(new StringReader(document("inner", 10))));
+        assertEquals(expected("inner", 10), inner.toString());
+        assertTrue(pool.getHitCount() > 0);
+        assertEquals(0, pool.getMissCount());
+    }
+    
+    /** Returns a document with the given number of text elements and one nested element. */
+    private static String document(String name, int count) {
+        StringBuffer buffer = new StringBuffer("<" + name + ">");
+        for (int i = 0; i < count; i++) {
+            buffer.append("<t>" + name + i + "</t>");
+            if (i == count / 2) {
+                buffer.append("<nested/>");
+            }
+        }
+        return buffer.append("</" + name + ">").toString();
+    }
+    
+    /** Returns the text recorded for a document built by {@link #document(String,int)}. */
+    private static String expected(String name, int count) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < count; i++) {
+            buffer.append(name + i);
+        }
+        return buffer.toString();
+    }
+    
+    private static SAXParser createParser(BufferPool pool, StringBuffer text) throws SAXException {
+        SAXParser parser = new SAXParser();
+        parser.setProperty(BUFFER_POOL, pool);
+        parser.setContentHandler(new Recorder(text));
+        return parser;
+    }
+    
+    /** Records the character content of a document. */
+    private static class Recorder extends DefaultHandler {
+        
+        private final StringBuffer fText;
+        
+        Recorder(StringBuffer text) {
+            fText = text;
+        }
+        
+        public void characters(char[] ch, int start, int length) {
+            fText.append(ch, start, length);
+        }
+    }
+    
+}
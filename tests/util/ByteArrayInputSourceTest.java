@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.ByteArrayInputSource;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests the ranges of <code>ByteArrayInputSource</code>, and that a
+ * document parsed from a byte array gives the same events as the same
+ * bytes parsed from a stream, unless a stream is set on the source.
+ * 
+ * @version $Id$
+ */
+public class ByteArrayInputSourceTest extends TestCase {
+    
+    public ByteArrayInputSourceTest(String name) {
+        super(name);
+    }
+    
+    public void testRanges() {
+        byte[] bytes = new byte[10];
+        ByteArrayInputSource source = new ByteArrayInputSource(null, "a.xml", null, bytes, null);
+        assertSame(bytes, source.getBytes());
+        assertEquals(0, source.getOffset());
+        assertEquals(10, source.getLength());
+        source.setBytes(bytes, 10, 0);
+        assertEquals(10, source.getOffset());
+        assertEquals(0, source.getLength());
+        source = new ByteArrayInputSource(null, "a.xml", null, bytes, 2, 5, "UTF-8");
+        assertEquals(2, source.getOffset());
+        assertEquals(5, source.getLength());
+        assertEquals("UTF-8", source.getEncoding());
+        
+        assertOutOfBounds(source, bytes, -1, 5);
+        assertOutOfBounds(source, bytes, 0, -1);
+        assertOutOfBounds(source, bytes, 6, 5);
+        assertOutOfBounds(source, bytes, 11, 0);
+        assertOutOfBounds(source, bytes, 1, Integer.MAX_VALUE);
+        // a failed call leaves the range as it was
+        assertEquals(2, source.getOffset());
+        assertEquals(5, source.getLength());
+        try {
+            new ByteArrayInputSource(null, "a.xml", null, bytes, 8, 3, null);
+            fail("expected IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+    }
+    
+    /** 
+     * Each encoding read in place by its own reader gives the same events
+     * as a stream, with the document in the middle of a larger array.
+     */
+    public void testEncodings() throws Exception {
+        String[] encodings = { "UTF-8", "UTF-16", "US-ASCII", "ISO-8859-1", "windows-1252" };
+        for (int i = 0; i < encodings.length; i++) {
+            String text = encodings[i].equals("US-ASCII") ? 
+                    "plain text" : "caf\u00e9 \u00c0 \u00ff";
+            if (encodings[i].startsWith("UTF")) {
+                // a supplementary character, which some of the reads split
+                text += " \uD800\uDC00";
+            }
+            byte[] bytes = document(encodings[i], text, 3000).getBytes(encodings[i]);
+            checkSameEvents(encodings[i], bytes, null);
+            // an encoding given with the source
+            checkSameEvents(encodings[i], bytes, encodings[i]);
+        }
+    }
+    
+    /** A byte stream set on the source is read instead of the array. */
+    public void testByteStreamPreferred() throws Exception {
+        byte[] array = "<array/>".getBytes("UTF-8");
+        byte[] stream = "<stream/>".getBytes("UTF-8");
+        ByteArrayInputSource source = new ByteArrayInputSource(null, "a.xml", null, array, null);
+        source.setByteStream(new ByteArrayInputStream(stream));
+        assertEquals(parse(new XMLInputSource(null, "s.xml", null, 
+                new ByteArrayInputStream(stream), null)), parse(source));
+    }
+    
+    /** A character stream set on the source is read instead of the array. */
+    public void testCharacterStreamPreferred() throws Exception {
+        byte[] array = "<array/>".getBytes("UTF-8");
+        ByteArrayInputSource source = new ByteArrayInputSource(null, "a.xml", null, array, null);
+        source.setCharacterStream(new StringReader("<reader/>"));
+        assertEquals("<reader></reader>", parse(source));
+    }
+    
+    /** An empty range is an empty document. */
+    public void testEmptyRange() throws Exception {
+        byte[] array = "<array/>".getBytes("UTF-8");
+        try {
+            parse(new ByteArrayInputSource(null, "a.xml", null, array, 3, 0, null));
+            fail("expected a fatal error");
+        }
+        catch (XNIException e) {
+        }
+    }
+    
+    //
+    // Helpers
+    //
+    
+    private static void assertOutOfBounds(ByteArrayInputSource source, byte[] bytes, 
+            int offset, int length) {
+        try {
+            source.setBytes(bytes, offset, length);
+            fail("expected IndexOutOfBoundsException for " + offset + ", " + length);
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+    }
+    
+    /** 
+     * Parses the bytes from a stream and from the middle of an array,
+     * and checks that both give the same events.
+     */
+    private static void checkSameEvents(String name, byte[] bytes, String encoding) throws Exception {
+        byte[] array = new byte[bytes.length + 13];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = '<';
+        }
+        System.arraycopy(bytes, 0, array, 5, bytes.length);
+        String expected = parse(new XMLInputSource(null, "stream.xml", null, 
+                new ByteArrayInputStream(bytes), encoding));
+        String actual = parse(new ByteArrayInputSource(null, "stream.xml", null, 
+                array, 5, bytes.length, encoding));
+        assertTrue(name, expected.length() > 10000);
+        assertEquals(name, expected, actual);
+    }
+    
+    /** Returns a document with the given encoding declaration and text. */
+    private static String document(String encoding, String text, int count) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("<?xml version='1.0' encoding='" + encoding + "'?>\r\n");
+        buffer.append("<!-- comment --><doc a='" + text + "'>\r\n");
+        for (int i = 0; i < count; i++) {
+            buffer.append("<p n='" + i + "'>" + text + "<?pi " + i + "?></p>\r\n");
+        }
+        return buffer.append("<![CDATA[" + text + "]]></doc>").toString();
+    }
+    
+    /** Parses a document, returning its events. */
+    private static String parse(XMLInputSource source) throws Exception {
+        final StringBuffer events = new StringBuffer();
+        SAXParser parser = new SAXParser();
+        parser.setContentHandler(new DefaultHandler() {
+            public void startElement(String uri, String localName, String qName, 
+                    Attributes attributes) {
+                events.append('<').append(qName);
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    events.append(' ').append(attributes.getQName(i)).append("='")
+                        .append(attributes.getValue(i)).append('\'');
+                }
+                events.append('>');
+            }
+            public void endElement(String uri, String localName, String qName) {
+                events.append("</").append(qName).append('>');
+            }
+            public void characters(char[] ch, int start, int length) {
+                events.append(ch, start, length);
+            }
+            public void processingInstruction(String target, String data) {
+                events.append("<?").append(target).append(' ').append(data).append("?>");
+            }
+        });
+        parser.setErrorHandler(new DefaultHandler() {
+            public void fatalError(SAXParseException e) throws SAXParseException {
+                throw e;
+            }
+        });
+        parser.parse(source);
+        return events.toString();
+    }
+    
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.util.CharArrayInputSource;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests the ranges of <code>CharArrayInputSource</code>, and that a
+ * document parsed from a string or a character array gives the same
+ * events as the same characters read from a stream.
+ * 
+ * @version $Id$
+ */
+public class CharArrayInputSourceTest extends TestCase {
+    
+    public CharArrayInputSourceTest(String name) {
+        super(name);
+    }
+    
+    public void testRanges() {
+        char[] chars = "0123456789".toCharArray();
+        CharArrayInputSource source = new CharArrayInputSource(null, "a.xml", null, chars, 2, 5);
+        assertEquals("23456", getChars(source));
+        source.setChars(chars, 10, 0);
+        assertEquals("", getChars(source));
+        source.setString("abc");
+        assertEquals("abc", getChars(source));
+        source.setChars(chars, 0, 10);
+        assertEquals("0123456789", getChars(source));
+        
+        source.setChars(chars, 2, 5);
+        assertOutOfBounds(source, chars, -1, 5);
+        assertOutOfBounds(source, chars, 0, -1);
+        assertOutOfBounds(source, chars, 6, 5);
+        assertOutOfBounds(source, chars, 11, 0);
+        assertOutOfBounds(source, chars, 1, Integer.MAX_VALUE);
+        // a failed call leaves the range as it was
+        assertEquals("23456", getChars(source));
+        try {
+            new CharArrayInputSource(null, "a.xml", null, chars, 8, 3);
+            fail("expected IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+    }
+    
+    /** 
+     * A string and a range in the middle of an array give the same
+     * events as a stream, for documents larger than the entity buffer.
+     */
+    public void testSameEvents() throws Exception {
+        String text = document("caf\u00e9 \uD800\uDC00 &amp; \u00ff", 3000);
+        String expected = parse(new XMLInputSource(null, "stream.xml", null, 
+                new StringReader(text), null));
+        assertTrue(expected.length() > 10000);
+        assertEquals(expected, parse(new CharArrayInputSource(null, "a.xml", null, text)));
+        
+        char[] chars = new char[text.length() + 13];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = '<';
+        }
+        text.getChars(0, text.length(), chars, 5);
+        assertEquals(expected, parse(new CharArrayInputSource(null, "a.xml", null, 
+                chars, 5, text.length())));
+    }
+    
+    /** A byte stream set on the source is read instead of the characters. */
+    public void testByteStreamPreferred() throws Exception {
+        CharArrayInputSource source = new CharArrayInputSource(null, "a.xml", null, "<chars/>");
+        source.setByteStream(new ByteArrayInputStream("<stream/>".getBytes("UTF-8")));
+        assertEquals("<stream></stream>", parse(source));
+    }
+    
+    /** A character stream set on the source is read instead of the characters. */
+    public void testCharacterStreamPreferred() throws Exception {
+        CharArrayInputSource source = new CharArrayInputSource(null, "a.xml", null, "<chars/>");
+        source.setCharacterStream(new StringReader("<reader/>"));
+        assertEquals("<reader></reader>", parse(source));
+    }
+    
+    //
+    // Helpers
+    //
+    
+    private static String getChars(CharArrayInputSource source) {
+        char[] dest = new char[source.getLength() + 2];
+        source.getChars(dest, 1);
+        return new String(dest, 1, source.getLength());
+    }
+    
+    private static void assertOutOfBounds(CharArrayInputSource source, char[] chars, 
+            int offset, int length) {
+        try {
+            source.setChars(chars, offset, length);
+            fail("expected IndexOutOfBoundsException for " + offset + ", " + length);
+        }
+        catch (IndexOutOfBoundsException e) {
+        }
+    }
+    
+    /** Returns a document with the given text. */
+    private static String document(String text, int count) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("<?xml version='1.0' encoding='UTF-8'?>\r\n");
+        buffer.append("<!-- comment --><doc a='" + text + "'>\r\n");
+        for (int i = 0; i < count; i++) {
+            buffer.append("<p n='" + i + "'>" + text + "<?pi " + i + "?></p>\r\n");
+        }
+        return buffer.append("<![CDATA[" + text + "]]></doc>").toString();
+    }
+    
+    /** Parses a document, returning its events. */
+    private static String parse(XMLInputSource source) throws Exception {
+        final StringBuffer events = new StringBuffer();
+        SAXParser parser = new SAXParser();
+        parser.setContentHandler(new DefaultHandler() {
+            public void startElement(String uri, String localName, String qName, 
+                    Attributes attributes) {
+                events.append('<').append(qName);
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    events.append(' ').append(attributes.getQName(i)).append("='")
+                        .append(attributes.getValue(i)).append('\'');
+                }
+                events.append('>');
+            }
+            public void endElement(String uri, String localName, String qName) {
+                events.append("</").append(qName).append('>');
+            }
+            public void characters(char[] ch, int start, int length) {
+                events.append(ch, start, length);
+            }
+            public void processingInstruction(String target, String data) {
+                events.append("<?").append(target).append(' ').append(data).append("?>");
+            }
+        });
+        parser.setErrorHandler(new DefaultHandler() {
+            public void fatalError(SAXParseException e) throws SAXParseException {
+                throw e;
+            }
+        });
+        parser.parse(source);
+        return events.toString();
+    }
+    
+}
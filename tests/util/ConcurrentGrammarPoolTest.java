@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.XSDDescription;
+import org.apache.xerces.util.ConcurrentGrammarPool;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+
+/**
+ * Tests the lookups made without locking by 
+ * <code>ConcurrentGrammarPool</code>.
+ * 
+ * @version $Id$
+ */
+public class ConcurrentGrammarPoolTest extends TestCase {
+    
+    public ConcurrentGrammarPoolTest(String name) {
+        super(name);
+    }
+    
+    public void testOverriddenEqualsAndHashCode() {
+        // a pool matching target namespaces without regard to case
+        ConcurrentGrammarPool pool = new ConcurrentGrammarPool() {
+            public boolean equals(XMLGrammarDescription desc1, XMLGrammarDescription desc2) {
+                return namespace(desc1).equalsIgnoreCase(namespace(desc2));
+            }
+            public int hashCode(XMLGrammarDescription desc) {
+                return namespace(desc).toLowerCase().hashCode();
+            }
+        };
+        final Grammar grammar = new TestGrammar("urn:Test");
+        pool.putGrammar(grammar);
+        final XMLGrammarDescription desc = description("URN:test");
+        assertSame(grammar, pool.getGrammar(desc));
+        assertSame(grammar, pool.retrieveGrammar(desc));
+        assertTrue(pool.containsGrammar(desc));
+        assertFalse(pool.containsGrammar(description("urn:other")));
+        
+        // a grammar with an equal description replaces the first one
+        final Grammar replacement = new TestGrammar("URN:TEST");
+        pool.putGrammar(replacement);
+        assertSame(replacement, pool.getGrammar(description("urn:test")));
+        assertEquals(1, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA).length);
+        
+        assertSame(replacement, pool.removeGrammar(desc));
+        assertFalse(pool.containsGrammar(desc));
+        assertNull(pool.getGrammar(description("urn:Test")));
+    }
+    
+    public void testCacheGrammarsPublishesOnce() {
+        final Grammar[] grammars = new Grammar[5];
+        for (int i = 0; i < grammars.length; i++) {
+            grammars[i] = new TestGrammar("urn:test" + i);
+        }
+        final boolean[] seen = new boolean[grammars.length];
+        // while the last grammar is added, look for the others; none 
+        // must be visible before the whole set is published
+        ConcurrentGrammarPool pool = new ConcurrentGrammarPool() {
+            public int hashCode(XMLGrammarDescription desc) {
+                if (desc == grammars[grammars.length - 1].getGrammarDescription()) {
+                    for (int i = 0; i < grammars.length - 1; i++) {
+                        seen[i] = containsGrammar(grammars[i].getGrammarDescription());
+                    }
+                }
+                return super.hashCode(desc);
+            }
+        };
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, grammars);
+        for (int i = 0; i < grammars.length - 1; i++) {
+            assertFalse("grammar " + i + " visible before the set", seen[i]);
+        }
+        for (int i = 0; i < grammars.length; i++) {
+            assertSame(grammars[i], pool.getGrammar(description("urn:test" + i)));
+        }
+        assertEquals(grammars.length, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_SCHEMA).length);
+    }
+    
+    public void testLockedPoolIsUnchanged() {
+        ConcurrentGrammarPool pool = new ConcurrentGrammarPool();
+        pool.lockPool();
+        pool.cacheGrammars(XMLGrammarDescription.XML_SCHEMA, 
+                new Grammar[] { new TestGrammar("urn:test") });
+        pool.putGrammar(new TestGrammar("urn:other"));
+        assertFalse(pool.containsGrammar(description("urn:test")));
+        assertFalse(pool.containsGrammar(description("urn:other")));
+        pool.unlockPool();
+        pool.putGrammar(new TestGrammar("urn:other"));
+        assertTrue(pool.containsGrammar(description("urn:other")));
+        pool.clear();
+        assertFalse(pool.containsGrammar(description("urn:other")));
+    }
+    
+    private static XSDDescription description(String namespace) {
+        XSDDescription desc = new XSDDescription();
+        desc.setTargetNamespace(namespace);
+        return desc;
+    }
+    
+    private static String namespace(XMLGrammarDescription desc) {
+        return ((XSDDescription) desc).getTargetNamespace();
+    }
+    
+    /** A grammar which only has a description. */
+    static class TestGrammar implements Grammar {
+        
+        private final XSDDescription fDescription;
+        
+        public TestGrammar(String namespace) {
+            fDescription = description(namespace);
+        }
+        
+        public XMLGrammarDescription getGrammarDescription() {
+            return fDescription;
+        }
+    }
+
+}
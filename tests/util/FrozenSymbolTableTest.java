@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.impl.xs.XMLSchemaLoader;
+import org.apache.xerces.util.FrozenSymbolTable;
+import org.apache.xerces.util.ShadowedSymbolTable;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Tests the symbol table built by <code>XMLGrammarPoolImpl</code> from
+ * the names declared by its grammars, and <code>FrozenSymbolTable</code>.
+ * 
+ * @version $Id$
+ */
+public class FrozenSymbolTableTest extends TestCase {
+    
+    private static final String SCHEMA_A = 
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:a'>" +
+        "<xs:element name='order'><xs:complexType><xs:sequence>" +
+        "<xs:element name='item' type='xs:string' maxOccurs='unbounded'/>" +
+        "</xs:sequence><xs:attribute name='customer' type='xs:string'/>" +
+        "</xs:complexType></xs:element></xs:schema>";
+    
+    private static final String SCHEMA_B = 
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:b'>" +
+        "<xs:element name='invoice' type='xs:string'/></xs:schema>";
+    
+    private XMLGrammarPoolImpl fPool;
+    
+    public FrozenSymbolTableTest(String name) {
+        super(name);
+    }
+    
+    protected void setUp() throws Exception {
+        fPool = new XMLGrammarPoolImpl();
+        fPool.putGrammar(loadGrammar("a.xsd", SCHEMA_A));
+    }
+    
+    public void testPooledNamesAreShared() {
+        final SymbolTable frozen = fPool.getSymbolTable();
+        final String[] names = { "urn:a", "order", "item", "customer" };
+        for (int i = 0; i < names.length; i++) {
+            assertTrue(names[i], frozen.containsSymbol(names[i]));
+            final String symbol = frozen.addSymbol(names[i]);
+            // each parser chains its own table onto the shared one
+            final ShadowedSymbolTable first = new ShadowedSymbolTable(frozen);
+            final ShadowedSymbolTable second = new ShadowedSymbolTable(frozen);
+            assertSame(symbol, add(first, names[i]));
+            assertSame(symbol, add(second, names[i]));
+            assertSame(symbol, addHashed(first, names[i]));
+            assertSame(symbol, first.addSymbol(new String(names[i].toCharArray())));
+        }
+    }
+    
+    public void testUnknownNamesAreNotStored() {
+        final FrozenSymbolTable frozen = (FrozenSymbolTable) fPool.getSymbolTable();
+        final int count = frozen.getSymbolCount();
+        assertSame("unknown".intern(), add(frozen, "unknown"));
+        assertSame("unknown2".intern(), addHashed(frozen, "unknown2"));
+        assertSame("unknown3".intern(), frozen.addSymbol(new String("unknown3".toCharArray())));
+        assertFalse(frozen.containsSymbol("unknown"));
+        assertFalse(frozen.containsSymbol("unknown2".toCharArray(), 0, 8));
+        assertNull(frozen.getSymbol("unknown3"));
+        assertEquals(count, frozen.getSymbolCount());
+        
+        // the shadowing table keeps them instead
+        final ShadowedSymbolTable shadowed = new ShadowedSymbolTable(frozen);
+        final String symbol = add(shadowed, "unknown");
+        assertTrue(shadowed.containsSymbol("unknown"));
+        assertSame(symbol, addHashed(shadowed, "unknown"));
+        assertFalse(frozen.containsSymbol("unknown"));
+    }
+    
+    public void testTableIsRebuilt() throws Exception {
+        final SymbolTable first = fPool.getSymbolTable();
+        assertSame(first, fPool.getSymbolTable());
+        assertFalse(first.containsSymbol("invoice"));
+        
+        final Grammar grammar = loadGrammar("b.xsd", SCHEMA_B);
+        fPool.putGrammar(grammar);
+        final SymbolTable second = fPool.getSymbolTable();
+        assertNotSame(first, second);
+        assertTrue(second.containsSymbol("invoice"));
+        assertTrue(second.containsSymbol("order"));
+        
+        fPool.removeGrammar(grammar.getGrammarDescription());
+        final SymbolTable third = fPool.getSymbolTable();
+        assertNotSame(second, third);
+        assertFalse(third.containsSymbol("invoice"));
+        assertTrue(third.containsSymbol("order"));
+        
+        fPool.clear();
+        final SymbolTable fourth = fPool.getSymbolTable();
+        assertNotSame(third, fourth);
+        assertFalse(fourth.containsSymbol("order"));
+        assertEquals(0, ((FrozenSymbolTable) fourth).getSymbolCount());
+    }
+    
+    public void testCollidingHashCodes() {
+        // names made of the blocks "Aa" and "BB" all have the same hash
+        // code, so all but one of them go to the overflow list
+        final String[] names = new String[256];
+        for (int i = 0; i < names.length; i++) {
+            StringBuffer name = new StringBuffer();
+            for (int j = 0; j < 8; j++) {
+                name.append(((i >> j) & 1) == 0 ? "Aa" : "BB");
+            }
+            names[i] = name.toString();
+        }
+        final String[] symbols = new String[names.length / 2 + 100];
+        for (int i = 0; i < names.length / 2; i++) {
+            symbols[i] = names[i * 2];
+        }
+        for (int i = 0; i < 100; i++) {
+            symbols[names.length / 2 + i] = "name" + i;
+        }
+        final FrozenSymbolTable frozen = new FrozenSymbolTable(symbols);
+        assertEquals(symbols.length, frozen.getSymbolCount());
+        for (int i = 0; i < names.length; i++) {
+            final boolean present = i % 2 == 0;
+            final char[] chars = names[i].toCharArray();
+            assertEquals(names[i], present, frozen.containsSymbol(names[i]));
+            assertEquals(names[i], present, frozen.containsSymbol(chars, 0, chars.length));
+            assertSame(names[i].intern(), addHashed(frozen, names[i]));
+            if (present) {
+                assertSame(names[i].intern(), frozen.getSymbol(chars, 0, chars.length, names[i].hashCode()));
+            }
+            else {
+                assertNull(frozen.getSymbol(chars, 0, chars.length, names[i].hashCode()));
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(frozen.containsSymbol("name" + i));
+        }
+    }
+    
+    private static Grammar loadGrammar(String systemId, String schema) throws Exception {
+        XMLSchemaLoader loader = new XMLSchemaLoader();
+        return loader.loadGrammar(new XMLInputSource(null, systemId, null, new StringReader(schema), null));
+    }
+    
+    /** Adds the name through a copy of its characters. */
+    private static String add(SymbolTable table, String name) {
+        char[] buffer = new char[name.length() + 2];
+        name.getChars(0, name.length(), buffer, 1);
+        return table.addSymbol(buffer, 1, name.length());
+    }
+    
+    /** Adds the name through a copy of its characters and its hash code. */
+    private static String addHashed(SymbolTable table, String name) {
+        char[] buffer = new char[name.length() + 2];
+        name.getChars(0, name.length(), buffer, 1);
+        return table.addSymbol(buffer, 1, name.length(), name.hashCode());
+    }
+
+}
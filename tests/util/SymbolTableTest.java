@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.util.FrozenSymbolTable;
+import org.apache.xerces.util.ShadowedSymbolTable;
+import org.apache.xerces.util.SymbolTable;
+
+/**
+ * Tests that adding a symbol with a precomputed hash code returns the
+ * same reference as adding it without one, in <code>SymbolTable</code>
+ * and in subclasses which hash symbols in their own way.
+ * 
+ * @version $Id$
+ */
+public class SymbolTableTest extends TestCase {
+    
+    public SymbolTableTest(String name) {
+        super(name);
+    }
+    
+    public void testHashedAddIsInterned() {
+        SymbolTable table = new SymbolTable(4);
+        for (int i = 0; i < 1000; i++) {
+            final String name = "name" + i;
+            final String symbol = addHashed(table, name);
+            assertSame(name.intern(), symbol);
+            assertSame(symbol, table.addSymbol(name));
+            assertSame(symbol, table.addSymbol(name.toCharArray(), 0, name.length()));
+        }
+    }
+    
+    public void testHashedAddAfterRebalance() {
+        SymbolTable table = new SymbolTable();
+        // names made of "Aa" and "BB" all have the same hash code, which
+        // makes the table switch to its own hash function
+        final String[] names = new String[256];
+        for (int i = 0; i < names.length; i++) {
+            StringBuffer name = new StringBuffer();
+            for (int j = 0; j < 8; j++) {
+                name.append(((i >> j) & 1) == 0 ? "Aa" : "BB");
+            }
+            names[i] = name.toString();
+            table.addSymbol(names[i].toCharArray(), 0, names[i].length());
+        }
+        for (int i = 0; i < names.length; i++) {
+            assertSame(names[i].intern(), addHashed(table, names[i]));
+            assertTrue(table.containsSymbol(names[i]));
+        }
+    }
+    
+    public void testSubclassHashIsHonoured() {
+        SymbolTable table = new SymbolTable() {
+            public int hash(String symbol) {
+                return symbol.length();
+            }
+            public int hash(char[] buffer, int offset, int length) {
+                return length;
+            }
+        };
+        final String symbol = table.addSymbol("symbol");
+        assertSame(symbol, addHashed(table, "symbol"));
+        assertSame(symbol, table.addSymbol("symbol".toCharArray(), 0, 6));
+        final String other = addHashed(table, "others");
+        assertTrue(table.containsSymbol("others"));
+        assertSame(other, table.addSymbol("others"));
+    }
+    
+    public void testShadowedFrozenTable() {
+        FrozenSymbolTable frozen = new FrozenSymbolTable(new String[] { "frozen" });
+        ShadowedSymbolTable table = new ShadowedSymbolTable(frozen);
+        assertSame("frozen", addHashed(table, "frozen"));
+        final String symbol = addHashed(table, "shadowed");
+        assertSame("shadowed", symbol);
+        assertSame(symbol, table.addSymbol("shadowed".toCharArray(), 0, 8));
+        assertFalse(frozen.containsSymbol("shadowed"));
+    }
+    
+    /** Adds the name through a copy of its characters and its hash code. */
+    private static String addHashed(SymbolTable table, String name) {
+        char[] buffer = new char[name.length() + 2];
+        name.getChars(0, name.length(), buffer, 1);
+        return table.addSymbol(buffer, 1, name.length(), name.hashCode());
+    }
+
+}